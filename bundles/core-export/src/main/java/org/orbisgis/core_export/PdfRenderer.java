@@ -44,7 +44,10 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.orbisgis.coremap.layerModel.ILayer;
 import org.orbisgis.coremap.map.MapTransform;
 import org.orbisgis.coremap.renderer.Renderer;
 import org.orbisgis.coremap.renderer.se.Symbolizer;
@@ -63,27 +66,87 @@ public class PdfRenderer extends Renderer {
     //private MapTransform mt;
     private Map<Integer, Graphics2D> g2Levels;
     private Graphics2D baseG2;
+    // The pdf writer is shared by the layers drawn in parallel
+    private final Lock writerLock;
 
     public PdfRenderer(PdfTemplate pdfTemplate, float width, float height) {
+        this(pdfTemplate, width, height, new ReentrantLock());
+    }
+
+    private PdfRenderer(PdfTemplate pdfTemplate, float width, float height, Lock writerLock) {
         super();
         this.height = height;
         this.width = width;
         this.pdfTemplate = pdfTemplate;
+        this.writerLock = writerLock;
         g2Levels = null;
         baseG2 = null;
     }
 
     @Override
     protected Graphics2D getGraphics2D(Symbolizer s) {
-        Graphics2D get = g2Levels.get(s.getLevel());
-        return get;
+        return g2Levels.get(s.getLevel());
+    }
+
+    /**
+     * @return The lock of the pdf writer, held by the renderer while a symbolizer draws
+     */
+    @Override
+    protected Lock getOutputLock() {
+        return writerLock;
+    }
+
+    /**
+     * Each layer is drawn in its own template, templates are added to the main template in the layer order.
+     */
+    @Override
+    protected LayerBuffer createLayerBuffer(ILayer layer, MapTransform mt, int width, int height) {
+        writerLock.lock();
+        try {
+            final PdfTemplate layerTemplate = pdfTemplate.createTemplate(this.width, this.height);
+            Graphics2D layerG2 = layerTemplate.createGraphics(this.width, this.height);
+            return new LayerBuffer(new PdfRenderer(layerTemplate, this.width, this.height, writerLock), layerG2) {
+                private boolean disposed = false;
+
+                @Override
+                protected void composite(Graphics2D g2) {
+                    writerLock.lock();
+                    try {
+                        dispose();
+                        pdfTemplate.addTemplate(layerTemplate, 0, 0);
+                    } finally {
+                        writerLock.unlock();
+                    }
+                }
+
+                @Override
+                protected void dispose() {
+                    if (!disposed) {
+                        disposed = true;
+                        super.dispose();
+                    }
+                }
+            };
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    @Override
+    protected boolean isVectorOutput() {
+        return true;
     }
 
     @Override
     protected void initGraphics2D(List<Symbolizer> symbs, Graphics2D g2, MapTransform mt) {
         g2Levels = new HashMap<Integer, Graphics2D>();
 
-        baseG2 = pdfTemplate.createGraphics(width, height);
+        writerLock.lock();
+        try {
+            baseG2 = pdfTemplate.createGraphics(width, height);
+        } finally {
+            writerLock.unlock();
+        }
 
         //HashMap<Integer, Graphics2D> g2Level = new HashMap<Integer, Graphics2D>();
         List<Integer> levels = new LinkedList<Integer>();
@@ -113,7 +176,12 @@ public class PdfRenderer extends Renderer {
 
     @Override
     public void disposeLayer(Graphics2D g2) {
-        baseG2.dispose();
+        writerLock.lock();
+        try {
+            baseG2.dispose();
+        } finally {
+            writerLock.unlock();
+        }
         g2Levels.clear();
     }
 
@@ -97,6 +97,11 @@ public class PdfRendererWithAttributes extends Renderer {
         g2.dispose();
     }
 
+    @Override
+    protected boolean isVectorOutput() {
+        return true;
+    }
+
     @Override
     protected void initGraphics2D(List<Symbolizer> symbs, Graphics2D g2,
                                   MapTransform mt) {
@@ -36,6 +36,8 @@
  */
 package org.orbisgis.corejdbc;
 
+import com.vividsolutions.jts.geom.Envelope;
+
 /**
  * @author Nicolas Fortin
  */
@@ -45,6 +47,7 @@ public class TableEditEvent extends java.util.EventObject {
     protected Long firstRowPK;
     protected Long lastRowPK;
     protected int type;
+    protected Envelope envelope;
 
 
     public TableEditEvent(String tableName, int column, Long firstRowPK, Long lastRowPK, int type) {
@@ -70,6 +73,19 @@ public class TableEditEvent extends java.util.EventObject {
         this.type = type;
     }
 
+    /**
+     * @param tableName Table identifier
+     * @param column See {@link javax.swing.event.TableModelEvent#getColumn()}
+     * @param firstRowPK The first updated row primary key
+     * @param lastRowPK The last updated row primary key
+     * @param type See {@link javax.swing.event.TableModelEvent#getType()}
+     * @param envelope Envelope of the old and new geometries of the updated rows
+     */
+    public TableEditEvent(String tableName, int column, Long firstRowPK, Long lastRowPK, int type, Envelope envelope) {
+        this(tableName, column, firstRowPK, lastRowPK, type);
+        this.envelope = envelope;
+    }
+
     /**
      * @return Table identifier
      */
@@ -111,4 +127,11 @@ public class TableEditEvent extends java.util.EventObject {
     public int getType() {
         return type;
     }
+
+    /**
+     * @return Envelope of the old and new geometries of the updated rows. Null if not available.
+     */
+    public Envelope getEnvelope() {
+        return envelope;
+    }
 }
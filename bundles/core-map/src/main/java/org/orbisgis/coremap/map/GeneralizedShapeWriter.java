@@ -0,0 +1,305 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.map;
+
+import com.vividsolutions.jts.awt.ShapeWriter;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * Convert lines and polygons into Java2D shapes, with a generalization done in screen space. Vertices are snapped
+ * to a grid of the tolerance size, in pixels, anchored on the image origin, then consecutive vertices snapped to
+ * the same node are merged. As each vertex is snapped on its own, an edge shared by two polygons is snapped the
+ * same way in both of them and no gap or overlap appears between neighbours. The tolerance does not depend on the
+ * CRS units as it is applied after the map transformation. Rings always keep at least four vertices, a polygon
+ * ring is never reduced to a line. Vertices far outside of the map are dropped when the shape drawn inside the
+ * map stays the same. Points and collections of points are converted by the JTS {@link ShapeWriter}.
+ */
+class GeneralizedShapeWriter {
+    private static final int MIN_RING_SIZE = 4;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int TOP = 4;
+    private static final int BOTTOM = 8;
+    private final ShapeWriter shapeWriter;
+    private final MapTransform mt;
+    private final double tolerance;
+    private double[] buffer = new double[256];
+    private double[] decimated = new double[256];
+    private double clipMinX;
+    private double clipMinY;
+    private double clipMaxX;
+    private double clipMaxY;
+    private long sourceVertexCount = 0;
+    private long drawnVertexCount = 0;
+
+    /**
+     * @param shapeWriter Converter of points
+     * @param mt Transformation from map to screen coordinates
+     * @param tolerance Tolerance in pixels
+     */
+    GeneralizedShapeWriter(ShapeWriter shapeWriter, MapTransform mt, double tolerance) {
+        this.shapeWriter = shapeWriter;
+        this.mt = mt;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return Number of vertices of the converted geometries
+     */
+    long getSourceVertexCount() {
+        return sourceVertexCount;
+    }
+
+    /**
+     * @return Number of vertices of the produced shapes
+     */
+    long getDrawnVertexCount() {
+        return drawnVertexCount;
+    }
+
+    /**
+     * @param geom Geometry in map coordinates
+     * @return Shape in screen coordinates
+     */
+    Shape toShape(Geometry geom) {
+        if (geom.getDimension() == 0 || !isLinear(geom)) {
+            return shapeWriter.toShape(geom);
+        }
+        updateClip();
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        append(path, geom);
+        return path;
+    }
+
+    /**
+     * Vertices are not dropped within half of the image size around the image, a stroke drawn outside of the map
+     * is not visible.
+     */
+    void updateClip() {
+        int width = mt.getWidth();
+        int height = mt.getHeight();
+        if (width > 0 && height > 0) {
+            double margin = Math.max(width, height) / 2.;
+            clipMinX = -margin;
+            clipMinY = -margin;
+            clipMaxX = width + margin;
+            clipMaxY = height + margin;
+        } else {
+            clipMinX = Double.NEGATIVE_INFINITY;
+            clipMinY = Double.NEGATIVE_INFINITY;
+            clipMaxX = Double.POSITIVE_INFINITY;
+            clipMaxY = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * @param geom Geometry
+     * @return True if the geometry contains only lines and polygons
+     */
+    private static boolean isLinear(Geometry geom) {
+        if (geom instanceof LineString || geom instanceof Polygon) {
+            return true;
+        }
+        for (int i = 0; i < geom.getNumGeometries(); i++) {
+            Geometry part = geom.getGeometryN(i);
+            if (part == geom || !isLinear(part)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(Path2D path, Geometry geom) {
+        if (geom instanceof LineString) {
+            appendLine(path, ((LineString) geom).getCoordinateSequence(), false);
+        } else if (geom instanceof Polygon) {
+            Polygon polygon = (Polygon) geom;
+            appendLine(path, polygon.getExteriorRing().getCoordinateSequence(), true);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                appendLine(path, polygon.getInteriorRingN(i).getCoordinateSequence(), true);
+            }
+        } else {
+            for (int i = 0; i < geom.getNumGeometries(); i++) {
+                append(path, geom.getGeometryN(i));
+            }
+        }
+    }
+
+    private void appendLine(Path2D path, CoordinateSequence seq, boolean ring) {
+        int size = seq.size();
+        double[] coordinates = getBuffer(size);
+        for (int i = 0; i < size; i++) {
+            coordinates[i * 2] = seq.getOrdinate(i, CoordinateSequence.X);
+            coordinates[i * 2 + 1] = seq.getOrdinate(i, CoordinateSequence.Y);
+        }
+        mt.getAffineTransform().transform(coordinates, 0, coordinates, 0, size);
+        appendScreenCoordinates(path, coordinates, size, ring);
+    }
+
+    /**
+     * @param size Number of vertices
+     * @return Buffer of at least size * 2 ordinates
+     */
+    double[] getBuffer(int size) {
+        if (buffer.length < size * 2) {
+            buffer = new double[size * 2];
+        }
+        return buffer;
+    }
+
+    /**
+     * Decimate, clip, then append the coordinates to the path.
+     * @param path Destination
+     * @param coordinates Screen coordinates x0, y0, x1, y1...
+     * @param size Number of vertices
+     * @param ring True if the coordinates are a closed ring
+     */
+    void appendScreenCoordinates(Path2D path, double[] coordinates, int size, boolean ring) {
+        if (size == 0) {
+            return;
+        }
+        sourceVertexCount += size;
+        if (decimated.length < size * 2) {
+            decimated = new double[size * 2];
+        }
+        int count = snap(coordinates, size);
+        if (ring && count < MIN_RING_SIZE && size >= MIN_RING_SIZE) {
+            // Keep the shape of small rings
+            System.arraycopy(coordinates, 0, decimated, 0, size * 2);
+            count = size;
+        }
+        count = clip(count);
+        drawnVertexCount += count;
+        path.moveTo(decimated[0], decimated[1]);
+        for (int i = 1; i < count; i++) {
+            path.lineTo(decimated[i * 2], decimated[i * 2 + 1]);
+        }
+        if (ring) {
+            path.closePath();
+        }
+    }
+
+    /**
+     * Copy into the decimated buffer the vertices snapped to the grid, a vertex snapped to the same node as the
+     * previous kept vertex is dropped. The first and the last vertices are always kept.
+     * @param coordinates Screen coordinates
+     * @param size Number of vertices
+     * @return Number of kept vertices
+     */
+    private int snap(double[] coordinates, int size) {
+        if (size <= 2 || tolerance <= 0) {
+            System.arraycopy(coordinates, 0, decimated, 0, size * 2);
+            return size;
+        }
+        double lastX = snap(coordinates[0]);
+        double lastY = snap(coordinates[1]);
+        decimated[0] = lastX;
+        decimated[1] = lastY;
+        int count = 1;
+        for (int i = 1; i < size; i++) {
+            double x = snap(coordinates[i * 2]);
+            double y = snap(coordinates[i * 2 + 1]);
+            if (x != lastX || y != lastY) {
+                decimated[count * 2] = x;
+                decimated[count * 2 + 1] = y;
+                lastX = x;
+                lastY = y;
+                count++;
+            }
+        }
+        if (count == 1) {
+            // The last vertex is kept, a closed ring stays closed
+            decimated[2] = lastX;
+            decimated[3] = lastY;
+            count++;
+        }
+        return count;
+    }
+
+    private double snap(double ordinate) {
+        return Math.rint(ordinate / tolerance) * tolerance;
+    }
+
+    /**
+     * Drop, in place, a vertex when the last kept vertex, this vertex and the next vertex are on the same outer
+     * side of the clip rectangle. The dropped edges and the replacing edge are outside of the clip rectangle.
+     * @param size Number of vertices in the decimated buffer
+     * @return Number of kept vertices
+     */
+    private int clip(int size) {
+        if (size <= 2) {
+            return size;
+        }
+        int count = 1;
+        int lastCode = outCode(decimated[0], decimated[1]);
+        int code = outCode(decimated[2], decimated[3]);
+        for (int i = 1; i < size - 1; i++) {
+            int nextCode = outCode(decimated[(i + 1) * 2], decimated[(i + 1) * 2 + 1]);
+            if ((lastCode & code & nextCode) == 0) {
+                decimated[count * 2] = decimated[i * 2];
+                decimated[count * 2 + 1] = decimated[i * 2 + 1];
+                lastCode = code;
+                count++;
+            }
+            code = nextCode;
+        }
+        decimated[count * 2] = decimated[(size - 1) * 2];
+        decimated[count * 2 + 1] = decimated[(size - 1) * 2 + 1];
+        return count + 1;
+    }
+
+    private int outCode(double x, double y) {
+        int code = 0;
+        if (x < clipMinX) {
+            code |= LEFT;
+        } else if (x > clipMaxX) {
+            code |= RIGHT;
+        }
+        if (y < clipMinY) {
+            code |= TOP;
+        } else if (y > clipMaxY) {
+            code |= BOTTOM;
+        }
+        return code;
+    }
+}
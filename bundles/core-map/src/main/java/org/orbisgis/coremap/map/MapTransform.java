@@ -78,6 +78,14 @@ public class MapTransform implements PointTransformation {
         private double dpi;
         private static final double DEFAULT_DPI = 96.0;       
         private double MAXPIXEL_DISPLAY = 0;
+        /** Default generalization tolerance in pixels, when the generalization is enabled */
+        public static final double DEFAULT_GENERALIZATION_TOLERANCE = 0.5;
+        // Off unless enabled for the screen
+        private double generalizationTolerance = 0;
+        private GeneralizedShapeWriter generalizedConverter;
+        // Vertex count of shapes converted by previous generalized converters
+        private long sourceVertexCount = 0;
+        private long drawnVertexCount = 0;
 
         static {
                 Map<RenderingHints.Key, Object> hints = new HashMap<>();
@@ -102,6 +110,30 @@ public class MapTransform implements PointTransformation {
                 updateRenderingHints();
         }
 
+        /**
+         * Create an independent copy of this transform. The copy shares the image but not the listeners nor the
+         * shape converter, it can be used by another rendering thread.
+         * @return A new MapTransform with the same extent, image and dpi
+         */
+        public MapTransform copy() {
+                MapTransform copy = new MapTransform();
+                copy.copyFrom(this);
+                return copy;
+        }
+
+        /**
+         * Set the extent, image and dpi of this transform to the ones of the given transform.
+         * @param other Transform to copy
+         */
+        protected final void copyFrom(MapTransform other) {
+                adjustExtent = other.adjustExtent;
+                dpi = other.dpi;
+                generalizationTolerance = other.generalizationTolerance;
+                image = other.image;
+                extent = other.extent == null ? null : new Envelope(other.extent);
+                calculateAffineTransform();
+        }
+
         /**
          * When true, the rendered map will always respects the CRS aspect ratio
          * When false, the Map extent will be bound to the output extent and may re-scale the map
@@ -432,7 +464,8 @@ public class MapTransform implements PointTransformation {
         }
 
         /**
-         * Gets the JTS {@code ShapeWriter} used for decimation and geometry simplifications we make before rendering
+         * Gets the JTS {@code ShapeWriter} used to convert geometries without generalization.
+         * Generalized shapes are obtained with {@link #getShape(Geometry, boolean)}.
          * @return The currently used {@code ShapeWriter} instance.
          */
         public ShapeWriter getShapeWriter() {
@@ -441,26 +474,66 @@ public class MapTransform implements PointTransformation {
                         converter.setRemoveDuplicatePoints(true);
                         MAXPIXEL_DISPLAY = 0.5 / (25.4 / getDpi());
                 }
-                /**
-                * Choose a fairly conservative decimation distance to avoid visual artifacts
-                * TODO : decimation must be activate in relation with the crs to prevent rendering bug
-                */
-                //Double dec = adjustedExtent == null ? 0 : MAXPIXEL_DISPLAY / getScaleDenominator();
-                //converter.setDecimation(dec);
                 return converter;
         }
 
+        GeneralizedShapeWriter getGeneralizedShapeWriter() {
+                if (generalizedConverter == null) {
+                        generalizedConverter = new GeneralizedShapeWriter(getShapeWriter(), this,
+                                generalizationTolerance);
+                }
+                return generalizedConverter;
+        }
+
+        /**
+         * @return Size in pixels of the grid the vertices are snapped to when shapes are generalized
+         */
+        public double getGeneralizationTolerance() {
+                return generalizationTolerance;
+        }
+
+        /**
+         * @param generalizationTolerance Size in pixels of the grid the vertices are snapped to when shapes are
+         *                                generalized, 0 to keep all vertices. Only for raster outputs.
+         */
+        public void setGeneralizationTolerance(double generalizationTolerance) {
+                if (generalizedConverter != null) {
+                        sourceVertexCount += generalizedConverter.getSourceVertexCount();
+                        drawnVertexCount += generalizedConverter.getDrawnVertexCount();
+                        generalizedConverter = null;
+                }
+                this.generalizationTolerance = generalizationTolerance;
+        }
+
+        /**
+         * @return Number of vertices of the geometries converted by {@link #getShape(Geometry, boolean)} with
+         * generalization
+         */
+        public long getSourceVertexCount() {
+                return sourceVertexCount +
+                        (generalizedConverter == null ? 0 : generalizedConverter.getSourceVertexCount());
+        }
+
+        /**
+         * @return Number of vertices of the shapes returned by {@link #getShape(Geometry, boolean)} with
+         * generalization
+         */
+        public long getDrawnVertexCount() {
+                return drawnVertexCount +
+                        (generalizedConverter == null ? 0 : generalizedConverter.getDrawnVertexCount());
+        }
+
         /**
          * Gets the AWT {@link Shape}  we'll use to represent {@code geom} on the map.
          * @param geom The geometry we want to draw.
-         * @param generalize If true we'll perform generalization
+         * @param generalize If true we'll perform generalization, vertices are snapped to the grid of the
+         *                   generalization tolerance
          * @return An AWT Shape instance.
          */
         public Shape getShape(Geometry geom, boolean generalize) {
                 if (generalize) {
-                        Rectangle2DDouble rectangle2dDouble = toPixel(geom.getEnvelopeInternal());
-                        if ((rectangle2dDouble.getHeight() <= MAXPIXEL_DISPLAY)
-                                && (rectangle2dDouble.getWidth() <= MAXPIXEL_DISPLAY)) {
+                        Rectangle2DDouble rectangle2dDouble = getCollapsedRectangle(geom.getEnvelopeInternal());
+                        if (rectangle2dDouble != null) {
                                 if(geom.getDimension()==1){
                                      Coordinate[] coords = geom.getCoordinates();
                                      return getShapeWriter().toShape(geom.getFactory().createLineString(
@@ -470,10 +543,29 @@ public class MapTransform implements PointTransformation {
                                 return rectangle2dDouble;
                                 }
                         }
+                        if (generalizationTolerance > 0) {
+                                return getGeneralizedShapeWriter().toShape(geom);
+                        }
                 }
                 return getShapeWriter().toShape(geom);
         }
 
+        /**
+         * A generalized geometry smaller than {@code MAXPIXEL_DISPLAY} is collapsed, a line into the segment
+         * from its first to its last vertex and a polygon into its pixel rectangle.
+         * @param envelope Envelope of the geometry
+         * @return The rectangle of the envelope in pixels if the geometry is collapsed, null otherwise
+         */
+        Rectangle2DDouble getCollapsedRectangle(Envelope envelope) {
+                getShapeWriter();
+                Rectangle2DDouble rectangle2dDouble = toPixel(envelope);
+                if ((rectangle2dDouble.getHeight() <= MAXPIXEL_DISPLAY)
+                        && (rectangle2dDouble.getWidth() <= MAXPIXEL_DISPLAY)) {
+                        return rectangle2dDouble;
+                }
+                return null;
+        }
+
         public void redraw() {
                 for (TransformListener listener : listeners) {
                         listener.extentChanged(this.adjustedExtent, this);
@@ -488,5 +580,17 @@ public class MapTransform implements PointTransformation {
         screenHints.put(RenderingHints.KEY_ANTIALIASING, Boolean.valueOf(System.getProperty("map.editor.renderer.value_antialias_on"))
                 ? RenderingHints.VALUE_ANTIALIAS_ON
                 : RenderingHints.VALUE_ANTIALIAS_OFF);
+        double tolerance = 0;
+        if (Boolean.valueOf(System.getProperty("map.editor.renderer.generalization", "false"))) {
+            try {
+                tolerance = Double.parseDouble(System.getProperty("map.editor.renderer.generalization_tolerance",
+                        String.valueOf(DEFAULT_GENERALIZATION_TOLERANCE)));
+            } catch (NumberFormatException ex) {
+                tolerance = DEFAULT_GENERALIZATION_TOLERANCE;
+            }
+        }
+        if (tolerance != generalizationTolerance) {
+            setGeneralizationTolerance(tolerance);
+        }
     }
 }
@@ -0,0 +1,230 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.map;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decode WKB (or EWKB) lines and polygons straight into a Java2D path in screen coordinates, without creating JTS
+ * geometries. The vertices are generalized and clipped like the shapes of {@link MapTransform#getShape(
+ * com.vividsolutions.jts.geom.Geometry, boolean)}, including the collapse of the geometries smaller than a pixel.
+ * The same path instance is returned for each decoded geometry,
+ * it must be drawn before the next call to {@link #read(byte[])}.
+ */
+public class WKBShapeReader {
+    private static final int LINESTRING = 2;
+    private static final int POLYGON = 3;
+    private static final int MULTILINESTRING = 5;
+    private static final int MULTIPOLYGON = 6;
+    private static final int GEOMETRYCOLLECTION = 7;
+    private static final int EWKB_Z = 0x80000000;
+    private static final int EWKB_M = 0x40000000;
+    private static final int EWKB_SRID = 0x20000000;
+    private static final int ISO_DIMENSION_OFFSET = 1000;
+    private static final int DOUBLE_SIZE = 8;
+    private final MapTransform mt;
+    private final Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+    private final Envelope envelope = new Envelope();
+    private GeneralizedShapeWriter writer;
+    private AffineTransform transform;
+    // First and last vertices of the geometry in map units, and whether it has a polygon
+    private final double[] ends = new double[4];
+    private boolean firstVertex;
+    private boolean polygonal;
+
+    /**
+     * @param mt Transformation from map to screen coordinates
+     */
+    public WKBShapeReader(MapTransform mt) {
+        this.mt = mt;
+    }
+
+    /**
+     * @param wkb Bytes
+     * @return True if the bytes may be a WKB geometry
+     */
+    public static boolean isWKB(byte[] wkb) {
+        return wkb.length > 4 && (wkb[0] == 0 || wkb[0] == 1);
+    }
+
+    /**
+     * Decode the geometry into the path.
+     * @param wkb WKB or EWKB geometry
+     * @return False if the geometry contains points or if the bytes are not a valid WKB geometry
+     */
+    public boolean read(byte[] wkb) {
+        path.reset();
+        envelope.setToNull();
+        writer = mt.getGeneralizedShapeWriter();
+        writer.updateClip();
+        transform = mt.getAffineTransform();
+        firstVertex = true;
+        polygonal = false;
+        try {
+            if (!isWKB(wkb) || !readGeometry(ByteBuffer.wrap(wkb))) {
+                return false;
+            }
+        } catch (BufferUnderflowException ex) {
+            return false;
+        }
+        if (!envelope.isNull()) {
+            collapse();
+        }
+        return true;
+    }
+
+    /**
+     * Replace the path of a geometry smaller than a pixel, like {@link MapTransform#getShape(
+     * com.vividsolutions.jts.geom.Geometry, boolean)}.
+     */
+    private void collapse() {
+        Rectangle2D rectangle = mt.getCollapsedRectangle(envelope);
+        if (rectangle == null) {
+            return;
+        }
+        path.reset();
+        if (polygonal) {
+            path.append(rectangle, false);
+        } else {
+            double[] screenEnds = new double[4];
+            transform.transform(ends, 0, screenEnds, 0, 2);
+            path.moveTo(screenEnds[0], screenEnds[1]);
+            path.lineTo(screenEnds[2], screenEnds[3]);
+        }
+    }
+
+    /**
+     * @return The path of the last decoded geometry, in screen coordinates
+     */
+    public Path2D getPath() {
+        return path;
+    }
+
+    /**
+     * @return The envelope of the last decoded geometry, in map units
+     */
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    private boolean readGeometry(ByteBuffer bb) {
+        byte byteOrder = bb.get();
+        if (byteOrder == 0) {
+            bb.order(ByteOrder.BIG_ENDIAN);
+        } else if (byteOrder == 1) {
+            bb.order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            return false;
+        }
+        int typeInt = bb.getInt();
+        boolean hasZ = (typeInt & EWKB_Z) != 0;
+        boolean hasM = (typeInt & EWKB_M) != 0;
+        if ((typeInt & EWKB_SRID) != 0) {
+            bb.getInt();
+        }
+        int type = typeInt & 0x1FFFFFFF;
+        // ISO WKB: 1000 for Z, 2000 for M, 3000 for ZM
+        int isoDimension = type / ISO_DIMENSION_OFFSET;
+        type = type % ISO_DIMENSION_OFFSET;
+        hasZ |= isoDimension == 1 || isoDimension == 3;
+        hasM |= isoDimension == 2 || isoDimension == 3;
+        int dimension = 2 + (hasZ ? 1 : 0) + (hasM ? 1 : 0);
+        switch (type) {
+            case LINESTRING:
+                return readLine(bb, dimension, false);
+            case POLYGON:
+                polygonal = true;
+                int ringCount = bb.getInt();
+                for (int i = 0; i < ringCount; i++) {
+                    if (!readLine(bb, dimension, true)) {
+                        return false;
+                    }
+                }
+                return true;
+            case MULTILINESTRING:
+            case MULTIPOLYGON:
+            case GEOMETRYCOLLECTION:
+                int count = bb.getInt();
+                for (int i = 0; i < count; i++) {
+                    if (!readGeometry(bb)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                // Points are drawn from JTS geometries
+                return false;
+        }
+    }
+
+    private boolean readLine(ByteBuffer bb, int dimension, boolean ring) {
+        int size = bb.getInt();
+        if (size < 0 || (long) size * dimension * DOUBLE_SIZE > bb.remaining()) {
+            return false;
+        }
+        double[] coordinates = writer.getBuffer(size);
+        for (int i = 0; i < size; i++) {
+            double x = bb.getDouble();
+            double y = bb.getDouble();
+            for (int d = 2; d < dimension; d++) {
+                bb.getDouble();
+            }
+            envelope.expandToInclude(x, y);
+            coordinates[i * 2] = x;
+            coordinates[i * 2 + 1] = y;
+        }
+        if (size > 0) {
+            if (firstVertex) {
+                ends[0] = coordinates[0];
+                ends[1] = coordinates[1];
+                firstVertex = false;
+            }
+            ends[2] = coordinates[(size - 1) * 2];
+            ends[3] = coordinates[(size - 1) * 2 + 1];
+        }
+        transform.transform(coordinates, 0, coordinates, 0, size);
+        writer.appendScreenCoordinates(path, coordinates, size, ring);
+        return true;
+    }
+}
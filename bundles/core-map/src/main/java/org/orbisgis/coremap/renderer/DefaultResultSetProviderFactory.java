@@ -57,6 +57,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -65,7 +66,7 @@ import java.util.Set;
  * @author Nicolas Fortin
  */
 @Component
-public class DefaultResultSetProviderFactory implements ResultSetProviderFactory {
+public class DefaultResultSetProviderFactory implements ResultSetProviderFactory.FilteredResultSetProviderFactory {
     private static final int FETCH_SIZE = 300;
     private static final I18n I18N = I18nFactory.getI18n(DefaultResultSetProviderFactory.class);
 
@@ -79,7 +80,13 @@ public class DefaultResultSetProviderFactory implements ResultSetProviderFactory
         return "Remote index";
     }
 
-    private static class DefaultResultSetProvider implements ResultSetProvider {
+    @Override
+    public boolean isFilterSupported(ILayer layer) {
+        return true;
+    }
+
+    private static class DefaultResultSetProvider implements FilteredResultSetProvider,
+            LevelOfDetailResultSetProvider {
         private DataSource dataSource;
         private ILayer layer;
 
@@ -89,6 +96,9 @@ public class DefaultResultSetProviderFactory implements ResultSetProviderFactory
         private ProgressMonitor pm;
         private static final Logger LOGGER = LoggerFactory.getLogger(DefaultResultSetProvider.class);
         private String pkName = "";
+        private double simplificationTolerance = 0;
+        private int rowLimit = 0;
+        private long sampleStride = 1;
 
         private DefaultResultSetProvider(DataSource dataSource, ILayer layer) {
             this.dataSource = dataSource;
@@ -105,23 +115,47 @@ public class DefaultResultSetProviderFactory implements ResultSetProviderFactory
             return pkName;
         }
 
+        @Override
+        public void setSimplificationTolerance(double tolerance) {
+            this.simplificationTolerance = tolerance;
+        }
+
+        @Override
+        public void setRowLimit(int rowLimit, long sampleStride) {
+            this.rowLimit = rowLimit;
+            this.sampleStride = sampleStride;
+        }
+
         @Override
         public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields) throws SQLException {
+            return execute(pm, extent, fields, Collections.<String>emptyList());
+        }
+
+        @Override
+        public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields, List<String> filters) throws SQLException {
+            if(filters.size() > MAX_FILTER_COUNT) {
+                throw new SQLException(I18N.tr("Too many filters in a single query, maximum is {0}", MAX_FILTER_COUNT));
+            }
             this.pm = pm;
             connection = dataSource.getConnection();
             List<String> geometryFields = SFSUtilities.getGeometryFields(connection, TableLocation.parse(layer.getTableReference()));
             if(geometryFields.isEmpty()) {
                 throw new SQLException(I18N.tr("Table {0} does not contains geometry fields",layer.getTableReference()));
             }
-            st = createStatement(connection, geometryFields.get(0), layer.getTableReference(), fields);
+            st = createStatement(connection, geometryFields.get(0), layer.getTableReference(), fields, filters,
+                    rowLimit > 0 ? sampleStride : 1);
             st.setFetchSize(FETCH_SIZE);
             st.setFetchDirection(ResultSet.FETCH_FORWARD);
             connection.setAutoCommit(false);
             cancelListener = EventHandler.create(PropertyChangeListener.class, st, "cancel");
             pm.addPropertyChangeListener(ProgressMonitor.PROP_CANCEL, cancelListener);
             GeometryFactory geometryFactory = new GeometryFactory();
-            if(st.getParameterMetaData().getParameterCount() > 0) {
-                st.setObject(1, geometryFactory.toGeometry(extent)); // filter geometry by envelope
+            int parameterIndex = 1;
+            if(simplificationTolerance > 0) {
+                st.setDouble(parameterIndex++, simplificationTolerance);
+            }
+            if(st.getParameterMetaData().getParameterCount() >= parameterIndex) {
+                st.setObject(parameterIndex, geometryFactory.toGeometry(extent)); // filter geometry by envelope
             }
             return st.executeQuery().unwrap(SpatialResultSet.class);
         }
@@ -132,30 +166,70 @@ public class DefaultResultSetProviderFactory implements ResultSetProviderFactory
          * @param geometryField the first geometryfield
          * @param tableReference the name of the input table
          * @param fields a list of columns
+         * @param filters SQL boolean expressions, rows must satisfy at least one of them
+         * @param sampleStride Only the rows whose primary key is a multiple of this value are fetched, 1 for all
          * @return
          * @throws SQLException 
          */
-        private PreparedStatement createStatement(Connection connection,String geometryField,String tableReference, Set<String> fields) throws SQLException {            
-            if(fields.isEmpty()){            
-            return connection.prepareStatement(
-                        String.format("select "+pkName+",%s from %s where %s && ?", geometryField,tableReference, geometryField),
-                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-            }
-            else{
-                StringBuilder sb = new StringBuilder("select ").append(pkName).append(",");
-                
-                for (String field : fields) {
+        private PreparedStatement createStatement(Connection connection,String geometryField,String tableReference,
+                                                  Set<String> fields, List<String> filters, long sampleStride)
+                throws SQLException {
+            StringBuilder sb = new StringBuilder("select ").append(pkName).append(",");
+            for (String field : fields) {
+                if(!field.equals(geometryField)) {
                     sb.append(field).append(",");
-                    
                 }
-                if(fields.contains(geometryField)){
-                sb.append(" from ").append(tableReference).append(" where ").append(geometryField).append(" && ?");
+            }
+            if(simplificationTolerance > 0) {
+                // Level of detail, the simplified geometry has its own name, the filter uses the table column
+                sb.append("ST_SimplifyPreserveTopology(").append(geometryField).append(", ?) ")
+                        .append(TableLocation.quoteIdentifier(SIMPLIFIED_GEOMETRY_PREFIX + geometryField));
+            } else {
+                sb.append(geometryField);
+            }
+            boolean acceptAll = filters.isEmpty();
+            for (String filter : filters) {
+                acceptAll |= isEmptyFilter(filter);
+            }
+            if(filters.size() > 1) {
+                // One bit per filter, the renderer dispatch rows with it
+                sb.append(", ");
+                for (int i = 0; i < filters.size(); i++) {
+                    if(i > 0) {
+                        sb.append(" + ");
+                    }
+                    String filter = filters.get(i);
+                    if(isEmptyFilter(filter)) {
+                        sb.append(1L << i);
+                    } else {
+                        sb.append("CASE WHEN COALESCE((").append(filter).append("), FALSE) THEN ")
+                                .append(1L << i).append(" ELSE 0 END");
+                    }
                 }
-                else{
-                sb.append(geometryField).append(" from ").append(tableReference).append(" where ").append(geometryField).append(" && ?");
+                sb.append(" ").append(FILTER_MASK_FIELD);
+            }
+            sb.append(" from ").append(tableReference).append(" where ").append(geometryField).append(" && ?");
+            if(!acceptAll) {
+                sb.append(" and (");
+                for (int i = 0; i < filters.size(); i++) {
+                    if(i > 0) {
+                        sb.append(" or ");
+                    }
+                    sb.append("(").append(filters.get(i)).append(")");
                 }
-                return connection.prepareStatement(sb.toString());
+                sb.append(")");
+            }
+            if(sampleStride > 1) {
+                sb.append(" and mod(").append(TableLocation.quoteIdentifier(pkName)).append(", ").append(sampleStride).append(") = 0");
+            }
+            if(rowLimit > 0) {
+                sb.append(" limit ").append(rowLimit);
             }
+            return connection.prepareStatement(sb.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        }
+
+        private static boolean isEmptyFilter(String filter) {
+            return filter == null || filter.trim().isEmpty();
         }
 
         @Override
@@ -0,0 +1,196 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Map;
+import org.orbisgis.coremap.renderer.se.parameter.InterpolationPoint;
+import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
+import org.orbisgis.coremap.renderer.se.parameter.color.ColorLiteral;
+import org.orbisgis.coremap.renderer.se.parameter.color.ColorParameter;
+import org.orbisgis.coremap.renderer.se.parameter.color.Interpolate2Color;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealAttribute;
+
+/**
+ * Aggregation of points into square screen bins. The renderer draws a density grid instead of the symbols
+ * of a point layer when there are more points than pixels to draw them on. The weight of each bin is colored
+ * through an SE {@link Interpolate2Color} ramp, evaluated on the {@link #DENSITY_FIELD} value. This value is
+ * the logarithm of the weight of the bin, divided by the logarithm of the greatest weight, in [0, 1]. Empty
+ * bins are not drawn.
+ */
+public class DensityGrid {
+    /** Name of the field read by the color ramp */
+    public static final String DENSITY_FIELD = "density";
+    // Number of colors computed from the ramp
+    private static final int PALETTE_SIZE = 256;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final double[] weights;
+    private double maxWeight = 0;
+    private long pointCount = 0;
+
+    /**
+     * @param width Width of the drawn image, in pixels
+     * @param height Height of the drawn image, in pixels
+     * @param cellSize Width and height of a bin, in pixels
+     */
+    public DensityGrid(int width, int height, int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+        this.columns = Math.max(1, (width + this.cellSize - 1) / this.cellSize);
+        this.rows = Math.max(1, (height + this.cellSize - 1) / this.cellSize);
+        this.weights = new double[columns * rows];
+    }
+
+    /**
+     * Count a point.
+     * @param x Horizontal position, in pixels
+     * @param y Vertical position, in pixels
+     */
+    public void add(double x, double y) {
+        add(x, y, 1);
+    }
+
+    /**
+     * Add the weight of a point to its bin. Points outside the image are ignored.
+     * @param x Horizontal position, in pixels
+     * @param y Vertical position, in pixels
+     * @param weight Weight of the point
+     */
+    public void add(double x, double y, double weight) {
+        if (x < 0 || y < 0 || Double.isNaN(weight)) {
+            return;
+        }
+        int column = (int) (x / cellSize);
+        int row = (int) (y / cellSize);
+        if (column >= columns || row >= rows) {
+            return;
+        }
+        int index = row * columns + column;
+        double total = weights[index] + weight;
+        weights[index] = total;
+        maxWeight = Math.max(maxWeight, total);
+        pointCount++;
+    }
+
+    /**
+     * @return Number of points added in the grid
+     */
+    public long getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return Greatest weight of a bin
+     */
+    public double getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @param x Horizontal position, in pixels
+     * @param y Vertical position, in pixels
+     * @return The weight of the bin that contains this position
+     */
+    public double getWeight(double x, double y) {
+        int column = (int) (x / cellSize);
+        int row = (int) (y / cellSize);
+        if (x < 0 || y < 0 || column >= columns || row >= rows) {
+            return 0;
+        }
+        return weights[row * columns + column];
+    }
+
+    /**
+     * Draw the non-empty bins.
+     * @param g2 Graphics to draw on
+     * @param ramp Colors of the bins, its lookup value reads {@link #DENSITY_FIELD}
+     * @throws ParameterException
+     */
+    public void draw(Graphics2D g2, Interpolate2Color ramp) throws ParameterException {
+        if (pointCount == 0 || maxWeight <= 0) {
+            return;
+        }
+        int[] palette = new int[PALETTE_SIZE];
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            Map<String, Object> map = Collections.<String, Object>singletonMap(DENSITY_FIELD,
+                    i / (double) (PALETTE_SIZE - 1));
+            palette[i] = ramp.getColor(map).getRGB();
+        }
+        BufferedImage image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = new int[columns * rows];
+        double scale = Math.log1p(maxWeight);
+        for (int i = 0; i < pixels.length; i++) {
+            double weight = weights[i];
+            if (weight > 0) {
+                int level = (int) Math.round(Math.log1p(weight) / scale * (PALETTE_SIZE - 1));
+                pixels[i] = palette[Math.max(0, Math.min(PALETTE_SIZE - 1, level))];
+            }
+        }
+        image.setRGB(0, 0, columns, rows, pixels, 0, columns);
+        // One pixel of the image for each bin, scaled without interpolation
+        Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.drawImage(image, 0, 0, columns * cellSize, rows * cellSize, null);
+        if (interpolation != null) {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+
+    /**
+     * @return A ramp from blue for the sparse bins to red for the densest bins
+     */
+    public static Interpolate2Color createDefaultRamp() {
+        Interpolate2Color ramp = new Interpolate2Color(new ColorLiteral(new Color(0, 0, 0, 0)));
+        ramp.setLookupValue(new RealAttribute(DENSITY_FIELD));
+        addPoint(ramp, 0, new Color(43, 131, 186));
+        addPoint(ramp, 0.5, new Color(255, 255, 191));
+        addPoint(ramp, 1, new Color(215, 25, 28));
+        return ramp;
+    }
+
+    private static void addPoint(Interpolate2Color ramp, double data, Color color) {
+        InterpolationPoint<ColorParameter> point = new InterpolationPoint<ColorParameter>();
+        point.setData(data);
+        point.setValue(new ColorLiteral(color));
+        ramp.addInterpolationPoint(point);
+    }
+}
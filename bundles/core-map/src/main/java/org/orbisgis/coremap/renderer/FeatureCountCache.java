@@ -0,0 +1,131 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import org.orbisgis.coremap.layerModel.ILayer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keep the number of rows of the layer tables, so that the density mode does not count the rows on each
+ * drawing, and the primary key range sampled by the previews. The owner of the cache calls
+ * {@link #invalidate(ILayer)} when the data of the layer change.
+ */
+public class FeatureCountCache {
+    private final Map<ILayer, Long> rowCounts = new HashMap<ILayer, Long>();
+    private final Map<ILayer, long[]> keyRanges = new HashMap<ILayer, long[]>();
+    private final Map<ILayer, Long> versions = new HashMap<ILayer, Long>();
+
+    /**
+     * @param layer Layer
+     * @return The number of rows of the table of this layer, or null if it has not been counted
+     */
+    public synchronized Long getRowCount(ILayer layer) {
+        return rowCounts.get(layer);
+    }
+
+    /**
+     * Store the number of rows of a layer.
+     * @param layer Layer
+     * @param version Version of the layer when the rows were counted, see {@link #getVersion(ILayer)}
+     * @param rowCount Number of rows of the table
+     */
+    public synchronized void put(ILayer layer, long version, long rowCount) {
+        if (version == getVersion(layer)) {
+            rowCounts.put(layer, rowCount);
+        }
+    }
+
+    /**
+     * @param layer Layer
+     * @return The minimum and maximum values of the primary key of this layer, empty if the key is not numeric,
+     * or null if it has not been read
+     */
+    public synchronized long[] getKeyRange(ILayer layer) {
+        return keyRanges.get(layer);
+    }
+
+    /**
+     * Store the primary key range of a layer.
+     * @param layer Layer
+     * @param version Version of the layer when the range was read, see {@link #getVersion(ILayer)}
+     * @param keyRange Minimum and maximum values of the primary key, empty if the key is not numeric
+     */
+    public synchronized void putKeyRange(ILayer layer, long version, long[] keyRange) {
+        if (version == getVersion(layer)) {
+            keyRanges.put(layer, keyRange);
+        }
+    }
+
+    /**
+     * The data of the layer has changed, its rows must be counted again.
+     * @param layer Layer
+     */
+    public synchronized void invalidate(ILayer layer) {
+        versions.put(layer, getVersion(layer) + 1);
+        rowCounts.remove(layer);
+        keyRanges.remove(layer);
+    }
+
+    /**
+     * @param layer Layer
+     * @return The version of this layer, incremented on each call of {@link #invalidate(ILayer)}
+     */
+    public synchronized long getVersion(ILayer layer) {
+        Long version = versions.get(layer);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Free the row count and the version of this layer.
+     * @param layer Removed layer
+     */
+    public synchronized void removeLayer(ILayer layer) {
+        rowCounts.remove(layer);
+        keyRanges.remove(layer);
+        versions.remove(layer);
+    }
+
+    /**
+     * Free all the row counts and key ranges.
+     */
+    public synchronized void clear() {
+        rowCounts.clear();
+        keyRanges.clear();
+    }
+}
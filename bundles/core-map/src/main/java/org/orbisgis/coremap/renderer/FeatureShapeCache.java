@@ -0,0 +1,224 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.TopologyException;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.common.ShapeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Screen shapes of the feature being drawn. The renderer declares the geometry of each row with
+ * {@link #beginFeature(Geometry)}, then the first symbolizer converts it to screen coordinates and the following
+ * ones reuse the shape, the interior point and the perpendicular offsets of the shape. Other geometries, and the
+ * geometries drawn outside of a feature, are converted on each call. The returned objects are shared and must not
+ * be modified. Each {@link RenderContext} has its own cache, the transformation does not change while drawing.
+ */
+public class FeatureShapeCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureShapeCache.class);
+    private final MapTransform mt;
+    private Geometry geometry;
+    private Shape exactShape;
+    private Shape generalizedShape;
+    private Point2D interiorPoint;
+    private final List<Offset> offsets = new ArrayList<Offset>(2);
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param mt Transformation from map to screen coordinates
+     */
+    FeatureShapeCache(MapTransform mt) {
+        this.mt = mt;
+    }
+
+    /**
+     * @param mt Transformation given to a symbolizer
+     * @return The cache of the drawing, or a cache that converts the geometries on each call if the symbolizer is
+     * not drawn by a renderer
+     */
+    public static FeatureShapeCache of(MapTransform mt) {
+        RenderContext context = RenderContext.of(mt);
+        return context != null ? context.getFeatureShapeCache() : new FeatureShapeCache(mt);
+    }
+
+    /**
+     * Start the drawing of a feature, its shapes are kept until {@link #endFeature()}.
+     * @param geom Geometry of the feature given to the symbolizers
+     */
+    public void beginFeature(Geometry geom) {
+        beginFeature(geom, null);
+    }
+
+    /**
+     * Start the drawing of a feature whose generalized shape is already known.
+     * @param geom Geometry of the feature given to the symbolizers, null if the feature is drawn from its shape
+     * @param generalizedShape Shape of {@link MapTransform#getShape(Geometry, boolean)} with generalization, or null
+     */
+    public void beginFeature(Geometry geom, Shape generalizedShape) {
+        clear();
+        geometry = geom;
+        this.generalizedShape = generalizedShape;
+    }
+
+    /**
+     * End the drawing of the current feature.
+     */
+    public void endFeature() {
+        clear();
+    }
+
+    private void clear() {
+        geometry = null;
+        exactShape = null;
+        generalizedShape = null;
+        interiorPoint = null;
+        offsets.clear();
+    }
+
+    /**
+     * @param geom Geometry of the feature
+     * @param generalize True to get the generalized shape
+     * @return The shape of {@link MapTransform#getShape(Geometry, boolean)}
+     */
+    public Shape getShape(Geometry geom, boolean generalize) {
+        if (geom == null || geom != geometry) {
+            return mt.getShape(geom, generalize);
+        }
+        Shape shape = generalize ? generalizedShape : exactShape;
+        if (shape != null) {
+            hitCount++;
+            return shape;
+        }
+        missCount++;
+        shape = mt.getShape(geom, generalize);
+        if (generalize) {
+            generalizedShape = shape;
+        } else {
+            exactShape = shape;
+        }
+        return shape;
+    }
+
+    /**
+     * @param geom Geometry of the feature
+     * @return The interior point of the geometry, or its centroid if the interior point cannot be computed, in
+     * screen coordinates
+     */
+    public Point2D getInteriorPoint(Geometry geom) {
+        if (geom == geometry && interiorPoint != null) {
+            hitCount++;
+            return interiorPoint;
+        }
+        missCount++;
+        Point point;
+        try {
+            point = geom.getInteriorPoint();
+        } catch (TopologyException ex) {
+            LOGGER.error("getPointShape :: TopologyException: ", ex);
+            point = geom.getCentroid();
+        }
+        Point2D screenPoint = mt.getAffineTransform().transform(new Point2D.Double(point.getX(), point.getY()), null);
+        if (geom == geometry) {
+            interiorPoint = screenPoint;
+        }
+        return screenPoint;
+    }
+
+    /**
+     * @param shape Shape returned by {@link #getShape(Geometry, boolean)}, other shapes are not cached
+     * @param offset Offset in pixels
+     * @return The shapes of {@link ShapeHelper#perpendicularOffset(Shape, double)}
+     */
+    public List<Shape> getPerpendicularOffset(Shape shape, double offset) {
+        if (shape == null || (shape != exactShape && shape != generalizedShape)) {
+            return ShapeHelper.perpendicularOffset(shape, offset);
+        }
+        for (Offset cached : offsets) {
+            if (cached.shape == shape && cached.offset == offset) {
+                hitCount++;
+                return cached.shapes;
+            }
+        }
+        missCount++;
+        List<Shape> shapes = Collections.unmodifiableList(ShapeHelper.perpendicularOffset(shape, offset));
+        offsets.add(new Offset(shape, offset, shapes));
+        return shapes;
+    }
+
+    /**
+     * @return The generalized shape of the current feature, null if no symbolizer has asked for it
+     */
+    public Shape getGeneralizedShape() {
+        return generalizedShape;
+    }
+
+    /**
+     * @return Number of shapes, points and offsets reused from a previous symbolizer
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of shapes, points and offsets computed
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    private static final class Offset {
+        private final Shape shape;
+        private final double offset;
+        private final List<Shape> shapes;
+
+        private Offset(Shape shape, double offset, List<Shape> shapes) {
+            this.shape = shape;
+            this.offset = offset;
+            this.shapes = shapes;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Bounded pool of transparent ARGB images. The renderer draws each symbolizer of a layer in an image of the
+ * size of the map, taking the images from this pool instead of allocating them for every layer of every drawing.
+ * Images of several sizes may be kept, the least recently released are dropped when the memory limit is reached.
+ * This class is thread safe.
+ */
+public final class ImageBufferPool {
+    /** Default maximum memory of the pooled images, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 64 * 1024 * 1024;
+    private static final ImageBufferPool DEFAULT = new ImageBufferPool(DEFAULT_MAX_MEMORY);
+    private final long maxMemory;
+    // The most recently released image is first
+    private final LinkedList<BufferedImage> images = new LinkedList<BufferedImage>();
+    private long memory = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param maxMemory Maximum memory of the pooled images, in bytes
+     */
+    public ImageBufferPool(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * @return The pool shared by the map renderers
+     */
+    public static ImageBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    private static long getMemory(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Take an image from the pool, or create it if there is no image of this size.
+     * @param width Image width in pixels
+     * @param height Image height in pixels
+     * @return A fully transparent image of type {@link BufferedImage#TYPE_INT_ARGB}
+     */
+    public BufferedImage acquire(int width, int height) {
+        BufferedImage image = null;
+        synchronized (this) {
+            Iterator<BufferedImage> it = images.iterator();
+            while (it.hasNext()) {
+                BufferedImage pooled = it.next();
+                if (pooled.getWidth() == width && pooled.getHeight() == height) {
+                    it.remove();
+                    memory -= getMemory(pooled);
+                    image = pooled;
+                    break;
+                }
+            }
+            if (image == null) {
+                missCount++;
+            } else {
+                hitCount++;
+            }
+        }
+        if (image == null) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, width, height);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Give back an image, it must no longer be used by the caller.
+     * @param image Image from {@link #acquire(int, int)}
+     */
+    public synchronized void release(BufferedImage image) {
+        long imageMemory = getMemory(image);
+        if (imageMemory > maxMemory) {
+            return;
+        }
+        images.addFirst(image);
+        memory += imageMemory;
+        while (memory > maxMemory) {
+            memory -= getMemory(images.removeLast());
+        }
+    }
+
+    /**
+     * Drop all the pooled images.
+     */
+    public synchronized void clear() {
+        images.clear();
+        memory = 0;
+    }
+
+    /**
+     * @return Memory of the pooled images, in bytes
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    /**
+     * @return Number of images taken from the pool
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of images created because the pool had no image of the requested size
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+}
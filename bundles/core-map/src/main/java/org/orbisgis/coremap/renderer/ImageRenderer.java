@@ -40,8 +40,14 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.vividsolutions.jts.geom.Envelope;
+import org.orbisgis.coremap.layerModel.ILayer;
 import org.orbisgis.coremap.map.MapTransform;
 import org.orbisgis.coremap.renderer.se.Symbolizer;
 
@@ -51,31 +57,55 @@ import org.orbisgis.coremap.renderer.se.Symbolizer;
  */
 public class ImageRenderer extends Renderer {
 
+    // Images of the symbolizers of the current layer, in drawing order
     private List<BufferedImage> imgSymbs = new ArrayList<>();
-    private List<Symbolizer> symbols = new ArrayList<>();
     private List<Graphics2D> graphics = new ArrayList<>();
+    private Map<Symbolizer, Graphics2D> symbolizerGraphics = new IdentityHashMap<>();
+    private ImageBufferPool bufferPool = new ImageBufferPool(ImageBufferPool.DEFAULT_MAX_MEMORY);
+    private LayerImageCache layerImageCache = null;
+    private TileCache tileCache = null;
 
+    /**
+     * Each symbolizer is drawn in its own image, then the images are composited by increasing level once the layer
+     * is drawn. The symbolizers of a level keep the order of the style, the output is the same when the rules are
+     * drawn feature after feature from a single query. A style with a single symbolizer is drawn directly in the
+     * layer graphics.
+     */
     @Override
     protected void initGraphics2D(List<Symbolizer> symbs, Graphics2D g2, MapTransform mt) {
-        imgSymbs = new ArrayList<>();
-        symbols = symbs;
-        graphics = new ArrayList<>();
-        /**
-         * Create one buffered image for each Symbolizer present in the style. This way allows
-         * to render all symbolizer in one pass without encountering layer level issues
-         */
-        for (Symbolizer s : symbs) {
-            BufferedImage bufImg = new BufferedImage(mt.getWidth(), mt.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        releaseImages();
+        if (symbs.size() <= 1) {
+            Graphics2D sG2 = (Graphics2D) g2.create();
+            sG2.addRenderingHints(mt.getRenderingHints());
+            graphics.add(sG2);
+            for (Symbolizer s : symbs) {
+                symbolizerGraphics.put(s, sG2);
+            }
+            return;
+        }
+        List<Symbolizer> ordered = new ArrayList<>(symbs);
+        // Stable sort, the symbolizers of a level stay in the style order
+        Collections.sort(ordered, new Comparator<Symbolizer>() {
+            @Override
+            public int compare(Symbolizer s, Symbolizer other) {
+                return Integer.compare(s.getLevel(), other.getLevel());
+            }
+        });
+        for (Symbolizer s : ordered) {
+            BufferedImage bufImg = bufferPool.acquire(mt.getWidth(), mt.getHeight());
             Graphics2D sG2 = bufImg.createGraphics();
             sG2.addRenderingHints(mt.getRenderingHints());
             graphics.add(sG2);
-            imgSymbs.add(bufImg);
+            symbolizerGraphics.put(s, sG2);
+            synchronized (this) {
+                imgSymbs.add(bufImg);
+            }
         }
     }
 
     @Override
     protected Graphics2D getGraphics2D(Symbolizer s) {
-        return graphics.get(symbols.indexOf(s));
+        return symbolizerGraphics.get(s);
     }
 
     @Override
@@ -83,11 +113,170 @@ public class ImageRenderer extends Renderer {
     }
 
     /**
-     * Apply drawn features of last layer to input graphic
+     * Dispose the graphics of the symbolizers and give back their images to the pool.
+     */
+    private void releaseImages() {
+        for (Graphics2D get : graphics){
+            get.dispose();
+        }
+        graphics.clear();
+        symbolizerGraphics.clear();
+        synchronized (this) {
+            for (BufferedImage img : imgSymbs) {
+                bufferPool.release(img);
+            }
+            imgSymbs.clear();
+        }
+    }
+
+    /**
+     * The layer renderers share the image pool of the symbolizers. The layer images and the tiles are only
+     * kept by this renderer.
+     */
+    @Override
+    protected void copySettings(Renderer renderer) {
+        super.copySettings(renderer);
+        if (renderer instanceof ImageRenderer) {
+            ((ImageRenderer) renderer).setBufferPool(bufferPool);
+        }
+    }
+
+    /**
+     * Share the images of the symbolizers with other renderers.
+     * @param bufferPool Image pool, the renderer has its own pool by default
+     */
+    public void setBufferPool(ImageBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * @return Pool of the images of the symbolizers
+     */
+    public ImageBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Each symbolizer draws in its own image taken from the {@link ImageBufferPool}, and the images are composited
+     * by level once the layer is drawn. A style with a single symbolizer draws directly in the layer graphics.
+     * The drawing order does not depend on the order of the rows, the features of all rules can be fetched in one
+     * query.
+     * @return true
+     */
+    @Override
+    protected boolean isSingleScanSupported() {
+        return true;
+    }
+
+    /**
+     * Keep the image of each layer, only layers that are not in the cache are drawn. The images of a drawing
+     * with a row limit are not stored, they do not hold all the rows.
+     * @param layerImageCache Layer image cache, null to draw all layers
+     */
+    public void setLayerImageCache(LayerImageCache layerImageCache) {
+        this.layerImageCache = layerImageCache;
+    }
+
+    /**
+     * Draw the layers from tiles when all the tiles are available, missing tiles are rendered in background.
+     * @param tileCache Tile cache, null to draw all layers
+     */
+    public void setTileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * @param layerModel Root of the drawn layers
+     * @param mt Drawing parameters
+     * @return True if the image of every visible layer of the extent is in the layer image cache
+     */
+    public boolean isCached(ILayer layerModel, MapTransform mt) {
+        LayerImageCache cache = layerImageCache;
+        if (cache == null) {
+            return false;
+        }
+        Envelope extent = mt.getAdjustedExtent();
+        ILayer[] layers = layerModel.acceptsChilds() ? layerModel.getLayersRecursively() : new ILayer[]{layerModel};
+        for (ILayer layer : layers) {
+            if (layer.isVisible() && extent.intersects(layer.getEnvelope()) && isDrawable(layer) &&
+                    cache.getImage(layer, mt) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean isLayerBufferRequired() {
+        return layerImageCache != null || tileCache != null;
+    }
+
+    @Override
+    protected LayerBuffer createLayerBuffer(final ILayer layer, MapTransform mt, int width, int height) {
+        final LayerImageCache cache = layerImageCache;
+        if (cache != null) {
+            final BufferedImage cachedImage = cache.getImage(layer, mt);
+            if (cachedImage != null) {
+                LayerBuffer cachedBuffer = new LayerBuffer(null, null) {
+                    @Override
+                    protected void composite(Graphics2D g2) {
+                        g2.drawImage(cachedImage, 0, 0, null);
+                    }
+                };
+                cachedBuffer.setLabels(cache.getLabels(layer, mt));
+                return cachedBuffer;
+            }
+        }
+        if (tileCache != null) {
+            final TileCache.TileSet tiles = tileCache.getTiles(layer, mt);
+            if (tiles != null) {
+                final MapTransform layerTransform = mt.copy();
+                return new LayerBuffer(null, null) {
+                    @Override
+                    protected void composite(Graphics2D g2) {
+                        tiles.draw(g2, layerTransform);
+                    }
+                };
+            }
+        }
+        // The map transform may change while drawing
+        final MapTransform layerTransform = mt.copy();
+        // An edit during the drawing makes the image out of date
+        final long version = cache != null ? cache.getVersion(layer) : 0;
+        final BufferedImage layerImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D layerG2 = layerImage.createGraphics();
+        layerG2.setRenderingHints(mt.getRenderingHints());
+        final ImageRenderer layerRenderer = new ImageRenderer();
+        return new LayerBuffer(layerRenderer, layerG2) {
+            @Override
+            protected void drawProgress(Graphics2D g2) {
+                g2.drawImage(layerImage, 0, 0, null);
+                layerRenderer.updateImage(g2);
+            }
+
+            @Override
+            protected void composite(Graphics2D g2) {
+                g2.drawImage(layerImage, 0, 0, null);
+                if (cache != null && getRowLimit() == 0) {
+                    cache.putImage(layer, layerTransform, layerImage, getLabels(), version);
+                }
+            }
+        };
+    }
+
+    /**
+     * Apply drawn features of last layer to input graphic. When the layers are drawn in buffers, the part of the
+     * pending layer buffer that is already drawn is applied.
      */
     public void updateImage(Graphics2D g2) {
-        for (BufferedImage img : new ArrayList<>(imgSymbs)) {
-            g2.drawImage(img, null, null);
+        synchronized (this) {
+            for (BufferedImage img : imgSymbs) {
+                g2.drawImage(img, null, null);
+            }
+        }
+        LayerBuffer pending = getPendingBuffer();
+        if (pending != null) {
+            pending.drawProgress(g2);
         }
     }
 
@@ -98,6 +287,7 @@ public class ImageRenderer extends Renderer {
         }
         graphics.clear();
         updateImage(g2);
+        releaseImages();
     }
 
     @Override
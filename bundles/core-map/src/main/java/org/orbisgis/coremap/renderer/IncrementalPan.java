@@ -0,0 +1,397 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.AreaSymbolizer;
+import org.orbisgis.coremap.renderer.se.LineSymbolizer;
+import org.orbisgis.coremap.renderer.se.PointSymbolizer;
+import org.orbisgis.coremap.renderer.se.Rule;
+import org.orbisgis.coremap.renderer.se.Style;
+import org.orbisgis.coremap.renderer.se.Symbolizer;
+import org.orbisgis.coremap.renderer.se.TextSymbolizer;
+import org.orbisgis.coremap.renderer.se.common.Uom;
+import org.orbisgis.coremap.renderer.se.graphic.GraphicCollection;
+import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealParameter;
+import org.orbisgis.coremap.renderer.se.stroke.GraphicStroke;
+import org.orbisgis.coremap.renderer.se.stroke.PenStroke;
+import org.orbisgis.coremap.renderer.se.stroke.Stroke;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redraw a map after a translation of its extent. The previous image is shifted, only the strips exposed by the
+ * translation are drawn. Symbols may cross the border of a strip, the strips are extended into the shifted image
+ * by a margin. Each strip is drawn from its extent buffered by the margin, so that the symbols of the features
+ * around it are complete, then it replaces the pixels of the previous image. The margin is the greatest distance
+ * between a symbol and its geometry at the resolution of the image, see {@link #getSymbolMargin}: the symbols whose
+ * size depends on the features are not bounded. Labels, density grids and clusters depend on the whole image, see
+ * {@link #isSupported}.
+ */
+public class IncrementalPan {
+    /** Returned by {@link #getSymbolMargin} when the size of a symbol cannot be bounded */
+    public static final int UNBOUNDED_MARGIN = -1;
+    // Antialiased edges and the outline of the marks exceed the computed bounds
+    private static final int EDGE_MARGIN = 2;
+    // The translation must be a whole number of pixels
+    private static final double PIXEL_TOLERANCE = 1e-2;
+    private static final double SCALE_TOLERANCE = 1e-9;
+    private final int shiftX;
+    private final int shiftY;
+    private final double exposedRatio;
+    private final int margin;
+    private final List<Rectangle> strips;
+
+    private IncrementalPan(int shiftX, int shiftY, double exposedRatio, int margin, List<Rectangle> strips) {
+        this.shiftX = shiftX;
+        this.shiftY = shiftY;
+        this.exposedRatio = exposedRatio;
+        this.margin = margin;
+        this.strips = strips;
+    }
+
+    /**
+     * Labels are placed against the labels of the whole image, density grids and clusters are computed on the
+     * whole extent: the layers that have them are not drawn strip by strip.
+     * @param renderer Renderer of the strips
+     * @param layer Layers to draw
+     * @return True if the strips give the same image as a full drawing
+     */
+    public static boolean isSupported(Renderer renderer, ILayer layer) {
+        if (renderer.getDensityThreshold() > 0 || renderer.getClusterDistance() > 0) {
+            return false;
+        }
+        ILayer[] layers = layer.acceptsChilds() ? layer.getLayersRecursively() : new ILayer[]{layer};
+        for (ILayer drawn : layers) {
+            if (!drawn.isVisible()) {
+                continue;
+            }
+            for (Style style : drawn.getStyles()) {
+                for (Rule rule : style.getRules()) {
+                    for (Symbolizer symbolizer : rule.getCompositeSymbolizer().getSymbolizerList()) {
+                        if (symbolizer instanceof TextSymbolizer) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the margin of the strips from the symbolizers of the visible layers. The fills of the areas stay
+     * within their polygon, the strokes, offsets, translations and point graphics are evaluated at the resolution
+     * of the image.
+     * @param layer Layers to draw
+     * @param mt Transform of the new image
+     * @return The greatest distance between a drawn pixel and its geometry, in pixels, or
+     * {@link #UNBOUNDED_MARGIN} if a size depends on the features or if a symbolizer is not known
+     */
+    public static int getSymbolMargin(ILayer layer, MapTransform mt) {
+        ILayer[] layers = layer.acceptsChilds() ? layer.getLayersRecursively() : new ILayer[]{layer};
+        double margin = 0;
+        for (ILayer drawn : layers) {
+            if (!drawn.isVisible()) {
+                continue;
+            }
+            for (Style style : drawn.getStyles()) {
+                for (Rule rule : style.getRules()) {
+                    for (Symbolizer symbolizer : rule.getCompositeSymbolizer().getSymbolizerList()) {
+                        double extent;
+                        try {
+                            extent = getSymbolExtent(symbolizer, mt);
+                        } catch (ParameterException | IOException ex) {
+                            // The value is read from the features
+                            return UNBOUNDED_MARGIN;
+                        }
+                        if (extent < 0) {
+                            return UNBOUNDED_MARGIN;
+                        }
+                        margin = Math.max(margin, extent);
+                    }
+                }
+            }
+        }
+        return (int) Math.ceil(margin) + EDGE_MARGIN;
+    }
+
+    /**
+     * @return Greatest distance between a pixel drawn by the symbolizer and its geometry, negative if unknown
+     */
+    private static double getSymbolExtent(Symbolizer symbolizer, MapTransform mt)
+            throws ParameterException, IOException {
+        // Literal parameters do not read the feature, the others throw a ParameterException
+        Map<String, Object> noFeature = Collections.emptyMap();
+        if (symbolizer instanceof PointSymbolizer) {
+            return getGraphicExtent(((PointSymbolizer) symbolizer).getGraphicCollection(), noFeature, mt);
+        } else if (symbolizer instanceof LineSymbolizer) {
+            LineSymbolizer line = (LineSymbolizer) symbolizer;
+            double stroke = getStrokeExtent(line.getStroke(), noFeature, mt);
+            return stroke < 0 ? stroke :
+                    stroke + getOffsetExtent(line.getPerpendicularOffset(), line.getUom(), noFeature, mt);
+        } else if (symbolizer instanceof AreaSymbolizer) {
+            AreaSymbolizer area = (AreaSymbolizer) symbolizer;
+            double stroke = getStrokeExtent(area.getStroke(), noFeature, mt);
+            if (stroke < 0) {
+                return stroke;
+            }
+            double extent = stroke + getOffsetExtent(area.getPerpendicularOffset(), area.getUom(), noFeature, mt);
+            if (area.getTranslate() != null) {
+                Point2D translation = area.getTranslate().getAffineTransform(noFeature, area.getUom(), mt, null,
+                        null).transform(new Point2D.Double(), null);
+                extent += translation.distance(0, 0);
+            }
+            return extent;
+        }
+        return UNBOUNDED_MARGIN;
+    }
+
+    private static double getStrokeExtent(Stroke stroke, Map<String, Object> map, MapTransform mt)
+            throws ParameterException, IOException {
+        if (stroke == null) {
+            return 0;
+        } else if (stroke instanceof PenStroke) {
+            return ((PenStroke) stroke).getWidthInPixel(map, mt) / 2;
+        } else if (stroke instanceof GraphicStroke) {
+            return getGraphicExtent(((GraphicStroke) stroke).getGraphicCollection(), map, mt);
+        }
+        return UNBOUNDED_MARGIN;
+    }
+
+    private static double getOffsetExtent(RealParameter offset, Uom uom, Map<String, Object> map, MapTransform mt)
+            throws ParameterException {
+        if (offset == null) {
+            return 0;
+        }
+        return Math.abs(Uom.toPixel(offset.getValue(map), uom, mt.getDpi(), mt.getScaleDenominator(), null));
+    }
+
+    private static double getGraphicExtent(GraphicCollection graphics, Map<String, Object> map, MapTransform mt)
+            throws ParameterException, IOException {
+        double extent = 0;
+        // GraphicCollection.getBounds skips the graphics that cannot be evaluated
+        for (int i = 0; i < graphics.getNumGraphics(); i++) {
+            Rectangle2D bounds = graphics.getGraphic(i).getBounds(map, mt);
+            if (bounds == null) {
+                return UNBOUNDED_MARGIN;
+            }
+            // The graphic is centered on its point, the diagonal bounds any rotation
+            extent = Math.max(extent, Math.hypot(Math.max(Math.abs(bounds.getMinX()), Math.abs(bounds.getMaxX())),
+                    Math.max(Math.abs(bounds.getMinY()), Math.abs(bounds.getMaxY()))));
+        }
+        return extent;
+    }
+
+    /**
+     * @param previousExtent Adjusted extent of the previous image
+     * @param extent Adjusted extent of the new image
+     * @param width Width of both images, in pixels
+     * @param height Height of both images, in pixels
+     * @param margin Width of the band of the shifted image redrawn along the exposed strips, in pixels
+     * @param maxExposedRatio Maximum share of the image exposed by the translation
+     * @return The strips to draw, null if the extent is not translated by a whole number of pixels or if the
+     * exposed share of the image is greater than maxExposedRatio
+     */
+    public static IncrementalPan create(Envelope previousExtent, Envelope extent, int width, int height, int margin,
+                                        double maxExposedRatio) {
+        if (width <= 0 || height <= 0 || previousExtent == null || previousExtent.isNull() || extent.isNull() ||
+                Math.abs(previousExtent.getWidth() - extent.getWidth()) > SCALE_TOLERANCE * extent.getWidth() ||
+                Math.abs(previousExtent.getHeight() - extent.getHeight()) > SCALE_TOLERANCE * extent.getHeight()) {
+            return null;
+        }
+        double dx = (previousExtent.getMinX() - extent.getMinX()) * width / extent.getWidth();
+        // The vertical axis of the image is downward
+        double dy = (extent.getMaxY() - previousExtent.getMaxY()) * height / extent.getHeight();
+        int shiftX = (int) Math.round(dx);
+        int shiftY = (int) Math.round(dy);
+        if (Math.abs(dx - shiftX) > PIXEL_TOLERANCE || Math.abs(dy - shiftY) > PIXEL_TOLERANCE ||
+                Math.abs(shiftX) >= width || Math.abs(shiftY) >= height) {
+            return null;
+        }
+        int exposedWidth = Math.abs(shiftX);
+        int exposedHeight = Math.abs(shiftY);
+        double exposedRatio = ((double) exposedWidth * height + (double) exposedHeight * (width - exposedWidth)) /
+                ((double) width * height);
+        if (exposedRatio > maxExposedRatio) {
+            return null;
+        }
+        List<Rectangle> strips = new ArrayList<Rectangle>(2);
+        int columnWidth = 0;
+        if (shiftX != 0) {
+            // Full height column, on the side uncovered by the shifted image
+            columnWidth = Math.min(width, exposedWidth + margin);
+            strips.add(new Rectangle(shiftX > 0 ? 0 : width - columnWidth, 0, columnWidth, height));
+        }
+        if (shiftY != 0 && columnWidth < width) {
+            // Row beside the column
+            int rowHeight = Math.min(height, exposedHeight + margin);
+            strips.add(new Rectangle(shiftX > 0 ? columnWidth : 0, shiftY > 0 ? 0 : height - rowHeight,
+                    width - columnWidth, rowHeight));
+        }
+        return new IncrementalPan(shiftX, shiftY, exposedRatio, margin, Collections.unmodifiableList(strips));
+    }
+
+    /**
+     * @return Horizontal translation of the previous image, in pixels
+     */
+    public int getShiftX() {
+        return shiftX;
+    }
+
+    /**
+     * @return Vertical translation of the previous image, in pixels
+     */
+    public int getShiftY() {
+        return shiftY;
+    }
+
+    /**
+     * @return Share of the image exposed by the translation, without the margin
+     */
+    public double getExposedRatio() {
+        return exposedRatio;
+    }
+
+    /**
+     * @return Width of the band of the shifted image redrawn along the exposed strips, in pixels
+     */
+    public int getMargin() {
+        return margin;
+    }
+
+    /**
+     * @return The areas of the new image to draw, margin included
+     */
+    public List<Rectangle> getStrips() {
+        return strips;
+    }
+
+    /**
+     * Create the transform of a strip of the image. The extent of the strip is not adjusted, in order to keep
+     * the scale of the whole image.
+     * @param mt Transform of the whole image
+     * @param strip Area of the image
+     * @return A transform that draws the strip in its own image
+     */
+    public static MapTransform createStripTransform(MapTransform mt, Rectangle strip) {
+        return createStripTransform(mt, strip, 0);
+    }
+
+    /**
+     * Create the transform of a strip of the image, buffered on each side. The extent of the strip is not
+     * adjusted, in order to keep the scale of the whole image.
+     * @param mt Transform of the whole image
+     * @param strip Area of the image
+     * @param buffer Number of pixels drawn around the strip
+     * @return A transform that draws the buffered strip in its own image
+     */
+    public static MapTransform createStripTransform(MapTransform mt, Rectangle strip, int buffer) {
+        strip = new Rectangle(strip.x - buffer, strip.y - buffer, strip.width + 2 * buffer,
+                strip.height + 2 * buffer);
+        Envelope extent = mt.getAdjustedExtent();
+        double resolutionX = extent.getWidth() / mt.getWidth();
+        double resolutionY = extent.getHeight() / mt.getHeight();
+        MapTransform stripTransform = mt.copy();
+        stripTransform.setAdjustExtent(false);
+        stripTransform.setImage(new BufferedImage(strip.width, strip.height, BufferedImage.TYPE_INT_ARGB));
+        stripTransform.setExtent(new Envelope(extent.getMinX() + strip.x * resolutionX,
+                extent.getMinX() + (strip.x + strip.width) * resolutionX,
+                extent.getMaxY() - (strip.y + strip.height) * resolutionY,
+                extent.getMaxY() - strip.y * resolutionY));
+        return stripTransform;
+    }
+
+    /**
+     * Draw the shifted previous image then the exposed strips.
+     * @param renderer Renderer of the strips
+     * @param previousImage Image of the previous extent
+     * @param mt Transform of the new image
+     * @param g2 Graphics of the new image
+     * @param background Color of the strips before drawing, null for transparent
+     * @param layer Layers to draw
+     * @param pm Progress monitor
+     */
+    public void draw(Renderer renderer, BufferedImage previousImage, MapTransform mt, Graphics2D g2, Color background,
+                     ILayer layer, ProgressMonitor pm) {
+        g2.drawImage(previousImage, shiftX, shiftY, null);
+        for (Rectangle strip : strips) {
+            if (pm.isCancelled()) {
+                return;
+            }
+            // The features just outside the strip may draw into it
+            MapTransform stripTransform = createStripTransform(mt, strip, margin);
+            BufferedImage stripImage = stripTransform.getImage();
+            Graphics2D stripG2 = stripImage.createGraphics();
+            try {
+                renderer.draw(stripTransform, stripG2, stripImage.getWidth(), stripImage.getHeight(), layer, pm);
+                if (renderer.isSelectionOverlay() && !renderer.isLayerSelection()) {
+                    renderer.drawSelection(stripTransform, stripG2, layer, pm);
+                }
+            } finally {
+                stripG2.dispose();
+            }
+            // The strip holds every symbol drawn on its pixels, the margin is replaced, not drawn over
+            Shape clip = g2.getClip();
+            Composite composite = g2.getComposite();
+            g2.clipRect(strip.x, strip.y, strip.width, strip.height);
+            g2.setComposite(AlphaComposite.Src);
+            g2.setColor(background != null ? background : new Color(0, 0, 0, 0));
+            g2.fillRect(strip.x, strip.y, strip.width, strip.height);
+            g2.setComposite(composite);
+            g2.drawImage(stripImage, strip.x - margin, strip.y - margin, null);
+            g2.setClip(clip);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.label.LabelEngine;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep the last rendered image of each layer. An image is reused while the extent, the image size and the
+ * layer version are the same. The owner of the cache increments the layer version, by calling
+ * {@link #invalidate(ILayer)}, when the style or the data of the layer change.
+ * The least recently used images are removed when the memory limit is reached. The labels of a layer are not in
+ * its image, they are kept with it and placed with the labels of the other layers.
+ */
+public class LayerImageCache {
+    /** Default memory limit in bytes */
+    public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+    private static final int BYTES_PER_PIXEL = 4;
+    private final LinkedHashMap<ILayer, Entry> images = new LinkedHashMap<ILayer, Entry>(16, 0.75f, true);
+    private final Map<ILayer, Long> versions = new HashMap<ILayer, Long>();
+    private long maxSize;
+    private long size = 0;
+
+    /**
+     * Cache with default memory limit.
+     */
+    public LayerImageCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize Memory limit of cached images in bytes
+     */
+    public LayerImageCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param layer Layer
+     * @param mt Drawing parameters
+     * @return The cached image of this layer or null if there is no up to date image
+     */
+    public synchronized BufferedImage getImage(ILayer layer, MapTransform mt) {
+        Entry entry = images.get(layer);
+        if(entry != null && entry.matches(mt, getVersion(layer))) {
+            return entry.image;
+        }
+        return null;
+    }
+
+    /**
+     * @param layer Layer
+     * @param mt Drawing parameters
+     * @return The labels of the cached image of this layer, empty if there is no up to date image
+     */
+    public synchronized List<LabelEngine.Candidate> getLabels(ILayer layer, MapTransform mt) {
+        Entry entry = images.get(layer);
+        if(entry != null && entry.matches(mt, getVersion(layer))) {
+            return entry.labels;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Store the rendered image of a layer.
+     * @param layer Layer
+     * @param mt Drawing parameters used to render the image
+     * @param image Rendered image
+     * @param version Version of the layer read with {@link #getVersion(ILayer)} before the drawing started
+     */
+    public void putImage(ILayer layer, MapTransform mt, BufferedImage image, long version) {
+        putImage(layer, mt, image, Collections.<LabelEngine.Candidate>emptyList(), version);
+    }
+
+    /**
+     * Store the rendered image of a layer with its labels. The image is dropped if the layer has been invalidated
+     * since the drawing started, it may have been drawn from the previous data.
+     * @param layer Layer
+     * @param mt Drawing parameters used to render the image
+     * @param image Rendered image
+     * @param labels Labels of the layer, they must not reference the result sets of the drawing
+     * @param version Version of the layer read with {@link #getVersion(ILayer)} before the drawing started
+     */
+    public synchronized void putImage(ILayer layer, MapTransform mt, BufferedImage image,
+                                      List<LabelEngine.Candidate> labels, long version) {
+        if(version != getVersion(layer)) {
+            return;
+        }
+        Entry entry = new Entry(image, labels, new Envelope(mt.getAdjustedExtent()), mt.getWidth(), mt.getHeight(),
+                version);
+        remove(layer);
+        images.put(layer, entry);
+        size += entry.getSize();
+        Iterator<Entry> it = images.values().iterator();
+        while(size > maxSize && it.hasNext()) {
+            Entry eldest = it.next();
+            if(eldest != entry) {
+                size -= eldest.getSize();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * The style or the data of the layer has changed, the cached image of this layer must be rendered again.
+     * @param layer Layer
+     */
+    public synchronized void invalidate(ILayer layer) {
+        versions.put(layer, getVersion(layer) + 1);
+        remove(layer);
+    }
+
+    /**
+     * @param layer Layer
+     * @return The version of this layer, incremented on each call of {@link #invalidate(ILayer)}
+     */
+    public synchronized long getVersion(ILayer layer) {
+        Long version = versions.get(layer);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Free the cached image and version of this layer.
+     * @param layer Removed layer
+     */
+    public synchronized void removeLayer(ILayer layer) {
+        remove(layer);
+        versions.remove(layer);
+    }
+
+    /**
+     * Free all cached images.
+     */
+    public synchronized void clear() {
+        images.clear();
+        size = 0;
+    }
+
+    /**
+     * @return Memory used by cached images in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @param maxSize Memory limit of cached images in bytes
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private void remove(ILayer layer) {
+        Entry removed = images.remove(layer);
+        if(removed != null) {
+            size -= removed.getSize();
+        }
+    }
+
+    private static class Entry {
+        private final BufferedImage image;
+        private final List<LabelEngine.Candidate> labels;
+        private final Envelope extent;
+        private final int width;
+        private final int height;
+        private final long version;
+
+        private Entry(BufferedImage image, List<LabelEngine.Candidate> labels, Envelope extent, int width,
+                      int height, long version) {
+            this.image = image;
+            this.labels = labels;
+            this.extent = extent;
+            this.width = width;
+            this.height = height;
+            this.version = version;
+        }
+
+        private boolean matches(MapTransform mt, long currentVersion) {
+            return version == currentVersion && width == mt.getWidth() && height == mt.getHeight() &&
+                    extent.equals(mt.getAdjustedExtent());
+        }
+
+        private long getSize() {
+            return (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.map.MapTransform;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keep the screen shapes of the last drawn rows of each layer. The shapes are reused while the extent, the image
+ * size and the generalization are the same: a change of the style of the layer draws the rows again without
+ * decoding and transforming their geometries. The values of the other columns of a complete read are kept with
+ * the shapes, a style that reads the same fields with the same filters is then drawn without querying the data.
+ * The owner of the cache calls {@link #invalidate(ILayer)} when the data of the layer change.
+ * The least recently used layers are removed when the number of cached points exceeds the limit, a kept value
+ * counts as a point.
+ */
+public class LayerShapeCache {
+    /** Default maximum number of cached points */
+    public static final long DEFAULT_MAX_POINTS = 4000000;
+    private final LinkedHashMap<ILayer, LayerShapes> entries = new LinkedHashMap<ILayer, LayerShapes>(16, 0.75f, true);
+    private final Map<ILayer, Long> versions = new HashMap<ILayer, Long>();
+    private long maxPoints;
+    private long pointCount = 0;
+
+    /**
+     * Cache with the default number of points.
+     */
+    public LayerShapeCache() {
+        this(DEFAULT_MAX_POINTS);
+    }
+
+    /**
+     * @param maxPoints Maximum number of cached points
+     */
+    public LayerShapeCache(long maxPoints) {
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * @param layer Layer
+     * @param mt Drawing parameters
+     * @param levelOfDetailTolerance Simplification of the fetched geometries, in pixels
+     * @return The shapes of the rows of this layer drawn with the same parameters. A new empty set of shapes if the
+     * parameters have changed.
+     */
+    public synchronized LayerShapes get(ILayer layer, MapTransform mt, double levelOfDetailTolerance) {
+        LayerShapes shapes = entries.get(layer);
+        if (shapes != null && shapes.matches(mt, levelOfDetailTolerance, getVersion(layer))) {
+            return shapes;
+        }
+        remove(layer);
+        shapes = new LayerShapes(this, new Envelope(mt.getAdjustedExtent()), mt.getWidth(), mt.getHeight(),
+                mt.getGeneralizationTolerance(), levelOfDetailTolerance, getVersion(layer));
+        entries.put(layer, shapes);
+        return shapes;
+    }
+
+    /**
+     * The data of the layer has changed, its shapes must be computed again.
+     * @param layer Layer
+     */
+    public synchronized void invalidate(ILayer layer) {
+        versions.put(layer, getVersion(layer) + 1);
+        remove(layer);
+    }
+
+    /**
+     * @param layer Layer
+     * @return The version of this layer, incremented on each call of {@link #invalidate(ILayer)}
+     */
+    public synchronized long getVersion(ILayer layer) {
+        Long version = versions.get(layer);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Free the cached shapes and the version of this layer.
+     * @param layer Removed layer
+     */
+    public synchronized void removeLayer(ILayer layer) {
+        remove(layer);
+        versions.remove(layer);
+    }
+
+    /**
+     * Free all cached shapes.
+     */
+    public synchronized void clear() {
+        for (LayerShapes shapes : entries.values()) {
+            shapes.removed = true;
+        }
+        entries.clear();
+        pointCount = 0;
+    }
+
+    /**
+     * @return Number of cached points
+     */
+    public synchronized long getPointCount() {
+        return pointCount;
+    }
+
+    private void remove(ILayer layer) {
+        LayerShapes removed = entries.remove(layer);
+        if (removed != null) {
+            removed.removed = true;
+            pointCount -= removed.pointCount;
+        }
+    }
+
+    /**
+     * Uncount the points of the values replaced by a new read.
+     */
+    private synchronized void release(LayerShapes shapes, long points) {
+        if (!shapes.removed) {
+            pointCount -= points;
+            shapes.pointCount -= points;
+        }
+    }
+
+    /**
+     * Count the points of a new shape, the least recently used layers are removed above the limit.
+     * @return False if the shape does not fit in the limit
+     */
+    private synchronized boolean reserve(LayerShapes shapes, long points) {
+        if (shapes.removed) {
+            return false;
+        }
+        Iterator<LayerShapes> it = entries.values().iterator();
+        while (pointCount + points > maxPoints && it.hasNext()) {
+            LayerShapes eldest = it.next();
+            if (eldest != shapes) {
+                eldest.removed = true;
+                pointCount -= eldest.pointCount;
+                it.remove();
+            }
+        }
+        if (pointCount + points > maxPoints) {
+            return false;
+        }
+        pointCount += points;
+        shapes.pointCount += points;
+        return true;
+    }
+
+    /**
+     * Screen shapes of the rows of a layer, by primary key.
+     */
+    public static final class LayerShapes {
+        private final LayerShapeCache cache;
+        private final Map<Long, Shape> shapes = new ConcurrentHashMap<Long, Shape>();
+        private final Envelope extent;
+        private final int width;
+        private final int height;
+        private final double generalizationTolerance;
+        private final double levelOfDetailTolerance;
+        private final long version;
+        // Guarded by the cache
+        private long pointCount = 0;
+        private volatile boolean removed = false;
+        // Last complete read of the rows, null if none
+        private volatile RetainedRows retainedRows = null;
+
+        private LayerShapes(LayerShapeCache cache, Envelope extent, int width, int height,
+                            double generalizationTolerance, double levelOfDetailTolerance, long version) {
+            this.cache = cache;
+            this.extent = extent;
+            this.width = width;
+            this.height = height;
+            this.generalizationTolerance = generalizationTolerance;
+            this.levelOfDetailTolerance = levelOfDetailTolerance;
+            this.version = version;
+        }
+
+        private boolean matches(MapTransform mt, double levelOfDetail, long currentVersion) {
+            return version == currentVersion && width == mt.getWidth() && height == mt.getHeight() &&
+                    generalizationTolerance == mt.getGeneralizationTolerance() &&
+                    levelOfDetailTolerance == levelOfDetail && extent.equals(mt.getAdjustedExtent());
+        }
+
+        /**
+         * @param row Primary key of the row
+         * @return The shape of the row in screen coordinates, or null if the row has not been drawn. The shape
+         * is shared and must not be modified.
+         */
+        public Shape get(long row) {
+            return shapes.get(row);
+        }
+
+        /**
+         * Keep a copy of the drawn shape of a row.
+         * @param row Primary key of the row
+         * @param shape Shape of the row in screen coordinates, generalized like
+         *              {@link MapTransform#getShape(com.vividsolutions.jts.geom.Geometry, boolean)}. Null if the
+         *              symbolizers did not use the shape of the row.
+         */
+        public void put(long row, Shape shape) {
+            retain(row, shape);
+        }
+
+        /**
+         * @return False if the shape of the row is not kept
+         */
+        private boolean retain(long row, Shape shape) {
+            if (shape == null || removed) {
+                return false;
+            }
+            if (shapes.containsKey(row)) {
+                return true;
+            }
+            Path2D.Float copy = new Path2D.Float();
+            long points = 0;
+            PathIterator it = shape.getPathIterator(null);
+            copy.setWindingRule(it.getWindingRule());
+            float[] coords = new float[6];
+            for (; !it.isDone(); it.next()) {
+                switch (it.currentSegment(coords)) {
+                    case PathIterator.SEG_MOVETO:
+                        copy.moveTo(coords[0], coords[1]);
+                        points++;
+                        break;
+                    case PathIterator.SEG_LINETO:
+                        copy.lineTo(coords[0], coords[1]);
+                        points++;
+                        break;
+                    case PathIterator.SEG_QUADTO:
+                        copy.quadTo(coords[0], coords[1], coords[2], coords[3]);
+                        points += 2;
+                        break;
+                    case PathIterator.SEG_CUBICTO:
+                        copy.curveTo(coords[0], coords[1], coords[2], coords[3], coords[4], coords[5]);
+                        points += 3;
+                        break;
+                    default:
+                        copy.closePath();
+                }
+            }
+            if (cache.reserve(this, points)) {
+                shapes.put(row, copy);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Start a read of all the rows of the layer. The recorded rows replace the kept rows when the read is
+         * complete.
+         * @param pkName Label of the primary key column
+         * @param columns Labels of the columns of the query
+         * @param filters SQL filters of the query
+         * @return The recorder of the rows of this read
+         */
+        public RowRecorder recordRows(String pkName, List<String> columns, List<String> filters) {
+            return new RowRecorder(this, pkName, new ArrayList<String>(columns), new ArrayList<String>(filters));
+        }
+
+        /**
+         * @param fields Fields read by the style
+         * @param filters SQL filters of the style
+         * @return The rows of the last complete read, in the read order, if they hold these fields and have been
+         * read with these filters. Null otherwise, then the rows must be queried. The geometry columns are null,
+         * the shape of each row is given by {@link #get(long)}.
+         */
+        RetainedRowSet getRows(Collection<String> fields, List<String> filters) {
+            RetainedRows rows = retainedRows;
+            if (rows == null || removed || !rows.filters.equals(filters)) {
+                return null;
+            }
+            for (String field : fields) {
+                boolean found = false;
+                for (String column : rows.columns) {
+                    if (column.equalsIgnoreCase(field)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return null;
+                }
+            }
+            return new RetainedRowSet(rows.pkName, rows.columns, rows.values);
+        }
+
+        /**
+         * @return Number of cached shapes
+         */
+        public int size() {
+            return shapes.size();
+        }
+    }
+
+    /**
+     * Rows of a complete read.
+     */
+    private static final class RetainedRows {
+        private final String pkName;
+        private final List<String> columns;
+        private final List<String> filters;
+        private final List<Object[]> values;
+        private final long points;
+
+        private RetainedRows(String pkName, List<String> columns, List<String> filters, List<Object[]> values,
+                             long points) {
+            this.pkName = pkName;
+            this.points = points;
+            this.columns = columns;
+            this.filters = filters;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Record the rows of a read of the layer, with the shape drawn for each row. A read is kept only if the shape
+     * and the values of each drawn row are kept.
+     */
+    public static final class RowRecorder {
+        private final LayerShapes shapes;
+        private final String pkName;
+        private final List<String> columns;
+        private final List<String> filters;
+        private List<Object[]> values = new ArrayList<Object[]>();
+        private long points = 0;
+
+        private RowRecorder(LayerShapes shapes, String pkName, List<String> columns, List<String> filters) {
+            this.shapes = shapes;
+            this.pkName = pkName;
+            this.columns = columns;
+            this.filters = filters;
+        }
+
+        /**
+         * Keep a drawn row.
+         * @param row Primary key of the row
+         * @param shape Shape of the row in screen coordinates, see {@link LayerShapes#put(long, Shape)}
+         * @param rowValues Values of the columns of the row, the geometry columns are null
+         */
+        public void add(long row, Shape shape, Object[] rowValues) {
+            boolean kept = shapes.retain(row, shape);
+            if (values == null) {
+                return;
+            }
+            if (kept && shapes.cache.reserve(shapes, rowValues.length)) {
+                values.add(rowValues);
+                points += rowValues.length;
+            } else {
+                // The rows can't be drawn again from memory
+                discard();
+            }
+        }
+
+        /**
+         * The read is complete, its rows replace the kept rows of the layer.
+         */
+        public void commit() {
+            if (values == null || shapes.removed) {
+                discard();
+                return;
+            }
+            RetainedRows replaced = shapes.retainedRows;
+            shapes.retainedRows = new RetainedRows(pkName, Collections.unmodifiableList(columns),
+                    Collections.unmodifiableList(filters), Collections.unmodifiableList(values), points);
+            if (replaced != null) {
+                shapes.cache.release(shapes, replaced.points);
+            }
+            values = null;
+            points = 0;
+        }
+
+        /**
+         * The read is not complete, the recorded rows are freed. Does nothing after {@link #commit()}.
+         */
+        public void discard() {
+            values = null;
+            if (points > 0) {
+                shapes.cache.release(shapes, points);
+                points = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.orbisgis.coremap.layerModel.ILayer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keep the fetched points of the clustered layers. The points of a layer are reused, and clustered again at
+ * the new scale, while the drawn extent is within the fetched extent and the style reads the same fields
+ * with the same filters: zooming in does not fetch the table again. The owner of the cache calls
+ * {@link #invalidate(ILayer)} when the data or the style of the layer change.
+ * The least recently used layers are removed when the number of points exceeds the limit.
+ */
+public class PointClusterCache {
+    /** Default maximum number of cached points */
+    public static final int DEFAULT_MAX_POINTS = 2000000;
+    private final LinkedHashMap<Key, PointClusters> entries = new LinkedHashMap<Key, PointClusters>(16, 0.75f, true);
+    private final Map<ILayer, Long> versions = new HashMap<ILayer, Long>();
+    private int maxPoints;
+    private long pointCount = 0;
+
+    /**
+     * Cache with the default number of points.
+     */
+    public PointClusterCache() {
+        this(DEFAULT_MAX_POINTS);
+    }
+
+    /**
+     * @param maxPoints Maximum number of cached points
+     */
+    public PointClusterCache(int maxPoints) {
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * @param layer Layer
+     * @param fields Fields read by the style
+     * @param filters SQL filters of the rules
+     * @param extent Drawn extent
+     * @return The points fetched for an extent that contains the given one, or null
+     */
+    public synchronized PointClusters get(ILayer layer, Set<String> fields, List<String> filters, Envelope extent) {
+        PointClusters points = entries.get(new Key(layer, fields, filters));
+        if (points != null && points.getExtent().contains(extent)) {
+            return points;
+        }
+        return null;
+    }
+
+    /**
+     * Store the fetched points of a layer.
+     * @param layer Layer
+     * @param version Version of the layer when the fetch started, see {@link #getVersion(ILayer)}
+     * @param fields Fields read by the style
+     * @param filters SQL filters of the rules
+     * @param points Fetched points
+     */
+    public synchronized void put(ILayer layer, long version, Set<String> fields, List<String> filters,
+            PointClusters points) {
+        if (version != getVersion(layer) || points.size() > maxPoints) {
+            // The layer has changed while its points were fetched, or there are too many points
+            return;
+        }
+        Key key = new Key(layer, fields, filters);
+        remove(key);
+        entries.put(key, points);
+        pointCount += points.size();
+        Iterator<PointClusters> it = entries.values().iterator();
+        while (pointCount > maxPoints && it.hasNext()) {
+            PointClusters eldest = it.next();
+            if (eldest != points) {
+                pointCount -= eldest.size();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * The style or the data of the layer has changed, its points must be fetched again.
+     * @param layer Layer
+     */
+    public synchronized void invalidate(ILayer layer) {
+        versions.put(layer, getVersion(layer) + 1);
+        for (Key key : new ArrayList<Key>(entries.keySet())) {
+            if (key.layer == layer) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param layer Layer
+     * @return The version of this layer, incremented on each call of {@link #invalidate(ILayer)}
+     */
+    public synchronized long getVersion(ILayer layer) {
+        Long version = versions.get(layer);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Free the cached points and the version of this layer.
+     * @param layer Removed layer
+     */
+    public synchronized void removeLayer(ILayer layer) {
+        invalidate(layer);
+        versions.remove(layer);
+    }
+
+    /**
+     * Free all cached points.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        pointCount = 0;
+    }
+
+    /**
+     * @return Number of cached points
+     */
+    public synchronized long getPointCount() {
+        return pointCount;
+    }
+
+    private void remove(Key key) {
+        PointClusters removed = entries.remove(key);
+        if (removed != null) {
+            pointCount -= removed.size();
+        }
+    }
+
+    private static final class Key {
+        private final ILayer layer;
+        private final Set<String> fields;
+        private final List<String> filters;
+
+        private Key(ILayer layer, Set<String> fields, List<String> filters) {
+            this.layer = layer;
+            this.fields = new HashSet<String>(fields);
+            this.filters = new ArrayList<String>(filters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return layer == other.layer && fields.equals(other.fields) && filters.equals(other.filters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(layer) + fields.hashCode()) + filters.hashCode();
+        }
+    }
+}
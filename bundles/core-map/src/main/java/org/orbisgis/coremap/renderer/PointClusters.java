@@ -0,0 +1,414 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Points of a layer, with the values of the fields read by its style, merged into clusters. The points are
+ * kept in map coordinates, the clusters of a scale are computed from them without fetching the table again.
+ * Points are first gathered in a grid of square cells, the size of a cell is the cluster distance. Then the
+ * clusters of neighbouring cells are merged when their centers are closer than this distance, until the moved
+ * centers bring no more clusters together.
+ * The {@link #COUNT_FIELD} value of a cluster is the number of its points. The value of the summed fields is
+ * the sum of the values of the points, the value of the other fields is the value of the first point in the
+ * order of the table. The clusters of the last used distances are cached. This class is thread safe once
+ * filled.
+ */
+public class PointClusters {
+    /** Name of the field that holds the number of points of a cluster */
+    public static final String COUNT_FIELD = "count";
+    // Number of cluster distances kept for each rule
+    private static final int MAX_CACHED_DISTANCES = 4;
+    private final Envelope extent;
+    private final String[] fields;
+    private int size = 0;
+    private double[] coordinates = new double[64];
+    private long[] rows = new long[32];
+    private long[] masks = new long[32];
+    private Object[] values;
+    private final LinkedHashMap<ClusterKey, List<Cluster>> clusters =
+            new LinkedHashMap<ClusterKey, List<Cluster>>(16, 0.75f, true);
+
+    /**
+     * @param extent Extent of the fetched points, in map units
+     * @param fields Fields read by the style, {@link #COUNT_FIELD} excluded
+     */
+    public PointClusters(Envelope extent, Collection<String> fields) {
+        this.extent = new Envelope(extent);
+        this.fields = fields.toArray(new String[fields.size()]);
+        this.values = new Object[32 * this.fields.length];
+    }
+
+    /**
+     * Add a point.
+     * @param x Horizontal position, in map units
+     * @param y Vertical position, in map units
+     * @param row Row identifier
+     * @param ruleMask Bit i is set if the rule i draws this point
+     * @param rowValues Values of the fields, in the order of {@link #getFields()}
+     */
+    public synchronized void add(double x, double y, long row, long ruleMask, Object[] rowValues) {
+        if (size == rows.length) {
+            int capacity = rows.length * 2;
+            coordinates = Arrays.copyOf(coordinates, capacity * 2);
+            rows = Arrays.copyOf(rows, capacity);
+            masks = Arrays.copyOf(masks, capacity);
+            values = Arrays.copyOf(values, capacity * fields.length);
+        }
+        coordinates[size * 2] = x;
+        coordinates[size * 2 + 1] = y;
+        rows[size] = row;
+        masks[size] = ruleMask;
+        System.arraycopy(rowValues, 0, values, size * fields.length, fields.length);
+        size++;
+        clusters.clear();
+    }
+
+    /**
+     * @return Number of points
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return Extent of the fetched points, in map units
+     */
+    public Envelope getExtent() {
+        return new Envelope(extent);
+    }
+
+    /**
+     * @return Fields read by the style, in the order of the values given to {@link #add}
+     */
+    public List<String> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * @param rule Index of the rule
+     * @param distance Points closer than this distance, in map units, are merged
+     * @return The clusters of the points drawn by this rule, without summed fields
+     */
+    public List<Cluster> getClusters(int rule, double distance) {
+        return getClusters(rule, distance, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param rule Index of the rule
+     * @param distance Points closer than this distance, in map units, are merged
+     * @param summedFields Numeric fields whose values are summed, like counts or populations
+     * @return The clusters of the points drawn by this rule
+     */
+    public synchronized List<Cluster> getClusters(int rule, double distance, Set<String> summedFields) {
+        ClusterKey key = new ClusterKey(rule, distance, summedFields);
+        List<Cluster> result = clusters.get(key);
+        if (result == null) {
+            result = computeClusters(rule, distance, key.summedFields);
+            clusters.put(key, result);
+            Iterator<ClusterKey> it = clusters.keySet().iterator();
+            while (clusters.size() > MAX_CACHED_DISTANCES && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return result;
+    }
+
+    private List<Cluster> computeClusters(int rule, double distance, Set<String> summedFields) {
+        long bit = 1L << rule;
+        // Gather the points in the grid cells
+        Map<Cell, Builder> cells = new HashMap<Cell, Builder>();
+        List<Builder> builders = new ArrayList<Builder>();
+        for (int i = 0; i < size; i++) {
+            if ((masks[i] & bit) == 0) {
+                continue;
+            }
+            Cell cell = new Cell((long) Math.floor(coordinates[i * 2] / distance),
+                    (long) Math.floor(coordinates[i * 2 + 1] / distance));
+            Builder builder = cells.get(cell);
+            if (builder == null) {
+                builder = new Builder();
+                cells.put(cell, builder);
+                builders.add(builder);
+            }
+            builder.add(i, coordinates[i * 2], coordinates[i * 2 + 1]);
+        }
+        // Merge the clusters of the neighbouring cells, in the order of the points. A merge moves the center of
+        // a cluster, it may then be close to a cluster it was not compared with: merge until nothing changes.
+        double squaredDistance = distance * distance;
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            // Centers closer than the distance are in the same or in neighbouring cells
+            Map<Cell, List<Builder>> centers = new HashMap<Cell, List<Builder>>();
+            for (Builder builder : builders) {
+                builder.cell = builder.getCenterCell(distance);
+                List<Builder> cellBuilders = centers.get(builder.cell);
+                if (cellBuilders == null) {
+                    cellBuilders = new ArrayList<Builder>(1);
+                    centers.put(builder.cell, cellBuilders);
+                }
+                cellBuilders.add(builder);
+            }
+            for (Builder builder : builders) {
+                if (builder.mergedInto != null) {
+                    continue;
+                }
+                for (long dx = -1; dx <= 1; dx++) {
+                    for (long dy = -1; dy <= 1; dy++) {
+                        List<Builder> neighbours = centers.get(new Cell(builder.cell.x + dx, builder.cell.y + dy));
+                        if (neighbours == null) {
+                            continue;
+                        }
+                        for (Builder neighbour : neighbours) {
+                            if (neighbour != builder && neighbour.mergedInto == null &&
+                                    builder.squaredDistance(neighbour) < squaredDistance) {
+                                builder.merge(neighbour);
+                                merged = true;
+                            }
+                        }
+                    }
+                }
+            }
+            if (merged) {
+                List<Builder> remaining = new ArrayList<Builder>(builders.size());
+                for (Builder builder : builders) {
+                    if (builder.mergedInto == null) {
+                        remaining.add(builder);
+                    }
+                }
+                builders = remaining;
+            }
+        }
+        List<Cluster> result = new ArrayList<Cluster>(builders.size());
+        for (Builder builder : builders) {
+            result.add(builder.build(summedFields));
+        }
+        return result;
+    }
+
+    /**
+     * Points merged in one symbol.
+     */
+    public static final class Cluster {
+        private final double x;
+        private final double y;
+        private final long[] rows;
+        private final Map<String, Object> values;
+
+        private Cluster(double x, double y, long[] rows, Map<String, Object> values) {
+            this.x = x;
+            this.y = y;
+            this.rows = rows;
+            this.values = values;
+        }
+
+        /**
+         * @return Horizontal position of the center of the points, in map units
+         */
+        public double getX() {
+            return x;
+        }
+
+        /**
+         * @return Vertical position of the center of the points, in map units
+         */
+        public double getY() {
+            return y;
+        }
+
+        /**
+         * @return Number of points
+         */
+        public int getCount() {
+            return rows.length;
+        }
+
+        /**
+         * @return Values of the count and of the aggregated fields
+         */
+        public Map<String, Object> getValues() {
+            return values;
+        }
+
+        /**
+         * @param selectedRows Selected row identifiers
+         * @return True if one of the points is selected
+         */
+        public boolean isSelected(Set<Long> selectedRows) {
+            if (!selectedRows.isEmpty()) {
+                for (long row : rows) {
+                    if (selectedRows.contains(row)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private final class Builder {
+        private Cell cell;
+        private int[] points = new int[4];
+        private int count = 0;
+        private double sumX = 0;
+        private double sumY = 0;
+        private Builder mergedInto = null;
+
+        private void add(int point, double x, double y) {
+            if (count == points.length) {
+                points = Arrays.copyOf(points, count * 2);
+            }
+            points[count++] = point;
+            sumX += x;
+            sumY += y;
+        }
+
+        private Cell getCenterCell(double distance) {
+            return new Cell((long) Math.floor(sumX / count / distance), (long) Math.floor(sumY / count / distance));
+        }
+
+        private double squaredDistance(Builder other) {
+            double dx = sumX / count - other.sumX / other.count;
+            double dy = sumY / count - other.sumY / other.count;
+            return dx * dx + dy * dy;
+        }
+
+        private void merge(Builder other) {
+            for (int i = 0; i < other.count; i++) {
+                int point = other.points[i];
+                add(point, coordinates[point * 2], coordinates[point * 2 + 1]);
+            }
+            other.mergedInto = this;
+        }
+
+        private Cluster build(Set<String> summedFields) {
+            // The points are sorted to aggregate the values in the order of the table
+            int[] sorted = Arrays.copyOf(points, count);
+            Arrays.sort(sorted);
+            long[] clusterRows = new long[count];
+            for (int i = 0; i < count; i++) {
+                clusterRows[i] = rows[sorted[i]];
+            }
+            Map<String, Object> clusterValues = new HashMap<String, Object>(fields.length * 2 + 2);
+            clusterValues.put(COUNT_FIELD, count);
+            for (int f = 0; f < fields.length; f++) {
+                Object first = values[sorted[0] * fields.length + f];
+                Object value = first;
+                if (count > 1 && first instanceof Number && summedFields.contains(fields[f])) {
+                    double sum = 0;
+                    for (int point : sorted) {
+                        Object pointValue = values[point * fields.length + f];
+                        if (!(pointValue instanceof Number)) {
+                            sum = Double.NaN;
+                            break;
+                        }
+                        sum += ((Number) pointValue).doubleValue();
+                    }
+                    value = Double.isNaN(sum) ? first : sum;
+                }
+                clusterValues.put(fields[f], value);
+            }
+            return new Cluster(sumX / count, sumY / count, clusterRows, clusterValues);
+        }
+    }
+
+    private static final class Cell {
+        private final long x;
+        private final long y;
+
+        private Cell(long x, long y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Cell)) {
+                return false;
+            }
+            Cell other = (Cell) o;
+            return x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (x * 31 + y) ^ (int) ((x * 31 + y) >>> 32);
+        }
+    }
+
+    private static final class ClusterKey {
+        private final int rule;
+        private final double distance;
+        private final Set<String> summedFields;
+
+        private ClusterKey(int rule, double distance, Set<String> summedFields) {
+            this.rule = rule;
+            this.distance = distance;
+            this.summedFields = new HashSet<String>(summedFields);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ClusterKey)) {
+                return false;
+            }
+            ClusterKey other = (ClusterKey) o;
+            return rule == other.rule && Double.compare(distance, other.distance) == 0 &&
+                    summedFields.equals(other.summedFields);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(distance);
+            return 31 * (31 * rule + (int) (bits ^ (bits >>> 32))) + summedFields.hashCode();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.map.WKBShapeReader;
+import org.orbisgis.coremap.renderer.se.FeatureMap;
+import org.orbisgis.coremap.renderer.se.fill.FillPaintCache;
+import org.orbisgis.coremap.renderer.se.fill.PolygonSamplerCache;
+import org.orbisgis.coremap.renderer.se.graphic.SymbolAtlas;
+import org.orbisgis.coremap.renderer.se.label.LabelEngine;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Transformation of one drawing, with the state the symbolizers share during this drawing. The renderer draws
+ * with a context made from the transformation it is given, the symbolizers get it back with
+ * {@link #of(MapTransform)}. A context is used by one thread, {@link #copy()} gives the context of another
+ * thread of the same drawing. The context is dropped at the end of the drawing, with the result sets its feature
+ * maps read.
+ */
+public class RenderContext extends MapTransform {
+    private final Map<Collection<String>, FeatureMap> featureMaps = new IdentityHashMap<Collection<String>, FeatureMap>();
+    private FeatureShapeCache featureShapeCache;
+    private WKBShapeReader wkbShapeReader;
+    private MapTransform plainTransform;
+    private ILayer layer;
+    // Shared by the contexts of the drawing
+    private LabelEngine labelEngine;
+    private SymbolAtlas symbolAtlas;
+    private FillPaintCache fillPaintCache;
+    private PolygonSamplerCache polygonSamplerCache;
+
+    /**
+     * @param mt Transformation of the drawing
+     */
+    public RenderContext(MapTransform mt) {
+        copyFrom(mt);
+        RenderContext context = of(mt);
+        if (context != null) {
+            labelEngine = context.labelEngine;
+            symbolAtlas = context.symbolAtlas;
+            fillPaintCache = context.fillPaintCache;
+            polygonSamplerCache = context.polygonSamplerCache;
+        }
+    }
+
+    /**
+     * @param mt Transformation given to a symbolizer
+     * @return The context of the drawing, or null if the symbolizer is not drawn by a renderer
+     */
+    public static RenderContext of(MapTransform mt) {
+        return mt instanceof RenderContext ? (RenderContext) mt : null;
+    }
+
+    /**
+     * @return A context of the same drawing, for another thread. It shares the label engine and the caches of
+     * this context.
+     */
+    @Override
+    public RenderContext copy() {
+        return new RenderContext(this);
+    }
+
+    /**
+     * The map is shared by the symbolizers that depend on the same field set, the
+     * {@link org.orbisgis.coremap.renderer.se.parameter.ValueReference} of these symbolizers keep their slot.
+     * @param fields Field names, the same instance as long as the style does not change
+     * @return The feature map of these fields
+     */
+    public FeatureMap getFeatureMap(Collection<String> fields) {
+        FeatureMap map = featureMaps.get(fields);
+        if (map == null) {
+            map = new FeatureMap(fields);
+            featureMaps.put(fields, map);
+        }
+        return map;
+    }
+    /**
+     * @return The shapes of the feature being drawn, shared by its symbolizers
+     */
+    public FeatureShapeCache getFeatureShapeCache() {
+        if (featureShapeCache == null) {
+            featureShapeCache = new FeatureShapeCache(this);
+        }
+        return featureShapeCache;
+    }
+
+    /**
+     * @return The decoder of WKB geometries into shapes, with the same generalization as
+     * {@link #getShape(com.vividsolutions.jts.geom.Geometry, boolean)}
+     */
+    public WKBShapeReader getWKBShapeReader() {
+        if (wkbShapeReader == null) {
+            wkbShapeReader = new WKBShapeReader(this);
+        }
+        return wkbShapeReader;
+    }
+
+    /**
+     * The labels are drawn after the geometries, they may also be kept with the image of their layer. They are
+     * drawn with this transformation, which does not reference the result sets of the drawing. The caches of
+     * rasterized symbols also draw with it, the symbols are then drawn as vectors.
+     * @return A plain copy of this transformation, without the state of the drawing
+     */
+    public MapTransform getPlainTransform() {
+        if (plainTransform == null) {
+            plainTransform = super.copy();
+        }
+        return plainTransform;
+    }
+
+    /**
+     * @return The engine that places the labels of the drawing, null if labels are drawn immediately
+     */
+    public LabelEngine getLabelEngine() {
+        return labelEngine;
+    }
+
+    /**
+     * @param labelEngine The engine that places the labels of the drawing, null to draw labels immediately
+     */
+    public void setLabelEngine(LabelEngine labelEngine) {
+        this.labelEngine = labelEngine;
+    }
+
+    /**
+     * @return The cache of rasterized point symbols, null if symbols are drawn as vectors
+     */
+    public SymbolAtlas getSymbolAtlas() {
+        return symbolAtlas;
+    }
+
+    /**
+     * @param symbolAtlas The cache of rasterized point symbols, null to draw symbols as vectors
+     */
+    public void setSymbolAtlas(SymbolAtlas symbolAtlas) {
+        this.symbolAtlas = symbolAtlas;
+    }
+
+    /**
+     * @return The cache of polygon fill textures, null if hatches are drawn as lines
+     */
+    public FillPaintCache getFillPaintCache() {
+        return fillPaintCache;
+    }
+
+    /**
+     * @param fillPaintCache The cache of polygon fill textures, null to draw hatches as lines
+     */
+    public void setFillPaintCache(FillPaintCache fillPaintCache) {
+        this.fillPaintCache = fillPaintCache;
+    }
+
+    /**
+     * @return The layer being drawn, null if unknown
+     */
+    public ILayer getLayer() {
+        return layer;
+    }
+
+    /**
+     * @param layer The layer being drawn
+     */
+    public void setLayer(ILayer layer) {
+        this.layer = layer;
+    }
+
+    /**
+     * @return The cache of the triangulated polygons of the dot maps, null to triangulate them on each drawing
+     */
+    public PolygonSamplerCache getPolygonSamplerCache() {
+        return polygonSamplerCache;
+    }
+
+    /**
+     * @param polygonSamplerCache The cache of the triangulated polygons of the dot maps, null to triangulate
+     *                            them on each drawing
+     */
+    public void setPolygonSamplerCache(PolygonSamplerCache polygonSamplerCache) {
+        this.polygonSamplerCache = polygonSamplerCache;
+    }
+}
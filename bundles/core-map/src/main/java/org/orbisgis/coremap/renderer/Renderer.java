@@ -36,30 +36,62 @@
  */
 package org.orbisgis.coremap.renderer;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.SpatialResultSet;
 import org.h2gis.utilities.SpatialResultSetMetaData;
+import org.h2gis.utilities.TableLocation;
 import org.orbisgis.commons.progress.NullProgressMonitor;
 import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.corejdbc.MetaData;
 import org.orbisgis.corejdbc.ReadRowSet;
+import org.orbisgis.corejdbc.common.LongUnion;
 import org.orbisgis.coremap.layerModel.ILayer;
 import org.orbisgis.coremap.layerModel.LayerException;
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.map.WKBShapeReader;
+import org.orbisgis.coremap.renderer.se.PointSymbolizer;
 import org.orbisgis.coremap.renderer.se.Rule;
+import org.orbisgis.coremap.renderer.se.ShapeSymbolizer;
 import org.orbisgis.coremap.renderer.se.Style;
 import org.orbisgis.coremap.renderer.se.Symbolizer;
 import org.orbisgis.coremap.renderer.se.VectorSymbolizer;
+import org.orbisgis.coremap.renderer.se.fill.FillPaintCache;
+import org.orbisgis.coremap.renderer.se.fill.PolygonSamplerCache;
+import org.orbisgis.coremap.renderer.se.graphic.SymbolAtlas;
+import org.orbisgis.coremap.renderer.se.label.LabelEngine;
 import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
+import org.orbisgis.coremap.renderer.se.parameter.color.Interpolate2Color;
 import org.orbisgis.coremap.renderer.se.visitors.FeaturesVisitor;
 import org.orbisgis.coremap.stream.GeoStream;
 import org.slf4j.*;
@@ -79,6 +111,54 @@ public abstract class Renderer {
         private static final Logger LOGGER = LoggerFactory.getLogger(Renderer.class);
         private static final I18n I18N = I18nFactory.getI18n(Renderer.class);
         private ResultSetProviderFactory rsProvider = null;
+        private int layerThreadCount = 1;
+        private boolean selectionOverlay = false;
+        private boolean layerSelection = false;
+        private double levelOfDetailTolerance = 0;
+        private int rowLimit = 0;
+        private boolean labelPlacement = false;
+        private SymbolAtlas symbolAtlas = null;
+        private FillPaintCache fillPaintCache = null;
+        private double densityThreshold = 0;
+        private int densityCellSize = DEFAULT_DENSITY_CELL_SIZE;
+        private Interpolate2Color densityRamp = null;
+        private double clusterDistance = 0;
+        private Set<String> clusterSumFields = Collections.emptySet();
+        private PointClusterCache pointClusterCache = null;
+        private LayerShapeCache layerShapeCache = null;
+        private PolygonSamplerCache polygonSamplerCache = null;
+        private FeatureCountCache featureCountCache = null;
+        // Lowest layer buffer not composited yet, shown by the progress image
+        private volatile LayerBuffer pendingBuffer = null;
+        /** Default width and height of the bins of the density mode, in pixels */
+        public static final int DEFAULT_DENSITY_CELL_SIZE = 4;
+        // Above this number of ranges the selection is filtered while reading rows
+        private static final int MAX_SELECTION_RANGES = 500;
+        /** Maximum number of layers drawn at the same time by all the renderers */
+        public static final int MAX_LAYER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+        // Idle workers are stopped after this delay, in seconds
+        private static final long LAYER_THREAD_KEEP_ALIVE = 60;
+        // The wait for a layer buffer checks the cancellation of the drawing at this interval, in milliseconds
+        private static final long CANCEL_CHECK_DELAY = 50;
+        // Shared by the renderers, a drawing submits at most layerThreadCount layers at once
+        private static final ExecutorService LAYER_EXECUTOR = createLayerExecutor();
+
+        private static ExecutorService createLayerExecutor() {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_LAYER_THREADS, MAX_LAYER_THREADS,
+                        LAYER_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                                private final AtomicInteger threadCount = new AtomicInteger();
+
+                                @Override
+                                public Thread newThread(Runnable runnable) {
+                                        Thread thread = new Thread(runnable, "Layer renderer " + threadCount.incrementAndGet());
+                                        thread.setDaemon(true);
+                                        return thread;
+                                }
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                return executor;
+        }
 
         /**
          * Change the way this renderer gather the table content of a layer.
@@ -88,6 +168,304 @@ public abstract class Renderer {
             this.rsProvider = rsProvider;
         }
 
+        /**
+         * Draw layers in parallel, each layer is rendered in its own buffer then the buffers are drawn in the
+         * layer order. Only effective if the renderer provides layer buffers, see {@link #createLayerBuffer}.
+         * @param layerThreadCount Maximum number of layers drawn at the same time, 1 to draw layers sequentially.
+         *                         The renderers share a pool of {@link #MAX_LAYER_THREADS} threads.
+         */
+        public void setLayerThreadCount(int layerThreadCount) {
+            this.layerThreadCount = Math.max(1, layerThreadCount);
+        }
+
+        /**
+         * @return Maximum number of layers drawn at the same time
+         */
+        public int getLayerThreadCount() {
+            return layerThreadCount;
+        }
+
+        /**
+         * When the selection is drawn in an overlay, the draw methods render all features as not selected. The
+         * selected features are drawn over the map by {@link #drawSelection(MapTransform, Graphics2D, ILayer, ProgressMonitor)}.
+         * @param selectionOverlay True to draw the selection in a separate pass
+         */
+        public void setSelectionOverlay(boolean selectionOverlay) {
+            this.selectionOverlay = selectionOverlay;
+        }
+
+        /**
+         * @return True if the selection is drawn in a separate pass
+         */
+        public boolean isSelectionOverlay() {
+            return selectionOverlay;
+        }
+
+        /**
+         * When the selection is drawn in an overlay, the draw methods may still draw the selected features of each
+         * layer right above the layer, so that the selection is covered by the layers above it. The layers are
+         * drawn, or taken from their cache, without the selection.
+         * @param layerSelection True to draw the selection of each layer after the layer
+         */
+        public void setLayerSelection(boolean layerSelection) {
+            this.layerSelection = layerSelection;
+        }
+
+        /**
+         * @return True if the draw methods draw the selection of each layer after the layer
+         */
+        public boolean isLayerSelection() {
+            return layerSelection;
+        }
+
+        /**
+         * Let the data source simplify the geometries before they are fetched. The tolerance is converted into
+         * map units using the resolution of the map.
+         * @param levelOfDetailTolerance Tolerance in pixels, 0 to fetch exact geometries
+         */
+        public void setLevelOfDetailTolerance(double levelOfDetailTolerance) {
+            this.levelOfDetailTolerance = levelOfDetailTolerance;
+        }
+
+        /**
+         * @return Simplification tolerance in pixels, 0 if exact geometries are fetched
+         */
+        public double getLevelOfDetailTolerance() {
+            return levelOfDetailTolerance;
+        }
+
+        /**
+         * Fetch only the first rows of each query, in order to draw a quick preview of the map.
+         * The data source may ignore this limit.
+         * @param rowLimit Maximum number of rows fetched by each query, 0 to fetch all rows
+         */
+        public void setRowLimit(int rowLimit) {
+            this.rowLimit = rowLimit;
+        }
+
+        /**
+         * @return Maximum number of rows fetched by each query, 0 if all rows are fetched
+         */
+        public int getRowLimit() {
+            return rowLimit;
+        }
+
+        /**
+         * Place the labels of each layer without overlap. Labels are drawn above the geometries of their layer,
+         * labels that overlap a previously placed label of the layer are not drawn.
+         * @param labelPlacement True to avoid overlapping labels, false to draw every label
+         * @see LabelEngine
+         */
+        public void setLabelPlacement(boolean labelPlacement) {
+            this.labelPlacement = labelPlacement;
+        }
+
+        /**
+         * @return True if overlapping labels are discarded
+         */
+        public boolean isLabelPlacement() {
+            return labelPlacement;
+        }
+
+        /**
+         * Draw point symbols from rasterized sprites. Only for raster outputs, the symbols are drawn on the
+         * nearest pixel.
+         * @param symbolAtlas Cache of the sprites, null to draw symbols as vectors
+         */
+        public void setSymbolAtlas(SymbolAtlas symbolAtlas) {
+            this.symbolAtlas = symbolAtlas;
+        }
+
+        /**
+         * @return Cache of the sprites of point symbols, null if symbols are drawn as vectors
+         */
+        public SymbolAtlas getSymbolAtlas() {
+            return symbolAtlas;
+        }
+
+        /**
+         * Fill polygons with cached textures. Only for raster outputs, hatches are rendered once for the whole
+         * image.
+         * @param fillPaintCache Cache of the textures, null to draw hatches as lines
+         */
+        public void setFillPaintCache(FillPaintCache fillPaintCache) {
+            this.fillPaintCache = fillPaintCache;
+        }
+
+        /**
+         * @return Cache of the polygon fill textures, null if hatches are drawn as lines
+         */
+        public FillPaintCache getFillPaintCache() {
+            return fillPaintCache;
+        }
+
+        /**
+         * Draw point layers as a density grid when they have more features in the drawn extent than the given
+         * number of features per pixel. Only the styles that draw nothing but point symbols are aggregated.
+         * The selection is not rendered in the density grid, it is drawn by the selection pass.
+         * @param densityThreshold Number of features per pixel, 0 to always draw the symbols
+         */
+        public void setDensityThreshold(double densityThreshold) {
+            this.densityThreshold = densityThreshold;
+        }
+
+        /**
+         * @return Number of features per pixel above which point layers are drawn as a density grid, 0 if disabled
+         */
+        public double getDensityThreshold() {
+            return densityThreshold;
+        }
+
+        /**
+         * @param densityCellSize Width and height of the bins of the density grid, in pixels
+         */
+        public void setDensityCellSize(int densityCellSize) {
+            this.densityCellSize = densityCellSize;
+        }
+
+        /**
+         * @return Width and height of the bins of the density grid, in pixels
+         */
+        public int getDensityCellSize() {
+            return densityCellSize;
+        }
+
+        /**
+         * @param densityRamp Colors of the density bins, its lookup value reads {@link DensityGrid#DENSITY_FIELD}.
+         *                    Null to use {@link DensityGrid#createDefaultRamp()}
+         */
+        public void setDensityRamp(Interpolate2Color densityRamp) {
+            this.densityRamp = densityRamp;
+        }
+
+        /**
+         * @return Colors of the density bins, null if the default ramp is used
+         */
+        public Interpolate2Color getDensityRamp() {
+            return densityRamp;
+        }
+
+        /**
+         * Merge the points of a layer closer than the given distance into one symbol. Only the styles that draw
+         * nothing but point symbols on the default geometry are clustered. The symbols are drawn with the
+         * values of the cluster: {@link PointClusters#COUNT_FIELD}, the sums of the fields given to
+         * {@link #setClusterSumFields(Set)} and the values of the first point for the other fields.
+         * @param clusterDistance Distance in pixels, 0 to draw each point
+         */
+        public void setClusterDistance(double clusterDistance) {
+            this.clusterDistance = clusterDistance;
+        }
+
+        /**
+         * @return Distance in pixels under which points are merged, 0 if points are not clustered
+         */
+        public double getClusterDistance() {
+            return clusterDistance;
+        }
+
+        /**
+         * @param clusterSumFields Numeric fields whose values are summed in a cluster, like counts or populations
+         */
+        public void setClusterSumFields(Set<String> clusterSumFields) {
+            this.clusterSumFields = new HashSet<String>(clusterSumFields);
+        }
+
+        /**
+         * @return Numeric fields whose values are summed in a cluster
+         */
+        public Set<String> getClusterSumFields() {
+            return Collections.unmodifiableSet(clusterSumFields);
+        }
+
+        /**
+         * @param pointClusterCache Keep the fetched points of the clustered layers, null to fetch them on each
+         *                          drawing
+         */
+        public void setPointClusterCache(PointClusterCache pointClusterCache) {
+            this.pointClusterCache = pointClusterCache;
+        }
+
+        /**
+         * @return The cache of the points of the clustered layers, or null
+         */
+        public PointClusterCache getPointClusterCache() {
+            return pointClusterCache;
+        }
+
+        /**
+         * @param layerShapeCache Keep the screen shapes of the drawn rows, a change of style does not decode the
+         *                        geometries again. Null to compute the shapes on each drawing.
+         */
+        public void setLayerShapeCache(LayerShapeCache layerShapeCache) {
+            this.layerShapeCache = layerShapeCache;
+        }
+
+        /**
+         * @return The cache of the screen shapes of the drawn rows, or null
+         */
+        public LayerShapeCache getLayerShapeCache() {
+            return layerShapeCache;
+        }
+
+        /**
+         * @param polygonSamplerCache Keep the triangulated polygons of the dot maps from one drawing to the next,
+         *                            null to triangulate them on each drawing
+         */
+        public void setPolygonSamplerCache(PolygonSamplerCache polygonSamplerCache) {
+            this.polygonSamplerCache = polygonSamplerCache;
+        }
+
+        /**
+         * @return The cache of the triangulated polygons of the dot maps, or null
+         */
+        public PolygonSamplerCache getPolygonSamplerCache() {
+            return polygonSamplerCache;
+        }
+
+        /**
+         * @param featureCountCache Keep the number of rows of the tables checked by the density mode, null to
+         *                          count them on each drawing
+         */
+        public void setFeatureCountCache(FeatureCountCache featureCountCache) {
+            this.featureCountCache = featureCountCache;
+        }
+
+        /**
+         * @return The cache of the number of rows of the tables, or null
+         */
+        public FeatureCountCache getFeatureCountCache() {
+            return featureCountCache;
+        }
+
+        /**
+         * @return The lowest layer buffer of the drawing that is not composited yet, null if the layers are not
+         * drawn in buffers or if this buffer is already drawn
+         */
+        protected LayerBuffer getPendingBuffer() {
+            return pendingBuffer;
+        }
+
+        /**
+         * Create the offscreen target of a layer drawn by a worker thread. The returned buffer holds its own
+         * renderer, as renderer instances are not thread safe.
+         * @param layer Layer to draw
+         * @param mt Drawing parameters
+         * @param width Width of the generated image
+         * @param height Height of the generated image
+         * @return The layer buffer or null if this renderer does not support parallel drawing.
+         */
+        protected LayerBuffer createLayerBuffer(ILayer layer, MapTransform mt, int width, int height) {
+            return null;
+        }
+
+        /**
+         * @return True if each layer must be drawn in its own buffer, even without parallel drawing. Used when
+         * layer buffers are reused between two drawings.
+         */
+        protected boolean isLayerBufferRequired() {
+            return false;
+        }
+
     /**
          * This method shall returns a graphics2D for each symbolizers in the list.
          * This is useful to make the diff bw pdf purpose and image purpose
@@ -109,146 +487,1085 @@ public abstract class Renderer {
         protected abstract void releaseGraphics2D(Graphics2D g2);
 
         /**
-         * Is called once the layer has been rendered
-         * @param g2 the graphics the layer has to be drawn on
+         * The renderer takes this lock while a symbolizer draws on the graphics given by
+         * {@link #getGraphics2D(Symbolizer)}, then releases it in the same scope.
+         * @return The lock of an output shared by the layers drawn in parallel, null if drawing is not locked
+         */
+        protected Lock getOutputLock() {
+                return null;
+        }
+
+        /**
+         * Is called once the layer has been rendered
+         * @param g2 the graphics the layer has to be drawn on
+         */
+        protected abstract void disposeLayer(Graphics2D g2);
+
+        /**
+         * Called before each feature
+         * @param id index of the feature
+         * @param rs Result set
+         */
+        protected abstract void beginFeature(long id, ResultSet rs);
+
+        /**
+         * Called after each feature
+         * @param id index of the feature
+         * @param rs Result set
+         */
+        protected abstract void endFeature(long id, ResultSet rs);
+
+        /**
+         * Called before each layer
+         * @param name the name of the layer
+         */
+        protected abstract void beginLayer(String name);
+
+        /**
+         * Called after each layer
+         * @param name the name of the layer
+         */
+        protected abstract void endLayer(String name);
+
+        /**
+         * Draws the content of the Vector Layer
+         *
+         * @param g2
+         *            Object to draw to
+         * @param layer
+         *            Source of information
+         * @param pm
+         *            Progress monitor to report the status of the drawing
+         * @return the number of rendered objects
+         * @throws SQLException The layer is not fully drawn
+         */
+        public int drawVector(Graphics2D g2, MapTransform transform, ILayer layer,
+                ProgressMonitor pm) throws SQLException {
+                // Layers drawn by draw() are already in a context
+                RenderContext mt = RenderContext.of(transform);
+                if (mt == null) {
+                        mt = createContext(transform);
+                }
+                Envelope extent = mt.getAdjustedExtent();
+                int layerCount = 0;
+                long sourceVertexCount = mt.getSourceVertexCount();
+                long drawnVertexCount = mt.getDrawnVertexCount();
+                List<Style> styles = getStyles(layer);
+                LabelEngine labelEngine = null;
+                if(labelPlacement && mt.getLabelEngine() == null) {
+                        // Drawn alone, the labels are drawn once all the geometries of the layer are drawn
+                        labelEngine = new LabelEngine(mt.getWidth(), mt.getHeight());
+                        mt.setLabelEngine(labelEngine);
+                }
+                try {
+                        for(Style style : styles){
+                                layerCount +=drawStyle(style, g2, mt, layer, pm, extent, false);
+                        }
+                } finally {
+                        if(labelEngine != null) {
+                                mt.setLabelEngine(null);
+                                if(!pm.isCancelled()) {
+                                        drawLabels(g2, labelEngine);
+                                }
+                        }
+                }
+                if(LOGGER.isDebugEnabled()) {
+                        LOGGER.debug(I18N.tr("Layer {0}: {1} features, {2} of {3} vertices drawn after generalization",
+                                layer.getName(), layerCount, mt.getDrawnVertexCount() - drawnVertexCount,
+                                mt.getSourceVertexCount() - sourceVertexCount));
+                }
+                return layerCount;
+        }
+
+        /**
+         * Place and draw the labels of the engine, on top of the drawn layers.
+         */
+        private void drawLabels(Graphics2D g2, LabelEngine labelEngine) {
+                Lock lock = getOutputLock();
+                if (lock != null) {
+                        lock.lock();
+                }
+                try {
+                        labelEngine.draw(g2);
+                } finally {
+                        if (lock != null) {
+                                lock.unlock();
+                        }
+                }
+                if(LOGGER.isDebugEnabled()) {
+                        LOGGER.debug(I18N.tr("{0} labels drawn, {1} overlapping labels discarded",
+                                labelEngine.getPlacedCount(), labelEngine.getRejectedCount()));
+                }
+        }
+
+        /**
+         * Draws only the selected features of the layers, as selected. The features are fetched using their
+         * primary key.
+         *
+         * @param mt
+         *            Drawing parameters
+         * @param g2
+         *            Object to draw to
+         * @param lay
+         *            Source of information
+         * @param progressMonitor
+         *            Progress monitor to report the status of the drawing
+         */
+        public void drawSelection(MapTransform mt, Graphics2D g2, ILayer lay, ProgressMonitor progressMonitor) {
+                drawSelectedLayers(createContext(mt), g2, lay, progressMonitor);
+        }
+
+        private void drawSelectedLayers(MapTransform mt, Graphics2D g2, ILayer lay, ProgressMonitor progressMonitor) {
+                g2.setRenderingHints(mt.getRenderingHints());
+                Envelope extent = mt.getAdjustedExtent();
+                ILayer[] layers;
+                if (lay.acceptsChilds()) {
+                        layers = lay.getLayersRecursively();
+                } else {
+                        layers = new ILayer[]{lay};
+                }
+                ProgressMonitor pm;
+                if (progressMonitor == null) {
+                    pm = new NullProgressMonitor();
+                } else {
+                    pm = progressMonitor.startTask(layers.length);
+                }
+                for (int i = layers.length - 1; i >= 0 && !pm.isCancelled(); i--) {
+                        ILayer layer = layers[i];
+                        if (layer.isVisible() && extent.intersects(layer.getEnvelope())) {
+                                drawLayerSelection(mt, g2, layer, pm);
+                        }
+                        pm.endTask();
+                }
+        }
+
+        /**
+         * Draws the selected features of one layer.
+         */
+        private void drawLayerSelection(MapTransform mt, Graphics2D g2, ILayer layer, ProgressMonitor pm) {
+                try {
+                        if (layer.isVectorial() && !layer.getSelection().isEmpty()) {
+                                for (Style style : getStyles(layer)) {
+                                        drawStyle(style, g2, mt, layer, pm, mt.getAdjustedExtent(), true);
+                                }
+                        }
+                } catch (SQLException | LayerException e) {
+                        LOGGER.error(I18N.tr("Layer {0} not drawn",layer.getName()), e);
+                }
+        }
+
+        /**
+         * Draws the selected features into the image of the map transform.
+         * @see #drawSelection(MapTransform, Graphics2D, ILayer, ProgressMonitor)
+         */
+        public void drawSelection(MapTransform mt, ILayer layer, ProgressMonitor pm) {
+                Graphics2D g2 = mt.getImage().createGraphics();
+                drawSelection(mt, g2, layer, pm);
+                g2.dispose();
+        }
+
+        private int drawStyle(Style style, Graphics2D g2,MapTransform mt, ILayer layer,
+                              ProgressMonitor pm, Envelope extent, boolean selectionPass) throws SQLException {
+            int layerCount = 0;
+            RenderContext context = RenderContext.of(mt);
+            if (context != null) {
+                context.setLayer(layer);
+            }
+            LinkedList<Symbolizer> symbs = new LinkedList<Symbolizer>();
+            ResultSetProviderFactory layerDataFactory = rsProvider;
+            if(layerDataFactory == null) {
+                if(layer.getDataManager() != null && layer.getDataManager().getDataSource() != null) {
+                    layerDataFactory = new DefaultResultSetProviderFactory();
+                } else {
+                    throw new SQLException("There is neither a ResultSetProviderFactory instance nor available DataSource in the vectorial layer");
+                }
+            }
+            try {
+                // i.e. TextSymbolizer are always drawn above all other layer !! Should now be handle with symbolizer level
+                // Standard rules (with filter or no filter but not with elsefilter)
+                LinkedList<Rule> rList = new LinkedList<Rule>();
+                // Rule with ElseFilter
+                LinkedList<Rule> fRList = new LinkedList<Rule>();
+                // fetch symbolizers and rules
+                style.getSymbolizers(mt, symbs, rList, fRList);
+                // Create new dataSource with only feature in current extent
+                Set<Long> selectedRows = layer.getSelection();
+                // Only selected features are fetched when drawing the selection overlay
+                LongUnion selection = selectionPass ? new LongUnion(selectedRows) : null;
+                if(selectionOverlay && !selectionPass) {
+                    selectedRows = Collections.emptySet();
+                }
+                // And now, features will be rendered
+                // Get a graphics for each symbolizer
+                initGraphics2D(symbs, g2, mt);
+                // Rules and their SQL filter, ElseFilter rules draw rows not accepted by the standard rules
+                List<Rule> rules = new ArrayList<Rule>(rList);
+                List<String> filters = new ArrayList<String>();
+                boolean filtered = false;
+                boolean drawFallback = !fRList.isEmpty();
+                for (Rule r : rList) {
+                    String filter = getFilter(r);
+                    filters.add(filter);
+                    if(filter == null) {
+                        // Every row is accepted by this rule, there is nothing left for ElseFilter rules
+                        drawFallback = false;
+                    } else {
+                        filtered = true;
+                    }
+                }
+                if(drawFallback) {
+                    String elseFilter = getElseFilter(rList);
+                    for (Rule r : fRList) {
+                        rules.add(r);
+                        filters.add(elseFilter);
+                    }
+                    filtered |= elseFilter != null;
+                }
+                // Without filters in the query, each rule draws all the rows from its own query
+                boolean filterSupported = !filtered || isFilterSupported(layerDataFactory, layer);
+                if(!filterSupported && rules.size() > rList.size()) {
+                    // The rows rejected by the standard rules cannot be told apart, ElseFilter rules would draw
+                    // every row over the standard rules
+                    rules = rules.subList(0, rList.size());
+                    filters = filters.subList(0, rList.size());
+                }
+                boolean singleQuery = !filtered || (filterSupported &&
+                        filters.size() <= ResultSetProviderFactory.FilteredResultSetProvider.MAX_FILTER_COUNT);
+                // The rows of a preview are sampled with the same stride by all the queries of the style
+                long sampleStride = rowLimit > 0 ? getSampleStride(layer, extent) : 1;
+                if(!selectionPass && densityThreshold > 0 && isPointOnly(rules) &&
+                        estimateFeatureCount(layer, extent) > densityThreshold * mt.getWidth() * mt.getHeight()) {
+                    // Too many points to be readable, they are aggregated in screen bins
+                    ProgressMonitor rulesProgress = pm.startTask(1);
+                    // The grid counts the rows accepted by at least one rule, whatever the number of rules.
+                    // Without filters in the query, the rules draw all the rows.
+                    layerCount += drawDensity(layerDataFactory, rules,
+                            filtered && filterSupported ? orFilter(filters) : Collections.<String>emptyList(),
+                            layer, style.getName(), mt, rulesProgress, extent, sampleStride);
+                    rulesProgress.endTask();
+                } else if(!selectionPass && clusterDistance > 0 && mt.getWidth() > 0 && isClusterable(rules) &&
+                        singleQuery) {
+                    // Close points are merged, all the rules are drawn from one fetch
+                    ProgressMonitor rulesProgress = pm.startTask(1);
+                    layerCount += drawClusters(layerDataFactory, rules,
+                            filtered ? filters : Collections.<String>emptyList(), layer, g2, mt, rulesProgress,
+                            extent, selectedRows, sampleStride);
+                    rulesProgress.endTask();
+                } else if(isSingleScanSupported() && rules.size() > 1 && singleQuery) {
+                    // All rules share the same query, rows are sent to each matching rule in turn
+                    ProgressMonitor rulesProgress = pm.startTask(1);
+                    layerCount += drawRules(layerDataFactory, rules,
+                            filtered ? filters : Collections.<String>emptyList(), layer, style.getName(), g2, mt,
+                            rulesProgress, extent, selectedRows, selection, sampleStride);
+                    rulesProgress.endTask();
+                } else {
+                    ProgressMonitor rulesProgress = pm.startTask(rules.size());
+                    for (int i = 0; i < rules.size(); i++) {
+                        Rule r = rules.get(i);
+                        String filter = filterSupported ? filters.get(i) : null;
+                        layerCount += drawRules(layerDataFactory, Collections.singletonList(r),
+                                filter == null ? Collections.<String>emptyList() : Collections.singletonList(filter),
+                                layer, r.getName(), g2, mt, rulesProgress, extent, selectedRows, selection,
+                                sampleStride);
+                        rulesProgress.endTask();
+                    }
+                }
+                disposeLayer(g2);
+            } catch (ParameterException | IOException ex) {
+                // The style is not fully drawn, the layer is not drawn
+                throw new SQLException(I18N.tr("Style {0} of the layer {1} cannot be drawn", style.getName(),
+                        layer.getName()), ex);
+            }
+            return layerCount;
+        }
+
+        /**
+         * Fetch the features of the layer once and draw them with all the provided rules.
+         * The fetched columns are the union of the fields used by the rules. For each row, the matching rules
+         * are processed in the given order.
+         * @param layerDataFactory Data source of the layer
+         * @param rules Rules to draw, in drawing order
+         * @param filters Empty if all rules accept every row, or one SQL filter for each rule
+         * @param layer Layer to draw
+         * @param taskName Name displayed in the progress monitor
+         * @param g2 Graphics the layer is drawn on
+         * @param mt Drawing parameters
+         * @param rulesProgress Progress monitor
+         * @param extent Extent to fetch
+         * @param selectedRows Selected row identifiers
+         * @param selection Draw only these rows, as selected. Null to draw all rows.
+         * @param sampleStride Sample stride of a preview, see {@link #getSampleStride(ILayer, Envelope)}
+         * @return the number of rendered objects
+         * @throws SQLException The rows cannot be read, unless the drawing is cancelled
+         */
+        private int drawRules(ResultSetProviderFactory layerDataFactory, List<Rule> rules, List<String> filters, ILayer layer,
+                              String taskName, Graphics2D g2, MapTransform mt, ProgressMonitor rulesProgress,
+                              Envelope extent, Set<Long> selectedRows, LongUnion selection,
+                              long sampleStride) throws ParameterException, IOException, SQLException {
+            int layerCount = 0;
+            Set<String> fields = new HashSet<String>();
+            for (Rule r : rules) {
+                beginLayer(r.getName());
+                FeaturesVisitor fv = new FeaturesVisitor();
+                fv.visitSymbolizerNode(r);
+                fields.addAll(fv.getResult());
+            }
+            // Shapes of the rows drawn with the same transformation, only the style has changed since.
+            // They are drawn again only when no symbolizer needs the geometry.
+            // A preview or the selection does not draw all the rows.
+            LayerShapeCache.LayerShapes retainedShapes = layerShapeCache != null && isShapeOnly(rules) &&
+                    selection == null && rowLimit == 0 ?
+                    layerShapeCache.get(layer, mt, levelOfDetailTolerance) : null;
+            LayerShapeCache.RowRecorder recorder = null;
+            try {
+                RetainedRowSet retainedRows = retainedShapes != null ? retainedShapes.getRows(fields, filters) : null;
+                if (retainedRows != null) {
+                    // The last complete read holds the fields of the style, the rows are not queried
+                    try(SpatialResultSet rs = retainedRows) {
+                        int maskColumn = filters.size() > 1 ?
+                                rs.findColumn(ResultSetProviderFactory.FilteredResultSetProvider.FILTER_MASK_FIELD) : -1;
+                        layerCount = drawRows(rs, rs.findColumn(retainedRows.getPkName()), maskColumn, -1, null,
+                                rules, layer, taskName, mt, rulesProgress, extent, selectedRows, null, false,
+                                retainedShapes, null);
+                    }
+                    return layerCount;
+                }
+                try(ResultSetProviderFactory.ResultSetProvider resultSetProvider = layerDataFactory.getResultSetProvider(layer, rulesProgress)) {
+                    if(levelOfDetailTolerance > 0 && mt.getWidth() > 0) {
+                        // Map units by pixel
+                        double resolution = mt.getAdjustedExtent().getWidth() / mt.getWidth();
+                        setSimplificationTolerance(resultSetProvider, levelOfDetailTolerance * resolution);
+                    }
+                    setRowLimit(resultSetProvider, rowLimit, sampleStride);
+                    List<String> queryFilters = filters;
+                    boolean filterSelectedRows = false;
+                    if(selection != null) {
+                        String selectionFilter =
+                                resultSetProvider instanceof ResultSetProviderFactory.FilteredResultSetProvider ?
+                                getSelectionFilter(resultSetProvider.getPkName(), selection) : null;
+                        if(selectionFilter == null) {
+                            // Too many ranges, the selection is checked for each row
+                            filterSelectedRows = true;
+                        } else {
+                            queryFilters = andFilter(filters, selectionFilter);
+                        }
+                    }
+                    try(SpatialResultSet rs = execute(resultSetProvider, rulesProgress, extent, fields, queryFilters)) {
+                        int pkColumn = rs.findColumn(resultSetProvider.getPkName());
+                        // The evaluation of filters tells which rules draw the row
+                        int maskColumn = queryFilters.size() > 1 ?
+                                rs.findColumn(ResultSetProviderFactory.FilteredResultSetProvider.FILTER_MASK_FIELD) : -1;
+                        ResultSetMetaData metaData = rs.getMetaData();
+                        int fieldID = metaData.unwrap(SpatialResultSetMetaData.class).getFirstGeometryFieldIndex();
+                        // Decode WKB into shapes when no symbolizer needs the JTS geometry,
+                        // the cached row set already holds JTS geometries
+                        RenderContext context = RenderContext.of(mt);
+                        boolean shapeOnly = fieldID >= 0 && isShapeOnly(rules);
+                        WKBShapeReader shapeReader = context != null && shapeOnly && !(rs instanceof ReadRowSet) ?
+                                context.getWKBShapeReader() : null;
+                        if (retainedShapes != null && fieldID >= 0) {
+                            // Keep the values of the rows, a style that reads the same fields is drawn from them
+                            List<String> columns = new ArrayList<String>(metaData.getColumnCount());
+                            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                                columns.add(metaData.getColumnLabel(i));
+                            }
+                            recorder = retainedShapes.recordRows(resultSetProvider.getPkName(), columns, queryFilters);
+                        }
+                        layerCount = drawRows(rs, pkColumn, maskColumn, fieldID, shapeReader, rules, layer, taskName,
+                                mt, rulesProgress, extent, selectedRows, selection, filterSelectedRows,
+                                fieldID >= 0 ? retainedShapes : null, recorder);
+                        if (recorder != null && !rulesProgress.isCancelled()) {
+                            recorder.commit();
+                        }
+                    }
+                }
+            } catch (SQLException ex) {
+                // The rows drawn so far are not the layer
+                if(!rulesProgress.isCancelled()) {
+                    throw ex;
+                }
+            } finally {
+                if (recorder != null) {
+                    recorder.discard();
+                }
+                for (Rule r : rules) {
+                    endLayer(r.getName());
+                }
+            }
+            return layerCount;
+        }
+
+        /**
+         * Draw the rows of a result set with the rules.
+         * @param rs Rows to draw
+         * @param pkColumn Column of the primary key
+         * @param maskColumn Column of the filter mask, -1 if all rules draw every row
+         * @param fieldID Column of the geometry, -1 if the rows are drawn from the retained shapes only
+         * @param shapeReader Decoder of the WKB geometries, null to read JTS geometries
+         * @param rules Rules to draw, in drawing order
+         * @param layer Layer to draw
+         * @param taskName Name displayed in the progress monitor
+         * @param mt Drawing parameters
+         * @param rulesProgress Progress monitor
+         * @param extent Extent to fetch
+         * @param selectedRows Selected row identifiers
+         * @param selection Draw only these rows, as selected. Null to draw all rows.
+         * @param filterSelectedRows True if the selection is not filtered by the query
+         * @param retainedShapes Shapes of the rows drawn with the same transformation, null if not kept
+         * @param recorder Recorder of the drawn rows, null if the rows are not kept
+         * @return the number of rendered objects
+         */
+        private int drawRows(SpatialResultSet rs, int pkColumn, int maskColumn, int fieldID,
+                             WKBShapeReader shapeReader, List<Rule> rules, ILayer layer, String taskName,
+                             MapTransform mt, ProgressMonitor rulesProgress, Envelope extent, Set<Long> selectedRows,
+                             LongUnion selection, boolean filterSelectedRows,
+                             LayerShapeCache.LayerShapes retainedShapes, LayerShapeCache.RowRecorder recorder)
+                throws ParameterException, IOException, SQLException {
+            int layerCount = 0;
+            FeatureShapeCache featureShapes = FeatureShapeCache.of(mt);
+            int columnCount = recorder != null ? rs.getMetaData().getColumnCount() : 0;
+            ProgressMonitor rowSetProgress;
+            // Read row count for progress monitor
+            if(rs instanceof ReadRowSet) {
+                rowSetProgress = rulesProgress.startTask("Drawing " + layer.getName() + " (Rule " + taskName + ")", ((ReadRowSet) rs).getRowCount());
+            } else {
+                rowSetProgress = rulesProgress.startTask("Drawing " + layer.getName() + " (Rule " + taskName + ")", 1);
+            }
+            while (rs.next()) {
+                if (rulesProgress.isCancelled()) {
+                    break;
+                }
+                Geometry theGeom = null;
+                Shape shape = null;
+                Envelope geomEnvelope = null;
+                long row = rs.getLong(pkColumn);
+                // A retained row has been drawn in this extent
+                Shape retainedShape = retainedShapes != null ? retainedShapes.get(row) : null;
+                if (retainedShape != null) {
+                    shape = retainedShape;
+                } else if (shapeReader != null) {
+                    byte[] wkb = rs.getBytes(fieldID);
+                    if (wkb != null && !WKBShapeReader.isWKB(wkb)) {
+                        // The driver does not provide WKB
+                        shapeReader = null;
+                    } else if (wkb != null && shapeReader.read(wkb)) {
+                        shape = shapeReader.getPath();
+                        geomEnvelope = shapeReader.getEnvelope();
+                    }
+                }
+                // If there is only one geometry, it is fetched now, otherwise, it up to symbolizers
+                // to retrieve the correct geometry (through the Geometry attribute)
+                if (shape == null && fieldID >= 0) {
+                    theGeom = rs.getGeometry(fieldID);
+                    geomEnvelope = theGeom == null ? null : theGeom.getEnvelopeInternal();
+                }
+                if (shape == null && fieldID < 0 && retainedShapes != null) {
+                    // The row has been kept without its geometry, it is drawn only from its retained shape
+                    rowSetProgress.endTask();
+                    continue;
+                }
+                // Do not display the geometry when the envelope
+                //doesn't intersect the current mapcontext area.
+                if ((geomEnvelope == null || geomEnvelope.intersects(extent)) &&
+                        (!filterSelectedRows || selection.contains(row))) {
+                    boolean selected = selection != null || selectedRows.contains(row);
+
+                    long ruleMask = maskColumn > 0 ? rs.getLong(maskColumn) : -1L;
+
+                    beginFeature(row, rs);
+                    // The symbolizers of the row share the shapes of its geometry
+                    featureShapes.beginFeature(theGeom, shape);
+                    boolean drawn = false;
+                    for (int i = 0; i < rules.size(); i++) {
+                        if ((ruleMask & (1L << i)) == 0) {
+                            continue;
+                        }
+                        List<Symbolizer> sl = rules.get(i).getCompositeSymbolizer().getSymbolizerList();
+                        for (Symbolizer s : sl) {
+                            drawn = true;
+                            if (shape != null) {
+                                drawShape((ShapeSymbolizer) s, shape, rs, row, selected, mt);
+                            } else {
+                                drawFeature(s, theGeom, rs, row, extent, selected, mt);
+                            }
+                        }
+                    }
+                    if (recorder != null && drawn) {
+                        // The values of the columns, without the geometries
+                        Object[] values = new Object[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            Object value = i + 1 == fieldID ? null : rs.getObject(i + 1);
+                            values[i] = value instanceof Geometry ? null : value;
+                        }
+                        recorder.add(row, featureShapes.getGeneralizedShape(), values);
+                    } else if (retainedShapes != null && retainedShape == null) {
+                        retainedShapes.put(row, featureShapes.getGeneralizedShape());
+                    }
+                    featureShapes.endFeature();
+                    endFeature(row, rs);
+                    layerCount++;
+                }
+                rowSetProgress.endTask();
+            }
+            return layerCount;
+        }
+
+        /**
+         * Aggregate the features of the layer in a {@link DensityGrid} in a single pass, then draw the grid.
+         * @param layerDataFactory Data source of the layer
+         * @param rules Rules of the style, the grid is drawn on the graphics of their first symbolizer
+         * @param filters Empty to count every row, or the SQL filters of the rules
+         * @param layer Layer to draw
+         * @param taskName Name displayed in the progress monitor
+         * @param mt Drawing parameters
+         * @param rulesProgress Progress monitor
+         * @param extent Extent to fetch
+         * @param sampleStride Sample stride of a preview, see {@link #getSampleStride(ILayer, Envelope)}
+         * @return the number of aggregated features
+         * @throws SQLException The rows cannot be read, unless the drawing is cancelled
+         */
+        private int drawDensity(ResultSetProviderFactory layerDataFactory, List<Rule> rules, List<String> filters,
+                                ILayer layer, String taskName, MapTransform mt, ProgressMonitor rulesProgress,
+                                Envelope extent, long sampleStride) throws ParameterException, SQLException {
+            int layerCount = 0;
+            DensityGrid grid = new DensityGrid(mt.getWidth(), mt.getHeight(), densityCellSize);
+            AffineTransform at = mt.getAffineTransform();
+            Point2D.Double point = new Point2D.Double();
+            Symbolizer target = rules.get(0).getCompositeSymbolizer().getSymbolizerList().get(0);
+            beginLayer(taskName);
+            try(ResultSetProviderFactory.ResultSetProvider resultSetProvider = layerDataFactory.getResultSetProvider(layer, rulesProgress)) {
+                setRowLimit(resultSetProvider, rowLimit, sampleStride);
+                try(SpatialResultSet rs = execute(resultSetProvider, rulesProgress, extent, Collections.<String>emptySet(), filters)) {
+                    int fieldID = rs.getMetaData().unwrap(SpatialResultSetMetaData.class).getFirstGeometryFieldIndex();
+                    while (fieldID >= 0 && rs.next()) {
+                        if (rulesProgress.isCancelled()) {
+                            break;
+                        }
+                        Geometry geom = rs.getGeometry(fieldID);
+                        if (geom == null || geom.isEmpty()) {
+                            continue;
+                        }
+                        if (geom.getDimension() == 0) {
+                            // Each point of a multi point is counted
+                            for (Coordinate coordinate : geom.getCoordinates()) {
+                                point.setLocation(coordinate.x, coordinate.y);
+                                at.transform(point, point);
+                                grid.add(point.x, point.y);
+                            }
+                        } else {
+                            Envelope envelope = geom.getEnvelopeInternal();
+                            point.setLocation(envelope.centre().x, envelope.centre().y);
+                            at.transform(point, point);
+                            grid.add(point.x, point.y);
+                        }
+                        layerCount++;
+                    }
+                }
+                if (!rulesProgress.isCancelled()) {
+                    Lock lock = getOutputLock();
+                    if (lock != null) {
+                        lock.lock();
+                    }
+                    try {
+                        Graphics2D g2S = getGraphics2D(target);
+                        try {
+                            grid.draw(g2S, densityRamp != null ? densityRamp : DensityGrid.createDefaultRamp());
+                        } finally {
+                            releaseGraphics2D(g2S);
+                        }
+                    } finally {
+                        if (lock != null) {
+                            lock.unlock();
+                        }
+                    }
+                }
+            } catch (SQLException ex) {
+                if(!rulesProgress.isCancelled()) {
+                    throw ex;
+                }
+            } finally {
+                endLayer(taskName);
+            }
+            if(LOGGER.isDebugEnabled()) {
+                LOGGER.debug(I18N.tr("Layer {0}: {1} features drawn as a density grid", layer.getName(), layerCount));
+            }
+            return layerCount;
+        }
+
+        /**
+         * Draw the clusters of the points of the layer. The points are fetched in the drawn extent buffered by
+         * twice the cluster distance, so that the clusters on the border hold their points outside the extent.
+         * They are taken from the cluster cache when the buffered extent is within the extent of the cached
+         * points, otherwise they are fetched.
+         * @param layerDataFactory Data source of the layer
+         * @param rules Rules to draw, in drawing order
+         * @param filters Empty if all rules accept every row, or one SQL filter for each rule
+         * @param layer Layer to draw
+         * @param g2 Graphics the layer is drawn on
+         * @param mt Drawing parameters
+         * @param rulesProgress Progress monitor
+         * @param extent Drawn extent
+         * @param selectedRows Selected row identifiers
+         * @param sampleStride Sample stride of a preview, see {@link #getSampleStride(ILayer, Envelope)}
+         * @return the number of drawn clusters
+         * @throws SQLException The points cannot be read, unless the drawing is cancelled
+         */
+        private int drawClusters(ResultSetProviderFactory layerDataFactory, List<Rule> rules, List<String> filters,
+                                 ILayer layer, Graphics2D g2, MapTransform mt, ProgressMonitor rulesProgress,
+                                 Envelope extent, Set<Long> selectedRows, long sampleStride)
+                throws ParameterException, IOException, SQLException {
+            int layerCount = 0;
+            Set<String> fields = new HashSet<String>();
+            for (Rule r : rules) {
+                FeaturesVisitor fv = new FeaturesVisitor();
+                fv.visitSymbolizerNode(r);
+                fields.addAll(fv.getResult());
+            }
+            // The count is computed, it is not a column of the table
+            fields.remove(PointClusters.COUNT_FIELD);
+            // Distance in map units
+            double distance = clusterDistance * mt.getAdjustedExtent().getWidth() / mt.getWidth();
+            Envelope fetchedExtent = new Envelope(extent);
+            fetchedExtent.expandBy(2 * distance);
+            PointClusterCache cache = pointClusterCache;
+            PointClusters points = cache != null ? cache.get(layer, fields, filters, fetchedExtent) : null;
+            if (points == null) {
+                long version = cache != null ? cache.getVersion(layer) : 0;
+                try {
+                    points = fetchPoints(layerDataFactory, fields, filters, layer, rulesProgress, fetchedExtent,
+                            rowLimit, sampleStride);
+                } catch (SQLException ex) {
+                    if(!rulesProgress.isCancelled()) {
+                        throw ex;
+                    }
+                }
+                if (points == null || rulesProgress.isCancelled()) {
+                    return 0;
+                }
+                // The points of a preview are not all the points of the extent
+                if (cache != null && rowLimit == 0) {
+                    cache.put(layer, version, fields, filters, points);
+                }
+            }
+            // Symbols of clusters just outside the extent may overlap it
+            Envelope drawnExtent = new Envelope(extent);
+            drawnExtent.expandBy(distance);
+            AffineTransform at = mt.getAffineTransform();
+            Point2D.Double point = new Point2D.Double();
+            for (int i = 0; i < rules.size() && !rulesProgress.isCancelled(); i++) {
+                Rule rule = rules.get(i);
+                beginLayer(rule.getName());
+                List<Symbolizer> sl = rule.getCompositeSymbolizer().getSymbolizerList();
+                for (PointClusters.Cluster cluster : points.getClusters(i, distance, clusterSumFields)) {
+                    if (!drawnExtent.contains(cluster.getX(), cluster.getY())) {
+                        continue;
+                    }
+                    point.setLocation(cluster.getX(), cluster.getY());
+                    at.transform(point, point);
+                    boolean selected = cluster.isSelected(selectedRows);
+                    for (Symbolizer s : sl) {
+                        Lock lock = getOutputLock();
+                        if (lock != null) {
+                            lock.lock();
+                        }
+                        try {
+                            Graphics2D g2S = getGraphics2D(s);
+                            try {
+                                ((PointSymbolizer) s).drawPoint(g2S, cluster.getValues(), selected, mt, point);
+                            } finally {
+                                releaseGraphics2D(g2S);
+                            }
+                        } finally {
+                            if (lock != null) {
+                                lock.unlock();
+                            }
+                        }
+                    }
+                    layerCount++;
+                }
+                endLayer(rule.getName());
+            }
+            return layerCount;
+        }
+
+        /**
+         * @param layerDataFactory Data source of the layer
+         * @return True if the providers of the layer evaluate the filters in their query
+         */
+        private static boolean isFilterSupported(ResultSetProviderFactory layerDataFactory, ILayer layer) {
+            return layerDataFactory instanceof ResultSetProviderFactory.FilteredResultSetProviderFactory &&
+                    ((ResultSetProviderFactory.FilteredResultSetProviderFactory) layerDataFactory)
+                            .isFilterSupported(layer);
+        }
+
+        /**
+         * @param filters Filters of the query, empty if the provider does not evaluate filters
+         * @return The rows of the extent that satisfy the filters
+         */
+        private static SpatialResultSet execute(ResultSetProviderFactory.ResultSetProvider provider, ProgressMonitor pm,
+                                                Envelope extent, Set<String> fields, List<String> filters)
+                throws SQLException {
+            if(provider instanceof ResultSetProviderFactory.FilteredResultSetProvider) {
+                return ((ResultSetProviderFactory.FilteredResultSetProvider) provider).execute(pm, extent, fields,
+                        filters);
+            }
+            return provider.execute(pm, extent, fields);
+        }
+
+        /**
+         * @param tolerance Simplification tolerance in map units, ignored if the provider cannot simplify
+         */
+        private static void setSimplificationTolerance(ResultSetProviderFactory.ResultSetProvider provider,
+                                                       double tolerance) {
+            if(provider instanceof ResultSetProviderFactory.LevelOfDetailResultSetProvider) {
+                ((ResultSetProviderFactory.LevelOfDetailResultSetProvider) provider).setSimplificationTolerance(tolerance);
+            }
+        }
+
+        /**
+         * @param rowLimit Maximum number of rows, ignored if 0 or if the provider cannot limit the rows
+         * @param sampleStride Step between the fetched primary key values, 1 to fetch the first rows
+         */
+        private static void setRowLimit(ResultSetProviderFactory.ResultSetProvider provider, int rowLimit,
+                                        long sampleStride) {
+            if(rowLimit > 0 && provider instanceof ResultSetProviderFactory.LevelOfDetailResultSetProvider) {
+                ((ResultSetProviderFactory.LevelOfDetailResultSetProvider) provider).setRowLimit(rowLimit,
+                        sampleStride);
+            }
+        }
+
+        /**
+         * Fetch the points of the layer within the extent, with the values of the fields read by the style.
+         * Other geometries are represented by their interior point.
+         * @return The fetched points, null if the fetch is cancelled
+         */
+        private static PointClusters fetchPoints(ResultSetProviderFactory layerDataFactory, Set<String> fields,
+                                                 List<String> filters, ILayer layer, ProgressMonitor pm,
+                                                 Envelope extent, int rowLimit, long sampleStride) throws SQLException {
+            PointClusters points = new PointClusters(extent, fields);
+            List<String> fieldList = points.getFields();
+            Object[] rowValues = new Object[fieldList.size()];
+            try(ResultSetProviderFactory.ResultSetProvider resultSetProvider = layerDataFactory.getResultSetProvider(layer, pm)) {
+                setRowLimit(resultSetProvider, rowLimit, sampleStride);
+                try(SpatialResultSet rs = execute(resultSetProvider, pm, extent, fields, filters)) {
+                    int pkColumn = rs.findColumn(resultSetProvider.getPkName());
+                    int maskColumn = filters.size() > 1 ?
+                            rs.findColumn(ResultSetProviderFactory.FilteredResultSetProvider.FILTER_MASK_FIELD) : -1;
+                    int fieldID = rs.getMetaData().unwrap(SpatialResultSetMetaData.class).getFirstGeometryFieldIndex();
+                    int[] columns = new int[fieldList.size()];
+                    for (int i = 0; i < columns.length; i++) {
+                        columns[i] = rs.findColumn(fieldList.get(i));
+                    }
+                    while (fieldID >= 0 && rs.next()) {
+                        if (pm.isCancelled()) {
+                            return null;
+                        }
+                        Geometry geom = rs.getGeometry(fieldID);
+                        if (geom == null || geom.isEmpty() || !geom.getEnvelopeInternal().intersects(extent)) {
+                            continue;
+                        }
+                        long row = rs.getLong(pkColumn);
+                        long ruleMask = maskColumn > 0 ? rs.getLong(maskColumn) : -1L;
+                        for (int i = 0; i < columns.length; i++) {
+                            rowValues[i] = rs.getObject(columns[i]);
+                        }
+                        if (geom.getDimension() == 0) {
+                            for (Coordinate coordinate : geom.getCoordinates()) {
+                                points.add(coordinate.x, coordinate.y, row, ruleMask, rowValues);
+                            }
+                        } else {
+                            Coordinate coordinate = geom.getInteriorPoint().getCoordinate();
+                            points.add(coordinate.x, coordinate.y, row, ruleMask, rowValues);
+                        }
+                    }
+                }
+            }
+            return points;
+        }
+
+        /**
+         * @param rules Rules of a style
+         * @return True if the rules only draw point symbols on the default geometry
+         */
+        private static boolean isClusterable(List<Rule> rules) {
+                if (!isPointOnly(rules)) {
+                        return false;
+                }
+                for (Rule rule : rules) {
+                        for (Symbolizer s : rule.getCompositeSymbolizer().getSymbolizerList()) {
+                                PointSymbolizer ps = (PointSymbolizer) s;
+                                if (ps.getGeometryAttribute() != null || ps.isOnVertex()) {
+                                        return false;
+                                }
+                        }
+                }
+                return true;
+        }
+
+        /**
+         * Estimate the number of features of the layer within the given extent, from the number of rows of the
+         * table and the share of the layer envelope covered by the extent. The number of rows is kept in the
+         * feature count cache, if any, until the layer changes.
+         * @param layer Vector layer
+         * @param extent Drawn extent
+         * @return Estimated number of features, 0 if unknown
+         */
+        protected long estimateFeatureCount(ILayer layer, Envelope extent) {
+            Envelope layerEnvelope = layer.getEnvelope();
+            if(layerEnvelope == null || layerEnvelope.isNull() || !layerEnvelope.intersects(extent) ||
+                    layer.getDataManager() == null || layer.getDataManager().getDataSource() == null) {
+                return 0;
+            }
+            Long cachedCount = featureCountCache == null ? null : featureCountCache.getRowCount(layer);
+            long rowCount;
+            if(cachedCount != null) {
+                rowCount = cachedCount;
+            } else {
+                long version = featureCountCache == null ? 0 : featureCountCache.getVersion(layer);
+                try {
+                    rowCount = countRows(layer);
+                } catch (SQLException ex) {
+                    LOGGER.debug(I18N.tr("Cannot count the features of the layer {0}", layer.getName()), ex);
+                    return 0;
+                }
+                if(featureCountCache != null) {
+                    featureCountCache.put(layer, version, rowCount);
+                }
+            }
+            double layerArea = layerEnvelope.getArea();
+            if(layerArea <= 0) {
+                return rowCount;
+            }
+            return (long) (rowCount * layerEnvelope.intersection(extent).getArea() / layerArea);
+        }
+
+        /**
+         * @param layer Vector layer
+         * @return The number of rows of the table, from the planner statistics on PostgreSQL when they are known
+         * @throws SQLException The table cannot be read
          */
-        protected abstract void disposeLayer(Graphics2D g2);
+        private static long countRows(ILayer layer) throws SQLException {
+            try(Connection connection = layer.getDataManager().getDataSource().getConnection();
+                Statement st = connection.createStatement()) {
+                boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
+                String table = TableLocation.parse(layer.getTableReference(), isH2).toString(isH2);
+                long rowCount = -1;
+                if(!isH2) {
+                    // PostgreSQL counts rows by scanning the table, its planner statistics are used instead
+                    try(ResultSet rs = st.executeQuery("SELECT reltuples::bigint FROM pg_class WHERE oid = '" +
+                            table.replace("'", "''") + "'::regclass")) {
+                        if(rs.next()) {
+                            rowCount = rs.getLong(1);
+                        }
+                    }
+                }
+                if(rowCount <= 0) {
+                    // H2, or a table that has never been analyzed: reltuples is -1, or 0 before the first
+                    // VACUUM or ANALYZE even if rows have been inserted since
+                    try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                        rowCount = rs.next() ? rs.getLong(1) : 0;
+                    }
+                }
+                return rowCount;
+            }
+        }
 
         /**
-         * Called before each feature
-         * @param id index of the feature
-         * @param rs Result set
+         * The first rows of a table are often stored close to each other, a preview samples the rows over the
+         * primary key range instead. The stride is estimated from the share of the layer envelope covered by
+         * the extent, so that about {@link #getRowLimit()} rows are fetched. The key range is kept in the
+         * feature count cache, if any, until the layer changes.
+         * @param layer Vector layer
+         * @param extent Drawn extent
+         * @return The step between the fetched primary key values, 1 to fetch the first rows
          */
-        protected abstract void beginFeature(long id, ResultSet rs);
+        protected long getSampleStride(ILayer layer, Envelope extent) {
+            if(rowLimit <= 0 || layer.getDataManager() == null || layer.getDataManager().getDataSource() == null) {
+                return 1;
+            }
+            long[] keyRange = featureCountCache == null ? null : featureCountCache.getKeyRange(layer);
+            if(keyRange == null) {
+                long version = featureCountCache == null ? 0 : featureCountCache.getVersion(layer);
+                try {
+                    keyRange = readKeyRange(layer);
+                } catch (SQLException ex) {
+                    // Not a numeric key, the first rows are fetched
+                    LOGGER.debug(ex.getLocalizedMessage(), ex);
+                    keyRange = new long[0];
+                }
+                if(featureCountCache != null) {
+                    featureCountCache.putKeyRange(layer, version, keyRange);
+                }
+            }
+            if(keyRange.length < 2) {
+                return 1;
+            }
+            Envelope layerEnvelope = layer.getEnvelope();
+            double share = 1;
+            if(layerEnvelope != null && !layerEnvelope.isNull() && layerEnvelope.getArea() > 0) {
+                share = layerEnvelope.intersection(extent).getArea() / layerEnvelope.getArea();
+            }
+            long range = keyRange[1] - keyRange[0] + 1;
+            return Math.max(1, (long) (range * share / rowLimit));
+        }
 
         /**
-         * Called after each feature
-         * @param id index of the feature
-         * @param rs Result set
+         * @param layer Vector layer
+         * @return The minimum and maximum values of the primary key, empty if the table has no primary key
+         * @throws SQLException The table cannot be read, or its primary key is not numeric
          */
-        protected abstract void endFeature(long id, ResultSet rs);
+        private static long[] readKeyRange(ILayer layer) throws SQLException {
+            try(Connection connection = layer.getDataManager().getDataSource().getConnection();
+                Statement st = connection.createStatement()) {
+                String pkName = MetaData.getPkName(connection, layer.getTableReference(), true);
+                if(pkName.isEmpty()) {
+                    return new long[0];
+                }
+                boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
+                String table = TableLocation.parse(layer.getTableReference(), isH2).toString(isH2);
+                String pkColumn = TableLocation.quoteIdentifier(pkName);
+                try(ResultSet rs = st.executeQuery("SELECT MIN(" + pkColumn + "), MAX(" + pkColumn + ") FROM " +
+                        table)) {
+                    return rs.next() ? new long[] {rs.getLong(1), rs.getLong(2)} : new long[0];
+                }
+            }
+        }
 
         /**
-         * Called before each layer
-         * @param name the name of the layer
+         * @param rules Rules of a style
+         * @return True if the rules only draw point symbols
          */
-        protected abstract void beginLayer(String name);
+        private static boolean isPointOnly(List<Rule> rules) {
+                if (rules.isEmpty()) {
+                        return false;
+                }
+                for (Rule rule : rules) {
+                        List<Symbolizer> symbolizers = rule.getCompositeSymbolizer().getSymbolizerList();
+                        if (symbolizers.isEmpty()) {
+                                return false;
+                        }
+                        for (Symbolizer s : symbolizers) {
+                                if (!(s instanceof PointSymbolizer)) {
+                                        return false;
+                                }
+                        }
+                }
+                return true;
+        }
 
         /**
-         * Called after each layer
-         * @param name the name of the layer
+         * Build a filter on primary key ranges.
+         * @param pkName Primary key column
+         * @param selection Selected primary key values
+         * @return SQL filter or null if the selection has too many ranges
          */
-        protected abstract void endLayer(String name);
+        private static String getSelectionFilter(String pkName, LongUnion selection) {
+            List<Long> ranges = selection.getValueRanges();
+            if(pkName.isEmpty() || ranges.size() / 2 > MAX_SELECTION_RANGES) {
+                return null;
+            }
+            // The key column may be case sensitive or a reserved word
+            String pkColumn = TableLocation.quoteIdentifier(pkName);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < ranges.size() - 1; i += 2) {
+                if(i > 0) {
+                    sb.append(" OR ");
+                }
+                long begin = ranges.get(i);
+                long end = ranges.get(i + 1);
+                if(begin == end) {
+                    sb.append(pkColumn).append(" = ").append(begin);
+                } else {
+                    sb.append(pkColumn).append(" BETWEEN ").append(begin).append(" AND ").append(end);
+                }
+            }
+            return sb.toString();
+        }
 
         /**
-         * Draws the content of the Vector Layer
-         *
-         * @param g2
-         *            Object to draw to
-         * @param layer
-         *            Source of information
-         * @param pm
-         *            Progress monitor to report the status of the drawing
-         * @return the number of rendered objects
+         * @param filters SQL filter of each rule, null if the rule accepts all rows
+         * @return A single filter that accepts the rows accepted by at least one rule, empty if all rows are
+         * accepted
          */
-        public int drawVector(Graphics2D g2, MapTransform mt, ILayer layer,
-                ProgressMonitor pm) throws SQLException {
-                Envelope extent = mt.getAdjustedExtent();
-                int layerCount = 0;
-                List<Style> styles = layer.getStyles();
-                for(Style style : styles){
-                        layerCount +=drawStyle(style, g2, mt, layer, pm, extent);
+        private static List<String> orFilter(List<String> filters) {
+            if(filters.size() == 1) {
+                return filters.get(0) == null ? Collections.<String>emptyList() : filters;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String ruleFilter : filters) {
+                if(ruleFilter == null || ruleFilter.isEmpty()) {
+                    return Collections.emptyList();
                 }
-                return layerCount;
-        }        
+                if(sb.length() > 0) {
+                    sb.append(" OR ");
+                }
+                sb.append("(").append(ruleFilter).append(")");
+            }
+            return sb.length() == 0 ? Collections.<String>emptyList() : Collections.singletonList(sb.toString());
+        }
 
-        private int drawStyle(Style style, Graphics2D g2,MapTransform mt, ILayer layer,
-                              ProgressMonitor pm, Envelope extent) throws SQLException {
-            int layerCount = 0;
-            LinkedList<Symbolizer> symbs = new LinkedList<Symbolizer>();
-            ResultSetProviderFactory layerDataFactory = rsProvider;
-            if(layerDataFactory == null) {
-                if(layer.getDataManager() != null && layer.getDataManager().getDataSource() != null) {
-                    layerDataFactory = new DefaultResultSetProviderFactory();
+        /**
+         * @param filters Empty or one SQL filter for each rule
+         * @param filter Additional filter
+         * @return Filters that also satisfy the additional filter
+         */
+        private static List<String> andFilter(List<String> filters, String filter) {
+            if(filters.isEmpty()) {
+                return Collections.singletonList(filter);
+            }
+            List<String> result = new ArrayList<String>(filters.size());
+            for (String ruleFilter : filters) {
+                if(ruleFilter == null || ruleFilter.isEmpty()) {
+                    result.add(filter);
                 } else {
-                    throw new SQLException("There is neither a ResultSetProviderFactory instance nor available DataSource in the vectorial layer");
+                    result.add("(" + ruleFilter + ") AND (" + filter + ")");
                 }
             }
-            try {
-                // i.e. TextSymbolizer are always drawn above all other layer !! Should now be handle with symbolizer level
-                // Standard rules (with filter or no filter but not with elsefilter)
-                LinkedList<Rule> rList = new LinkedList<Rule>();
-                // Rule with ElseFilter
-                LinkedList<Rule> fRList = new LinkedList<Rule>();
-                // fetch symbolizers and rules
-                style.getSymbolizers(mt, symbs, rList, fRList);
-                // Create new dataSource with only feature in current extent
-                Set<Long> selectedRows = layer.getSelection();
-                // And now, features will be rendered
-                // Get a graphics for each symbolizer
-                initGraphics2D(symbs, g2, mt);
-                ProgressMonitor rulesProgress = pm.startTask(rList.size());
-                for (Rule r : rList) {                    
-                    beginLayer(r.getName());
-                    FeaturesVisitor fv  = new FeaturesVisitor();
-                    fv.visitSymbolizerNode(r);
-                    Set<String> fields = fv.getResult();
-                    try(ResultSetProviderFactory.ResultSetProvider resultSetProvider = layerDataFactory.getResultSetProvider(layer, rulesProgress)) {
-                        try(SpatialResultSet rs = resultSetProvider.execute(rulesProgress, extent, fields)) {
-                            int pkColumn = rs.findColumn(resultSetProvider.getPkName());
-                            int fieldID = rs.getMetaData().unwrap(SpatialResultSetMetaData.class).getFirstGeometryFieldIndex();
-                            ProgressMonitor rowSetProgress;
-                            // Read row count for progress monitor
-                            if(rs instanceof ReadRowSet) {
-                                rowSetProgress = rulesProgress.startTask("Drawing " + layer.getName() + " (Rule " + r.getName() + ")", ((ReadRowSet) rs).getRowCount());
-                            } else {
-                                rowSetProgress = rulesProgress.startTask("Drawing " + layer.getName() + " (Rule " + r.getName() + ")", 1);
-                            }
-                            while (rs.next()) {
-                                if (rulesProgress.isCancelled()) {
-                                    break;
-                                }
-                                Geometry theGeom = null;
-                                // If there is only one geometry, it is fetched now, otherwise, it up to symbolizers
-                                // to retrieve the correct geometry (through the Geometry attribute)
-                                if (fieldID >= 0) {
-                                    theGeom = rs.getGeometry(fieldID);
-                                }
-                                // Do not display the geometry when the envelope
-                                //doesn't intersect the current mapcontext area.
-                                if (theGeom == null || theGeom.getEnvelopeInternal().intersects(extent)) {
-                                    long row = rs.getLong(pkColumn);
-                                    boolean selected = selectedRows.contains(row);
-
-                                    beginFeature(row, rs);
-
-                                    List<Symbolizer> sl = r.getCompositeSymbolizer().getSymbolizerList();
-                                    for (Symbolizer s : sl) {
-                                        boolean res = drawFeature(s, theGeom, rs, row,
-                                                extent, selected, mt);
-                                    }
-                                    endFeature(row, rs);
-                                }
-                                rowSetProgress.endTask();
-                            }
-                            endLayer(r.getName());
-                        }
-                    } catch (SQLException ex) {
-                        if(!rulesProgress.isCancelled()) {
-                            printEx(ex, layer, g2);
-                        }
-                    }
-                    rulesProgress.endTask();
+            return result;
+        }
+
+        /**
+         * @param rule Standard rule
+         * @return The SQL filter of the rule, null if the rule accepts all rows
+         */
+        private static String getFilter(Rule rule) {
+            String where = rule.getWhere();
+            if(where == null || where.trim().isEmpty()) {
+                return null;
+            } else {
+                return where.trim();
+            }
+        }
+
+        /**
+         * The ElseFilter accepts the rows that are rejected by all the standard rules. A row where a filter
+         * evaluates to NULL is not accepted by the rule.
+         * @param rules Standard rules, all with a filter
+         * @return The SQL filter of the ElseFilter rules, null if there is no standard rule
+         */
+        private static String getElseFilter(List<Rule> rules) {
+            if(rules.isEmpty()) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder("NOT (");
+            for (int i = 0; i < rules.size(); i++) {
+                if(i > 0) {
+                    sb.append(" OR ");
                 }
-                disposeLayer(g2);
-            } catch (ParameterException ex) {
-                printEx(ex, layer, g2);
-            } catch (IOException ex) {
-                printEx(ex, layer, g2);
+                sb.append("COALESCE((").append(getFilter(rules.get(i))).append("), FALSE)");
             }
-            return layerCount;
+            sb.append(")");
+            return sb.toString();
         }
 
+        /**
+         * Rendering all the rules of a style in a single data pass interleaves the features of the rules.
+         * This is only allowed if the drawing order between symbolizers is kept by the target graphics.
+         * @return True if each symbolizer is drawn on its own graphics, then a style can be drawn from a single query.
+         */
+        protected boolean isSingleScanSupported() {
+            return false;
+        }
         private boolean drawFeature(Symbolizer s, Geometry geom, ResultSet rs,
                         long rowIdentifier, Envelope extent, boolean selected,
                         MapTransform mt) throws ParameterException,
@@ -266,20 +1583,62 @@ public abstract class Renderer {
                         }
                 }
                 if(somethingReached || theGeom != null){
-                        Graphics2D g2S;
-                        g2S = getGraphics2D(s);
-                        s.draw(g2S, rs, rowIdentifier, selected, mt, theGeom);
-                        releaseGraphics2D(g2S);
+                        Lock lock = getOutputLock();
+                        if (lock != null) {
+                                lock.lock();
+                        }
+                        try {
+                                Graphics2D g2S = getGraphics2D(s);
+                                try {
+                                        s.draw(g2S, rs, rowIdentifier, selected, mt, theGeom);
+                                } finally {
+                                        releaseGraphics2D(g2S);
+                                }
+                        } finally {
+                                if (lock != null) {
+                                        lock.unlock();
+                                }
+                        }
                         return true;
                 }else {
                         return false;
                 }
         }
 
-        private static void printEx(Exception ex, ILayer layer, Graphics2D g2) {
-                LOGGER.warn("Could not draw " +layer.getName(), ex);
-//                g2.setColor(Color.red);
-//                g2.drawString(ex.toString(), EXECP_POS, EXECP_POS);
+        /**
+         * @param rules Rules of a query
+         * @return True if all the symbolizers of the rules draw the default geometry from its shape
+         */
+        private static boolean isShapeOnly(List<Rule> rules) {
+                for (Rule rule : rules) {
+                        for (Symbolizer s : rule.getCompositeSymbolizer().getSymbolizerList()) {
+                                if (!(s instanceof ShapeSymbolizer) || !(s instanceof VectorSymbolizer) ||
+                                        ((VectorSymbolizer) s).getGeometryAttribute() != null) {
+                                        return false;
+                                }
+                        }
+                }
+                return true;
+        }
+
+        private void drawShape(ShapeSymbolizer s, Shape shape, ResultSet rs, long rowIdentifier, boolean selected,
+                               MapTransform mt) throws ParameterException, IOException, SQLException {
+                Lock lock = getOutputLock();
+                if (lock != null) {
+                        lock.lock();
+                }
+                try {
+                        Graphics2D g2S = getGraphics2D((Symbolizer) s);
+                        try {
+                                s.drawShape(g2S, rs, rowIdentifier, selected, mt, shape);
+                        } finally {
+                                releaseGraphics2D(g2S);
+                        }
+                } finally {
+                        if (lock != null) {
+                                lock.unlock();
+                        }
+                }
         }
 
         public void draw(Graphics2D g2dMap, int width, int height,
@@ -326,6 +1685,39 @@ public abstract class Renderer {
          */
         public void draw(MapTransform mt, Graphics2D g2, int width, int height,
                 ILayer lay, ProgressMonitor progressMonitor) {
+                RenderContext context = createContext(mt);
+                if (labelPlacement) {
+                        // One engine for all the layers, their labels are placed together after the last layer
+                        context.setLabelEngine(new LabelEngine(width, height));
+                }
+                drawLayers(context, g2, width, height, lay, progressMonitor);
+        }
+
+        /**
+         * @return True if the output is a vector format, the shapes are drawn without generalization
+         */
+        protected boolean isVectorOutput() {
+                return false;
+        }
+
+        /**
+         * Vector outputs are drawn with the exact shapes, the generalization only suits raster outputs.
+         * @param mt Drawing parameters
+         * @return The context of a drawing made with these parameters
+         */
+        private RenderContext createContext(MapTransform mt) {
+                RenderContext context = new RenderContext(mt);
+                if (isVectorOutput() && context.getGeneralizationTolerance() > 0) {
+                        context.setGeneralizationTolerance(0);
+                }
+                context.setSymbolAtlas(symbolAtlas);
+                context.setFillPaintCache(fillPaintCache);
+                context.setPolygonSamplerCache(polygonSamplerCache);
+                return context;
+        }
+
+        private void drawLayers(RenderContext mt, Graphics2D g2, int width, int height,
+                ILayer lay, ProgressMonitor progressMonitor) {
 
                 g2.setRenderingHints(mt.getRenderingHints());
 
@@ -350,31 +1742,252 @@ public abstract class Renderer {
                 } else {
                     pm = progressMonitor.startTask(numLayers);
                 }
-                for (int i = numLayers - 1; i >= 0; i--) {
-                        if (pm.isCancelled()) {
-                                break;
+                if ((layerThreadCount > 1 && numLayers > 1) || isLayerBufferRequired()) {
+                        drawLayerBuffers(mt, g2, width, height, layers, pm);
+                } else {
+                        for (int i = numLayers - 1; i >= 0; i--) {
+                                if (pm.isCancelled()) {
+                                        break;
+                                } else {
+                                        ILayer layer = layers[i];
+                                        if (layer.isVisible() && extent.intersects(layer.getEnvelope())) {
+                                                if (drawLayer(mt, g2, width, height, layer, pm) &&
+                                                        isLayerSelectionDrawn()) {
+                                                        drawLayerSelection(mt, g2, layer, pm);
+                                                }
+                                        }
+                                }
+                                pm.endTask();
+                        }
+                }
+                if (mt.getLabelEngine() != null && !pm.isCancelled()) {
+                        drawLabels(g2, mt.getLabelEngine());
+                }
+        }
+
+        /**
+         * @return False if the layer cannot be drawn
+         */
+        private boolean drawLayer(MapTransform mt, Graphics2D g2, int width, int height, ILayer layer,
+                               ProgressMonitor pm) {
+                try {
+                        if (layer.isStream()) {
+                            drawStreamLayer(g2, layer, width, height, mt.getAdjustedExtent(), pm);
+                        } else if(layer.isVectorial()) {
+                            drawVector(g2, mt, layer, pm);
+                        }
+                        // TODO
+                        // if (layer.isRaster()) {
+                        // this.drawRaster(g2, mt, layer,width,height, pm, perm);
+                } catch (SQLException | LayerException e) {
+                        LOGGER.error(I18N.tr("Layer {0} not drawn",layer.getName()), e);
+                        return false;
+                }
+                return true;
+        }
+
+        /**
+         * @param layer Layer to draw
+         * @return The styles the layer is drawn with
+         */
+        protected List<Style> getStyles(ILayer layer) {
+                return layer.getStyles();
+        }
+
+        private boolean isLayerSelectionDrawn() {
+                return selectionOverlay && layerSelection;
+        }
+
+        static boolean isDrawable(ILayer layer) {
+                try {
+                        return layer.isStream() || layer.isVectorial();
+                } catch (LayerException ex) {
+                        LOGGER.error(I18N.tr("Layer {0} not drawn",layer.getName()), ex);
+                        return false;
+                }
+        }
+
+        /**
+         * Copy the drawing settings of this renderer to the renderer of a layer buffer, except the number of layer
+         * threads. Subclasses that add settings extend this method.
+         * @param renderer Renderer that draws a single layer
+         */
+        protected void copySettings(Renderer renderer) {
+                renderer.setRsProvider(rsProvider);
+                renderer.setSelectionOverlay(selectionOverlay);
+                renderer.setLayerSelection(layerSelection);
+                renderer.setLevelOfDetailTolerance(levelOfDetailTolerance);
+                renderer.setRowLimit(rowLimit);
+                renderer.setLabelPlacement(labelPlacement);
+                renderer.setSymbolAtlas(symbolAtlas);
+                renderer.setFillPaintCache(fillPaintCache);
+                renderer.setDensityThreshold(densityThreshold);
+                renderer.setDensityCellSize(densityCellSize);
+                renderer.setDensityRamp(densityRamp);
+                renderer.setClusterDistance(clusterDistance);
+                renderer.setClusterSumFields(clusterSumFields);
+                renderer.setPointClusterCache(pointClusterCache);
+                renderer.setLayerShapeCache(layerShapeCache);
+                renderer.setPolygonSamplerCache(polygonSamplerCache);
+                renderer.setFeatureCountCache(featureCountCache);
+        }
+
+        /**
+         * Draw each visible layer in its own buffer using the shared layer thread pool, at most
+         * {@link #getLayerThreadCount()} layers at once. Buffers are drawn on g2 in the layer order, as soon as the
+         * layer and all the layers below it are done. Buffers that are already drawn are only composited. The next
+         * buffer to composite is the {@link #getPendingBuffer() pending buffer}. When pm is cancelled the layers
+         * still in progress are interrupted.
+         * @param mt Drawing parameters
+         * @param g2 Object to draw to
+         * @param width Width of the generated image
+         * @param height Height of the generated image
+         * @param layers Layers, the last one is drawn first
+         * @param pm Progress monitor, one task per layer
+         */
+        private void drawLayerBuffers(final RenderContext mt, Graphics2D g2, final int width, final int height,
+                                  ILayer[] layers, final ProgressMonitor pm) {
+                Envelope extent = mt.getAdjustedExtent();
+                List<ILayer> drawnLayers = new ArrayList<ILayer>(layers.length);
+                for (int i = layers.length - 1; i >= 0; i--) {
+                        ILayer layer = layers[i];
+                        if (layer.isVisible() && extent.intersects(layer.getEnvelope()) && isDrawable(layer)) {
+                                drawnLayers.add(layer);
                         } else {
-                                ILayer layer = layers[i];
-                                if (layer.isVisible() && extent.intersects(layer.getEnvelope())) {
+                                pm.endTask();
+                        }
+                }
+                if(drawnLayers.isEmpty()) {
+                        return;
+                }
+                // Each worker reports its progress in its own monitor
+                List<ProgressMonitor> layerMonitors = new ArrayList<ProgressMonitor>(drawnLayers.size());
+                for (int i = 0; i < drawnLayers.size(); i++) {
+                        layerMonitors.add(pm.startTask(1));
+                }
+                List<LayerBuffer> buffers = new ArrayList<LayerBuffer>(drawnLayers.size());
+                // Drawing of each buffer, null if the buffer is ready
+                List<LayerDrawing> drawings = new ArrayList<LayerDrawing>(drawnLayers.size());
+                List<Future<Boolean>> tasks = new ArrayList<Future<Boolean>>(drawnLayers.size());
+                // Each layer collects its labels, they join the labels of the drawing in the layer order
+                LabelEngine labelEngine = mt.getLabelEngine();
+                List<LabelEngine> layerLabels = new ArrayList<LabelEngine>(drawnLayers.size());
+                try {
+                        for (int i = 0; i < drawnLayers.size(); i++) {
+                                final ILayer layer = drawnLayers.get(i);
+                                final LayerBuffer buffer = createLayerBuffer(layer, mt, width, height);
+                                if (buffer == null) {
+                                        // Not supported by this renderer
+                                        break;
+                                }
+                                buffers.add(buffer);
+                                if (buffer.isReady()) {
+                                        drawings.add(null);
+                                        layerLabels.add(null);
+                                        continue;
+                                }
+                                copySettings(buffer.getRenderer());
+                                buffer.getRenderer().setLayerThreadCount(1);
+                                final RenderContext layerTransform = mt.copy();
+                                layerTransform.setLabelEngine(labelEngine == null ? null : new LabelEngine(width, height));
+                                layerLabels.add(layerTransform.getLabelEngine());
+                                final ProgressMonitor layerMonitor = layerMonitors.get(i);
+                                drawings.add(new LayerDrawing() {
+                                        @Override
+                                        public Boolean call() {
+                                                return !layerMonitor.isCancelled() &&
+                                                        buffer.getRenderer().drawLayer(layerTransform,
+                                                                buffer.getGraphics(), width, height, layer, layerMonitor);
+                                        }
+                                });
+                        }
+                        // Without parallel drawing the buffers are drawn by the calling thread
+                        boolean parallel = layerThreadCount > 1;
+                        for (int i = 0; i < drawnLayers.size(); i++) {
+                                if (pm.isCancelled()) {
+                                        // The pending drawings are interrupted below
+                                        break;
+                                }
+                                ProgressMonitor layerMonitor = layerMonitors.get(i);
+                                boolean drawn = true;
+                                if (i < buffers.size()) {
+                                        pendingBuffer = drawings.get(i) == null ? null : buffers.get(i);
                                         try {
-                                                if (layer.isStream()) {
-                                                    drawStreamLayer(g2, layer, width, height, extent, pm);
-                                                } else if(layer.isVectorial()) {
-                                                    drawVector(g2, mt, layer, pm);
+                                                if (parallel) {
+                                                        // Keep the next layers in progress
+                                                        while (tasks.size() < buffers.size() &&
+                                                                tasks.size() < i + layerThreadCount) {
+                                                                LayerDrawing drawing = drawings.get(tasks.size());
+                                                                tasks.add(drawing == null ? null : LAYER_EXECUTOR.submit(drawing));
+                                                        }
+                                                        if (tasks.get(i) != null) {
+                                                                drawn = waitForLayer(tasks.get(i), pm);
+                                                        }
+                                                } else if (drawings.get(i) != null) {
+                                                        drawn = drawings.get(i).call();
                                                 }
-                                                // TODO
-                                                // if (layer.isRaster()) {
-                                                // this.drawRaster(g2, mt, layer,width,height, pm, perm);
-                                        } catch (SQLException | LayerException e) {
-                                                LOGGER.error(I18N.tr("Layer {0} not drawn",layer.getName()), e);
+                                        } catch (ExecutionException ex) {
+                                                LOGGER.error(I18N.tr("Layer {0} not drawn", drawnLayers.get(i).getName()), ex.getCause());
+                                                drawn = false;
+                                        } catch (RuntimeException ex) {
+                                                LOGGER.error(I18N.tr("Layer {0} not drawn", drawnLayers.get(i).getName()), ex);
+                                                drawn = false;
                                         }
+                                        // A failed layer is not shown, its buffer is not kept
+                                        if (drawn && !pm.isCancelled()) {
+                                                if (layerLabels.get(i) != null) {
+                                                        buffers.get(i).setLabels(layerLabels.get(i).getCandidates());
+                                                }
+                                                buffers.get(i).composite(g2);
+                                                if (labelEngine != null) {
+                                                        labelEngine.addCandidates(buffers.get(i).getLabels());
+                                                }
+                                        }
+                                        pendingBuffer = null;
+                                } else if (!pm.isCancelled()) {
+                                        drawn = drawLayer(mt, g2, width, height, drawnLayers.get(i), layerMonitor);
+                                }
+                                // The buffers hold the layers without their selection
+                                if (drawn && isLayerSelectionDrawn() && !pm.isCancelled()) {
+                                        drawLayerSelection(mt, g2, drawnLayers.get(i), layerMonitor);
                                 }
+                                layerMonitor.endTask();
+                        }
+                } catch (InterruptedException ex) {
+                        pm.setCancelled(true);
+                } finally {
+                        pendingBuffer = null;
+                        for (Future<Boolean> task : tasks) {
+                                if (task != null) {
+                                        task.cancel(true);
+                                }
+                        }
+                        for (LayerBuffer buffer : buffers) {
+                                buffer.dispose();
+                        }
+                }
+        }
+
+        /**
+         * Wait for the drawing of a layer buffer. The wait stops when the drawing is cancelled, even if the layer
+         * is still in a query that does not check the progress monitor.
+         * @param task Drawing of the layer buffer
+         * @param pm Progress monitor of the drawing
+         * @return The result of the drawing, false if the drawing is cancelled
+         */
+        private static boolean waitForLayer(Future<Boolean> task, ProgressMonitor pm)
+                throws InterruptedException, ExecutionException {
+                while (!pm.isCancelled()) {
+                        try {
+                                return task.get(CANCEL_CHECK_DELAY, TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException ex) {
+                                // Check the progress monitor again
                         }
-                        pm.endTask();
                 }
+                return false;
         }
 
-        private void drawStreamLayer(Graphics2D g2, ILayer layer, int width, int height, Envelope extent, ProgressMonitor pm) {
+                private void drawStreamLayer(Graphics2D g2, ILayer layer, int width, int height, Envelope extent, ProgressMonitor pm) {
                 try {
                         layer.open();
                         GeoStream geoStream = layer.getStream();
@@ -505,4 +2118,91 @@ public abstract class Renderer {
 
         return bufferedImage;
     }
+
+    /**
+     * Drawing of a layer in its buffer.
+     */
+    private abstract static class LayerDrawing implements Callable<Boolean> {
+        /**
+         * @return False if the layer cannot be drawn
+         */
+        @Override
+        public abstract Boolean call();
+    }
+
+    /**
+     * Offscreen target of a layer drawn in parallel with the other layers.
+     */
+    protected abstract static class LayerBuffer {
+        private final Renderer renderer;
+        private final Graphics2D graphics;
+        private List<LabelEngine.Candidate> labels = Collections.emptyList();
+
+        /**
+         * @param renderer Renderer dedicated to this layer, null if the buffer is ready
+         * @param graphics Graphics the layer is drawn on, null if the buffer is ready
+         */
+        protected LayerBuffer(Renderer renderer, Graphics2D graphics) {
+            this.renderer = renderer;
+            this.graphics = graphics;
+        }
+
+        /**
+         * @return True if the buffer already holds the drawn layer, then it is only composited.
+         */
+        protected boolean isReady() {
+            return renderer == null;
+        }
+
+        /**
+         * @return Renderer dedicated to this layer
+         */
+        public Renderer getRenderer() {
+            return renderer;
+        }
+
+        /**
+         * @return Graphics the layer is drawn on
+         */
+        public Graphics2D getGraphics() {
+            return graphics;
+        }
+
+        /**
+         * @return Labels of the layer, placed with the labels of the other layers of the drawing
+         */
+        protected List<LabelEngine.Candidate> getLabels() {
+            return labels;
+        }
+
+        /**
+         * @param labels Labels of the layer, set before the buffer is composited
+         */
+        protected void setLabels(List<LabelEngine.Candidate> labels) {
+            this.labels = labels;
+        }
+
+        /**
+         * Draw the buffer content on the target. Called once the layer is drawn, in the layer order.
+         * @param g2 Target graphics
+         */
+        protected abstract void composite(Graphics2D g2);
+
+        /**
+         * Draw the part of the layer that is already drawn on the target. Called while the layer is in progress,
+         * from another thread than the one drawing the layer.
+         * @param g2 Target graphics
+         */
+        protected void drawProgress(Graphics2D g2) {
+        }
+
+        /**
+         * Free the resources of this buffer.
+         */
+        protected void dispose() {
+            if (graphics != null) {
+                graphics.dispose();
+            }
+        }
+    }
 }
@@ -42,6 +42,7 @@ import org.orbisgis.coremap.layerModel.ILayer;
 import org.orbisgis.commons.progress.ProgressMonitor;
 
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -86,4 +87,77 @@ public interface ResultSetProviderFactory {
         @Override
         void close() throws SQLException;
     }
+
+    /**
+     * Optional extension of {@link ResultSetProviderFactory}, a factory that implements it tells without opening a
+     * provider whether the providers of a layer evaluate the rule filters.
+     */
+    public interface FilteredResultSetProviderFactory extends ResultSetProviderFactory {
+        /**
+         * @param layer Layer to be requested
+         * @return True if the providers of this layer are instances of {@link FilteredResultSetProvider}
+         */
+        boolean isFilterSupported(ILayer layer);
+    }
+
+    /**
+     * Optional extension of {@link ResultSetProvider}, a provider that implements it evaluates the rule filters in
+     * its query. The renderer gives it the filters only if its factory is a {@link FilteredResultSetProviderFactory}.
+     * Otherwise the renderer draws each standard rule from its own query of all the rows, and does not draw the
+     * ElseFilter rules.
+     */
+    public interface FilteredResultSetProvider extends ResultSetProvider {
+        /**
+         * Name of the column that holds the filters evaluation.
+         */
+        String FILTER_MASK_FIELD = "ORBISGIS_FILTER_MASK";
+        /**
+         * Maximum number of filters in a single query, the evaluation mask is a signed long.
+         */
+        int MAX_FILTER_COUNT = 62;
+
+        /**
+         * Fetch only the rows that satisfy at least one of the provided filters.
+         * If there is more than one filter, the result set contains a {@link #FILTER_MASK_FIELD} column of
+         * type long. Its bit i is set if filters[i] is empty or true for the row.
+         * @param pm ProgressMonitor allows to display the process and cancel it.
+         * @param extent filter entities by this envelope
+         * @param fields a list of column names to keep in the select... from
+         * @param filters SQL boolean expressions (ie the content of a where clause). A null or empty filter
+         *                accepts all rows. The number of filters must not exceed {@link #MAX_FILTER_COUNT}.
+         * @return The content of the table
+         * @throws java.sql.SQLException
+         */
+        SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields, List<String> filters) throws SQLException;
+    }
+
+    /**
+     * Optional extension of {@link ResultSetProvider}, a provider that implements it can reduce the fetched data.
+     * The renderer uses it when the provider is an instance of this interface.
+     */
+    public interface LevelOfDetailResultSetProvider extends ResultSetProvider {
+        /**
+         * Prefix of the name of the simplified geometry column, followed by the name of the geometry column.
+         * The simplified column does not shadow the table column, field references to the geometry column are
+         * resolved to it.
+         */
+        String SIMPLIFIED_GEOMETRY_PREFIX = "ORBISGIS_LOD_";
+
+        /**
+         * Allow the provider to fetch simplified geometries, in order to reduce the transferred data when the map
+         * is zoomed out. The provider may ignore this tolerance.
+         * @param tolerance Maximum distance, in map units, between the fetched and the exact geometries. 0 to fetch
+         *                  exact geometries.
+         */
+        void setSimplificationTolerance(double tolerance);
+
+        /**
+         * Fetch at most this number of rows, spread over the table rather than its first rows, in order to draw
+         * a quick preview of the layer. The provider may ignore this limit.
+         * @param rowLimit Maximum number of fetched rows, 0 to fetch all rows
+         * @param sampleStride Fetch only the rows whose primary key is a multiple of this value, 1 to fetch the
+         *                     first rows. The renderer computes it once for all the queries of a drawing.
+         */
+        void setRowLimit(int rowLimit, long sampleStride);
+    }
 }
@@ -0,0 +1,860 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import net.opengis.se._2_0.core.StyleType;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.orbisgis.commons.progress.NullProgressMonitor;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.map.JaxbContainer;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.SeExceptions;
+import org.orbisgis.coremap.renderer.se.Style;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Disk cache of rendered tiles, for each layer and style. The tiles of a zoom level have a fixed size in pixels and
+ * a resolution that is a power of two of the map unit, the map is drawn with the tiles of the closest finer level.
+ * Missing tiles are rendered by an {@link ImageRenderer} on background threads, with a copy of the style, then the
+ * {@link TileListener} are notified. The least recently used tiles are deleted when the disk quota is reached, the
+ * most recently used tiles are also kept in memory.
+ *
+ * Tiles are stored in {@code folder/table/style/level/x_y.png}, where style is a digest of the styles of the layer
+ * followed by the resolution in dots per inch and the label placement mode.
+ * Tiles are drawn with the symbols of the features of the neighbour tiles, up to {@link #getSymbolMargin()} pixels
+ * from the tile. A stamp of the data of each table is stored with its tiles, the tiles of the previous sessions
+ * are removed if the data has been modified since. The owner of the cache must call
+ * {@link #invalidate(ILayer, Envelope)} when the data of a layer change and {@link #invalidateStyle(ILayer)} when
+ * the style of a layer change.
+ */
+public class TileCache {
+    /** Width and height of tiles in pixels */
+    public static final int TILE_SIZE = 256;
+    /** Default disk quota in bytes */
+    public static final long DEFAULT_QUOTA = 512L * 1024 * 1024;
+    /** Default memory quota in bytes */
+    public static final long DEFAULT_MEMORY_QUOTA = 64L * 1024 * 1024;
+    /** Default size of the largest symbol or label, in pixels */
+    public static final int DEFAULT_SYMBOL_MARGIN = 64;
+    // Changed when the rendering of the tiles changes, in order to ignore the tiles of previous releases
+    private static final int RENDERING_VERSION = 2;
+    private static final String TILE_EXTENSION = ".png";
+    private static final String STAMP_FILE = "data.stamp";
+    private static final int MAX_PENDING_TILES = 256;
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileCache.class);
+    private final File folder;
+    private final long quota;
+    private long size = 0;
+    // Tile files with their size, in access order
+    private final LinkedHashMap<File, Long> tiles = new LinkedHashMap<File, Long>(16, 0.75f, true);
+    private final Set<File> pendingTiles = new HashSet<File>();
+    // Incremented when the data of a table change, in order to drop tiles rendered before the change
+    private final Map<String, Long> tableVersions = new HashMap<String, Long>();
+    private final Map<ILayer, StyleKey> styleKeys = new WeakHashMap<ILayer, StyleKey>();
+    // Tables whose tiles of the previous sessions have been compared with the data stamp
+    private final Set<String> checkedTables = new HashSet<String>();
+    // Tables whose stored data stamp is up to date
+    private final Set<String> stampedTables = new HashSet<String>();
+    // Decoded tiles with their size in bytes, in access order
+    private final LinkedHashMap<File, BufferedImage> memoryTiles = new LinkedHashMap<File, BufferedImage>(16, 0.75f, true);
+    private long memorySize = 0;
+    private long memoryQuota = DEFAULT_MEMORY_QUOTA;
+    // Number of tiles being rendered for each layer, and whether one of them has been stored
+    private final Map<ILayer, Integer> pendingLayers = new IdentityHashMap<ILayer, Integer>();
+    private final Set<ILayer> renderedLayers = Collections.newSetFromMap(new IdentityHashMap<ILayer, Boolean>());
+    private final List<TileListener> listeners = new CopyOnWriteArrayList<TileListener>();
+    private volatile int symbolMargin = DEFAULT_SYMBOL_MARGIN;
+    private volatile boolean labelPlacement = false;
+    private final ExecutorService executorService;
+    private ResultSetProviderFactory rsProvider;
+
+    /**
+     * @param folder Root folder of the tiles
+     * @param quota Disk quota in bytes
+     * @param threadCount Number of threads used to render missing tiles
+     */
+    public TileCache(File folder, long quota, int threadCount) {
+        this.folder = folder;
+        this.quota = quota;
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        loadTiles();
+    }
+
+    /**
+     * @param rsProvider Provider used to fetch the features of missing tiles, null for the default provider
+     */
+    public void setRsProvider(ResultSetProviderFactory rsProvider) {
+        this.rsProvider = rsProvider;
+    }
+
+    /**
+     * @param memoryQuota Size of the decoded tiles kept in memory, in bytes
+     */
+    public synchronized void setMemoryQuota(long memoryQuota) {
+        this.memoryQuota = memoryQuota;
+        trimMemory();
+    }
+
+    /**
+     * @param symbolMargin Size of the largest symbol or label in pixels. The features of this margin around a
+     *                     tile are drawn in the tile, and a data change removes the tiles within this margin.
+     */
+    public void setSymbolMargin(int symbolMargin) {
+        this.symbolMargin = Math.max(0, symbolMargin);
+    }
+
+    /**
+     * @return Size of the largest symbol or label in pixels
+     */
+    public int getSymbolMargin() {
+        return symbolMargin;
+    }
+
+    /**
+     * @param labelPlacement True to render the tiles without overlapping labels, like the map, see
+     *                       {@link Renderer#setLabelPlacement(boolean)}
+     */
+    public void setLabelPlacement(boolean labelPlacement) {
+        this.labelPlacement = labelPlacement;
+    }
+
+    /**
+     * @return True if the tiles are rendered without overlapping labels
+     */
+    public boolean isLabelPlacement() {
+        return labelPlacement;
+    }
+
+    /**
+     * @param listener Notified when the tiles requested for a layer have been rendered
+     */
+    public void addTileListener(TileListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to remove
+     */
+    public void removeTileListener(TileListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Size of the stored tiles in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @param resolution Map units by pixel
+     * @return Zoom level of the tiles to use for this resolution
+     */
+    public static int getLevel(double resolution) {
+        return (int) Math.floor(Math.log(resolution) / Math.log(2));
+    }
+
+    /**
+     * @param level Zoom level
+     * @return Map units by pixel of the tiles of this level
+     */
+    public static double getResolution(int level) {
+        return Math.pow(2, level);
+    }
+
+    /**
+     * @param level Zoom level
+     * @param x Tile column
+     * @param y Tile row, rows go from south to north
+     * @return Extent of the tile
+     */
+    public static Envelope getTileEnvelope(int level, long x, long y) {
+        double tileWidth = TILE_SIZE * getResolution(level);
+        return new Envelope(x * tileWidth, (x + 1) * tileWidth, y * tileWidth, (y + 1) * tileWidth);
+    }
+
+    /**
+     * Fetch the tiles of the layer that cover the map. Missing tiles are rendered in background.
+     * @param layer Layer
+     * @param mt Drawing parameters
+     * @return Tiles of the layer, or null if some tiles are not available yet or if the layer is not cached
+     */
+    public TileSet getTiles(ILayer layer, MapTransform mt) {
+        Envelope extent = mt.getAdjustedExtent();
+        String tableKey = getTableKey(layer);
+        if(tableKey == null || extent == null || extent.isNull() || extent.getWidth() <= 0 || mt.getWidth() <= 0) {
+            return null;
+        }
+        if(!isStamped(tableKey)) {
+            checkDataStamp(tableKey, getDataStamp(layer));
+        }
+        StyleKey styleKey = getStyleKey(layer);
+        if(styleKey.digest == null) {
+            // The tiles of a style that cannot be written would not be found again, the layer is not cached
+            return null;
+        }
+        boolean placeLabels = labelPlacement;
+        File styleFolder = new File(new File(folder, tableKey), styleKey.digest + "_" + mt.getDpi() +
+                (placeLabels ? "_placed" : ""));
+        int level = getLevel(extent.getWidth() / mt.getWidth());
+        File levelFolder = new File(styleFolder, Integer.toString(level));
+        double tileWidth = TILE_SIZE * getResolution(level);
+        long minX = (long) Math.floor(extent.getMinX() / tileWidth);
+        long maxX = (long) Math.ceil(extent.getMaxX() / tileWidth) - 1;
+        long minY = (long) Math.floor(extent.getMinY() / tileWidth);
+        long maxY = (long) Math.ceil(extent.getMaxY() / tileWidth) - 1;
+        List<Tile> found = new ArrayList<Tile>();
+        boolean complete = true;
+        for(long x = minX; x <= maxX; x++) {
+            for(long y = minY; y <= maxY; y++) {
+                File tileFile = new File(levelFolder, x + "_" + y + TILE_EXTENSION);
+                if(!touch(tileFile)) {
+                    complete = false;
+                    requestTile(layer, styleKey, tableKey, tileFile, level, getTileEnvelope(level, x, y), mt.getDpi(),
+                            placeLabels);
+                } else if(complete) {
+                    BufferedImage image = readTile(tileFile);
+                    if(image != null) {
+                        found.add(new Tile(image, getTileEnvelope(level, x, y)));
+                    } else {
+                        complete = false;
+                        requestTile(layer, styleKey, tableKey, tileFile, level, getTileEnvelope(level, x, y),
+                                mt.getDpi(), placeLabels);
+                    }
+                }
+            }
+        }
+        return complete ? new TileSet(found, getResolution(level)) : null;
+    }
+
+    /**
+     * The data of the layer has changed, remove the tiles that intersect the envelope for all styles. The
+     * envelope is extended by the symbol margin at the resolution of each level.
+     * @param layer Layer
+     * @param envelope Modified area, null to remove all the tiles of the layer
+     */
+    public void invalidate(ILayer layer, Envelope envelope) {
+        String tableKey = getTableKey(layer);
+        if(tableKey != null) {
+            invalidate(tableKey, envelope);
+        }
+    }
+
+    void invalidate(String tableKey, Envelope envelope) {
+        synchronized (this) {
+            tableVersions.put(tableKey, getTableVersion(tableKey) + 1);
+            // The stamp is read again from the modified data
+            stampedTables.remove(tableKey);
+            Iterator<Map.Entry<File, Long>> it = tiles.entrySet().iterator();
+            File tableFolder = new File(folder, tableKey);
+            while(it.hasNext()) {
+                Map.Entry<File, Long> entry = it.next();
+                File tileFile = entry.getKey();
+                // tableFolder/style/level/x_y.png
+                File levelFolder = tileFile.getParentFile();
+                File styleFolder = levelFolder.getParentFile();
+                if(styleFolder != null && tableFolder.equals(styleFolder.getParentFile()) &&
+                        (envelope == null || intersects(levelFolder, tileFile, envelope, symbolMargin))) {
+                    size -= entry.getValue();
+                    it.remove();
+                    removeMemoryTile(tileFile);
+                    deleteTile(tileFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * The style of the layer has changed, the next tiles will be fetched using the new style. Tiles of the old
+     * style are kept until the quota is reached, and are reused if the layer gets the same style again.
+     * @param layer Layer
+     */
+    public synchronized void invalidateStyle(ILayer layer) {
+        styleKeys.remove(layer);
+    }
+
+    /**
+     * Stop rendering tiles.
+     */
+    public void dispose() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Store a rendered tile and delete the least recently used tiles above the quota.
+     * @param tileFile Tile destination
+     * @param image Tile image
+     * @param tableKey Table folder name
+     * @param tableVersion Version of the table data when the rendering of the tile started
+     * @throws IOException
+     */
+    void putTile(File tileFile, BufferedImage image, String tableKey, long tableVersion) throws IOException {
+        File tmpFile = new File(tileFile.getPath() + ".tmp");
+        File parent = tileFile.getParentFile();
+        if(!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create the folder " + parent);
+        }
+        ImageIO.write(image, "png", tmpFile);
+        synchronized (this) {
+            if(tableVersion != getTableVersion(tableKey)) {
+                // The data has changed while rendering
+                deleteTile(tmpFile);
+                return;
+            }
+            deleteTile(tileFile);
+            if(!tmpFile.renameTo(tileFile)) {
+                deleteTile(tmpFile);
+                throw new IOException("Cannot write the tile " + tileFile);
+            }
+            addTile(tileFile, tileFile.length());
+            putMemoryTile(tileFile, image);
+        }
+    }
+
+    /**
+     * Remove the tiles of the previous sessions if the data of the table has changed since, then store the stamp
+     * of the data with the tiles of the table.
+     * @param tableKey Table folder name
+     * @param stamp Stamp of the data, null if it cannot be read
+     */
+    synchronized void checkDataStamp(String tableKey, String stamp) {
+        File stampFile = new File(new File(folder, tableKey), STAMP_FILE);
+        if(checkedTables.add(tableKey) && (stamp == null || !stamp.equals(readStamp(stampFile)))) {
+            // The data has been modified outside of this session
+            invalidate(tableKey, (Envelope) null);
+        }
+        if(stamp == null) {
+            deleteTile(stampFile);
+        } else {
+            writeStamp(stampFile, stamp);
+        }
+        stampedTables.add(tableKey);
+    }
+
+    private synchronized boolean isStamped(String tableKey) {
+        return stampedTables.contains(tableKey);
+    }
+
+    private static String readStamp(File stampFile) {
+        try {
+            return new String(Files.readAllBytes(stampFile.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static void writeStamp(File stampFile, String stamp) {
+        File parent = stampFile.getParentFile();
+        try {
+            if(!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Cannot create the folder " + parent);
+            }
+            Files.write(stampFile.toPath(), stamp.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            LOGGER.debug(ex.getLocalizedMessage(), ex);
+        }
+    }
+
+    /**
+     * @param layer Layer
+     * @return Stamp of the data of the table: the modification counters on PostgreSQL, the row count and the
+     * envelope otherwise. Null if the table cannot be read.
+     */
+    private static String getDataStamp(ILayer layer) {
+        try(Connection connection = layer.getDataManager().getDataSource().getConnection();
+            Statement st = connection.createStatement()) {
+            boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
+            String table = TableLocation.parse(layer.getTableReference(), isH2).toString(isH2);
+            StringBuilder stamp = new StringBuilder();
+            if(!isH2) {
+                // The counters include the updates of the attributes
+                try(ResultSet rs = st.executeQuery("SELECT n_tup_ins, n_tup_upd, n_tup_del FROM " +
+                        "pg_stat_user_tables WHERE relid = '" + table.replace("'", "''") + "'::regclass")) {
+                    if(rs.next()) {
+                        stamp.append(rs.getLong(1)).append(' ').append(rs.getLong(2)).append(' ')
+                                .append(rs.getLong(3));
+                    }
+                }
+            } else {
+                try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                    if(rs.next()) {
+                        stamp.append(rs.getLong(1));
+                    }
+                }
+            }
+            return stamp.append(' ').append(layer.getEnvelope()).toString();
+        } catch (SQLException ex) {
+            LOGGER.debug(ex.getLocalizedMessage(), ex);
+            return null;
+        }
+    }
+
+    synchronized long getTableVersion(String tableKey) {
+        Long version = tableVersions.get(tableKey);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * @param layer Layer
+     * @return Folder name of the table of this layer or null if the layer is not cached
+     */
+    static String getTableKey(ILayer layer) {
+        if(!layer.isVectorial() || layer.getTableReference().isEmpty()) {
+            return null;
+        }
+        return toFileName(layer.getTableReference());
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private synchronized StyleKey getStyleKey(ILayer layer) {
+        StyleKey key = styleKeys.get(layer);
+        if(key == null) {
+            List<String> styles = new ArrayList<String>();
+            List<Boolean> visibility = new ArrayList<Boolean>();
+            StringBuilder sb = new StringBuilder();
+            sb.append(RENDERING_VERSION);
+            try {
+                Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
+                for(Style style : layer.getStyles()) {
+                    StringWriter writer = new StringWriter();
+                    marshaller.marshal(style.getJAXBElement(), writer);
+                    styles.add(writer.toString());
+                    visibility.add(style.isVisible());
+                    sb.append(style.isVisible()).append(writer.toString());
+                }
+            } catch (JAXBException ex) {
+                // Without its SE text, the style has no stable digest
+                LOGGER.debug(ex.getLocalizedMessage(), ex);
+                key = new StyleKey(null, null, visibility);
+                styleKeys.put(layer, key);
+                return key;
+            }
+            key = new StyleKey(digest(sb.toString()), styles, visibility);
+            styleKeys.put(layer, key);
+        }
+        return key;
+    }
+
+    private static String digest(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for(byte b : hash) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform provides SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private synchronized boolean touch(File tileFile) {
+        return tiles.get(tileFile) != null;
+    }
+
+    private BufferedImage readTile(File tileFile) {
+        synchronized (this) {
+            BufferedImage image = memoryTiles.get(tileFile);
+            if(image != null) {
+                return image;
+            }
+        }
+        try {
+            BufferedImage image = ImageIO.read(tileFile);
+            if(image != null) {
+                synchronized (this) {
+                    // The tile may have been removed while reading it
+                    if(tiles.containsKey(tileFile)) {
+                        putMemoryTile(tileFile, image);
+                    }
+                }
+            }
+            return image;
+        } catch (IOException ex) {
+            LOGGER.debug(ex.getLocalizedMessage(), ex);
+            synchronized (this) {
+                Long tileSize = tiles.remove(tileFile);
+                if(tileSize != null) {
+                    size -= tileSize;
+                }
+            }
+            return null;
+        }
+    }
+
+    private void requestTile(final ILayer layer, final StyleKey styleKey, final String tableKey, final File tileFile,
+                             int level, final Envelope tileEnvelope, final double dpi, final boolean placeLabels) {
+        final long tableVersion;
+        synchronized (this) {
+            if(pendingTiles.size() >= MAX_PENDING_TILES || !pendingTiles.add(tileFile)) {
+                return;
+            }
+            tableVersion = getTableVersion(tableKey);
+            Integer pending = pendingLayers.get(layer);
+            pendingLayers.put(layer, pending == null ? 1 : pending + 1);
+        }
+        final ResultSetProviderFactory tileRsProvider = rsProvider;
+        final int margin = symbolMargin;
+        final Envelope renderedEnvelope = new Envelope(tileEnvelope);
+        renderedEnvelope.expandBy(margin * getResolution(level));
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean stored = false;
+                try {
+                    List<Style> styles = styleKey.copyStyles(layer);
+                    putTile(tileFile, renderTile(layer, styles, renderedEnvelope, margin, dpi, placeLabels,
+                            tileRsProvider), tableKey, tableVersion);
+                    stored = true;
+                } catch (IOException ex) {
+                    LOGGER.warn(ex.getLocalizedMessage(), ex);
+                } finally {
+                    tileDone(layer, tileFile, stored);
+                }
+            }
+        });
+    }
+
+    /**
+     * A background rendering is done, notify the listeners when the last tile of the layer is done.
+     */
+    private void tileDone(ILayer layer, File tileFile, boolean stored) {
+        boolean notify = false;
+        synchronized (this) {
+            pendingTiles.remove(tileFile);
+            if(stored) {
+                renderedLayers.add(layer);
+            }
+            Integer pending = pendingLayers.get(layer);
+            if(pending == null || pending <= 1) {
+                pendingLayers.remove(layer);
+                // Failed tiles are not requested again by the listeners
+                notify = renderedLayers.remove(layer);
+            } else {
+                pendingLayers.put(layer, pending - 1);
+            }
+        }
+        if(notify) {
+            for(TileListener listener : listeners) {
+                listener.tilesRendered(layer);
+            }
+        }
+    }
+
+    /**
+     * Render the tile with its margin, then keep only the tile.
+     * @param styles Copy of the styles of the layer, null to use the styles of the layer
+     * @param placeLabels True to draw the labels that do not overlap
+     */
+    private static BufferedImage renderTile(ILayer layer, final List<Style> styles, Envelope renderedEnvelope,
+                                            int margin, double dpi, boolean placeLabels,
+                                            ResultSetProviderFactory rsProvider) {
+        int renderedSize = TILE_SIZE + 2 * margin;
+        BufferedImage renderedImage = new BufferedImage(renderedSize, renderedSize, BufferedImage.TYPE_INT_ARGB);
+        MapTransform mt = new MapTransform();
+        mt.setDpi(dpi);
+        mt.setImage(renderedImage);
+        mt.setExtent(renderedEnvelope);
+        ImageRenderer renderer = new ImageRenderer() {
+            @Override
+            protected List<Style> getStyles(ILayer layer) {
+                return styles != null ? styles : super.getStyles(layer);
+            }
+        };
+        renderer.setRsProvider(rsProvider);
+        renderer.setLabelPlacement(placeLabels);
+        // The selection is not part of the tiles
+        renderer.setSelectionOverlay(true);
+        Graphics2D g2 = renderedImage.createGraphics();
+        try {
+            renderer.draw(mt, g2, renderedSize, renderedSize, layer, new NullProgressMonitor());
+        } finally {
+            g2.dispose();
+        }
+        if(margin == 0) {
+            return renderedImage;
+        }
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D tileG2 = image.createGraphics();
+        try {
+            tileG2.drawImage(renderedImage, -margin, -margin, null);
+        } finally {
+            tileG2.dispose();
+        }
+        return image;
+    }
+
+    private void putMemoryTile(File tileFile, BufferedImage image) {
+        removeMemoryTile(tileFile);
+        memoryTiles.put(tileFile, image);
+        memorySize += getImageSize(image);
+        trimMemory();
+    }
+
+    private void removeMemoryTile(File tileFile) {
+        BufferedImage image = memoryTiles.remove(tileFile);
+        if(image != null) {
+            memorySize -= getImageSize(image);
+        }
+    }
+
+    private void trimMemory() {
+        Iterator<BufferedImage> it = memoryTiles.values().iterator();
+        while(memorySize > memoryQuota && it.hasNext()) {
+            memorySize -= getImageSize(it.next());
+            it.remove();
+        }
+    }
+
+    private static long getImageSize(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private synchronized void addTile(File tileFile, long tileSize) {
+        Long oldSize = tiles.put(tileFile, tileSize);
+        if(oldSize != null) {
+            size -= oldSize;
+        }
+        size += tileSize;
+        Iterator<Map.Entry<File, Long>> it = tiles.entrySet().iterator();
+        while(size > quota && it.hasNext()) {
+            Map.Entry<File, Long> eldest = it.next();
+            if(!eldest.getKey().equals(tileFile)) {
+                size -= eldest.getValue();
+                it.remove();
+                removeMemoryTile(eldest.getKey());
+                deleteTile(eldest.getKey());
+            }
+        }
+    }
+
+    private static boolean intersects(File levelFolder, File tileFile, Envelope envelope, int margin) {
+        try {
+            int level = Integer.parseInt(levelFolder.getName());
+            Envelope modified = new Envelope(envelope);
+            modified.expandBy(margin * getResolution(level));
+            String name = tileFile.getName();
+            String[] xy = name.substring(0, name.length() - TILE_EXTENSION.length()).split("_");
+            return getTileEnvelope(level, Long.parseLong(xy[0]), Long.parseLong(xy[1])).intersects(modified);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            return true;
+        }
+    }
+
+    private static void deleteTile(File tileFile) {
+        if(tileFile.exists() && !tileFile.delete()) {
+            LOGGER.debug("Cannot delete the tile " + tileFile);
+        }
+    }
+
+    /**
+     * Read the tiles stored by a previous session, oldest first.
+     */
+    private void loadTiles() {
+        List<File> files = new ArrayList<File>();
+        listTiles(folder, files);
+        File[] sorted = files.toArray(new File[files.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for(File tileFile : sorted) {
+            addTile(tileFile, tileFile.length());
+        }
+    }
+
+    private static void listTiles(File file, List<File> files) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                if(child.isDirectory()) {
+                    listTiles(child, files);
+                } else if(child.getName().endsWith(TILE_EXTENSION)) {
+                    files.add(child);
+                } else if(child.getName().endsWith(".tmp")) {
+                    deleteTile(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listener of the tiles rendered in background.
+     */
+    public interface TileListener {
+        /**
+         * The tiles requested for the layer have been rendered, the layer can be drawn again from the tiles.
+         * Called by the rendering thread.
+         * @param layer Layer
+         */
+        void tilesRendered(ILayer layer);
+    }
+
+    /**
+     * Digest of the styles of a layer, with the styles used to render the tiles.
+     */
+    private static class StyleKey {
+        // Null if the styles cannot be written, the layer is then drawn without tiles
+        private final String digest;
+        // Styles in SE, null if they cannot be copied
+        private final List<String> styles;
+        private final List<Boolean> visibility;
+
+        private StyleKey(String digest, List<String> styles, List<Boolean> visibility) {
+            this.digest = digest;
+            this.styles = styles;
+            this.visibility = visibility;
+        }
+
+        /**
+         * The styles of the layer may be changed while rendering, each tile is rendered with its own copy.
+         * @return Copy of the styles, null if the styles of the layer must be used
+         */
+        @SuppressWarnings("unchecked")
+        private List<Style> copyStyles(ILayer layer) {
+            if(styles == null) {
+                return null;
+            }
+            List<Style> copy = new ArrayList<Style>(styles.size());
+            try {
+                Unmarshaller unmarshaller = JaxbContainer.JAXBCONTEXT.createUnmarshaller();
+                for(int i = 0; i < styles.size(); i++) {
+                    Style style = new Style((JAXBElement<StyleType>)
+                            unmarshaller.unmarshal(new StringReader(styles.get(i))), layer);
+                    style.setVisible(visibility.get(i));
+                    copy.add(style);
+                }
+            } catch (JAXBException | SeExceptions.InvalidStyle ex) {
+                LOGGER.debug(ex.getLocalizedMessage(), ex);
+                return null;
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Tile image with its extent.
+     */
+    private static class Tile {
+        private final BufferedImage image;
+        private final Envelope envelope;
+
+        private Tile(BufferedImage image, Envelope envelope) {
+            this.image = image;
+            this.envelope = envelope;
+        }
+    }
+
+    /**
+     * Tiles that cover the map.
+     */
+    public static class TileSet {
+        private final List<Tile> tiles;
+        private final double resolution;
+
+        private TileSet(List<Tile> tiles, double resolution) {
+            this.tiles = tiles;
+            this.resolution = resolution;
+        }
+
+        /**
+         * Draw the tiles, scaled to the map resolution.
+         * @param g2 Graphics of the map
+         * @param mt Drawing parameters
+         */
+        public void draw(Graphics2D g2, MapTransform mt) {
+            Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            for(Tile tile : tiles) {
+                AffineTransform at = new AffineTransform(mt.getAffineTransform());
+                at.translate(tile.envelope.getMinX(), tile.envelope.getMaxY());
+                at.scale(resolution, -resolution);
+                g2.drawImage(tile.image, at, null);
+            }
+            if(interpolation != null) {
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            }
+        }
+    }
+}
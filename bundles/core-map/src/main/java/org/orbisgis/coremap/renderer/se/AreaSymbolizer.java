@@ -43,7 +43,6 @@ import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -54,6 +53,7 @@ import net.opengis.se._2_0.core.ObjectFactory;
 
 
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.FeatureShapeCache;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.common.Uom;
 import org.orbisgis.coremap.renderer.se.fill.Fill;
@@ -78,7 +78,7 @@ import org.xnap.commons.i18n.I18nFactory;
  * as a <code>FillNode</code>).
  * @author Maxence Laurent, Alexis Guéganno
  */
-public final class AreaSymbolizer extends VectorSymbolizer implements FillNode, StrokeNode {
+public final class AreaSymbolizer extends VectorSymbolizer implements FillNode, StrokeNode, ShapeSymbolizer {
 
         private Translate translate;
         private RealParameter perpendicularOffset;
@@ -222,27 +222,30 @@ public final class AreaSymbolizer extends VectorSymbolizer implements FillNode,
                 boolean selected, MapTransform mt, Geometry the_geom)
                 throws ParameterException, IOException, SQLException {
 
-                List<Shape> shapes = new LinkedList<Shape>();
-                shapes.add(mt.getShape(the_geom, true));
-                Map<String,Object> map = getFeaturesMap(rs, fid);
-                for (Shape shp : shapes) {
-                        if (this.getTranslate() != null) {
-                                shp = getTranslate().getAffineTransform(map, getUom(), mt,
-                                        (double) mt.getWidth(), (double) mt.getHeight()).createTransformedShape(shp);
+                drawShape(g2, rs, fid, selected, mt, FeatureShapeCache.of(mt).getShape(the_geom, true));
+        }
+
+        @Override
+        public void drawShape(Graphics2D g2, ResultSet rs, long fid, boolean selected, MapTransform mt, Shape shape)
+                throws ParameterException, IOException, SQLException {
+                Shape shp = shape;
+                Map<String,Object> map = getFeaturesMap(rs, fid, mt);
+                if (this.getTranslate() != null) {
+                        shp = getTranslate().getAffineTransform(map, getUom(), mt,
+                                (double) mt.getWidth(), (double) mt.getHeight()).createTransformedShape(shp);
+                }
+                if (shp != null) {
+                        if (fill != null) {
+                                fill.draw(g2, map, shp, selected, mt);
                         }
-                        if (shp != null) {
-                                if (fill != null) {
-                                        fill.draw(g2, map, shp, selected, mt);
-                                }
 
-                                if (stroke != null) {
-                                        double offset = 0.0;
-                                        if (perpendicularOffset != null) {
-                                                offset = Uom.toPixel(perpendicularOffset.getValue(rs, fid),
-                                                        getUom(), mt.getDpi(), mt.getScaleDenominator(), null);
-                                        }
-                                        stroke.draw(g2, map, shp, selected, mt, offset);
+                        if (stroke != null) {
+                                double offset = 0.0;
+                                if (perpendicularOffset != null) {
+                                        offset = Uom.toPixel(perpendicularOffset.getValue(rs, fid),
+                                                getUom(), mt.getDpi(), mt.getScaleDenominator(), null);
                                 }
+                                stroke.draw(g2, map, shp, selected, mt, offset);
                         }
                 }
         }
@@ -0,0 +1,214 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se;
+
+import org.orbisgis.coremap.renderer.ResultSetProviderFactory.LevelOfDetailResultSetProvider;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Values of the fields a symbolizer depends on, for the feature being drawn.
+ * The field names are compiled into slots once. The column index of each slot
+ * is resolved when a new {@code ResultSet} is loaded, then values are read by
+ * index : no label lookup nor string hashing is done for each feature.
+ * {@link org.orbisgis.coremap.renderer.se.parameter.ValueReference} reads the
+ * values of this map by slot, other consumers can use it as a plain read only
+ * {@code Map}.
+ */
+public class FeatureMap extends AbstractMap<String, Object> {
+    private final Collection<String> source;
+    private final String[] fields;
+    private final Map<String, Integer> slots;
+    private final Object[] values;
+    private int[] columns;
+    private ResultSet resultSet;
+    private long featureId = -1;
+    private final Set<Entry<String, Object>> entries = new EntrySet();
+
+    /**
+     * @param fields Names of the fields to read
+     */
+    public FeatureMap(Collection<String> fields) {
+        this.source = fields;
+        this.fields = fields.toArray(new String[fields.size()]);
+        this.values = new Object[this.fields.length];
+        this.slots = new HashMap<String, Integer>(this.fields.length * 2);
+        for (int i = 0; i < this.fields.length; i++) {
+            slots.put(this.fields[i], i);
+        }
+    }
+
+    /**
+     * Read the values of the current row of the given result set.
+     * @param rs Result set, positioned on the feature to draw
+     * @throws SQLException
+     */
+    public void load(ResultSet rs) throws SQLException {
+        if (rs != resultSet || columns == null) {
+            int[] newColumns = new int[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                newColumns[i] = findColumn(rs, fields[i]);
+            }
+            columns = newColumns;
+            resultSet = rs;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = rs.getObject(columns[i]);
+        }
+    }
+
+    /**
+     * @param rs Result set
+     * @param field Field name
+     * @return The index of the column of this field, or of its simplified geometry
+     * @throws SQLException If the result set has no such column
+     * @see LevelOfDetailResultSetProvider#SIMPLIFIED_GEOMETRY_PREFIX
+     */
+    public static int findColumn(ResultSet rs, String field) throws SQLException {
+        try {
+            return rs.findColumn(field);
+        } catch (SQLException ex) {
+            try {
+                return rs.findColumn(LevelOfDetailResultSetProvider.SIMPLIFIED_GEOMETRY_PREFIX + field);
+            } catch (SQLException simplifiedEx) {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * @return Identifier of the last loaded feature, -1 if unknown
+     */
+    public long getFeatureId() {
+        return featureId;
+    }
+
+    /**
+     * @param featureId Identifier of the last loaded feature
+     */
+    public void setFeatureId(long featureId) {
+        this.featureId = featureId;
+    }
+
+    /**
+     * @return The field names given to the constructor
+     */
+    public Collection<String> getFields() {
+        return source;
+    }
+
+    /**
+     * @param field Field name
+     * @return The slot of this field, or -1 if this map does not hold it
+     */
+    public int getSlot(String field) {
+        Integer slot = slots.get(field);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @param slot Slot returned by {@link #getSlot(String)}
+     * @return The value of the slot for the last loaded feature
+     */
+    public Object getValue(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer slot = slots.get(key);
+        return slot == null ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slots.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return fields.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return entries;
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new Iterator<Entry<String, Object>>() {
+                private int slot = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return slot < fields.length;
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    if (slot >= fields.length) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry<String, Object> entry = new SimpleImmutableEntry<String, Object>(fields[slot], values[slot]);
+                    slot++;
+                    return entry;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return fields.length;
+        }
+    }
+}
@@ -53,6 +53,7 @@ import net.opengis.se._2_0.core.ObjectFactory;
 
 
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.FeatureShapeCache;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.common.Uom;
 import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
@@ -79,7 +80,7 @@ import org.xnap.commons.i18n.I18nFactory;
  *
  * @author Alexis Guéganno, Maxence Laurent
  */
-public final class LineSymbolizer extends VectorSymbolizer implements StrokeNode {
+public final class LineSymbolizer extends VectorSymbolizer implements StrokeNode, ShapeSymbolizer {
 
         private RealParameter perpendicularOffset;
         private Stroke stroke;
@@ -174,8 +175,15 @@ public final class LineSymbolizer extends VectorSymbolizer implements StrokeNode
                 boolean selected, MapTransform mt, Geometry the_geom)
                 throws ParameterException, IOException, SQLException {
                 if (stroke != null) {
-                        Map<String,Object> map = getFeaturesMap(rs, fid);
-                        Shape shp = mt.getShape(the_geom, true);
+                        drawShape(g2, rs, fid, selected, mt, FeatureShapeCache.of(mt).getShape(the_geom, true));
+                }
+        }
+
+        @Override
+        public void drawShape(Graphics2D g2, ResultSet rs, long fid, boolean selected, MapTransform mt, Shape shp)
+                throws ParameterException, IOException, SQLException {
+                if (stroke != null) {
+                        Map<String,Object> map = getFeaturesMap(rs, fid, mt);
                         double offset = 0.0;
                         if (perpendicularOffset != null) {
                                 offset = Uom.toPixel(perpendicularOffset.getValue(rs, fid),
@@ -0,0 +1,99 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.orbisgis.coremap.renderer.se.visitors.FeaturesVisitor;
+
+/**
+ * Version of a symbolizer node, incremented each time the node or one of its children changes. The caches of
+ * rendered symbols use it to know that a node has changed. The fields read by the node are computed once for each
+ * version. This class is thread safe.
+ */
+public final class NodeVersion {
+    private final SymbolizerNode node;
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile FeatureFields featureFields;
+
+    /**
+     * @param node Node whose version is kept
+     */
+    public NodeVersion(SymbolizerNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Called by the {@link SymbolizerNode#update()} of the node.
+     */
+    public void increment() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return The current version
+     */
+    public int get() {
+        return version.get();
+    }
+
+    /**
+     * @return Names of the fields read by the node and its children
+     */
+    public String[] getFeatureFields() {
+        FeatureFields fields = featureFields;
+        int currentVersion = version.get();
+        if (fields == null || fields.version != currentVersion) {
+            FeaturesVisitor visitor = new FeaturesVisitor();
+            node.acceptVisitor(visitor);
+            Set<String> result = visitor.getResult();
+            fields = new FeatureFields(currentVersion, result.toArray(new String[result.size()]));
+            featureFields = fields;
+        }
+        return fields.names;
+    }
+
+    private static final class FeatureFields {
+        private final int version;
+        private final String[] names;
+
+        private FeatureFields(int version, String[] names) {
+            this.version = version;
+            this.names = names;
+        }
+    }
+}
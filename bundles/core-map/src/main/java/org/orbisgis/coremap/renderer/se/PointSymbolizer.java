@@ -159,7 +159,7 @@ public final class PointSymbolizer extends VectorSymbolizer implements GraphicNo
 
             if (graphic != null && graphic.getNumGraphics() > 0) {
                 double x,y;
-                Map<String,Object> map = getFeaturesMap(rs, fid);
+                Map<String,Object> map = getFeaturesMap(rs, fid, mt);
                 if (onVertex) {
                     List<Point2D> points = getPoints(rs, fid, mt, the_geom);
                     for (Point2D pt : points) {
@@ -179,6 +179,24 @@ public final class PointSymbolizer extends VectorSymbolizer implements GraphicNo
         }
     }
 
+    /**
+     * Draw the graphic of this symbolizer at the given position, for values that do not come from a row of the
+     * layer, like the aggregated values of a cluster of points.
+     * @param g2 Graphics to draw on
+     * @param map Values of the fields read by the graphic
+     * @param selected True if the symbol is selected
+     * @param mt Drawing parameters
+     * @param pt Position of the graphic, in pixels
+     * @throws IOException
+     * @throws ParameterException
+     */
+    public void drawPoint(Graphics2D g2, Map<String,Object> map, boolean selected, MapTransform mt, Point2D pt)
+            throws IOException, ParameterException {
+        if (graphic != null && graphic.getNumGraphics() > 0) {
+            graphic.draw(g2, map, selected, mt, AffineTransform.getTranslateInstance(pt.getX(), pt.getY()));
+        }
+    }
+
     @Override
     public JAXBElement<PointSymbolizerType> getJAXBElement() {
         ObjectFactory of = new ObjectFactory();
@@ -0,0 +1,66 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se;
+
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
+
+/**
+ * Symbolizer that only needs the shape of the feature, in screen coordinates. The renderer may then build the
+ * shape without creating a JTS geometry.
+ */
+public interface ShapeSymbolizer {
+        /**
+         * Draw the feature with its shape.
+         * @param g2 Graphics to draw to
+         * @param rs Feature data source
+         * @param fid Feature identifier
+         * @param selected True if the feature is selected
+         * @param mt Drawing parameters
+         * @param shape Shape of the feature in screen coordinates, it must not be kept after the call
+         * @throws ParameterException
+         * @throws IOException
+         * @throws SQLException
+         */
+        void drawShape(Graphics2D g2, ResultSet rs, long fid, boolean selected, MapTransform mt, Shape shape)
+                throws ParameterException, IOException, SQLException;
+}
@@ -41,13 +41,13 @@ import java.awt.Graphics2D;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import javax.xml.bind.JAXBElement;
 import net.opengis.se._2_0.core.*;
 import net.opengis.se._2_0.raster.RasterSymbolizerType;
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
 import org.orbisgis.coremap.renderer.se.visitors.FeaturesVisitor;
@@ -74,8 +74,6 @@ public abstract class Symbolizer extends AbstractSymbolizerNode implements Symbo
     //protected GeometryAttribute the_geom;
     protected int level;
     private Set<String> features;
-    private Map<String,Object> featuresMap;
-    private FeaturesVisitor featuresVisitor = new FeaturesVisitor();
 
     /**
      * Build an empty Symbolizer, with the default name and no description.
@@ -268,19 +266,35 @@ public abstract class Symbolizer extends AbstractSymbolizerNode implements Symbo
      * @throws SQLException
      */
     public Map<String,Object> getFeaturesMap(ResultSet sds, long fid) throws SQLException{
-        if(features==null){
-            acceptVisitor(featuresVisitor);
-            features = featuresVisitor.getResult();
-        }
-        if(featuresMap == null){
-            featuresMap = new HashMap<String,Object>();
+        return getFeaturesMap(sds, fid, null);
+    }
+
+    /**
+     * Gets the features that are needed to build this Symbolizer, see
+     * {@link #getFeaturesMap(ResultSet, long)}. When the symbolizer is drawn
+     * by a renderer, the returned {@link FeatureMap} is the one of the
+     * {@link RenderContext}, it is reused for each feature of the drawing.
+     * @param sds
+     * @param fid
+     * @param mt Transformation the symbolizer is drawn with
+     * @return
+     * @throws SQLException
+     */
+    public Map<String,Object> getFeaturesMap(ResultSet sds, long fid, MapTransform mt) throws SQLException{
+        Set<String> fields = features;
+        if(fields==null){
+            FeaturesVisitor visitor = new FeaturesVisitor();
+            acceptVisitor(visitor);
+            fields = visitor.getResult();
+            features = fields;
         }
+        RenderContext context = RenderContext.of(mt);
+        FeatureMap map = context == null ? new FeatureMap(fields) : context.getFeatureMap(fields);
         if(sds != null) {
-            for(String s : features){
-                featuresMap.put(s, sds.getObject(s));
-            }
+            map.load(sds);
         }
-        return featuresMap;
+        map.setFeatureId(fid);
+        return map;
     }
 
     public void refreshFeatures(){
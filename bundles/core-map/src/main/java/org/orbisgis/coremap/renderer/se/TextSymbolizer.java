@@ -50,8 +50,8 @@ import javax.xml.bind.JAXBElement;
 import net.opengis.se._2_0.core.ObjectFactory;
 import net.opengis.se._2_0.core.TextSymbolizerType;
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.FeatureShapeCache;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
-import org.orbisgis.coremap.renderer.se.common.ShapeHelper;
 import org.orbisgis.coremap.renderer.se.common.Uom;
 import org.orbisgis.coremap.renderer.se.label.Label;
 import org.orbisgis.coremap.renderer.se.label.PointLabel;
@@ -160,13 +160,21 @@ public final class TextSymbolizer extends VectorSymbolizer {
         public void draw(Graphics2D g2, ResultSet rs, long fid,
                 boolean selected, MapTransform mt, Geometry the_geom)
                 throws ParameterException, IOException, SQLException {
+                Map<String,Object> map = getFeaturesMap(rs, fid, mt);
+                if (label instanceof PointLabel && perpendicularOffset == null) {
+                        // Attached to the same point as the point symbols of the feature
+                        Geometry geom = getGeometry(rs, fid, the_geom);
+                        if (geom != null && !geom.isEmpty()) {
+                                ((PointLabel) label).draw(g2, map, getPointShape(rs, fid, mt, geom), selected, mt);
+                        }
+                        return;
+                }
                 Shape shape = this.getShape(rs, fid, mt, the_geom, false);
-                Map<String,Object> map = getFeaturesMap(rs, fid);
                 if (shape != null) {
                         List<Shape> shps;
                         if (perpendicularOffset != null) {
                                 Double pOffset = perpendicularOffset.getValue(map);
-                                shps = ShapeHelper.perpendicularOffset(shape, pOffset);
+                                shps = FeatureShapeCache.of(mt).getPerpendicularOffset(shape, pOffset);
                         } else {
                                 shps = new LinkedList<Shape>();
                                 shps.add(shape);
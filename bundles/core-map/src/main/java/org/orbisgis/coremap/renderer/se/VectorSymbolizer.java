@@ -47,8 +47,8 @@ import java.util.LinkedList;
 import java.util.List;
 import javax.xml.bind.JAXBElement;
 import net.opengis.se._2_0.core.SymbolizerType;
-import org.slf4j.*;
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.FeatureShapeCache;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.common.Uom;
 import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
@@ -67,7 +67,6 @@ import org.h2gis.utilities.SpatialResultSet;
  * @author Maxence Laurent, Alexis Guéganno
  */
 public abstract class VectorSymbolizer extends Symbolizer implements UomNode {
-        private static final Logger LOGGER = LoggerFactory.getLogger(VectorSymbolizer.class);
         private Uom uom;
         private GeometryAttribute theGeom;
 
@@ -175,7 +174,7 @@ public abstract class VectorSymbolizer extends Symbolizer implements UomNode {
                 }
                 }*/
 
-                return mt.getShape(geom, generalize);
+                return FeatureShapeCache.of(mt).getShape(geom, generalize);
         }
 
         /**
@@ -209,7 +208,7 @@ public abstract class VectorSymbolizer extends Symbolizer implements UomNode {
                                         // Separate exterior and interior holes
                                         Polygon p = (Polygon) geom;
 
-                                        shapes.add(mt.getShape(geom, true));
+                                        shapes.add(FeatureShapeCache.of(mt).getShape(geom, true));
 
                                         Shape shape = mt.getShape(p.getExteriorRing(), true);
                                         if (shape != null) {
@@ -261,16 +260,8 @@ public abstract class VectorSymbolizer extends Symbolizer implements UomNode {
                         throws ParameterException, IOException, SQLException {
 
                 Geometry geom = getGeometry(rs, fid, theGeom);
-                AffineTransform at = mt.getAffineTransform();
-                Point point;
-
-                try {
-                        point = geom.getInteriorPoint();
-                } catch (TopologyException ex) {
-                        LOGGER.error("getPointShape :: TopologyException: ", ex);
-                        point = geom.getCentroid();
-                }
-                return at.transform(new Point2D.Double(point.getX(), point.getY()), null);
+                // Copy, the point is shared by the symbolizers of the feature
+                return (Point2D) FeatureShapeCache.of(mt).getInteriorPoint(geom).clone();
         }
 
         /**
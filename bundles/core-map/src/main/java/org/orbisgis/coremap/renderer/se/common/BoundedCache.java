@@ -0,0 +1,166 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.common;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Least recently used cache of rendered symbols, bounded by an estimated memory and a number of entries. The
+ * subclasses build the keys and render the values outside of the lock, then {@link #put(Object, Object)} them.
+ * The counters tell how many values were found or missing. This class is thread safe, the subclasses synchronize
+ * on the cache.
+ * @param <K> Key of a value, with value equality
+ * @param <V> Rendered value
+ */
+public abstract class BoundedCache<K, V> {
+    private final long maxMemory;
+    private final int maxEntries;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(64, 0.75f, true);
+    private long memory = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param maxMemory Maximum estimated memory of the values, in bytes
+     * @param maxEntries Maximum number of values
+     */
+    protected BoundedCache(long maxMemory, int maxEntries) {
+        this.maxMemory = maxMemory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param key Key of the value
+     * @param value Cached value
+     * @return Estimated memory of the entry, in bytes
+     */
+    protected abstract long getMemory(K key, V value);
+
+    /**
+     * @param key Key of the value
+     * @return The cached value, null if the value must be rendered
+     */
+    protected synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return value;
+    }
+
+    /**
+     * Keep a rendered value, removing the least recently used values above the limits.
+     * @param key Key of the value
+     * @param value Rendered value
+     */
+    protected synchronized void put(K key, V value) {
+        V previous = entries.put(key, value);
+        memory += getMemory(key, value);
+        if (previous != null) {
+            memory -= getMemory(key, previous);
+        }
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while ((memory > maxMemory || entries.size() > maxEntries) && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            if (eldest.getValue() != value) {
+                memory -= getMemory(eldest.getKey(), eldest.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @param key Key of the value
+     */
+    protected synchronized void remove(K key) {
+        V value = entries.remove(key);
+        if (value != null) {
+            memory -= getMemory(key, value);
+        }
+    }
+
+    /**
+     * @return The keys of the cached values, from the least recently used
+     */
+    protected synchronized List<K> getKeys() {
+        return new ArrayList<K>(entries.keySet());
+    }
+
+    /**
+     * @return Number of values found in the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of values rendered because they were not in the cache
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Number of cached values
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Estimated memory used by the values, in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return memory;
+    }
+
+    /**
+     * Remove all the values and reset the counters.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        memory = 0;
+        hitCount = 0;
+        missCount = 0;
+    }
+}
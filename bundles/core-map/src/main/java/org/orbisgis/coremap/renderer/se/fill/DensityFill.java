@@ -281,7 +281,12 @@ public final class DensityFill extends Fill implements GraphicNode {
                 double gapX =  bounds.getWidth()*ratio - bounds.getWidth();
                 double gapY =  bounds.getHeight()*ratio - bounds.getHeight();
 
-                painter = GraphicFill.getPaint(map, selected, mt, mark, gapX, gapY, bounds);
+                FillPaintCache cache = FillPaintCache.of(mt);
+                if (cache != null && bounds != null) {
+                    painter = cache.getGraphicPaint(this, map, selected, mt, mark, gapX, gapY, bounds);
+                } else {
+                    painter = GraphicFill.getPaint(map, selected, mt, mark, gapX, gapY, bounds);
+                }
             } else {
                 throw new ParameterException("Neither marks or hatches are defined");
             }
@@ -41,6 +41,7 @@ import net.opengis.se._2_0.thematic.ObjectFactory;
 import org.slf4j.*;
 
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.FeatureMap;
 import org.orbisgis.coremap.renderer.se.GraphicNode;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.SymbolizerNode;
@@ -83,13 +84,11 @@ public final class DotMapFill extends Fill implements GraphicNode {
     private GraphicCollection mark;
     private RealParameter quantityPerMark;
     private RealParameter totalQuantity;
-    private Random rand;
 
     /**
      * Creates a new DotMapFill, with uninstanciated values.
      */
     public DotMapFill() {
-        rand = new Random();
     }
 
     /**
@@ -204,13 +203,22 @@ public final class DotMapFill extends Fill implements GraphicNode {
 
         int nb = (int) Math.round(total / perMark);
 
-        //Area area = new Area(shapes.get(0));
-        Area area = new Area(shp);
-
-        // setting the seed to the scale denom will ensure that mark will not move when panning
-        rand.setSeed((long) mt.getScaleDenominator());
+        // The seed depends on the feature and the scale: marks do not move when panning, and every
+        // feature gets its own layout
+        long seed = (long) mt.getScaleDenominator();
+        if (map instanceof FeatureMap) {
+            seed = seed * 31 + ((FeatureMap) map).getFeatureId();
+        }
+        Random rand = new Random(seed);
+        PolygonSampler sampler = null;
+        if (nb > 0) {
+            PolygonSamplerCache cache = PolygonSamplerCache.of(mt);
+            sampler = cache == null ? PolygonSampler.create(shp) : cache.getSampler(mt,
+                    map instanceof FeatureMap ? ((FeatureMap) map).getFeatureId() : -1, shp);
+        }
+        Area area = sampler == null && nb > 0 ? new Area(shp) : null;
         for (int i = 0; i < nb; i++) {
-            Point2D.Double pos = findMarkPosition(area);
+            Point2D.Double pos = sampler != null ? sampler.sample(rand) : findMarkPosition(area, rand);
             if (pos != null) {
                 mark.draw(g2, map, selected, mt, AffineTransform.getTranslateInstance(pos.x, pos.y));
             } else {
@@ -220,11 +228,13 @@ public final class DotMapFill extends Fill implements GraphicNode {
     }
 
     /**
-     * Ugly version to find a random point which stand within the area
+     * Find a random point which stand within the area by rejection sampling, used when the area can't be
+     * triangulated.
      * @param area
+     * @param rand
      * @return
      */
-    private Point2D.Double findMarkPosition(Area area) {
+    private Point2D.Double findMarkPosition(Area area, Random rand) {
         Rectangle2D bounds2D = area.getBounds2D();
 
         for (int i = 0; i < MAX_ATTEMPT; i++) {
@@ -50,6 +50,7 @@ import net.opengis.se._2_0.thematic.DensityFillType;
 import net.opengis.se._2_0.thematic.DotMapFillType;
 import org.orbisgis.coremap.map.MapTransform;
 import org.orbisgis.coremap.renderer.se.AbstractSymbolizerNode;
+import org.orbisgis.coremap.renderer.se.NodeVersion;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.UomNode;
 import org.orbisgis.coremap.renderer.se.common.Uom;
@@ -66,6 +67,8 @@ import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
 public abstract class Fill extends AbstractSymbolizerNode implements UomNode {
 
     private Uom uom;
+    private final NodeVersion version = new NodeVersion(this);
+
     /**
      * Create a new fill based on the jaxbelement
      *
@@ -97,6 +100,7 @@ public abstract class Fill extends AbstractSymbolizerNode implements UomNode {
     @Override
     public void setUom(Uom u){
             uom = u;
+            update();
     }
 
     @Override
@@ -135,6 +139,26 @@ public abstract class Fill extends AbstractSymbolizerNode implements UomNode {
 	public abstract Paint getPaint(Map<String,Object> map, boolean selected, MapTransform mt) throws ParameterException, IOException;
 
 
+    @Override
+    public void update() {
+        version.increment();
+        super.update();
+    }
+
+    /**
+     * @return A number incremented each time this fill or one of its children is modified
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return Names of the fields read by this fill and its children
+     */
+    String[] getFeatureFields() {
+        return version.getFeatureFields();
+    }
+
     /**
      * Serialise to JAXBElement
      * @return
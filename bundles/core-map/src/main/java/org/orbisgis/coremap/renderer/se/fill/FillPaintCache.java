@@ -0,0 +1,284 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.fill;
+
+import java.awt.Graphics2D;
+import java.awt.TexturePaint;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.se.common.BoundedCache;
+import org.orbisgis.coremap.renderer.se.graphic.GraphicCollection;
+import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
+import org.orbisgis.coremap.renderer.se.stroke.PenStroke;
+import org.orbisgis.coremap.renderer.se.stroke.Stroke;
+
+/**
+ * Bounded cache of the textures used to fill polygons. The tile of a {@link GraphicFill} is rendered once for
+ * each distinct set of resolved parameters, and so is the periodic tile of the continuous hatches of a
+ * {@link HatchedFill}, then every polygon is filled with the same {@link TexturePaint}. A texture is identified by
+ * the fill and its version, the values of the fields it reads, the resolved gaps, angles and distances in pixels,
+ * the resolution, the scale denominator and the selection state. The graphic tiles also depend on the position
+ * of the map origin on the image, the hatch tiles are anchored on it.
+ * The cache is only used when the renderer provides it in the {@link RenderContext}, vector outputs like PDF keep
+ * drawing hatches as lines. Least recently used textures are removed when the memory or the entry limit is
+ * reached. This class is thread safe.
+ */
+public final class FillPaintCache extends BoundedCache<FillPaintCache.Key, TexturePaint> {
+    /** Default maximum memory of the textures, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 32 * 1024 * 1024;
+    /** Default maximum number of textures */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    /** Minimum width and height of a hatch tile, in pixels, the periods of the hatches are repeated up to it */
+    public static final int MIN_HATCH_TILE_SIZE = 32;
+    /** Maximum width and height of a hatch tile, in pixels, hatches with longer periods are drawn as lines */
+    public static final int MAX_HATCH_TILE_SIZE = 512;
+    // Estimated size of an entry without its pixels
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int GRAPHIC_TILE = 0;
+    private static final int HATCH_TILE = 1;
+    private static final FillPaintCache DEFAULT = new FillPaintCache(DEFAULT_MAX_MEMORY, DEFAULT_MAX_ENTRIES);
+
+    /**
+     * @param maxMemory Maximum memory of the textures, in bytes
+     */
+    public FillPaintCache(long maxMemory) {
+        this(maxMemory, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxMemory Maximum memory of the textures, in bytes
+     * @param maxEntries Maximum number of textures
+     */
+    public FillPaintCache(long maxMemory, int maxEntries) {
+        super(maxMemory, maxEntries);
+    }
+
+    /**
+     * @return The cache shared by the map renderers
+     */
+    public static FillPaintCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param mt Transformation given to a fill
+     * @return The cache of the drawing, null if the fill is not drawn by a renderer or without cache
+     */
+    public static FillPaintCache of(MapTransform mt) {
+        RenderContext context = RenderContext.of(mt);
+        return context == null ? null : context.getFillPaintCache();
+    }
+
+    /**
+     * Get the texture of a graphic fill, rendering its tile on the first use.
+     * @param fill The fill that owns the graphic
+     * @param map Input values of the feature
+     * @param selected True if the feature is selected
+     * @param mt The current map transform
+     * @param graphic The graphic repeated in the tile
+     * @param gX Horizontal gap between two graphics, in pixels
+     * @param gY Vertical gap between two graphics, in pixels
+     * @param bounds Bounds of the graphic, in pixels
+     * @return The texture, null if the tile is empty
+     * @throws ParameterException
+     * @throws IOException
+     */
+    public TexturePaint getGraphicPaint(Fill fill, Map<String, Object> map, boolean selected, MapTransform mt,
+            GraphicCollection graphic, double gX, double gY, Rectangle2D bounds)
+            throws ParameterException, IOException {
+        Point2D ref = mt.getAffineTransform().transform(new Point2D.Double(0, 0), null);
+        int tWidth = (int) (bounds.getWidth() + gX);
+        int tHeight = (int) (bounds.getHeight() + gY);
+        if (tWidth <= 0 || tHeight <= 0) {
+            return null;
+        }
+        int deltaX = (int) (ref.getX() - Math.ceil(ref.getX() / tWidth) * tWidth);
+        int deltaY = (int) (ref.getY() - Math.ceil(ref.getY() / tHeight) * tHeight);
+        Key key = new Key(GRAPHIC_TILE, fill, map, selected, new double[]{gX, gY, bounds.getMinX(),
+                bounds.getMinY(), bounds.getWidth(), bounds.getHeight(), deltaX, deltaY, mt.getDpi(),
+                mt.getScaleDenominator()});
+        TexturePaint paint = get(key);
+        if (paint == null) {
+            BufferedImage i = new BufferedImage(tWidth, tHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D tile = i.createGraphics();
+            try {
+                tile.setRenderingHints(mt.getRenderingHints());
+                for (int ix = 0; ix < 2; ix++) {
+                    for (int iy = 0; iy < 2; iy++) {
+                        graphic.draw(tile, map, selected, mt,
+                                AffineTransform.getTranslateInstance(
+                                -bounds.getMinX() + gX / 2.0 + deltaX + tWidth * ix,
+                                -bounds.getMinY() + gY / 2.0 + deltaY + tHeight * iy));
+                    }
+                }
+            } finally {
+                tile.dispose();
+            }
+            paint = new TexturePaint(i, new Rectangle2D.Double(0, 0, i.getWidth(), i.getHeight()));
+            put(key, paint);
+        }
+        return paint;
+    }
+
+    /**
+     * Get the hatches of a hatched fill, rendering their tile on the first use. The hatches are periodic along the
+     * horizontal and vertical axes, the tile holds one or more periods and the texture is anchored on the map
+     * origin. Hatches whose parameters depend on the feature get one tile per distinct set of values. Dashed or
+     * graphic strokes, and hatches whose period is longer than {@link #MAX_HATCH_TILE_SIZE} are not cached.
+     * @param fill The fill that owns the stroke
+     * @param map Input values of the feature
+     * @param selected True if the feature is selected
+     * @param mt The current map transform
+     * @param alpha Orientation of the hatches, in degrees
+     * @param pDist Perpendicular distance between two hatches, in pixels
+     * @param stroke The stroke of the hatches
+     * @param hOffset Offset between the reference point and the reference hatch, in pixels
+     * @return The texture, null if the hatches must be drawn as lines
+     * @throws ParameterException
+     * @throws IOException
+     */
+    public TexturePaint getHatchPaint(Fill fill, Map<String, Object> map, boolean selected, MapTransform mt,
+            double alpha, double pDist, Stroke stroke, double hOffset) throws ParameterException, IOException {
+        if (!(pDist > 0) || !(stroke instanceof PenStroke) ||
+                !stroke.getNaturalLength(map, null, mt).isInfinite()) {
+            return null;
+        }
+        // Continuous lines repeat along an axis they are parallel to at any distance, like drawHatch
+        double theta = Math.toRadians(alpha);
+        double sin = Math.abs(Math.sin(theta));
+        double cos = Math.abs(Math.cos(theta));
+        double tileWidth = getTileSize(sin < HatchedFill.EPSILON ? 1 : pDist / sin);
+        double tileHeight = getTileSize(cos < HatchedFill.EPSILON ? 1 : pDist / cos);
+        if (tileWidth > MAX_HATCH_TILE_SIZE || tileHeight > MAX_HATCH_TILE_SIZE) {
+            return null;
+        }
+        Point2D origin = mt.getAffineTransform().transform(new Point2D.Double(0, 0), null);
+        Key key = new Key(HATCH_TILE, fill, map, selected, new double[]{alpha, pDist, hOffset, mt.getDpi(),
+                mt.getScaleDenominator()});
+        TexturePaint paint = get(key);
+        if (paint == null) {
+            int width = (int) Math.ceil(tileWidth);
+            int height = (int) Math.ceil(tileHeight);
+            BufferedImage i = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D tile = i.createGraphics();
+            try {
+                tile.setRenderingHints(mt.getRenderingHints());
+                // The tile covers one period from the map origin, stretched to whole pixels
+                tile.scale(width / tileWidth, height / tileHeight);
+                tile.translate(-origin.getX(), -origin.getY());
+                HatchedFill.drawHatch(tile, map, new Rectangle2D.Double(origin.getX() - tileWidth,
+                        origin.getY() - tileHeight, 3 * tileWidth, 3 * tileHeight), selected, mt, alpha, pDist,
+                        stroke, hOffset);
+            } finally {
+                tile.dispose();
+            }
+            paint = new TexturePaint(i, new Rectangle2D.Double(0, 0, tileWidth, tileHeight));
+            put(key, paint);
+        }
+        return new TexturePaint(paint.getImage(), new Rectangle2D.Double(origin.getX(), origin.getY(), tileWidth,
+                tileHeight));
+    }
+
+    /**
+     * @param period Period of the hatches along an axis, in pixels
+     * @return The smallest multiple of the period not smaller than {@link #MIN_HATCH_TILE_SIZE}
+     */
+    private static double getTileSize(double period) {
+        return period * Math.ceil(MIN_HATCH_TILE_SIZE / period);
+    }
+
+    @Override
+    protected long getMemory(Key key, TexturePaint paint) {
+        BufferedImage image = paint.getImage();
+        return ENTRY_OVERHEAD + 4L * image.getWidth() * image.getHeight();
+    }
+
+    static final class Key {
+        private final int kind;
+        private final Fill fill;
+        private final int version;
+        private final Object[] values;
+        private final double[] parameters;
+        private final boolean selected;
+        private final int hash;
+
+        private Key(int kind, Fill fill, Map<String, Object> map, boolean selected, double[] parameters) {
+            String[] fields = fill.getFeatureFields();
+            Object[] fieldValues = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                fieldValues[i] = map == null ? null : map.get(fields[i]);
+            }
+            this.kind = kind;
+            this.fill = fill;
+            this.version = fill.getVersion();
+            this.values = fieldValues;
+            this.parameters = parameters;
+            this.selected = selected;
+            int h = 31 * kind + System.identityHashCode(fill);
+            h = 31 * h + version;
+            h = 31 * h + Arrays.hashCode(values);
+            h = 31 * h + Arrays.hashCode(parameters);
+            this.hash = 31 * h + (selected ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && kind == other.kind && fill == other.fill && version == other.version &&
+                    selected == other.selected && Arrays.equals(parameters, other.parameters) &&
+                    Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -147,6 +147,8 @@ public final class GraphicFill extends Fill {
         if (gap != null) {
             gap.setContext(RealParameterContext.NON_NEGATIVE_CONTEXT);
             gap.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -159,6 +161,8 @@ public final class GraphicFill extends Fill {
         if (gap != null) {
             gap.setContext(RealParameterContext.NON_NEGATIVE_CONTEXT);
             gap.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -225,6 +229,10 @@ public final class GraphicFill extends Fill {
         gX = Uom.toPixel(gX, getUom(), mt.getDpi(), mt.getScaleDenominator(), bounds.getWidth());
         gY = Uom.toPixel(gY, getUom(), mt.getDpi(), mt.getScaleDenominator(), bounds.getHeight());
 
+        FillPaintCache cache = FillPaintCache.of(mt);
+        if (cache != null) {
+            return cache.getGraphicPaint(this, map, selected, mt, graphic, gX, gY, bounds);
+        }
         return getPaint(map, selected, mt, graphic, gX, gY, bounds);
     }
 
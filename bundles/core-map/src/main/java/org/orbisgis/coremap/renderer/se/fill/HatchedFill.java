@@ -77,7 +77,7 @@ import java.util.Map;
 public final class HatchedFill extends Fill implements StrokeNode {
 
     //Useful constants.
-    private static final double EPSILON = 0.01; // todo Eval, and use an external EPSILON value.
+    static final double EPSILON = 0.01; // todo Eval, and use an external EPSILON value.
     private static final double TWO_PI_DEG = 360.0;
     private static final double PI_DEG = 180.0;
     /**
@@ -151,7 +151,17 @@ public final class HatchedFill extends Fill implements StrokeNode {
                     hOffset = Uom.toPixel(this.offset.getValue(map), this.getUom(), mt.getDpi(), mt.getScaleDenominator(), null);
                 }
 
-                drawHatch(g2, map, shp, selected, mt, alpha, pDist, stroke, hOffset);
+                FillPaintCache cache = FillPaintCache.of(mt);
+                Paint hatches = null;
+                if (cache != null && g2.getTransform().isIdentity()) {
+                    hatches = cache.getHatchPaint(this, map, selected, mt, alpha, pDist, stroke, hOffset);
+                }
+                if (hatches != null) {
+                    g2.setPaint(hatches);
+                    g2.fill(shp);
+                } else {
+                    drawHatch(g2, map, shp, selected, mt, alpha, pDist, stroke, hOffset);
+                }
                 
             } catch (RuntimeException eee) {
                 System.out.println("Error " + eee);
@@ -444,6 +454,8 @@ public final class HatchedFill extends Fill implements StrokeNode {
         if (angle != null) {
             angle.setContext(RealParameterContext.REAL_CONTEXT);
             angle.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -466,6 +478,8 @@ public final class HatchedFill extends Fill implements StrokeNode {
         if (distance != null) {
             this.distance.setContext(RealParameterContext.NON_NEGATIVE_CONTEXT);
             this.distance.setParent(this);
+        } else {
+            update();
         }
 
     }
@@ -489,6 +503,8 @@ public final class HatchedFill extends Fill implements StrokeNode {
         if (offset != null) {
             offset.setContext(RealParameterContext.REAL_CONTEXT);
             offset.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -504,6 +520,8 @@ public final class HatchedFill extends Fill implements StrokeNode {
         this.stroke = stroke;
         if (stroke != null) {
             stroke.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -0,0 +1,321 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.fill;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.triangulate.ConformingDelaunayTriangulationBuilder;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Uniform random points within a shape. The shape is triangulated once, with its boundaries as constraints,
+ * and the triangles that lie inside the shape are kept. A point is drawn by choosing a triangle with a
+ * probability proportional to its area, then a uniform point within this triangle. The cost of a point does
+ * not depend on the shape of the polygon, whereas rejection sampling fails on narrow polygons.
+ */
+final class PolygonSampler {
+    // Tolerance of the curve flattening, in pixels
+    private static final double FLATNESS = 0.25;
+    private static final double TOLERANCE = 1e-6;
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+    // Vertices of the triangles, six values per triangle
+    private final double[] triangles;
+    // Cumulated areas of the triangles
+    private final double[] areas;
+
+    private PolygonSampler(double[] triangles, double[] areas) {
+        this.triangles = triangles;
+        this.areas = areas;
+    }
+
+    /**
+     * Triangulate the given shape.
+     * @param shp Shape to sample, with its winding rule
+     * @return The sampler, or null if the shape has no area or if it can't be triangulated
+     */
+    static PolygonSampler create(Shape shp) {
+        EdgeIndex edges = new EdgeIndex(shp);
+        List<LineString> rings = edges.getRings();
+        if (rings.isEmpty()) {
+            return null;
+        }
+        Geometry lines = FACTORY.createMultiLineString(rings.toArray(new LineString[rings.size()]));
+        Geometry result;
+        try {
+            ConformingDelaunayTriangulationBuilder builder = new ConformingDelaunayTriangulationBuilder();
+            builder.setSites(lines);
+            builder.setConstraints(lines);
+            builder.setTolerance(TOLERANCE);
+            result = builder.getTriangles(FACTORY);
+        } catch (RuntimeException ex) {
+            // Self intersecting or degenerated boundaries
+            return null;
+        }
+        int count = result.getNumGeometries();
+        double[] triangles = new double[count * 6];
+        double[] areas = new double[count];
+        int kept = 0;
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            Coordinate[] c = result.getGeometryN(i).getCoordinates();
+            if (c.length < 3) {
+                continue;
+            }
+            double area = Math.abs((c[1].x - c[0].x) * (c[2].y - c[0].y) - (c[2].x - c[0].x) * (c[1].y - c[0].y)) / 2;
+            // Constrained triangles are either inside or outside the shape, their centroid tells which
+            if (area > 0 && edges.contains((c[0].x + c[1].x + c[2].x) / 3, (c[0].y + c[1].y + c[2].y) / 3)) {
+                int offset = kept * 6;
+                for (int v = 0; v < 3; v++) {
+                    triangles[offset + 2 * v] = c[v].x;
+                    triangles[offset + 2 * v + 1] = c[v].y;
+                }
+                total += area;
+                areas[kept++] = total;
+            }
+        }
+        if (kept == 0) {
+            return null;
+        }
+        return new PolygonSampler(Arrays.copyOf(triangles, kept * 6), Arrays.copyOf(areas, kept));
+    }
+
+    /**
+     * @param dx Horizontal translation, in pixels
+     * @param dy Vertical translation, in pixels
+     * @return A sampler of the translated shape, without triangulating it again
+     */
+    PolygonSampler translate(double dx, double dy) {
+        double[] translated = new double[triangles.length];
+        for (int i = 0; i < translated.length; i += 2) {
+            translated[i] = triangles[i] + dx;
+            translated[i + 1] = triangles[i + 1] + dy;
+        }
+        return new PolygonSampler(translated, areas);
+    }
+
+    /**
+     * @return Area of the sampled shape, in square pixels
+     */
+    double getArea() {
+        return areas[areas.length - 1];
+    }
+
+    /**
+     * @return Number of triangles within the shape
+     */
+    int getTriangleCount() {
+        return areas.length;
+    }
+
+    /**
+     * @param rand Source of the random numbers
+     * @return A point uniformly distributed within the shape
+     */
+    Point2D.Double sample(Random rand) {
+        double target = rand.nextDouble() * getArea();
+        int index = Arrays.binarySearch(areas, target);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        index = Math.min(index, areas.length - 1);
+        double u = rand.nextDouble();
+        double v = rand.nextDouble();
+        if (u + v > 1) {
+            // Fold the parallelogram on the triangle
+            u = 1 - u;
+            v = 1 - v;
+        }
+        int offset = index * 6;
+        double x0 = triangles[offset];
+        double y0 = triangles[offset + 1];
+        return new Point2D.Double(x0 + u * (triangles[offset + 2] - x0) + v * (triangles[offset + 4] - x0),
+                y0 + u * (triangles[offset + 3] - y0) + v * (triangles[offset + 5] - y0));
+    }
+
+    /**
+     * Edges of a shape, bucketed in horizontal strips to count the crossings of a ray in the cost of the
+     * edges of one strip.
+     */
+    private static final class EdgeIndex {
+        private final List<LineString> rings = new ArrayList<LineString>();
+        private final boolean evenOdd;
+        // Four values per edge
+        private double[] edges = new double[64];
+        private int edgeCount = 0;
+        private double minY;
+        private double stripHeight;
+        private int[][] strips;
+
+        private EdgeIndex(Shape shp) {
+            PathIterator it = shp.getPathIterator(null, FLATNESS);
+            evenOdd = it.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+            List<Coordinate> ring = new ArrayList<Coordinate>();
+            double[] coords = new double[6];
+            while (!it.isDone()) {
+                int type = it.currentSegment(coords);
+                if (type == PathIterator.SEG_MOVETO) {
+                    closeRing(ring);
+                    ring.add(new Coordinate(coords[0], coords[1]));
+                } else if (type == PathIterator.SEG_LINETO) {
+                    Coordinate last = ring.isEmpty() ? null : ring.get(ring.size() - 1);
+                    if (last == null || last.x != coords[0] || last.y != coords[1]) {
+                        ring.add(new Coordinate(coords[0], coords[1]));
+                    }
+                } else if (type == PathIterator.SEG_CLOSE) {
+                    closeRing(ring);
+                }
+                it.next();
+            }
+            closeRing(ring);
+            buildStrips();
+        }
+
+        private void closeRing(List<Coordinate> ring) {
+            if (!ring.isEmpty() && ring.get(0).equals2D(ring.get(ring.size() - 1))) {
+                ring.remove(ring.size() - 1);
+            }
+            if (ring.size() >= 3) {
+                Coordinate[] pts = new Coordinate[ring.size() + 1];
+                for (int i = 0; i < ring.size(); i++) {
+                    pts[i] = ring.get(i);
+                    Coordinate next = ring.get((i + 1) % ring.size());
+                    addEdge(pts[i].x, pts[i].y, next.x, next.y);
+                }
+                pts[ring.size()] = new Coordinate(ring.get(0));
+                rings.add(FACTORY.createLineString(pts));
+            }
+            ring.clear();
+        }
+
+        private void addEdge(double x1, double y1, double x2, double y2) {
+            if (y1 == y2) {
+                // Horizontal edges are never crossed by a horizontal ray
+                return;
+            }
+            if (edgeCount * 4 == edges.length) {
+                edges = Arrays.copyOf(edges, edges.length * 2);
+            }
+            int offset = edgeCount * 4;
+            edges[offset] = x1;
+            edges[offset + 1] = y1;
+            edges[offset + 2] = x2;
+            edges[offset + 3] = y2;
+            edgeCount++;
+        }
+
+        private void buildStrips() {
+            if (edgeCount == 0) {
+                strips = new int[0][];
+                return;
+            }
+            minY = Double.POSITIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < edgeCount; i++) {
+                minY = Math.min(minY, Math.min(edges[i * 4 + 1], edges[i * 4 + 3]));
+                maxY = Math.max(maxY, Math.max(edges[i * 4 + 1], edges[i * 4 + 3]));
+            }
+            int stripCount = Math.max(1, (int) Math.sqrt(edgeCount));
+            stripHeight = (maxY - minY) / stripCount;
+            int[] sizes = new int[stripCount];
+            for (int i = 0; i < edgeCount; i++) {
+                for (int s = getStrip(edgeMinY(i), stripCount); s <= getStrip(edgeMaxY(i), stripCount); s++) {
+                    sizes[s]++;
+                }
+            }
+            strips = new int[stripCount][];
+            for (int s = 0; s < stripCount; s++) {
+                strips[s] = new int[sizes[s]];
+                sizes[s] = 0;
+            }
+            for (int i = 0; i < edgeCount; i++) {
+                for (int s = getStrip(edgeMinY(i), stripCount); s <= getStrip(edgeMaxY(i), stripCount); s++) {
+                    strips[s][sizes[s]++] = i;
+                }
+            }
+        }
+
+        private double edgeMinY(int edge) {
+            return Math.min(edges[edge * 4 + 1], edges[edge * 4 + 3]);
+        }
+
+        private double edgeMaxY(int edge) {
+            return Math.max(edges[edge * 4 + 1], edges[edge * 4 + 3]);
+        }
+
+        private int getStrip(double y, int stripCount) {
+            if (stripHeight <= 0) {
+                return 0;
+            }
+            return Math.max(0, Math.min(stripCount - 1, (int) ((y - minY) / stripHeight)));
+        }
+
+        private List<LineString> getRings() {
+            return rings;
+        }
+
+        /**
+         * @return True if the point is inside the shape, according to its winding rule
+         */
+        private boolean contains(double x, double y) {
+            if (strips.length == 0) {
+                return false;
+            }
+            int winding = 0;
+            for (int edge : strips[getStrip(y, strips.length)]) {
+                int offset = edge * 4;
+                double y1 = edges[offset + 1];
+                double y2 = edges[offset + 3];
+                if ((y1 <= y && y < y2) || (y2 <= y && y < y1)) {
+                    double x1 = edges[offset];
+                    double crossX = x1 + (y - y1) * (edges[offset + 2] - x1) / (y2 - y1);
+                    if (crossX > x) {
+                        winding += y2 > y1 ? 1 : -1;
+                    }
+                }
+            }
+            return evenOdd ? (winding & 1) != 0 : winding != 0;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.fill;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.HashMap;
+import java.util.Map;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.se.common.BoundedCache;
+
+/**
+ * Bounded cache of the triangulated polygons of the {@link DotMapFill}, kept from one drawing to the next. A
+ * sampler is identified by the layer and its version, the feature id, the scale of the map transform and the
+ * generalization tolerance. After a pan the sampler is translated instead of triangulated again. A sampler whose
+ * shape bounds do not match the drawn shape any more is computed again. The owner of the cache calls
+ * {@link #invalidate(ILayer)} when the data of a layer change. The cache is only used when the renderer provides
+ * it in the {@link RenderContext}. This class is thread safe.
+ */
+public final class PolygonSamplerCache extends BoundedCache<PolygonSamplerCache.Key, PolygonSamplerCache.Entry> {
+    /** Default maximum memory of the triangles, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 16 * 1024 * 1024;
+    /** Default maximum number of samplers */
+    public static final int DEFAULT_MAX_ENTRIES = 20000;
+    // Estimated size of an entry without its triangles
+    private static final int ENTRY_OVERHEAD = 160;
+    // Six coordinates and a cumulated area per triangle
+    private static final int TRIANGLE_SIZE = 7 * 8;
+    // Tolerance on the bounds of the translated shape, in pixels
+    private static final double BOUNDS_TOLERANCE = 1e-3;
+    private final Map<ILayer, Long> versions = new HashMap<ILayer, Long>();
+
+    /**
+     * Cache with the default limits.
+     */
+    public PolygonSamplerCache() {
+        this(DEFAULT_MAX_MEMORY, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxMemory Maximum memory of the triangles, in bytes
+     * @param maxEntries Maximum number of samplers
+     */
+    public PolygonSamplerCache(long maxMemory, int maxEntries) {
+        super(maxMemory, maxEntries);
+    }
+
+    /**
+     * @param mt Transformation given to a fill
+     * @return The cache of the drawing, null if the fill is not drawn by a renderer or without cache
+     */
+    public static PolygonSamplerCache of(MapTransform mt) {
+        RenderContext context = RenderContext.of(mt);
+        return context == null ? null : context.getPolygonSamplerCache();
+    }
+
+    /**
+     * @param mt The current map transform, the context of the drawing
+     * @param featureId Identifier of the feature, -1 if unknown
+     * @param shp Shape of the feature, in pixels
+     * @return The sampler of the shape, or null if the shape has no area or if it can't be triangulated
+     */
+    PolygonSampler getSampler(MapTransform mt, long featureId, Shape shp) {
+        RenderContext context = RenderContext.of(mt);
+        ILayer layer = context == null ? null : context.getLayer();
+        if (layer == null || featureId < 0) {
+            return PolygonSampler.create(shp);
+        }
+        AffineTransform at = mt.getAffineTransform();
+        Rectangle2D bounds = shp.getBounds2D();
+        Key key = new Key(layer, getVersion(layer), featureId, at.getScaleX(), at.getScaleY(),
+                mt.getGeneralizationTolerance());
+        Entry entry = get(key);
+        if (entry != null) {
+            double dx = at.getTranslateX() - entry.originX;
+            double dy = at.getTranslateY() - entry.originY;
+            if (Math.abs(bounds.getMinX() - dx - entry.bounds.getMinX()) < BOUNDS_TOLERANCE &&
+                    Math.abs(bounds.getMinY() - dy - entry.bounds.getMinY()) < BOUNDS_TOLERANCE &&
+                    Math.abs(bounds.getWidth() - entry.bounds.getWidth()) < BOUNDS_TOLERANCE &&
+                    Math.abs(bounds.getHeight() - entry.bounds.getHeight()) < BOUNDS_TOLERANCE) {
+                return dx == 0 && dy == 0 ? entry.sampler : entry.sampler.translate(dx, dy);
+            }
+        }
+        PolygonSampler sampler = PolygonSampler.create(shp);
+        if (sampler != null) {
+            put(key, new Entry(sampler, at.getTranslateX(), at.getTranslateY(), bounds));
+        }
+        return sampler;
+    }
+
+    /**
+     * The data of the layer has changed, its polygons must be triangulated again.
+     * @param layer Layer
+     */
+    public synchronized void invalidate(ILayer layer) {
+        versions.put(layer, getVersion(layer) + 1);
+    }
+
+    /**
+     * Free the samplers and the version of this layer.
+     * @param layer Removed layer
+     */
+    public synchronized void removeLayer(ILayer layer) {
+        for (Key key : getKeys()) {
+            if (key.layer == layer) {
+                remove(key);
+            }
+        }
+        versions.remove(layer);
+    }
+
+    private synchronized long getVersion(ILayer layer) {
+        Long version = versions.get(layer);
+        return version == null ? 0 : version;
+    }
+
+    @Override
+    protected long getMemory(Key key, Entry entry) {
+        return ENTRY_OVERHEAD + (long) TRIANGLE_SIZE * entry.sampler.getTriangleCount();
+    }
+
+    static final class Entry {
+        private final PolygonSampler sampler;
+        // Position of the map origin on the image when the sampler was computed
+        private final double originX;
+        private final double originY;
+        private final Rectangle2D bounds;
+
+        private Entry(PolygonSampler sampler, double originX, double originY, Rectangle2D bounds) {
+            this.sampler = sampler;
+            this.originX = originX;
+            this.originY = originY;
+            this.bounds = bounds;
+        }
+    }
+
+    static final class Key {
+        private final ILayer layer;
+        private final long version;
+        private final long featureId;
+        private final double scaleX;
+        private final double scaleY;
+        private final double tolerance;
+        private final int hash;
+
+        private Key(ILayer layer, long version, long featureId, double scaleX, double scaleY, double tolerance) {
+            this.layer = layer;
+            this.version = version;
+            this.featureId = featureId;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.tolerance = tolerance;
+            int h = System.identityHashCode(layer);
+            h = 31 * h + (int) (version ^ (version >>> 32));
+            h = 31 * h + (int) (featureId ^ (featureId >>> 32));
+            long bits = Double.doubleToLongBits(scaleX) ^ 31 * Double.doubleToLongBits(scaleY) ^
+                    961 * Double.doubleToLongBits(tolerance);
+            this.hash = 31 * h + (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && layer == other.layer && version == other.version &&
+                    featureId == other.featureId && scaleX == other.scaleX && scaleY == other.scaleY &&
+                    tolerance == other.tolerance;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
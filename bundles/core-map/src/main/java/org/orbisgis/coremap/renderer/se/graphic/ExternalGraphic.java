@@ -158,6 +158,7 @@ public final class ExternalGraphic extends Graphic implements UomNode, Transform
     @Override
     public void setUom(Uom uom) {
         this.uom = uom;
+        update();
     }
 
     @Override
@@ -170,6 +171,8 @@ public final class ExternalGraphic extends Graphic implements UomNode, Transform
         this.transform = transform;
         if (transform != null) {
             transform.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -192,6 +195,8 @@ public final class ExternalGraphic extends Graphic implements UomNode, Transform
         this.halo = halo;
         if (halo != null) {
             halo.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -214,6 +219,8 @@ public final class ExternalGraphic extends Graphic implements UomNode, Transform
         if (this.opacity != null) {
             this.opacity.setContext(RealParameterContext.PERCENTAGE_CONTEXT);
             this.opacity.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -289,7 +296,10 @@ public final class ExternalGraphic extends Graphic implements UomNode, Transform
     @Override
     public void draw(Graphics2D g2, Map<String,Object> map,
             boolean selected, MapTransform mt, AffineTransform fat) throws ParameterException, IOException {
-
+        SymbolAtlas atlas = SymbolAtlas.of(mt);
+        if (atlas != null && atlas.draw(g2, this, map, selected, mt, fat)) {
+            return;
+        }
 
         Rectangle2D.Double bounds = source.updateCacheAndGetBounds(viewBox, map, mt, mimeType);
 
@@ -52,6 +52,7 @@ import net.opengis.se._2_0.thematic.PieChartType;
 
 import org.orbisgis.coremap.map.MapTransform;
 import org.orbisgis.coremap.renderer.se.AbstractSymbolizerNode;
+import org.orbisgis.coremap.renderer.se.NodeVersion;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
 
@@ -61,6 +62,7 @@ import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
  * @author Maxence Laurent
  */
 public abstract class Graphic extends AbstractSymbolizerNode {
+    private final NodeVersion version = new NodeVersion(this);
 
     /**
      * This static method is a convenience to create a new {@code Graphic}
@@ -144,4 +146,24 @@ public abstract class Graphic extends AbstractSymbolizerNode {
      * Update the inner graphic.
      */
     public abstract void updateGraphic();
+
+    @Override
+    public void update() {
+        version.increment();
+        super.update();
+    }
+
+    /**
+     * @return A number incremented each time this graphic or one of its children is modified
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return Names of the fields read by this graphic and its children
+     */
+    String[] getFeatureFields() {
+        return version.getFeatureFields();
+    }
 }
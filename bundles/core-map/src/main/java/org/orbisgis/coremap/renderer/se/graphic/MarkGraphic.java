@@ -214,6 +214,7 @@ public final class MarkGraphic extends Graphic implements FillNode, StrokeNode,
     @Override
     public void setUom(Uom uom) {
         this.uom = uom;
+        update();
     }
 
     @Override
@@ -226,6 +227,8 @@ public final class MarkGraphic extends Graphic implements FillNode, StrokeNode,
         this.transform = transform;
         if (transform != null) {
             transform.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -239,6 +242,8 @@ public final class MarkGraphic extends Graphic implements FillNode, StrokeNode,
         this.fill = fill;
         if (fill != null) {
             fill.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -258,6 +263,8 @@ public final class MarkGraphic extends Graphic implements FillNode, StrokeNode,
         this.halo = halo;
         if (halo != null) {
             halo.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -271,6 +278,8 @@ public final class MarkGraphic extends Graphic implements FillNode, StrokeNode,
         this.stroke = stroke;
         if (stroke != null) {
             stroke.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -313,6 +322,8 @@ public final class MarkGraphic extends Graphic implements FillNode, StrokeNode,
         if (this.pOffset != null) {
             this.pOffset.setContext(RealParameterContext.REAL_CONTEXT);
             this.pOffset.setParent(this);
+        } else {
+            update();
         }
     }
 
@@ -405,6 +416,10 @@ public final class MarkGraphic extends Graphic implements FillNode, StrokeNode,
     @Override
     public void draw(Graphics2D g2, Map<String,Object> map,
             boolean selected, MapTransform mt, AffineTransform fat) throws ParameterException, IOException {
+        SymbolAtlas atlas = SymbolAtlas.of(mt);
+        if (atlas != null && atlas.draw(g2, this, map, selected, mt, fat)) {
+            return;
+        }
         Shape shp;
 
         AffineTransform at = new AffineTransform(fat);
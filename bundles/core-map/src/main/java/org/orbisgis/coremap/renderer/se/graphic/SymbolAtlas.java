@@ -0,0 +1,329 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.graphic;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.se.common.BoundedCache;
+import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
+
+/**
+ * Bounded cache of rasterized point symbols. A graphic is rendered once in a premultiplied sprite, then the sprite
+ * is drawn with {@code drawImage}. A sprite is identified by the graphic and its version, the values of the fields
+ * it reads, the rotation and scale of the placement transformation rounded to {@link #ROTATION_STEP} and
+ * {@link #SCALE_STEP}, the resolution, the scale denominator and the selection state. Sprites are drawn on the
+ * nearest pixel. A categorized symbol gets one sprite per distinct value.
+ * Graphics placed with a shear or a mirror are drawn as vectors. Graphics larger than {@link #MAX_SPRITE_SIZE} are
+ * not rasterized.
+ * The atlas is only used when the renderer provides it in the {@link RenderContext}, vector outputs like PDF keep
+ * drawing symbols as shapes. The atlas does not keep the graphics alive, the sprites of a discarded style are
+ * removed. Least recently used sprites are removed when the memory or the entry limit is reached. This class is
+ * thread safe.
+ */
+public final class SymbolAtlas extends BoundedCache<SymbolAtlas.Key, SymbolAtlas.Sprite> {
+    /** Maximum width and height of a sprite, in pixels */
+    public static final int MAX_SPRITE_SIZE = 256;
+    /** Default maximum memory of the sprites, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 32 * 1024 * 1024;
+    /** Default maximum number of sprites, including the graphics that can't be rasterized */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    /** Rotations closer than this step share a sprite, in radians */
+    public static final double ROTATION_STEP = Math.PI / 360;
+    /** Scales whose ratio is smaller than this step share a sprite */
+    public static final double SCALE_STEP = 1.01;
+    // Estimated size of an entry without its pixels
+    private static final int ENTRY_OVERHEAD = 128;
+    // Margin drawn around the graphic bounds, for strokes and halos
+    private static final int MARGIN = 16;
+    // Relative tolerance on the transformation of a graphic drawn without shear
+    private static final double SHEAR_TOLERANCE = 1e-6;
+    private static final Sprite NOT_CACHED = new Sprite(null, 0, 0);
+    private static final SymbolAtlas DEFAULT = new SymbolAtlas(DEFAULT_MAX_MEMORY, DEFAULT_MAX_ENTRIES);
+    // Graphics collected by the garbage collector
+    private final ReferenceQueue<Graphic> discarded = new ReferenceQueue<Graphic>();
+
+    /**
+     * @param maxMemory Maximum memory of the sprites, in bytes
+     */
+    public SymbolAtlas(long maxMemory) {
+        this(maxMemory, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxMemory Maximum memory of the sprites, in bytes
+     * @param maxEntries Maximum number of sprites
+     */
+    public SymbolAtlas(long maxMemory, int maxEntries) {
+        super(maxMemory, maxEntries);
+    }
+
+    /**
+     * @return The atlas shared by the map renderers
+     */
+    public static SymbolAtlas getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param mt Transformation given to a graphic
+     * @return The atlas of the drawing, null if the graphic is not drawn by a renderer or without atlas
+     */
+    public static SymbolAtlas of(MapTransform mt) {
+        RenderContext context = RenderContext.of(mt);
+        return context == null ? null : context.getSymbolAtlas();
+    }
+
+    /**
+     * Draw the graphic from its sprite, rasterizing it on the first use.
+     * @param g2 Graphics to draw on
+     * @param graphic The graphic
+     * @param map Input values of the feature
+     * @param selected True if the feature is selected
+     * @param mt The current map transform
+     * @param at Placement of the graphic
+     * @return False if the graphic can't be drawn from a sprite and must be drawn as vectors
+     * @throws ParameterException
+     * @throws IOException
+     */
+    public boolean draw(Graphics2D g2, Graphic graphic, Map<String, Object> map, boolean selected,
+            MapTransform mt, AffineTransform at) throws ParameterException, IOException {
+        if (!g2.getTransform().isIdentity()) {
+            return false;
+        }
+        double scale = Math.sqrt(at.getDeterminant());
+        if (!(scale > 0) || Double.isInfinite(scale) ||
+                Math.abs(at.getScaleX() - at.getScaleY()) > scale * SHEAR_TOLERANCE ||
+                Math.abs(at.getShearX() + at.getShearY()) > scale * SHEAR_TOLERANCE) {
+            return false;
+        }
+        int rotation = (int) Math.round(Math.atan2(at.getShearY(), at.getScaleX()) / ROTATION_STEP);
+        int scaleIndex = (int) Math.round(Math.log(scale) / Math.log(SCALE_STEP));
+        Key key = new Key(graphic, map, rotation, scaleIndex, mt.getDpi(), mt.getScaleDenominator(), selected,
+                null);
+        Sprite sprite = get(key);
+        if (sprite == null) {
+            AffineTransform linear = AffineTransform.getRotateInstance(rotation * ROTATION_STEP);
+            double spriteScale = Math.pow(SCALE_STEP, scaleIndex);
+            linear.scale(spriteScale, spriteScale);
+            sprite = createSprite(graphic, map, selected, mt, linear);
+            removeDiscarded();
+            put(new Key(graphic, map, rotation, scaleIndex, mt.getDpi(), mt.getScaleDenominator(), selected,
+                    discarded), sprite);
+        }
+        if (sprite == NOT_CACHED) {
+            return false;
+        }
+        if (sprite.image != null) {
+            g2.drawImage(sprite.image, (int) Math.round(at.getTranslateX()) + sprite.x,
+                    (int) Math.round(at.getTranslateY()) + sprite.y, null);
+        }
+        return true;
+    }
+
+    /**
+     * @param linear Rotation and scale of the graphic
+     */
+    private Sprite createSprite(Graphic graphic, Map<String, Object> map, boolean selected, MapTransform mt,
+            AffineTransform linear) throws ParameterException, IOException {
+        Rectangle2D bounds = graphic.getBounds(map, mt);
+        if (bounds == null) {
+            return NOT_CACHED;
+        }
+        Rectangle2D placed = linear.createTransformedShape(bounds).getBounds2D();
+        double margin = MARGIN + Math.max(placed.getWidth(), placed.getHeight()) / 2;
+        int width = (int) Math.ceil(placed.getWidth() + 2 * margin);
+        int height = (int) Math.ceil(placed.getHeight() + 2 * margin);
+        if (placed.isEmpty() || width > MAX_SPRITE_SIZE * 2 || height > MAX_SPRITE_SIZE * 2) {
+            return NOT_CACHED;
+        }
+        // Origin of the graphic in the sprite, on a pixel corner like the drawn position
+        int originX = (int) Math.ceil(margin - placed.getMinX());
+        int originY = (int) Math.ceil(margin - placed.getMinY());
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D sg2 = image.createGraphics();
+        try {
+            sg2.setRenderingHints(mt.getRenderingHints());
+            AffineTransform spriteAt = AffineTransform.getTranslateInstance(originX, originY);
+            spriteAt.concatenate(linear);
+            // Without the context of the drawing the graphic is drawn as vectors
+            RenderContext context = RenderContext.of(mt);
+            graphic.draw(sg2, map, selected, context == null ? mt : context.getPlainTransform(), spriteAt);
+        } finally {
+            sg2.dispose();
+        }
+        // Crop the sprite to the drawn pixels
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((argb[y * width + x] >>> 24) != 0) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            // Nothing is drawn
+            return new Sprite(null, 0, 0);
+        }
+        if (minX == 0 || minY == 0 || maxX == width - 1 || maxY == height - 1 ||
+                maxX - minX >= MAX_SPRITE_SIZE || maxY - minY >= MAX_SPRITE_SIZE) {
+            // The graphic may overflow the sprite, or it is too large
+            return NOT_CACHED;
+        }
+        BufferedImage cropped = new BufferedImage(maxX - minX + 1, maxY - minY + 1, BufferedImage.TYPE_INT_ARGB_PRE);
+        cropped.getRaster().setRect(-minX, -minY, image.getRaster());
+        return new Sprite(cropped, minX - originX, minY - originY);
+    }
+
+    @Override
+    protected long getMemory(Key key, Sprite sprite) {
+        return ENTRY_OVERHEAD + (sprite.image == null ? 0 : 4L * sprite.image.getWidth() * sprite.image.getHeight());
+    }
+
+    /**
+     * Remove the sprites of the graphics collected by the garbage collector.
+     */
+    private synchronized void removeDiscarded() {
+        for (Object ref = discarded.poll(); ref != null; ref = discarded.poll()) {
+            remove(((GraphicReference) ref).key);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        while (discarded.poll() != null) {
+            // The sprites of these graphics are removed below
+        }
+        super.clear();
+    }
+
+    static final class Sprite {
+        private final BufferedImage image;
+        private final int x;
+        private final int y;
+
+        private Sprite(BufferedImage image, int x, int y) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static final class GraphicReference extends WeakReference<Graphic> {
+        private Key key;
+
+        private GraphicReference(Graphic graphic, ReferenceQueue<Graphic> queue) {
+            super(graphic, queue);
+        }
+    }
+
+    static final class Key {
+        private final GraphicReference graphic;
+        private final int version;
+        private final Object[] values;
+        private final int rotation;
+        private final int scale;
+        private final double dpi;
+        private final double scaleDenominator;
+        private final boolean selected;
+        private final int hash;
+
+        /**
+         * @param map Input values of the feature
+         * @param queue Queue of the key kept in the atlas, null for a key used to look up a sprite
+         */
+        private Key(Graphic graphic, Map<String, Object> map, int rotation, int scale, double dpi,
+                double scaleDenominator, boolean selected, ReferenceQueue<Graphic> queue) {
+            String[] fields = graphic.getFeatureFields();
+            Object[] fieldValues = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                fieldValues[i] = map == null ? null : map.get(fields[i]);
+            }
+            this.graphic = new GraphicReference(graphic, queue);
+            this.graphic.key = this;
+            this.version = graphic.getVersion();
+            this.values = fieldValues;
+            this.rotation = rotation;
+            this.scale = scale;
+            this.dpi = dpi;
+            this.scaleDenominator = scaleDenominator;
+            this.selected = selected;
+            int h = System.identityHashCode(graphic);
+            h = 31 * h + version;
+            h = 31 * h + Arrays.hashCode(values);
+            h = 31 * h + rotation;
+            h = 31 * h + scale;
+            long bits = Double.doubleToLongBits(dpi) ^ 31 * Double.doubleToLongBits(scaleDenominator);
+            h = 31 * h + (int) (bits ^ (bits >>> 32));
+            this.hash = 31 * h + (selected ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            Graphic referent = graphic.get();
+            // The key of a collected graphic only equals itself
+            return hash == other.hash && referent != null && referent == other.graphic.get() &&
+                    version == other.version && rotation == other.rotation && scale == other.scale &&
+                    selected == other.selected && dpi == other.dpi && scaleDenominator == other.scaleDenominator &&
+                    Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.label;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.se.parameter.ParameterException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+/**
+ * Places the labels of a drawing without overlap. The renderer uses one engine for all the layers of a drawing,
+ * labels of different layers don't overlap each other. Labels register a candidate instead of being drawn, with
+ * one or more alternative positions. When the geometries of all the layers are drawn, {@link #draw(Graphics2D)}
+ * processes the candidates by decreasing priority, then in the order they were added, and draws each one at
+ * its first position that does not overlap an already placed label. Candidates that can't be placed are not
+ * drawn. Placed boxes are indexed in a uniform grid in screen space. The result only depends on the candidates and
+ * their order, a drawing is reproducible.
+ */
+public class LabelEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LabelEngine.class);
+    private static final I18n I18N = I18nFactory.getI18n(LabelEngine.class);
+    /** Size of the grid cells, in pixels */
+    private static final int CELL_SIZE = 64;
+    private final Rectangle2D screen;
+    private final int columns;
+    private final int rows;
+    private List<Candidate> candidates = new ArrayList<Candidate>();
+    private List<Rectangle2D>[] cells;
+    private int placedCount = 0;
+    private int rejectedCount = 0;
+
+    /**
+     * @param width Width of the drawing in pixels
+     * @param height Height of the drawing in pixels
+     */
+    public LabelEngine(int width, int height) {
+        screen = new Rectangle2D.Double(0, 0, width, height);
+        columns = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+        rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+    }
+
+    /**
+     * @param mt Transformation given to a label
+     * @return The engine of the drawing, null if the label is not drawn by a renderer or is drawn immediately
+     */
+    public static LabelEngine of(MapTransform mt) {
+        RenderContext context = RenderContext.of(mt);
+        return context == null ? null : context.getLabelEngine();
+    }
+
+    /**
+     * Register a label to draw.
+     * @param candidate Label and its alternative positions
+     */
+    public void addCandidate(Candidate candidate) {
+        candidates.add(candidate);
+    }
+
+    /**
+     * Register the labels of another engine, after the labels already registered.
+     * @param labels Labels of {@link #getCandidates()}
+     */
+    public void addCandidates(List<Candidate> labels) {
+        candidates.addAll(labels);
+    }
+
+    /**
+     * @return The labels waiting for {@link #draw(Graphics2D)}, in registration order
+     */
+    public List<Candidate> getCandidates() {
+        return Collections.unmodifiableList(new ArrayList<Candidate>(candidates));
+    }
+
+    /**
+     * @return Number of labels waiting for {@link #draw(Graphics2D)}
+     */
+    public int getCandidateCount() {
+        return candidates.size();
+    }
+
+    /**
+     * @return Number of labels drawn so far
+     */
+    public int getPlacedCount() {
+        return placedCount;
+    }
+
+    /**
+     * @return Number of labels not drawn so far, because they overlap other labels or are out of the drawing
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Place and draw the registered candidates, then forget them. Placed labels are kept, labels of the next
+     * call will not overlap them.
+     * @param g2 Graphics to draw the labels on
+     */
+    @SuppressWarnings("unchecked")
+    public void draw(Graphics2D g2) {
+        List<Candidate> sorted = candidates;
+        candidates = new ArrayList<Candidate>();
+        // The sort is stable, candidates of the same priority stay in registration order
+        Collections.sort(sorted, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate c1, Candidate c2) {
+                return Double.compare(c2.priority, c1.priority);
+            }
+        });
+        if (cells == null) {
+            cells = new List[columns * rows];
+        }
+        for (Candidate candidate : sorted) {
+            int position = findPosition(candidate);
+            if (position < 0) {
+                rejectedCount++;
+                continue;
+            }
+            for (Rectangle2D box : candidate.getBoxes(position)) {
+                insert(box);
+            }
+            placedCount++;
+            try {
+                candidate.draw(g2, position);
+            } catch (ParameterException | IOException ex) {
+                LOGGER.warn(I18N.tr("Unable to draw a label"), ex);
+            }
+        }
+    }
+
+    private int findPosition(Candidate candidate) {
+        for (int position = 0; position < candidate.getPositionCount(); position++) {
+            Rectangle2D[] boxes = candidate.getBoxes(position);
+            boolean visible = false;
+            boolean free = true;
+            for (Rectangle2D box : boxes) {
+                visible |= box.intersects(screen);
+                if (intersects(box)) {
+                    free = false;
+                    break;
+                }
+            }
+            if (visible && free) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private int getColumn(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) Math.floor(x / CELL_SIZE)));
+    }
+
+    private int getRow(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) Math.floor(y / CELL_SIZE)));
+    }
+
+    private boolean intersects(Rectangle2D box) {
+        int maxColumn = getColumn(box.getMaxX());
+        int maxRow = getRow(box.getMaxY());
+        for (int row = getRow(box.getMinY()); row <= maxRow; row++) {
+            for (int column = getColumn(box.getMinX()); column <= maxColumn; column++) {
+                List<Rectangle2D> cell = cells[row * columns + column];
+                if (cell != null) {
+                    for (Rectangle2D placed : cell) {
+                        if (placed.intersects(box)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void insert(Rectangle2D box) {
+        int maxColumn = getColumn(box.getMaxX());
+        int maxRow = getRow(box.getMaxY());
+        for (int row = getRow(box.getMinY()); row <= maxRow; row++) {
+            for (int column = getColumn(box.getMinX()); column <= maxColumn; column++) {
+                int index = row * columns + column;
+                if (cells[index] == null) {
+                    cells[index] = new ArrayList<Rectangle2D>();
+                }
+                cells[index].add(box);
+            }
+        }
+    }
+
+    /**
+     * A label waiting to be placed, with its alternative positions in preference order.
+     */
+    public abstract static class Candidate {
+        private final double priority;
+
+        /**
+         * @param priority Candidates with a greater priority are placed first
+         */
+        protected Candidate(double priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * @return The priority of this label
+         */
+        public double getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return Number of alternative positions of this label
+         */
+        public abstract int getPositionCount();
+
+        /**
+         * @param position Position index
+         * @return Boxes covered by the label at this position, in pixels
+         */
+        public abstract Rectangle2D[] getBoxes(int position);
+
+        /**
+         * Draw the label at the given position.
+         * @param g2 Graphics to draw on
+         * @param position Position index
+         * @throws ParameterException
+         * @throws IOException
+         */
+        public abstract void draw(Graphics2D g2, int position) throws ParameterException, IOException;
+    }
+}
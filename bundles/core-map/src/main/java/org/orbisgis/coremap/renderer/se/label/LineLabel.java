@@ -36,6 +36,7 @@
  */
 package org.orbisgis.coremap.renderer.se.label;
 
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
@@ -43,6 +44,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.xml.bind.JAXBElement;
@@ -50,6 +52,7 @@ import net.opengis.se._2_0.core.LineLabelType;
 import net.opengis.se._2_0.core.ObjectFactory;
 
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.SymbolizerNode;
 import org.orbisgis.coremap.renderer.se.common.RelativeOrientation;
@@ -209,10 +212,13 @@ public class LineLabel extends Label {
         String[] glyphs = text.split("");
 
         ArrayList<Shape> outlines = new ArrayList<Shape>();
+        // Glyphs are shaped once and translated along the line
+        Font font = getLabel().getFont(map, mt);
 
         for (String glyph : glyphs) {
             if (glyph != null && !glyph.isEmpty()) {
-                Rectangle2D gBounds = getLabel().getBounds(g2, glyph, map, mt);
+                TextOutlineCache.TextShape glyphShape = getLabel().getTextShape(g2, glyph, font);
+                Rectangle2D gBounds = glyphShape.getBounds();
 
                 glyphWidth = gBounds.getWidth()*way;
                 Point2D.Double pAt = ShapeHelper.getPointAt(shp, currentPos);
@@ -224,13 +230,59 @@ public class LineLabel extends Label {
                 AffineTransform at = AffineTransform.getTranslateInstance(pAt.x, pAt.y);
                 at.concatenate(AffineTransform.getRotateInstance(theta));
                 currentPos += glyphWidth;
-                outlines.add(getLabel().getOutline(g2, glyph, map, mt, at, vA));
+                outlines.add(getLabel().getOutline(glyphShape, at, vA));
             } else {
                 //System.out.println ("Space...");
                 //currentPos += emWidth*way;
             }
         }
-        getLabel().drawOutlines(g2, outlines, map, selected, mt);
+        LabelEngine engine = LabelEngine.of(mt);
+        if (engine == null) {
+            getLabel().drawOutlines(g2, outlines, map, selected, mt);
+        } else if (!outlines.isEmpty()) {
+            // The candidate is drawn after the drawing, it must not keep the render context
+            engine.addCandidate(new LineCandidate(getLabel().getEmInPixel(map, mt), outlines,
+                    new HashMap<String, Object>(map), selected, RenderContext.of(mt).getPlainTransform()));
+        }
+    }
+
+    /**
+     * Label waiting for the label engine, with the glyphs already laid out along the line.
+     */
+    private final class LineCandidate extends LabelEngine.Candidate {
+        private final ArrayList<Shape> outlines;
+        private final Map<String, Object> map;
+        private final boolean selected;
+        private final MapTransform mt;
+
+        private LineCandidate(double priority, ArrayList<Shape> outlines, Map<String, Object> map,
+                boolean selected, MapTransform mt) {
+            super(priority);
+            this.outlines = outlines;
+            this.map = map;
+            this.selected = selected;
+            this.mt = mt;
+        }
+
+        @Override
+        public int getPositionCount() {
+            return 1;
+        }
+
+        @Override
+        public Rectangle2D[] getBoxes(int position) {
+            // One box per glyph, a curved label does not cover the whole bounding box
+            Rectangle2D[] boxes = new Rectangle2D[outlines.size()];
+            for (int i = 0; i < boxes.length; i++) {
+                boxes[i] = outlines.get(i).getBounds2D();
+            }
+            return boxes;
+        }
+
+        @Override
+        public void draw(Graphics2D g2, int position) throws ParameterException, IOException {
+            getLabel().drawOutlines(g2, outlines, map, selected, mt);
+        }
     }
 
     @Override
@@ -39,15 +39,18 @@ package org.orbisgis.coremap.renderer.se.label;
 import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.xml.bind.JAXBElement;
 import net.opengis.se._2_0.core.ObjectFactory;
 import net.opengis.se._2_0.core.PointLabelType;
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.SymbolizerNode;
 import org.orbisgis.coremap.renderer.se.common.Uom;
@@ -161,6 +164,24 @@ public final class PointLabel extends Label {
     public void draw(Graphics2D g2, Map<String, Object> map,
             Shape shp, boolean selected, MapTransform mt)
             throws ParameterException, IOException {
+        Rectangle2D shapeBounds = shp.getBounds2D();
+        draw(g2, map, new Point2D.Double(shapeBounds.getCenterX(), shapeBounds.getCenterY()), selected, mt);
+    }
+
+    /**
+     * Draw this label next to the given point. The label engine tries the
+     * other positions around the same point.
+     * @param g2
+     * @param map
+     * @param anchor Point the label is attached to, in pixels
+     * @param selected
+     * @param mt
+     * @throws ParameterException
+     * @throws IOException
+     */
+    public void draw(Graphics2D g2, Map<String, Object> map,
+            Point2D anchor, boolean selected, MapTransform mt)
+            throws ParameterException, IOException {
         double x;
         double y;
 
@@ -169,8 +190,10 @@ public final class PointLabel extends Label {
         double deltaY = 0;
 
         Rectangle2D bounds = getLabel().getBounds(g2, map, mt);
-        x = shp.getBounds2D().getCenterX() + getHorizontalDisplacement(bounds);
-        y = shp.getBounds2D().getCenterY() + bounds.getHeight() / 2;
+        double cx = anchor.getX();
+        double cy = anchor.getY();
+        x = cx + getHorizontalDisplacement(bounds);
+        y = cy + bounds.getHeight() / 2;
 
         if (this.exclusionZone != null) {
             if (this.exclusionZone instanceof ExclusionRadius) {
@@ -187,9 +210,67 @@ public final class PointLabel extends Label {
             }
         }
 
-        AffineTransform at = AffineTransform.getTranslateInstance(x + deltaX, y + deltaY);
+        LabelEngine engine = LabelEngine.of(mt);
+        if (engine == null) {
+            AffineTransform at = AffineTransform.getTranslateInstance(x + deltaX, y + deltaY);
+            getLabel().draw(g2, map, selected, mt, at, this.getVerticalAlign());
+            return;
+        }
+        // Let the engine try the label on the right, left, top and bottom of the anchor if the default position
+        // is taken
+        String text = getLabel().getText().getValue(map);
+        Rectangle2D box = getLabel().getOutline(g2, text, map, mt, null, getVerticalAlign()).getBounds2D();
+        double em = getLabel().getEmInPixel(map, mt);
+        double gap = Math.max(em, Math.max(Math.abs(deltaX), Math.abs(deltaY)));
+        double[] translations = {x + deltaX, y + deltaY,
+                cx + gap - box.getMinX(), cy - box.getCenterY(),
+                cx - gap - box.getMaxX(), cy - box.getCenterY(),
+                cx - box.getCenterX(), cy - gap - box.getMaxY(),
+                cx - box.getCenterX(), cy + gap - box.getMinY()};
+        // The candidate is drawn after the drawing, it must not keep the render context
+        engine.addCandidate(new PointCandidate(em, text, new HashMap<String, Object>(map), selected,
+                RenderContext.of(mt).getPlainTransform(), box, translations));
+    }
+
+    /**
+     * Label waiting for the label engine, the text is translated to one of the given positions.
+     */
+    private final class PointCandidate extends LabelEngine.Candidate {
+        private final String text;
+        private final Map<String, Object> map;
+        private final boolean selected;
+        private final MapTransform mt;
+        private final Rectangle2D box;
+        private final double[] translations;
+
+        private PointCandidate(double priority, String text, Map<String, Object> map, boolean selected,
+                MapTransform mt, Rectangle2D box, double[] translations) {
+            super(priority);
+            this.text = text;
+            this.map = map;
+            this.selected = selected;
+            this.mt = mt;
+            this.box = box;
+            this.translations = translations;
+        }
+
+        @Override
+        public int getPositionCount() {
+            return translations.length / 2;
+        }
+
+        @Override
+        public Rectangle2D[] getBoxes(int position) {
+            return new Rectangle2D[]{new Rectangle2D.Double(box.getX() + translations[position * 2],
+                    box.getY() + translations[position * 2 + 1], box.getWidth(), box.getHeight())};
+        }
 
-        getLabel().draw(g2, map, selected, mt, at, this.getVerticalAlign());
+        @Override
+        public void draw(Graphics2D g2, int position) throws ParameterException, IOException {
+            AffineTransform at = AffineTransform.getTranslateInstance(translations[position * 2],
+                    translations[position * 2 + 1]);
+            getLabel().draw(g2, text, map, selected, mt, at, getVerticalAlign());
+        }
     }
 
     /**
@@ -37,7 +37,6 @@
 package org.orbisgis.coremap.renderer.se.label;
 
 import java.awt.*;
-import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
@@ -348,7 +347,7 @@ public final class StyledText extends AbstractSymbolizerNode implements UomNode,
         }
     }
 
-    private Font getFont(Map<String, Object> map, MapTransform mt) throws ParameterException, IOException {
+    Font getFont(Map<String, Object> map, MapTransform mt) throws ParameterException, IOException {
         String family = "Arial";
         if (fontFamily != null) {
             family = fontFamily.getValue(map);
@@ -416,9 +415,7 @@ public final class StyledText extends AbstractSymbolizerNode implements UomNode,
     public Rectangle2D getBounds(Graphics2D g2, String text, Map<String, Object> map,
             MapTransform mt) throws ParameterException, IOException {
 
-        Font font = getFont(map, mt);
-        FontMetrics metrics = g2.getFontMetrics(font);
-        return metrics.getStringBounds(text, null);
+        return getTextShape(g2, text, getFont(map, mt)).getBounds();
     }
 
     /**
@@ -505,22 +502,41 @@ public final class StyledText extends AbstractSymbolizerNode implements UomNode,
     public Shape getOutline(Graphics2D g2, String text, Map<String, Object> map,
             MapTransform mt, AffineTransform at, Label.VerticalAlignment va)
             throws ParameterException, IOException {
-        Font font = getFont(map, mt);
-        TextLayout tl = new TextLayout(text, font, g2.getFontRenderContext());
-        FontMetrics metrics = g2.getFontMetrics(font);
+        return getOutline(getTextShape(g2, text, getFont(map, mt)), at, va);
+    }
+
+    /**
+     * Gets the shaped text from the shared {@link TextOutlineCache}.
+     * @param g2 The graphics we draw with
+     * @param text The text to shape
+     * @param font The font returned by {@link #getFont(Map, MapTransform)}
+     * @return The shaped text
+     */
+    TextOutlineCache.TextShape getTextShape(Graphics2D g2, String text, Font font) {
+        return TextOutlineCache.getDefault().getTextShape(g2, text, font);
+    }
+
+    /**
+     * Gets the outline of a shaped text, placed with the given transformation and vertical alignment.
+     * @param shape The shaped text
+     * @param at The AffineTransform that we must apply to the shape before returning it, may be null.
+     * @param va The {@code Label.VerticalAlignment} we must use to determine where to put the baseline.
+     * @return The needed Shape
+     */
+    Shape getOutline(TextOutlineCache.TextShape shape, AffineTransform at, Label.VerticalAlignment va) {
         double dy=0;
         switch(va){
             case BASELINE:
                 break;
             case BOTTOM:
-                dy = metrics.getAscent();
+                dy = shape.getAscent();
                 break;
             case TOP:
-                dy = -metrics.getDescent();
+                dy = -shape.getDescent();
                 break;
             case MIDDLE:
             default:
-                dy = (metrics.getAscent() - metrics.getDescent()) / 2.0;
+                dy = (shape.getAscent() - shape.getDescent()) / 2.0;
         }
         AffineTransform rat;
         if (at != null) {
@@ -531,7 +547,7 @@ public final class StyledText extends AbstractSymbolizerNode implements UomNode,
         //We apply the translation used to manage the height of the text on the
         //line BEFORE to apply at : we use concatenate.
         rat.concatenate(AffineTransform.getTranslateInstance(0, dy));
-        return tl.getOutline(rat);
+        return rat.createTransformedShape(shape.getOutline());
     }
 
     /**
@@ -0,0 +1,263 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.label;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of shaped texts. A text is shaped once for a font and a font render context, the rendering
+ * hints that change the glyphs being part of the render context. The outline is kept at the origin, on the
+ * baseline : labels translate it instead of building a new {@code TextLayout}. Least recently used entries
+ * are removed when the number of entries or the estimated memory exceeds the limits. This class is thread
+ * safe, texts are shaped outside of the lock.
+ */
+public final class TextOutlineCache {
+    /** Default maximum number of cached texts */
+    public static final int DEFAULT_MAX_ENTRIES = 20000;
+    /** Default maximum estimated memory of the cached outlines, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 32 * 1024 * 1024;
+    // Estimated size of an entry without its outline coordinates and text
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final TextOutlineCache DEFAULT = new TextOutlineCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_MEMORY);
+    private final int maxEntries;
+    private final long maxMemory;
+    private final LinkedHashMap<Key, TextShape> entries = new LinkedHashMap<Key, TextShape>(256, 0.75f, true);
+    private long memory = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param maxEntries Maximum number of cached texts
+     * @param maxMemory Maximum estimated memory of the cached outlines, in bytes
+     */
+    public TextOutlineCache(int maxEntries, long maxMemory) {
+        this.maxEntries = maxEntries;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * @return The cache shared by the labels
+     */
+    public static TextOutlineCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the shaped text, from the cache if it has already been shaped with this font and the font render
+     * context of {@code g2}.
+     * @param g2 Graphics the text will be drawn on
+     * @param text Text to shape
+     * @param font Font of the text
+     * @return The shaped text
+     */
+    public TextShape getTextShape(Graphics2D g2, String text, Font font) {
+        FontRenderContext frc = g2.getFontRenderContext();
+        Key key = new Key(text, font, frc);
+        synchronized (this) {
+            TextShape shape = entries.get(key);
+            if (shape != null) {
+                hitCount++;
+                return shape;
+            }
+            missCount++;
+        }
+        FontMetrics metrics = g2.getFontMetrics(font);
+        TextLayout tl = new TextLayout(text, font, frc);
+        TextShape shape = new TextShape(tl.getOutline(null), metrics.getStringBounds(text, null),
+                metrics.getAscent(), metrics.getDescent());
+        long size = ENTRY_OVERHEAD + text.length() * 2 + shape.getMemory();
+        synchronized (this) {
+            TextShape previous = entries.put(key, shape);
+            memory += size;
+            if (previous != null) {
+                memory -= ENTRY_OVERHEAD + text.length() * 2 + previous.getMemory();
+            }
+            Iterator<Map.Entry<Key, TextShape>> it = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || memory > maxMemory) && it.hasNext()) {
+                Map.Entry<Key, TextShape> eldest = it.next();
+                if (eldest.getValue() != shape) {
+                    memory -= ENTRY_OVERHEAD + eldest.getKey().text.length() * 2 + eldest.getValue().getMemory();
+                    it.remove();
+                }
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * @return Number of texts found in the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of texts shaped because they were not in the cache
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Part of the requests found in the cache, between 0 and 1
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : hitCount / (double) total;
+    }
+
+    /**
+     * @return Number of cached texts
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Estimated memory used by the cached texts, in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return memory;
+    }
+
+    /**
+     * Remove all the cached texts and reset the counters.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        memory = 0;
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    /**
+     * A text shaped with a given font.
+     */
+    public static final class TextShape {
+        private final Shape outline;
+        private final Rectangle2D bounds;
+        private final int ascent;
+        private final int descent;
+        private final int memory;
+
+        private TextShape(Shape outline, Rectangle2D bounds, int ascent, int descent) {
+            this.outline = outline;
+            this.bounds = bounds;
+            this.ascent = ascent;
+            this.descent = descent;
+            int coordinates = 0;
+            for (PathIterator it = outline.getPathIterator(null); !it.isDone(); it.next()) {
+                coordinates += 6;
+            }
+            this.memory = coordinates * 4;
+        }
+
+        /**
+         * @return Outline of the text, starting at the origin on the baseline. Must not be modified.
+         */
+        public Shape getOutline() {
+            return outline;
+        }
+
+        /**
+         * @return Logical bounds of the text, relative to the origin on the baseline
+         */
+        public Rectangle2D getBounds() {
+            return (Rectangle2D) bounds.clone();
+        }
+
+        /**
+         * @return Ascent of the font, in pixels
+         */
+        public int getAscent() {
+            return ascent;
+        }
+
+        /**
+         * @return Descent of the font, in pixels
+         */
+        public int getDescent() {
+            return descent;
+        }
+
+        private int getMemory() {
+            return memory;
+        }
+    }
+
+    private static final class Key {
+        private final String text;
+        private final Font font;
+        private final FontRenderContext frc;
+        private final int hash;
+
+        private Key(String text, Font font, FontRenderContext frc) {
+            this.text = text;
+            this.font = font;
+            this.frc = frc;
+            this.hash = 31 * (31 * text.hashCode() + font.hashCode()) + frc.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && text.equals(other.text) && font.equals(other.font) &&
+                    frc.equals(other.frc);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
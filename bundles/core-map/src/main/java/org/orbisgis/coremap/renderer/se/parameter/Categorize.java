@@ -127,6 +127,11 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
     private double sdFactor;
     private List<CategorizeListener> listeners;
     private SortedMap<RealLiteral,ToType> mapping;
+    /**
+     * Thresholds and class values of the mapping, compiled for the lookup of
+     * each feature. Null when the mapping has changed since the last lookup.
+     */
+    private volatile ClassLookup classLookup;
 
     /**
      * Describes the methods that can be used to build a categorization.
@@ -242,6 +247,7 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
      */
     public void put(RealLiteral threshold, ToType value) {
         mapping.put(threshold,value);
+        classLookup = null;
         threshold.setContext(RealParameterContext.REAL_CONTEXT);
         threshold.register(this);
         this.method = CategorizeMethod.MANUAL;
@@ -266,10 +272,12 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
                 RealLiteral k = getKey(0);
                 ToType rem = mapping.remove(k);
                 mapping.put(new RealLiteral(Double.NEGATIVE_INFINITY),rem);
+                classLookup = null;
                 return ret;
             }
         }
         ToType ret = mapping.remove(threshold);
+        classLookup = null;
         if(ret != null){
             fireClassRemoved(threshold);
         }
@@ -297,6 +305,7 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
                 mapping.remove(rl);
                 fireClassRemoved(rl);
             }
+            classLookup = null;
             return true;
         }
         return false;
@@ -404,6 +413,7 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
             threshold.setParent(this);
 //            sortClasses();
         }
+        classLookup = null;
         this.method = CategorizeMethod.MANUAL;
     }
 
@@ -464,6 +474,7 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
             nMap.put(entry.getKey(), entry.getValue());
         }
         mapping = nMap;
+        classLookup = null;
         fireNewThresoldsOrder();
     }
 
@@ -481,9 +492,9 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
                 if(value == null){
                         return fallbackValue;
                 }
-                return getClassValue(new RealLiteral(value));
+                return getClassValue(value);
             } else { // Means nbClass == 1
-                return mapping.get(new RealLiteral(Double.NEGATIVE_INFINITY));
+                return getLookup().getFirstValue();
             }
 
         } catch (ParameterException ex) {
@@ -492,21 +503,37 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
         return fallbackValue;
     }
 
-    private ToType getClassValue(RealLiteral limit){
-        if(mapping.containsKey(limit)){
-            if(succeeding || limit.getValue(null) == Double.NEGATIVE_INFINITY){
-                return mapping.get(limit);
-            } else {
-                SortedMap<RealLiteral, ToType> head = mapping.headMap(limit);
-                return head.get(head.lastKey());
+    /**
+     * Gets the class value of the interval that contains {@code value}, using a binary search in the
+     * compiled thresholds.
+     * @param value The value to classify
+     * @return The class value, or the fallback value if {@code value} is not in any interval.
+     */
+    private ToType getClassValue(double value){
+        ClassLookup lookup = getLookup();
+        if(Double.isNaN(value)){
+            return fallbackValue;
+        }
+        // Adding 0 turns -0.0 into 0.0, thresholds are compared as in the mapping
+        int index = Arrays.binarySearch(lookup.thresholds, value + 0.0);
+        if(index >= 0){
+            if(!succeeding && index > 0){
+                index--;
             }
         } else {
-            //we're not on a limit between two intervals
-            //We get the map of all the keys that are lower than limit (ie the headMap) and get the greatest
-            //element
-            SortedMap<RealLiteral, ToType> head = mapping.headMap(limit);
-            return head.get(head.lastKey());
+            //we're not on a limit between two intervals, we take the greatest lower threshold
+            index = -index - 2;
         }
+        return index >= 0 ? lookup.<ToType>getValue(index) : fallbackValue;
+    }
+
+    private ClassLookup getLookup(){
+        ClassLookup lookup = classLookup;
+        if(lookup == null){
+            lookup = new ClassLookup(mapping);
+            classLookup = lookup;
+        }
+        return lookup;
     }
 
     /**
@@ -522,9 +549,9 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
                 if(value == null){
                         return fallbackValue;
                 }
-                return getClassValue(new RealLiteral(value));
+                return getClassValue(value);
             } else { // Means nbClass == 1
-                return mapping.get(new RealLiteral(Double.NEGATIVE_INFINITY));
+                return getLookup().getFirstValue();
             }
 
         } catch (ParameterException ex) {
@@ -727,6 +754,37 @@ public abstract class Categorize<ToType extends SeParameter, FallbackType extend
         return ls;
     }
 
+    /**
+     * Immutable copy of the mapping, with thresholds in a sorted primitive array.
+     */
+    private static final class ClassLookup {
+        private final double[] thresholds;
+        private final Object[] classes;
+
+        private ClassLookup(SortedMap<RealLiteral, ?> mapping) {
+            thresholds = new double[mapping.size()];
+            classes = new Object[mapping.size()];
+            int i = 0;
+            for(Map.Entry<RealLiteral, ?> entry : mapping.entrySet()){
+                thresholds[i] = entry.getKey().getValue(null) + 0.0;
+                classes[i] = entry.getValue();
+                i++;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T getValue(int i) {
+            return (T) classes[i];
+        }
+
+        private <T> T getFirstValue() {
+            if(thresholds.length > 0 && thresholds[0] == Double.NEGATIVE_INFINITY){
+                return getValue(0);
+            }
+            return null;
+        }
+    }
+
     //**********************************************************************************
      /* Management of the listeners associated to this categorization.
      * 
@@ -112,6 +112,7 @@ public abstract class Interpolate<ToType extends SeParameter, FallbackType exten
          */
         public void setMode(InterpolationMode mode) {
                 this.mode = mode;
+                interpolationChanged();
         }
 
         /**
@@ -180,6 +181,7 @@ public abstract class Interpolate<ToType extends SeParameter, FallbackType exten
                 iPoints.add(point);
                 sortInterpolationPoint();
                 point.getValue().setParent(this);
+                interpolationChanged();
         }
 
         /**
@@ -200,6 +202,7 @@ public abstract class Interpolate<ToType extends SeParameter, FallbackType exten
          */
         public void setInterpolationMode(InterpolationMode mode) {
                 this.mode = mode;
+                interpolationChanged();
         }
 
         /**
@@ -210,6 +213,20 @@ public abstract class Interpolate<ToType extends SeParameter, FallbackType exten
                 return mode;
         }
 
+        /**
+         * Called when the mode or the interpolation points change, including
+         * when the value of a point notifies a change. Subclasses drop what
+         * they have computed from the points.
+         */
+        protected void interpolationChanged() {
+        }
+
+        @Override
+        public void update() {
+                interpolationChanged();
+                super.update();
+        }
+
         /**
          * Sort the interpolation points.
          */
@@ -265,15 +282,26 @@ public abstract class Interpolate<ToType extends SeParameter, FallbackType exten
         }
 
 
+        /**
+         * Binary search of the interpolation point that starts the segment containing {@code data}. Points are kept
+         * sorted by {@link #addInterpolationPoint(InterpolationPoint)}.
+         * @param data The lookup value
+         * @return The index of the greatest point whose data is lower or equal to {@code data}, -1 if there is no
+         * point greater than {@code data}.
+         */
         protected int getFirstIP(double data) {
-                int i = -1;
-                for (InterpolationPoint ip : iPoints) {
-                        if (ip.getData() > data) {
-                                return i;
+                int low = 0;
+                int high = iPoints.size();
+                // Search the first point greater than data
+                while (low < high) {
+                        int mid = (low + high) >>> 1;
+                        if (iPoints.get(mid).getData() > data) {
+                                high = mid;
+                        } else {
+                                low = mid + 1;
                         }
-                        i++;
                 }
-                return -1;
+                return low < iPoints.size() ? low - 1 : -1;
         }
 
         protected double cubicInterpolation(double d1, double d2, double x,
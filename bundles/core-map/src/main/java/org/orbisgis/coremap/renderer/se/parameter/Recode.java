@@ -68,6 +68,11 @@ public abstract class Recode<ToType extends SeParameter, FallbackType extends To
     private FallbackType fallbackValue;
     private StringParameter lookupValue;
     private LinkedHashMap<String, ToType> mapItems;
+    /**
+     * Open addressing copy of the map items, used for the lookup of each feature.
+     * Null when the items have changed since the last lookup.
+     */
+    private volatile KeyLookup keyLookup;
 
     /**
      * Build a new instance of Recode with an empty map of items.
@@ -141,6 +146,7 @@ public abstract class Recode<ToType extends SeParameter, FallbackType extends To
      */
     public void addMapItem(String key, ToType value) {
             mapItems.put(key, value);
+            keyLookup = null;
             value.setParent(this);
             update();
     }
@@ -207,6 +213,7 @@ public abstract class Recode<ToType extends SeParameter, FallbackType extends To
      */
     public void removeMapItem(String key) {
         mapItems.remove(key);
+        keyLookup = null;
     }
     /**
      * Remove the ith <code>MapItem</code>
@@ -233,7 +240,7 @@ public abstract class Recode<ToType extends SeParameter, FallbackType extends To
         String key = "";
         try {
             key = lookupValue.getValue(rs, fid);
-            ToType ret = getMapItemValue(key);
+            ToType ret = getLookup().get(key);
             return ret == null ? fallbackValue : ret;
         } catch (Exception e) {
             LOGGER.error(I18N.tr("Fallback ({0})",key),e);
@@ -256,7 +263,7 @@ public abstract class Recode<ToType extends SeParameter, FallbackType extends To
         String key = "";
         try {
             key = lookupValue.getValue(map);
-            ToType ret = getMapItemValue(key);
+            ToType ret = getLookup().get(key);
             return ret == null ? fallbackValue : ret;
         } catch (Exception e) {
             if(key.isEmpty()){
@@ -294,6 +301,7 @@ public abstract class Recode<ToType extends SeParameter, FallbackType extends To
             i++;
         }
         mapItems = lhm;
+        keyLookup = null;
         update();
     }
 
@@ -340,5 +348,55 @@ public abstract class Recode<ToType extends SeParameter, FallbackType extends To
         return ls;
     }
 
+    private KeyLookup getLookup() {
+        KeyLookup lookup = keyLookup;
+        if (lookup == null) {
+            lookup = new KeyLookup(mapItems);
+            keyLookup = lookup;
+        }
+        return lookup;
+    }
 
+    /**
+     * Immutable hash table of the map items, with linear probing in flat arrays.
+     */
+    private static final class KeyLookup {
+        private final String[] keys;
+        private final Object[] values;
+        private final int mask;
+
+        private KeyLookup(Map<String, ?> items) {
+            int capacity = 2;
+            while (capacity < items.size() * 2) {
+                capacity <<= 1;
+            }
+            keys = new String[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            for (Map.Entry<String, ?> entry : items.entrySet()) {
+                if (entry.getKey() != null) {
+                    int i = indexOf(entry.getKey());
+                    keys[i] = entry.getKey();
+                    values[i] = entry.getValue();
+                }
+            }
+        }
+
+        private int indexOf(String key) {
+            int h = key.hashCode();
+            int i = (h ^ (h >>> 16)) & mask;
+            while (keys[i] != null && !keys[i].equals(key)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T get(String key) {
+            if (key == null) {
+                return null;
+            }
+            return (T) values[indexOf(key)];
+        }
+    }
 }
@@ -37,9 +37,9 @@
 package org.orbisgis.coremap.renderer.se.parameter;
 
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import javax.xml.bind.JAXBElement;
@@ -47,6 +47,7 @@ import net.opengis.fes._2.ObjectFactory;
 import net.opengis.fes._2.ValueReferenceType;
 import net.opengis.se._2_0.core.ParameterValueType;
 import org.orbisgis.coremap.renderer.se.AbstractSymbolizerNode;
+import org.orbisgis.coremap.renderer.se.FeatureMap;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.SymbolizerNode;
 import org.xnap.commons.i18n.I18n;
@@ -64,6 +65,8 @@ public abstract class ValueReference extends AbstractSymbolizerNode implements S
         
 	private String fieldName;
 	private int fieldId;
+        // Slot of this field in the maps of the last field set, read and replaced atomically
+        private FieldSlot fieldSlot;
 	private ArrayList<PropertyNameListener> listeners;
 
         /**
@@ -80,6 +83,7 @@ public abstract class ValueReference extends AbstractSymbolizerNode implements S
          */
 	public ValueReference(String fieldName) {
 		this.fieldId = -1;
+		this.fieldSlot = null;
 		this.fieldName = fieldName;
 	}
 
@@ -138,6 +142,7 @@ public abstract class ValueReference extends AbstractSymbolizerNode implements S
 	public final void setColumnName(String fieldName) {
 		// look for field before assigning the name !
 		this.fieldId = -1;
+		this.fieldSlot = null;
 		this.fieldName = fieldName;
 		firePropertyNameChange();
                 update();
@@ -168,13 +173,12 @@ public abstract class ValueReference extends AbstractSymbolizerNode implements S
     }
 
     private static int getFieldIndexFromLabel(ResultSet rs, String fieldName) throws SQLException {
-        ResultSetMetaData mt = rs.getMetaData();
-        for(int idcolumn=1;idcolumn<=mt.getColumnCount();idcolumn++) {
-            if(mt.getColumnName(idcolumn).equalsIgnoreCase(fieldName)) {
-                return idcolumn;
-            }
+        try {
+            // The geometry may be fetched simplified, under another name
+            return FeatureMap.findColumn(rs, fieldName);
+        } catch (SQLException ex) {
+            throw new SQLException(I18N.tr("Field not found \"{0}\"", fieldName), ex);
         }
-        throw new SQLException(I18N.tr("Field not found \"{0}\"", fieldName));
     }
     /**
      * Get the {@code Value} associated to this reference in the given
@@ -187,11 +191,21 @@ public abstract class ValueReference extends AbstractSymbolizerNode implements S
      * a key in {@code map}.
      */
     public Object getFieldValue(Map<String,Object> map) throws ParameterException {
-        if(map.containsKey(fieldName)){
+        if(map instanceof FeatureMap) {
+            FeatureMap featureMap = (FeatureMap) map;
+            FieldSlot slot = fieldSlot;
+            // Maps of the same field set have the same slots
+            if(slot == null || slot.fields != featureMap.getFields()) {
+                slot = new FieldSlot(featureMap.getFields(), featureMap.getSlot(fieldName));
+                fieldSlot = slot;
+            }
+            if(slot.slot >= 0) {
+                return featureMap.getValue(slot.slot);
+            }
+        } else if(map.containsKey(fieldName)){
             return map.get(fieldName);
-        } else {
-            throw new ParameterException(I18N.tr("The given map does not contain the needed key/value pair."));
         }
+        throw new ParameterException(I18N.tr("The given map does not contain the needed key/value pair."));
     }
 
 	@Override
@@ -212,5 +226,15 @@ public abstract class ValueReference extends AbstractSymbolizerNode implements S
                 return new ArrayList<SymbolizerNode>();
         }
 
+        private static final class FieldSlot {
+                private final Collection<String> fields;
+                private final int slot;
+
+                private FieldSlot(Collection<String> fields, int slot) {
+                        this.fields = fields;
+                        this.slot = slot;
+                }
+        }
+
 
 }
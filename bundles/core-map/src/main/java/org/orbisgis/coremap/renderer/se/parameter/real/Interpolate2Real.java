@@ -57,6 +57,12 @@ import org.orbisgis.coremap.renderer.se.parameter.SeParameterFactory;
 public final class Interpolate2Real extends Interpolate<RealParameter, RealLiteral> implements RealParameter {
 
         private RealParameterContext ctx;
+        /**
+         * Data, values and slopes of the segments, compiled from the
+         * interpolation points. Null when the points have changed since the
+         * last lookup.
+         */
+        private volatile Segments segments;
 
         /**
          * Create a new <code>Interpolate2Real</code> instance, without any 
@@ -116,6 +122,13 @@ public final class Interpolate2Real extends Interpolate<RealParameter, RealLiter
         public Double getValue(ResultSet rs, long fid) throws ParameterException {
 
                 double value = this.getLookupValue().getValue(rs, fid);
+                if (Double.isNaN(value) && getFallbackValue() != null) {
+                        return getFallbackValue().getValue(rs, fid);
+                }
+                Segments compiled = getSegments();
+                if (compiled.values != null) {
+                        return compiled.interpolate(value);
+                }
 
                 if (getInterpolationPoint(0).getData() >= value) {
                         return getInterpolationPoint(0).getValue().getValue(rs, fid);
@@ -167,6 +180,13 @@ public final class Interpolate2Real extends Interpolate<RealParameter, RealLiter
                     // Do not draw the value
                     return 0.0;
                 }
+                if (Double.isNaN(value) && getFallbackValue() != null) {
+                        return getFallbackValue().getValue(map);
+                }
+                Segments compiled = getSegments();
+                if (compiled.values != null) {
+                        return compiled.interpolate(value);
+                }
 
                 if (getInterpolationPoint(0).getData() >= value) {
                         return getInterpolationPoint(0).getValue().getValue(map);
@@ -257,4 +277,85 @@ public final class Interpolate2Real extends Interpolate<RealParameter, RealLiter
         public int compareTo(Object o) {
                 return 0;
         }
+        @Override
+        protected void interpolationChanged() {
+                segments = null;
+        }
+
+        private Segments getSegments() {
+                Segments compiled = segments;
+                if (compiled == null) {
+                        compiled = new Segments(this);
+                        segments = compiled;
+                }
+                return compiled;
+        }
+
+        /**
+         * Interpolation points compiled into arrays, with the slope of each
+         * segment. Points whose value depends on the feature are not compiled,
+         * {@code values} is then null.
+         */
+        private static final class Segments {
+                private final InterpolationMode mode;
+                private final double[] data;
+                private final double[] values;
+                private final double[] slopes;
+
+                private Segments(Interpolate2Real interpolate) {
+                        int numPt = interpolate.getNumInterpolationPoint();
+                        mode = interpolate.getMode();
+                        data = new double[numPt];
+                        double[] pointValues = numPt > 0 ? new double[numPt] : null;
+                        for (int i = 0; i < numPt; i++) {
+                                InterpolationPoint<RealParameter> ip = interpolate.getInterpolationPoint(i);
+                                data[i] = ip.getData();
+                                if (!(ip.getValue() instanceof RealLiteral)) {
+                                        pointValues = null;
+                                        break;
+                                }
+                                pointValues[i] = ((RealLiteral) ip.getValue()).getValue(null, -1);
+                        }
+                        values = pointValues;
+                        slopes = new double[Math.max(0, numPt - 1)];
+                        if (values != null) {
+                                for (int i = 0; i < slopes.length; i++) {
+                                        slopes[i] = (values[i + 1] - values[i]) / (data[i + 1] - data[i]);
+                                }
+                        }
+                }
+
+                private double interpolate(double value) {
+                        int numPt = data.length;
+                        if (data[0] >= value) {
+                                return values[0];
+                        }
+                        if (data[numPt - 1] <= value) {
+                                return values[numPt - 1];
+                        }
+                        // Search the first point greater than value, the segment starts before it
+                        int low = 0;
+                        int high = numPt;
+                        while (low < high) {
+                                int mid = (low + high) >>> 1;
+                                if (data[mid] > value) {
+                                        high = mid;
+                                } else {
+                                        low = mid + 1;
+                                }
+                        }
+                        int k = low - 1;
+                        switch (mode) {
+                                case COSINE:
+                                        double mu = (value - data[k]) / (data[k + 1] - data[k]);
+                                        double mu2 = (1 - Math.cos(mu * Math.PI)) * 0.5;
+                                        return values[k] + mu2 * (values[k + 1] - values[k]);
+                                case LINEAR:
+                                        return values[k] + slopes[k] * (value - data[k]);
+                                default:
+                                        // Cubic interpolation is not implemented
+                                        return 0.0;
+                        }
+                }
+        }
 }
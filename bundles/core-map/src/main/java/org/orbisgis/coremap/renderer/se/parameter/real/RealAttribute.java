@@ -112,7 +112,9 @@ public class RealAttribute extends ValueReference implements RealParameter {
     public Double getValue(Map<String,Object> map) throws ParameterException {
         try {
             Object value = this.getFieldValue(map);
-            if (value instanceof Number) {
+            if (value instanceof Double) {
+                return (Double) value;
+            } else if (value instanceof Number) {
                 return ((Number)value).doubleValue();
             } else {
                 return null;
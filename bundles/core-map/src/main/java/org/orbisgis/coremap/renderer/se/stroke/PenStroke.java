@@ -49,6 +49,7 @@ import net.opengis.se._2_0.core.ObjectFactory;
 import net.opengis.se._2_0.core.ParameterValueType;
 import net.opengis.se._2_0.core.PenStrokeType;
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.FeatureShapeCache;
 import org.orbisgis.coremap.renderer.se.FillNode;
 import org.orbisgis.coremap.renderer.se.SeExceptions.InvalidStyle;
 import org.orbisgis.coremap.renderer.se.SymbolizerNode;
@@ -536,7 +537,7 @@ public final class PenStroke extends Stroke implements FillNode {
             List<Shape> shapes;
             // if not using offset rapport, compute perpendicular offset first
             if (!this.isOffsetRapport() && Math.abs(offset) > 0.0) {
-                shapes = ShapeHelper.perpendicularOffset(shape, offset);
+                shapes = FeatureShapeCache.of(mt).getPerpendicularOffset(shape, offset);
                 // Setting offset to 0.0 let be sure the offset will never been applied twice!
                 offset = 0.0;
             } else {
@@ -36,7 +36,12 @@
  */
 package org.orbisgis.coremap;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import org.junit.Before;
 import org.junit.Test;
@@ -70,4 +75,61 @@ public class MapTransformTest {
 		assertTrue(mt.getAdjustedExtent().equals(extent));
 	}
 
+        @Test
+        public void testGeneralization() throws Exception {
+                mt.setImage(img);
+                mt.setExtent(extent);
+                mt.setGeneralizationTolerance(1);
+                GeometryFactory gf = new GeometryFactory();
+                // 1001 vertices on a 100 pixels line
+                Coordinate[] coordinates = new Coordinate[1001];
+                for (int i = 0; i < coordinates.length; i++) {
+                        coordinates[i] = new Coordinate(i / 10., 50);
+                }
+                mt.getShape(gf.createLineString(coordinates), true);
+                assertEquals(1001, mt.getSourceVertexCount());
+                assertEquals(101, mt.getDrawnVertexCount());
+                // Without generalization all the vertices are kept
+                mt.getShape(gf.createLineString(coordinates), false);
+                assertEquals(1001, mt.getSourceVertexCount());
+        }
+
+        @Test
+        public void testGeneralizationKeepRings() throws Exception {
+                mt.setImage(img);
+                mt.setExtent(extent);
+                mt.setGeneralizationTolerance(5);
+                GeometryFactory gf = new GeometryFactory();
+                Polygon polygon = gf.createPolygon(new Coordinate[]{new Coordinate(11, 11), new Coordinate(12, 11),
+                        new Coordinate(12, 12), new Coordinate(11, 12), new Coordinate(11, 11)});
+                Shape shape = mt.getShape(polygon, true);
+                // The ring is smaller than the tolerance but is not reduced to a line
+                assertEquals(5, mt.getDrawnVertexCount());
+                assertEquals(1, shape.getBounds2D().getWidth(), 1e-6);
+        }
+
+        @Test
+        public void testGeneralizationSharedEdge() throws Exception {
+                mt.setImage(img);
+                mt.setExtent(extent);
+                mt.setGeneralizationTolerance(2);
+                GeometryFactory gf = new GeometryFactory();
+                Coordinate[] edge = new Coordinate[]{new Coordinate(30.3, 10), new Coordinate(30.7, 20.4),
+                        new Coordinate(29.6, 30)};
+                Polygon left = gf.createPolygon(new Coordinate[]{new Coordinate(10, 10), edge[0], edge[1], edge[2],
+                        new Coordinate(10, 30), new Coordinate(10, 10)});
+                Polygon right = gf.createPolygon(new Coordinate[]{edge[0], new Coordinate(50, 10),
+                        new Coordinate(50, 30), edge[2], edge[1], edge[0]});
+                // The shared edge is snapped the same way in both polygons, without gap nor overlap
+                Rectangle2D leftBounds = mt.getShape(left, true).getBounds2D();
+                Rectangle2D rightBounds = mt.getShape(right, true).getBounds2D();
+                assertEquals(30, leftBounds.getMaxX(), 1e-6);
+                assertEquals(leftBounds.getMaxX(), rightBounds.getMinX(), 1e-6);
+        }
+
+        @Test
+        public void testGeneralizationDisabledByDefault() throws Exception {
+                assertEquals(0, new MapTransform().getGeneralizationTolerance(), 0);
+        }
+
 }
@@ -0,0 +1,126 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import org.junit.Before;
+import org.junit.Test;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.map.WKBShapeReader;
+import static org.junit.Assert.*;
+
+/**
+ * Test the decoding of WKB geometries into shapes.
+ */
+public class WKBShapeReaderTest {
+        private MapTransform mt;
+        private WKTReader wktReader = new WKTReader();
+
+        @Before
+        public void setUp() throws Exception {
+                mt = new MapTransform();
+                mt.setImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+                mt.setExtent(new Envelope(0, 100, 0, 100));
+        }
+
+        private void checkShape(Geometry geom, byte[] wkb) {
+                WKBShapeReader reader = new WKBShapeReader(mt);
+                assertTrue(reader.read(wkb));
+                assertEquals(geom.getEnvelopeInternal(), reader.getEnvelope());
+                Rectangle2D expected = mt.getShape(geom, false).getBounds2D();
+                Rectangle2D bounds = reader.getPath().getBounds2D();
+                assertEquals(expected.getMinX(), bounds.getMinX(), 1e-6);
+                assertEquals(expected.getMinY(), bounds.getMinY(), 1e-6);
+                assertEquals(expected.getMaxX(), bounds.getMaxX(), 1e-6);
+                assertEquals(expected.getMaxY(), bounds.getMaxY(), 1e-6);
+        }
+
+        @Test
+        public void testLineString() throws Exception {
+                Geometry geom = wktReader.read("LINESTRING (10 10, 20 50, 80 90)");
+                checkShape(geom, new WKBWriter(2, WKBWriter.LITTLEENDIAN).write(geom));
+                checkShape(geom, new WKBWriter(2, WKBWriter.BIGENDIAN).write(geom));
+        }
+
+        @Test
+        public void testPolygonZ() throws Exception {
+                Geometry geom = wktReader.read("MULTIPOLYGON (((10 10 1, 60 10 2, 60 60 3, 10 10 1), " +
+                        "(20 15 1, 50 15 1, 50 40 1, 20 15 1)), ((70 70 0, 90 70 0, 90 90 0, 70 70 0)))");
+                geom.setSRID(2154);
+                checkShape(geom, new WKBWriter(3, WKBWriter.BIGENDIAN, true).write(geom));
+        }
+
+        @Test
+        public void testCollapsedGeometries() throws Exception {
+                // Smaller than a pixel, collapsed like the generalized JTS shapes
+                Geometry line = wktReader.read("LINESTRING (10 10, 10.5 11, 11 10.2)");
+                Geometry polygon = wktReader.read("POLYGON ((10 10, 11 10, 11 11, 10 10))");
+                for (Geometry geom : new Geometry[]{line, polygon}) {
+                        WKBShapeReader reader = new WKBShapeReader(mt);
+                        assertTrue(reader.read(new WKBWriter().write(geom)));
+                        Rectangle2D expected = mt.getShape(geom, true).getBounds2D();
+                        Rectangle2D bounds = reader.getPath().getBounds2D();
+                        assertEquals(expected.getMinX(), bounds.getMinX(), 1e-6);
+                        assertEquals(expected.getMinY(), bounds.getMinY(), 1e-6);
+                        assertEquals(expected.getMaxX(), bounds.getMaxX(), 1e-6);
+                        assertEquals(expected.getMaxY(), bounds.getMaxY(), 1e-6);
+                }
+                // The line is drawn from its first to its last vertex
+                WKBShapeReader reader = new WKBShapeReader(mt);
+                assertTrue(reader.read(new WKBWriter().write(line)));
+                assertEquals(0.2, reader.getPath().getBounds2D().getHeight(), 1e-6);
+        }
+
+        @Test
+        public void testUnsupported() throws Exception {
+                WKBShapeReader reader = new WKBShapeReader(mt);
+                assertFalse(reader.read(new WKBWriter().write(wktReader.read("POINT (10 10)"))));
+                assertFalse(reader.read(new WKBWriter().write(wktReader.read(
+                        "GEOMETRYCOLLECTION (POINT (10 10), LINESTRING (10 10, 20 20))"))));
+                assertFalse(reader.read("LINESTRING (10 10, 20 20)".getBytes()));
+                // Truncated geometry
+                byte[] wkb = new WKBWriter().write(wktReader.read("LINESTRING (10 10, 20 20)"));
+                byte[] truncated = new byte[wkb.length - 4];
+                System.arraycopy(wkb, 0, truncated, 0, truncated.length);
+                assertFalse(reader.read(truncated));
+        }
+}
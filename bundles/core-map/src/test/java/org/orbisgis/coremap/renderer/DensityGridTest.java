@@ -0,0 +1,89 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the aggregation of points in screen bins.
+ */
+public class DensityGridTest {
+
+    @Test
+    public void testBins() throws Exception {
+        DensityGrid grid = new DensityGrid(10, 10, 4);
+        grid.add(0.5, 0.5);
+        grid.add(3.9, 3.9);
+        grid.add(4, 0, 2.5);
+        // Outside of the image
+        grid.add(-1, 0);
+        grid.add(12, 0);
+        assertEquals(3, grid.getPointCount());
+        assertEquals(2, grid.getWeight(1, 1), 1e-12);
+        assertEquals(2.5, grid.getWeight(5, 1), 1e-12);
+        assertEquals(0, grid.getWeight(9, 9), 1e-12);
+        assertEquals(2.5, grid.getMaxWeight(), 1e-12);
+    }
+
+    @Test
+    public void testDraw() throws Exception {
+        DensityGrid grid = new DensityGrid(8, 8, 4);
+        grid.add(1, 1);
+        for (int i = 0; i < 100; i++) {
+            grid.add(5, 5);
+        }
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            grid.draw(g2, DensityGrid.createDefaultRamp());
+        } finally {
+            g2.dispose();
+        }
+        // Empty bins are transparent, the densest bin has the last color of the ramp
+        assertEquals(0, image.getRGB(6, 1) >>> 24);
+        assertEquals(0xFFD7191C, image.getRGB(7, 7));
+        int sparse = image.getRGB(3, 3);
+        assertEquals(0xFF, sparse >>> 24);
+        assertTrue(sparse != image.getRGB(7, 7));
+        assertEquals(sparse, image.getRGB(0, 0));
+    }
+}
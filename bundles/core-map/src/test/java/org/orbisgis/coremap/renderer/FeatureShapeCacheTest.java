@@ -0,0 +1,202 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.WKTReader;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.AreaSymbolizer;
+import org.orbisgis.coremap.renderer.se.LineSymbolizer;
+import org.orbisgis.coremap.renderer.se.PointSymbolizer;
+import org.orbisgis.coremap.renderer.se.Symbolizer;
+import static org.junit.Assert.*;
+
+/**
+ * Test the shapes shared by the symbolizers of a feature.
+ */
+public class FeatureShapeCacheTest {
+        private MapTransform mt;
+        private RenderContext context;
+        private WKTReader wktReader = new WKTReader();
+
+        @Before
+        public void setUp() throws Exception {
+                mt = new MapTransform();
+                mt.setImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+                mt.setExtent(new Envelope(0, 100, 0, 100));
+                context = new RenderContext(mt);
+        }
+
+        @Test
+        public void testReuseShape() throws Exception {
+                Geometry geom = wktReader.read("POLYGON ((10 10, 60 10, 60 60, 10 60, 10 10))");
+                FeatureShapeCache cache = context.getFeatureShapeCache();
+                // Outside of a feature the shapes are not kept
+                assertNotSame(cache.getShape(geom, true), cache.getShape(geom, true));
+                cache.beginFeature(geom);
+                Shape shape = cache.getShape(geom, true);
+                assertSame(shape, cache.getShape(geom, true));
+                assertNotSame(shape, cache.getShape(geom, false));
+                assertSame(cache.getShape(geom, false), cache.getShape(geom, false));
+                // Another geometry is not cached
+                Geometry other = wktReader.read("POLYGON ((10 10, 60 10, 60 60, 10 60, 10 10))");
+                assertNotSame(cache.getShape(other, true), cache.getShape(other, true));
+                Point2D point = cache.getInteriorPoint(geom);
+                assertSame(point, cache.getInteriorPoint(geom));
+                assertEquals(35, point.getX(), 1e-6);
+                assertEquals(65, point.getY(), 1e-6);
+                List<Shape> offset = cache.getPerpendicularOffset(shape, 2);
+                assertSame(offset, cache.getPerpendicularOffset(shape, 2));
+                assertNotSame(offset, cache.getPerpendicularOffset(shape, 3));
+                cache.endFeature();
+                assertNotSame(shape, cache.getShape(geom, true));
+        }
+
+        @Test
+        public void testRetainedShape() throws Exception {
+                Geometry geom = wktReader.read("LINESTRING (10 10, 20 50, 80 90)");
+                FeatureShapeCache cache = context.getFeatureShapeCache();
+                Shape retained = mt.getShape(geom, true);
+                // A feature drawn from its kept shape, without its geometry
+                cache.beginFeature(null, retained);
+                assertSame(retained, cache.getGeneralizedShape());
+                List<Shape> offset = cache.getPerpendicularOffset(retained, 2);
+                assertSame(offset, cache.getPerpendicularOffset(retained, 2));
+                cache.endFeature();
+                assertNull(cache.getGeneralizedShape());
+        }
+
+        @Test
+        public void testTransformChange() throws Exception {
+                Geometry geom = wktReader.read("LINESTRING (10 10, 20 50, 80 90)");
+                FeatureShapeCache cache = context.getFeatureShapeCache();
+                cache.beginFeature(geom);
+                Shape shape = cache.getShape(geom, false);
+                cache.endFeature();
+                // The shapes don't outlive the feature, the next drawing uses the new transformation
+                context.setExtent(new Envelope(0, 200, 0, 200));
+                cache.beginFeature(geom);
+                Shape moved = cache.getShape(geom, false);
+                assertNotSame(shape, moved);
+                assertEquals(shape.getBounds2D().getWidth() / 2, moved.getBounds2D().getWidth(), 1e-6);
+                cache.endFeature();
+        }
+
+        /**
+         * A polygon drawn by an area, a line and a point symbolizer is converted once into a shape and once into
+         * an interior point.
+         */
+        @Test
+        public void testMultiSymbolizerStyle() throws Exception {
+                AreaSymbolizer area = new AreaSymbolizer();
+                LineSymbolizer line = new LineSymbolizer();
+                PointSymbolizer point = new PointSymbolizer();
+                FeatureShapeCache cache = context.getFeatureShapeCache();
+                BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g2 = image.createGraphics();
+                int featureCount = 50;
+                long hits = cache.getHitCount();
+                long misses = cache.getMissCount();
+                for (int i = 0; i < featureCount; i++) {
+                        Geometry geom = wktReader.read("POLYGON ((" + i + " 10, " + (i + 20) + " 10, " + (i + 20) +
+                                " 30, " + i + " 30, " + i + " 10))");
+                        cache.beginFeature(geom);
+                        area.draw(g2, null, -1, false, context, geom);
+                        line.draw(g2, null, -1, false, context, geom);
+                        point.draw(g2, null, -1, false, context, geom);
+                        cache.endFeature();
+                }
+                g2.dispose();
+                assertEquals(featureCount, cache.getHitCount() - hits);
+                assertEquals(2 * featureCount, cache.getMissCount() - misses);
+        }
+
+        /**
+         * Polygons of many vertices drawn several times by an area, a line and a point symbolizer, each feature
+         * is converted once into a shape and once into a point in each run.
+         */
+        @Test
+        public void testRepeatedRuns() throws Exception {
+                int featureCount = 500;
+                int vertexCount = 200;
+                int runCount = 3;
+                GeometryFactory factory = new GeometryFactory();
+                Geometry[] features = new Geometry[featureCount];
+                for (int i = 0; i < featureCount; i++) {
+                        double x = i * 7919 % 100;
+                        double y = i * 104729 % 100;
+                        Coordinate[] ring = new Coordinate[vertexCount + 1];
+                        for (int v = 0; v < vertexCount; v++) {
+                                double angle = 2 * Math.PI * v / vertexCount;
+                                double radius = v % 2 == 0 ? 10 : 6;
+                                ring[v] = new Coordinate(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+                        }
+                        ring[vertexCount] = ring[0];
+                        features[i] = factory.createPolygon(factory.createLinearRing(ring), null);
+                }
+                Symbolizer[] symbolizers = {new AreaSymbolizer(), new LineSymbolizer(), new PointSymbolizer()};
+                FeatureShapeCache cache = context.getFeatureShapeCache();
+                long hits = cache.getHitCount();
+                long misses = cache.getMissCount();
+                for (int run = 0; run < runCount; run++) {
+                        Graphics2D g2 = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB).createGraphics();
+                        try {
+                                for (Geometry geom : features) {
+                                        cache.beginFeature(geom);
+                                        for (Symbolizer symbolizer : symbolizers) {
+                                                symbolizer.draw(g2, null, -1, false, context, geom);
+                                        }
+                                        cache.endFeature();
+                                }
+                        } finally {
+                                g2.dispose();
+                        }
+                }
+                assertEquals((long) featureCount * runCount, cache.getHitCount() - hits);
+                assertEquals(2L * featureCount * runCount, cache.getMissCount() - misses);
+        }
+}
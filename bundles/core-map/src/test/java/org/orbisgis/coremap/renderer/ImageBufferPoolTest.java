@@ -0,0 +1,211 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.AreaSymbolizer;
+import org.orbisgis.coremap.renderer.se.LineSymbolizer;
+import org.orbisgis.coremap.renderer.se.Symbolizer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test of the pooled images of the symbolizers.
+ */
+public class ImageBufferPoolTest {
+
+    @Test
+    public void testReuseImage() {
+        ImageBufferPool pool = new ImageBufferPool(ImageBufferPool.DEFAULT_MAX_MEMORY);
+        BufferedImage image = pool.acquire(10, 20);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, image.getType());
+        image.setRGB(5, 5, Color.RED.getRGB());
+        pool.release(image);
+        assertEquals(4 * 10 * 20, pool.getMemory());
+        // Other size
+        assertNotSame(image, pool.acquire(20, 10));
+        BufferedImage reused = pool.acquire(10, 20);
+        assertSame(image, reused);
+        // Cleared before reuse
+        assertEquals(0, reused.getRGB(5, 5));
+        assertEquals(0, pool.getMemory());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        ImageBufferPool pool = new ImageBufferPool(4 * 10 * 10 * 2);
+        BufferedImage first = pool.acquire(10, 10);
+        BufferedImage second = pool.acquire(10, 10);
+        BufferedImage third = pool.acquire(10, 10);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertEquals(4 * 10 * 10 * 2, pool.getMemory());
+        // The least recently released image is dropped
+        BufferedImage reused = pool.acquire(10, 10);
+        BufferedImage reusedToo = pool.acquire(10, 10);
+        assertTrue(reused != first && reusedToo != first);
+        pool.release(pool.acquire(100, 100));
+        assertEquals(0, pool.getMemory());
+        pool.clear();
+        assertEquals(0, pool.getMemory());
+    }
+
+    @Test
+    public void testSymbolizerLevels() {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 10, 0, 10));
+        Symbolizer fill = new AreaSymbolizer();
+        fill.setLevel(2);
+        Symbolizer casing = new LineSymbolizer();
+        casing.setLevel(1);
+        Symbolizer otherCasing = new LineSymbolizer();
+        otherCasing.setLevel(1);
+        ImageRenderer renderer = new ImageRenderer();
+        BufferedImage target = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = target.createGraphics();
+        renderer.initGraphics2D(Arrays.asList(fill, casing, otherCasing), g2, mt);
+        // The symbolizers of a level are not drawn in the same image
+        assertNotSame(renderer.getGraphics2D(casing), renderer.getGraphics2D(otherCasing));
+        assertNotSame(renderer.getGraphics2D(fill), renderer.getGraphics2D(casing));
+        // The fill is drawn first but its level is above the casing
+        Graphics2D fillG2 = renderer.getGraphics2D(fill);
+        fillG2.setColor(Color.RED);
+        fillG2.fillRect(0, 0, 5, 10);
+        Graphics2D casingG2 = renderer.getGraphics2D(casing);
+        casingG2.setColor(Color.BLUE);
+        casingG2.fillRect(0, 0, 10, 10);
+        renderer.disposeLayer(g2);
+        assertEquals(Color.RED.getRGB(), target.getRGB(2, 5));
+        assertEquals(Color.BLUE.getRGB(), target.getRGB(7, 5));
+        // The images are back in the pool
+        assertEquals(3 * 4 * 10 * 10, renderer.getBufferPool().getMemory());
+        g2.dispose();
+    }
+
+    @Test
+    public void testImagesClearedBetweenLayers() {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 10, 0, 10));
+        Symbolizer fill = new AreaSymbolizer();
+        fill.setLevel(2);
+        Symbolizer casing = new LineSymbolizer();
+        casing.setLevel(1);
+        ImageRenderer renderer = new ImageRenderer();
+        BufferedImage firstLayer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D firstG2 = firstLayer.createGraphics();
+        renderer.initGraphics2D(Arrays.asList(fill, casing), firstG2, mt);
+        Graphics2D fillG2 = renderer.getGraphics2D(fill);
+        fillG2.setColor(Color.RED);
+        fillG2.fillRect(0, 0, 5, 10);
+        renderer.disposeLayer(firstG2);
+        firstG2.dispose();
+        long hitCount = renderer.getBufferPool().getHitCount();
+        // The next layer draws in the same images
+        BufferedImage secondLayer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D secondG2 = secondLayer.createGraphics();
+        renderer.initGraphics2D(Arrays.asList(fill, casing), secondG2, mt);
+        Graphics2D casingG2 = renderer.getGraphics2D(casing);
+        casingG2.setColor(Color.BLUE);
+        casingG2.fillRect(5, 0, 5, 10);
+        renderer.disposeLayer(secondG2);
+        secondG2.dispose();
+        assertEquals(hitCount + 2, renderer.getBufferPool().getHitCount());
+        assertEquals(Color.RED.getRGB(), firstLayer.getRGB(2, 5));
+        // Nothing of the first layer is left in the images
+        assertEquals(0, secondLayer.getRGB(2, 5));
+        assertEquals(Color.BLUE.getRGB(), secondLayer.getRGB(7, 5));
+    }
+
+    @Test
+    public void testSameLevelOrder() {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 10, 0, 10));
+        Symbolizer fill = new AreaSymbolizer();
+        fill.setLevel(1);
+        Symbolizer otherFill = new AreaSymbolizer();
+        otherFill.setLevel(1);
+        ImageRenderer renderer = new ImageRenderer();
+        BufferedImage target = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = target.createGraphics();
+        renderer.initGraphics2D(Arrays.asList(fill, otherFill), g2, mt);
+        // The second symbolizer draws a feature before the first one draws the next feature
+        Graphics2D otherFillG2 = renderer.getGraphics2D(otherFill);
+        otherFillG2.setColor(Color.BLUE);
+        otherFillG2.fillRect(0, 0, 10, 10);
+        Graphics2D fillG2 = renderer.getGraphics2D(fill);
+        fillG2.setColor(Color.RED);
+        fillG2.fillRect(0, 0, 10, 10);
+        renderer.disposeLayer(g2);
+        // The second symbolizer is above the first one, as if each symbolizer had drawn all its features in turn
+        assertEquals(Color.BLUE.getRGB(), target.getRGB(5, 5));
+        g2.dispose();
+    }
+
+    @Test
+    public void testSingleSymbolizer() {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 10, 0, 10));
+        Symbolizer fill = new AreaSymbolizer();
+        fill.setLevel(1);
+        ImageRenderer renderer = new ImageRenderer();
+        BufferedImage target = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = target.createGraphics();
+        renderer.initGraphics2D(Arrays.asList(fill), g2, mt);
+        // Drawn in the layer graphics, without image
+        Graphics2D fillG2 = renderer.getGraphics2D(fill);
+        fillG2.setColor(Color.RED);
+        fillG2.fillRect(0, 0, 10, 10);
+        assertEquals(Color.RED.getRGB(), target.getRGB(5, 5));
+        renderer.disposeLayer(g2);
+        assertEquals(0, renderer.getBufferPool().getMemory());
+        g2.dispose();
+    }
+}
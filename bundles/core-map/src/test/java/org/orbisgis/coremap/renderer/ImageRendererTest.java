@@ -36,28 +36,56 @@
  */
 package org.orbisgis.coremap.renderer;
 
+import com.vividsolutions.jts.geom.Envelope;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.h2gis.utilities.SFSUtilities;
+import org.h2gis.utilities.SpatialResultSet;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.orbisgis.corejdbc.DataManager;
 import org.orbisgis.corejdbc.internal.DataManagerImpl;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.layerModel.LayerCollection;
 import org.orbisgis.coremap.layerModel.MapContext;
 import org.orbisgis.coremap.layerModel.OwsMapContext;
 import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.AreaSymbolizer;
+import org.orbisgis.coremap.renderer.se.PointSymbolizer;
+import org.orbisgis.coremap.renderer.se.Rule;
+import org.orbisgis.coremap.renderer.se.Style;
+import org.orbisgis.coremap.renderer.se.fill.SolidFill;
+import org.orbisgis.coremap.renderer.se.parameter.color.ColorLiteral;
+import org.orbisgis.coremap.renderer.se.parameter.color.Recode2Color;
+import org.orbisgis.coremap.renderer.se.parameter.string.StringAttribute;
 import org.orbisgis.commons.progress.NullProgressMonitor;
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.commons.progress.RootProgressMonitor;
 
 import javax.sql.DataSource;
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.URI;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Rendering test for image renderer
@@ -103,4 +131,523 @@ public class ImageRendererTest {
         assertEquals(new Color(0, 204, 102).getRGB(), outImage.getRGB(23, 86));
         assertEquals(new Color(204,204,0).getRGB(), outImage.getRGB(30, 112));
     }
+
+    @Test
+    public void copySettings() throws Exception {
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setLayerThreadCount(4);
+        renderer.setRowLimit(500);
+        renderer.setLabelPlacement(true);
+        renderer.setDensityThreshold(0.5);
+        renderer.setClusterSumFields(Collections.singleton("POP"));
+        renderer.setPointClusterCache(new PointClusterCache());
+        renderer.setLayerShapeCache(new LayerShapeCache());
+        ImageRenderer layerRenderer = new ImageRenderer();
+        renderer.copySettings(layerRenderer);
+        // A layer renderer draws a single layer
+        assertEquals(1, layerRenderer.getLayerThreadCount());
+        assertEquals(500, layerRenderer.getRowLimit());
+        assertTrue(layerRenderer.isLabelPlacement());
+        assertEquals(0.5, layerRenderer.getDensityThreshold(), 0);
+        assertEquals(Collections.singleton("POP"), layerRenderer.getClusterSumFields());
+        assertSame(renderer.getPointClusterCache(), layerRenderer.getPointClusterCache());
+        assertSame(renderer.getLayerShapeCache(), layerRenderer.getLayerShapeCache());
+        assertSame(renderer.getBufferPool(), layerRenderer.getBufferPool());
+    }
+
+    @Test
+    public void sampleStrideKeyRangeIsCached() throws Exception {
+        MapContext mc = new OwsMapContext(getDataManager());
+        URI owsFile = ImageRendererTest.class.getResource("../../../../data/landcover2000.ows").toURI();
+        mc.setLocation(owsFile);
+        mc.read(new FileInputStream(new File(owsFile)));
+        mc.open(new NullProgressMonitor());
+        ILayer layer = mc.getLayerModel().getLayersRecursively()[0];
+        FeatureCountCache cache = new FeatureCountCache();
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setFeatureCountCache(cache);
+        // Without preview all the rows are fetched, the key range is not read
+        assertEquals(1, renderer.getSampleStride(layer, layer.getEnvelope()));
+        assertNull(cache.getKeyRange(layer));
+        renderer.setRowLimit(10);
+        long stride = renderer.getSampleStride(layer, layer.getEnvelope());
+        assertTrue(stride >= 1);
+        long[] keyRange = cache.getKeyRange(layer);
+        assertNotNull(keyRange);
+        // The range is read once for the following drawings
+        assertEquals(stride, renderer.getSampleStride(layer, layer.getEnvelope()));
+        assertSame(keyRange, cache.getKeyRange(layer));
+        cache.invalidate(layer);
+        assertNull(cache.getKeyRange(layer));
+    }
+
+    @Test
+    public void sampleStrideReadsCaseSensitiveKey() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS LOWER_CASE_KEY");
+            st.execute("CREATE TABLE LOWER_CASE_KEY(\"id\" INT PRIMARY KEY, THE_GEOM GEOMETRY)");
+            st.execute("INSERT INTO LOWER_CASE_KEY VALUES (1, 'POINT (10 10)')");
+            st.execute("INSERT INTO LOWER_CASE_KEY VALUES (100, 'POINT (50 10)')");
+        }
+        MapContext mc = new OwsMapContext(getDataManager());
+        ILayer layer = mc.createLayer("LOWER_CASE_KEY");
+        layer.open();
+        FeatureCountCache cache = new FeatureCountCache();
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setFeatureCountCache(cache);
+        renderer.setRowLimit(10);
+        renderer.getSampleStride(layer, layer.getEnvelope());
+        assertArrayEquals(new long[] {1, 100}, cache.getKeyRange(layer));
+    }
+
+    @Test
+    public void failedLayerIsNotCached() throws Exception {
+        MapContext mc = new OwsMapContext(getDataManager());
+        URI owsFile = ImageRendererTest.class.getResource("../../../../data/landcover2000.ows").toURI();
+        mc.setLocation(owsFile);
+        mc.read(new FileInputStream(new File(owsFile)));
+        mc.open(new NullProgressMonitor());
+        MapTransform mapTransform = new MapTransform();
+        mapTransform.setExtent(mc.getBoundingBox());
+        mapTransform.setImage(new BufferedImage(50, 150, BufferedImage.TYPE_4BYTE_ABGR));
+        LayerImageCache cache = new LayerImageCache();
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setLayerImageCache(cache);
+        renderer.setRsProvider(new ResultSetProviderFactory() {
+            @Override
+            public ResultSetProvider getResultSetProvider(ILayer layer, ProgressMonitor pm) {
+                throw new IllegalStateException("Unavailable data source");
+            }
+
+            @Override
+            public String getName() {
+                return "Failing";
+            }
+        });
+        renderer.draw(mapTransform, mc.getLayerModel(), new NullProgressMonitor());
+        ILayer[] layers = mc.getLayerModel().getLayersRecursively();
+        for (ILayer layer : layers) {
+            assertNull(cache.getImage(layer, mapTransform));
+        }
+        renderer.setRsProvider(new DefaultResultSetProviderFactory());
+        renderer.draw(mapTransform, mc.getLayerModel(), new NullProgressMonitor());
+        assertNotNull(cache.getImage(layers[0], mapTransform));
+    }
+
+    @Test
+    public void failedQueryIsNotCached() throws Exception {
+        MapContext mc = new OwsMapContext(getDataManager());
+        URI owsFile = ImageRendererTest.class.getResource("../../../../data/landcover2000.ows").toURI();
+        mc.setLocation(owsFile);
+        mc.read(new FileInputStream(new File(owsFile)));
+        mc.open(new NullProgressMonitor());
+        MapTransform mapTransform = new MapTransform();
+        mapTransform.setExtent(mc.getBoundingBox());
+        mapTransform.setImage(new BufferedImage(50, 150, BufferedImage.TYPE_4BYTE_ABGR));
+        LayerImageCache cache = new LayerImageCache();
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setLayerImageCache(cache);
+        // The provider is created, its query fails
+        renderer.setRsProvider(new ResultSetProviderFactory() {
+            @Override
+            public ResultSetProvider getResultSetProvider(ILayer layer, ProgressMonitor pm) {
+                return new ResultSetProvider() {
+                    @Override
+                    public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields)
+                            throws SQLException {
+                        throw new SQLException("Connection lost");
+                    }
+
+                    @Override
+                    public String getPkName() {
+                        return "";
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+
+            @Override
+            public String getName() {
+                return "Failing query";
+            }
+        });
+        renderer.draw(mapTransform, mc.getLayerModel(), new NullProgressMonitor());
+        for (ILayer layer : mc.getLayerModel().getLayersRecursively()) {
+            assertNull(cache.getImage(layer, mapTransform));
+        }
+    }
+
+    @Test
+    public void drawFilteredRules() throws Exception {
+        ILayer layer = createSquaresLayer("FILTERED_RULES");
+        // The three filters are evaluated in one query, the ElseFilter rule draws the rows left by the others
+        BufferedImage image = drawRules(new ImageRenderer(), layer,
+                createFillRule("TYPE = 'a'", Color.RED, false),
+                createFillRule("TYPE = 'b'", Color.GREEN, false),
+                createFillRule(null, Color.BLUE, true));
+        assertEquals(Color.RED.getRGB(), image.getRGB(7, 10));
+        assertEquals(Color.GREEN.getRGB(), image.getRGB(30, 10));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(50, 10));
+    }
+
+    @Test
+    public void drawRulesWithoutFilterSupport() throws Exception {
+        ILayer layer = createSquaresLayer("UNFILTERED_RULES");
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setRsProvider(new UnfilteredResultSetProviderFactory());
+        // Each standard rule draws all the rows, the ElseFilter rule is not drawn over them
+        BufferedImage image = drawRules(renderer, layer,
+                createFillRule("TYPE = 'a'", Color.RED, false),
+                createFillRule(null, Color.BLUE, true));
+        assertEquals(Color.RED.getRGB(), image.getRGB(7, 10));
+        assertEquals(Color.RED.getRGB(), image.getRGB(30, 10));
+        assertEquals(Color.RED.getRGB(), image.getRGB(50, 10));
+    }
+
+    @Test
+    public void singleScanKeepsRuleOrder() throws Exception {
+        ILayer layer = createSquaresLayer("OVERLAPPING_RULES");
+        // Both symbolizers are at the same level, the second rule is drawn over the first one
+        BufferedImage singleScan = drawRules(new ImageRenderer(), layer,
+                createFillRule(null, Color.RED, false),
+                createFillRule("TYPE = 'a'", Color.BLUE, false));
+        BufferedImage perRule = drawRules(new ImageRenderer() {
+                    @Override
+                    protected boolean isSingleScanSupported() {
+                        return false;
+                    }
+                }, layer,
+                createFillRule(null, Color.RED, false),
+                createFillRule("TYPE = 'a'", Color.BLUE, false));
+        // Square 'b' is drawn by the first rule after square 'a' has been drawn by both rules
+        assertEquals(Color.BLUE.getRGB(), singleScan.getRGB(17, 10));
+        for (int x = 0; x < perRule.getWidth(); x++) {
+            for (int y = 0; y < perRule.getHeight(); y++) {
+                assertEquals(perRule.getRGB(x, y), singleScan.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void parallelLayersAreCompositedInLayerOrder() throws Exception {
+        final ILayer top = createSquaresLayer("TOP_LAYER");
+        final ILayer bottom = createSquaresLayer("BOTTOM_LAYER");
+        setRules(top, createFillRule(null, Color.BLUE, false));
+        setRules(bottom, createFillRule(null, Color.RED, false));
+        ILayer root = new LayerCollection("root");
+        // The first layer is drawn over the next ones
+        root.addLayer(top);
+        root.addLayer(bottom);
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setLayerThreadCount(2);
+        // The top layer is done first, its buffer waits for the bottom layer
+        renderer.setRsProvider(new UnfilteredResultSetProviderFactory() {
+            @Override
+            protected void beforeExecute(ILayer layer) {
+                if (layer == bottom) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        BufferedImage image = draw(renderer, root, new NullProgressMonitor());
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(7, 10));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(30, 10));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(50, 10));
+    }
+
+    @Test
+    public void cancelInterruptsLayerDrawings() throws Exception {
+        final long queryTime = 10000;
+        ILayer root = new LayerCollection("root");
+        for (String tableName : new String[]{"CANCELLED_TOP", "CANCELLED_BOTTOM"}) {
+            ILayer layer = createSquaresLayer(tableName);
+            setRules(layer, createFillRule(null, Color.RED, false));
+            root.addLayer(layer);
+        }
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setLayerThreadCount(2);
+        // Each layer query blocks without checking the progress monitor
+        renderer.setRsProvider(new UnfilteredResultSetProviderFactory() {
+            @Override
+            protected void beforeExecute(ILayer layer) throws SQLException {
+                started.countDown();
+                try {
+                    Thread.sleep(queryTime);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                    throw new SQLException("Query interrupted", ex);
+                }
+            }
+        });
+        final ProgressMonitor pm = new RootProgressMonitor(1);
+        Thread cancel = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    started.await();
+                    pm.setCancelled(true);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        cancel.start();
+        long begin = System.currentTimeMillis();
+        draw(renderer, root, pm);
+        // The drawing returns without waiting for the queries, then the queries are interrupted
+        assertTrue(System.currentTimeMillis() - begin < queryTime);
+        assertTrue(interrupted.await(queryTime, TimeUnit.MILLISECONDS));
+        cancel.join();
+    }
+
+    @Test
+    public void progressShowsPendingLayerBuffer() throws Exception {
+        ILayer layer = createSquaresLayer("PENDING_BUFFER");
+        Style bottomStyle = new Style(layer, false);
+        bottomStyle.addRule(createFillRule(null, Color.RED, false));
+        Style topStyle = new Style(layer, false);
+        topStyle.addRule(createFillRule(null, Color.BLUE, false));
+        layer.setStyles(Arrays.asList(bottomStyle, topStyle));
+        final ImageRenderer renderer = new ImageRenderer();
+        // The layer is drawn in a buffer kept by the cache
+        renderer.setLayerImageCache(new LayerImageCache());
+        final AtomicInteger queryCount = new AtomicInteger();
+        final BufferedImage progress = new BufferedImage(60, 20, BufferedImage.TYPE_INT_ARGB);
+        renderer.setRsProvider(new UnfilteredResultSetProviderFactory() {
+            @Override
+            protected void beforeExecute(ILayer layer) {
+                // The first style is drawn in the buffer, the second one is not
+                if (queryCount.incrementAndGet() == 2) {
+                    Graphics2D g2 = progress.createGraphics();
+                    renderer.updateImage(g2);
+                    g2.dispose();
+                }
+            }
+        });
+        BufferedImage image = draw(renderer, layer, new NullProgressMonitor());
+        assertEquals(2, queryCount.get());
+        assertEquals(Color.RED.getRGB(), progress.getRGB(7, 10));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(7, 10));
+        // The buffer is not shown once composited
+        assertNull(renderer.getPendingBuffer());
+    }
+
+    @Test
+    public void restyleIsDrawnFromRetainedRows() throws Exception {
+        ILayer layer = createSquaresLayer("RETAINED_ROWS");
+        LayerShapeCache shapeCache = new LayerShapeCache();
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setLayerShapeCache(shapeCache);
+        final AtomicInteger queryCount = new AtomicInteger();
+        renderer.setRsProvider(new UnfilteredResultSetProviderFactory() {
+            @Override
+            protected void beforeExecute(ILayer layer) {
+                queryCount.incrementAndGet();
+            }
+        });
+        BufferedImage image = drawRules(renderer, layer, createRecodeRule(Color.RED, Color.GREEN));
+        assertEquals(1, queryCount.get());
+        assertEquals(Color.RED.getRGB(), image.getRGB(7, 10));
+        assertEquals(Color.GREEN.getRGB(), image.getRGB(50, 10));
+        // The new colors are drawn from the kept values of the field
+        image = drawRules(renderer, layer, createRecodeRule(Color.BLUE, Color.YELLOW));
+        assertEquals(1, queryCount.get());
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(7, 10));
+        assertEquals(Color.YELLOW.getRGB(), image.getRGB(50, 10));
+        image = drawRules(renderer, layer, createFillRule(null, Color.MAGENTA, false));
+        assertEquals(1, queryCount.get());
+        assertEquals(Color.MAGENTA.getRGB(), image.getRGB(50, 10));
+        // The data has changed, the rows are read again
+        shapeCache.invalidate(layer);
+        image = drawRules(renderer, layer, createRecodeRule(Color.RED, Color.GREEN));
+        assertEquals(2, queryCount.get());
+        assertEquals(Color.GREEN.getRGB(), image.getRGB(50, 10));
+    }
+
+    @Test
+    public void densityGridCountsFilteredRows() throws Exception {
+        ILayer layer = createPointsLayer("DENSITY_POINTS");
+        ImageRenderer renderer = new ImageRenderer();
+        renderer.setDensityThreshold(1e-6);
+        BufferedImage image = drawRules(renderer, layer, createPointRule("TYPE = 'a'"));
+        assertTrue(image.getRGB(9, 9) != 0);
+        assertEquals(0, image.getRGB(49, 9));
+        // More rules than filters in a single query
+        Rule[] rules = new Rule[ResultSetProviderFactory.FilteredResultSetProvider.MAX_FILTER_COUNT + 1];
+        rules[0] = createPointRule("TYPE = 'a'");
+        for (int i = 1; i < rules.length; i++) {
+            rules[i] = createPointRule("TYPE = 'z'");
+        }
+        image = drawRules(renderer, layer, rules);
+        assertTrue(image.getRGB(9, 9) != 0);
+        assertEquals(0, image.getRGB(49, 9));
+    }
+
+    /**
+     * Two points: 'a' on the left, 'b' on the right.
+     * @param tableName Name of the created table
+     * @return Opened layer of the table
+     */
+    private ILayer createPointsLayer(String tableName) throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName);
+            st.execute("CREATE TABLE " + tableName + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY, TYPE VARCHAR)");
+            st.execute("INSERT INTO " + tableName + " VALUES (1, 'POINT (10 10)', 'a')");
+            st.execute("INSERT INTO " + tableName + " VALUES (2, 'POINT (50 10)', 'b')");
+        }
+        MapContext mc = new OwsMapContext(getDataManager());
+        ILayer layer = mc.createLayer(tableName);
+        layer.open();
+        return layer;
+    }
+
+    /**
+     * Three squares: 'a' on the left overlaps 'b' in the middle, 'c' is on the right.
+     * @param tableName Name of the created table
+     * @return Opened layer of the table
+     */
+    private ILayer createSquaresLayer(String tableName) throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName);
+            st.execute("CREATE TABLE " + tableName + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY, TYPE VARCHAR)");
+            st.execute("INSERT INTO " + tableName + " VALUES (1, 'POLYGON ((2 2, 22 2, 22 18, 2 18, 2 2))', 'a')");
+            st.execute("INSERT INTO " + tableName + " VALUES (2, 'POLYGON ((12 2, 38 2, 38 18, 12 18, 12 2))', 'b')");
+            st.execute("INSERT INTO " + tableName + " VALUES (3, 'POLYGON ((42 2, 58 2, 58 18, 42 18, 42 2))', 'c')");
+        }
+        MapContext mc = new OwsMapContext(getDataManager());
+        ILayer layer = mc.createLayer(tableName);
+        layer.open();
+        return layer;
+    }
+
+    /**
+     * @param where Filter of the rule
+     * @return A rule with a single point symbolizer
+     */
+    private static Rule createPointRule(String where) {
+        Rule rule = new Rule();
+        rule.setWhere(where);
+        rule.getCompositeSymbolizer().addSymbolizer(new PointSymbolizer());
+        return rule;
+    }
+
+    /**
+     * @param where Filter of the rule, null to accept all the rows
+     * @param color Fill color, without stroke
+     * @param elseFilter True to draw the rows rejected by the other rules
+     * @return A rule with a single area symbolizer
+     */
+    private static Rule createFillRule(String where, Color color, boolean elseFilter) {
+        AreaSymbolizer symbolizer = new AreaSymbolizer();
+        symbolizer.setFill(new SolidFill(color));
+        symbolizer.setStroke(null);
+        Rule rule = new Rule();
+        rule.setWhere(where);
+        rule.setFallbackRule(elseFilter);
+        rule.getCompositeSymbolizer().addSymbolizer(symbolizer);
+        return rule;
+    }
+
+    /**
+     * @param a Fill color of the square 'a'
+     * @param c Fill color of the square 'c'
+     * @return A rule with a single area symbolizer, its fill color depends on the TYPE field
+     */
+    private static Rule createRecodeRule(Color a, Color c) {
+        Recode2Color recode = new Recode2Color(new ColorLiteral(Color.BLACK), new StringAttribute("TYPE"));
+        recode.addMapItem("a", new ColorLiteral(a));
+        recode.addMapItem("c", new ColorLiteral(c));
+        SolidFill fill = new SolidFill(Color.BLACK);
+        fill.setColor(recode);
+        AreaSymbolizer symbolizer = new AreaSymbolizer();
+        symbolizer.setFill(fill);
+        symbolizer.setStroke(null);
+        Rule rule = new Rule();
+        rule.getCompositeSymbolizer().addSymbolizer(symbolizer);
+        return rule;
+    }
+
+    /**
+     * Draw the layer with a style made of the given rules, one pixel for one map unit.
+     * @return The drawn image
+     */
+    private static BufferedImage drawRules(ImageRenderer renderer, ILayer layer, Rule... rules) {
+        setRules(layer, rules);
+        return draw(renderer, layer, new NullProgressMonitor());
+    }
+
+    /**
+     * Set a style made of the given rules to the layer.
+     */
+    private static void setRules(ILayer layer, Rule... rules) {
+        Style style = new Style(layer, false);
+        for (Rule rule : rules) {
+            style.addRule(rule);
+        }
+        layer.setStyles(Collections.singletonList(style));
+    }
+
+    /**
+     * Draw the layers, one pixel for one map unit.
+     * @return The drawn image
+     */
+    private static BufferedImage draw(ImageRenderer renderer, ILayer layer, ProgressMonitor pm) {
+        BufferedImage image = new BufferedImage(60, 20, BufferedImage.TYPE_INT_ARGB);
+        MapTransform mapTransform = new MapTransform();
+        mapTransform.setImage(image);
+        mapTransform.setExtent(new Envelope(0, 60, 0, 20));
+        renderer.draw(mapTransform, layer, pm);
+        return image;
+    }
+
+    /**
+     * Standard queries through a provider that does not evaluate the rule filters.
+     */
+    private static class UnfilteredResultSetProviderFactory implements ResultSetProviderFactory {
+        private final ResultSetProviderFactory factory = new DefaultResultSetProviderFactory();
+
+        @Override
+        public ResultSetProvider getResultSetProvider(final ILayer layer, ProgressMonitor pm) throws SQLException {
+            final ResultSetProvider provider = factory.getResultSetProvider(layer, pm);
+            return new ResultSetProvider() {
+                @Override
+                public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields)
+                        throws SQLException {
+                    beforeExecute(layer);
+                    return provider.execute(pm, extent, fields);
+                }
+
+                @Override
+                public String getPkName() {
+                    return provider.getPkName();
+                }
+
+                @Override
+                public void close() throws SQLException {
+                    provider.close();
+                }
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "Unfiltered";
+        }
+
+        /**
+         * Called by the drawing thread before the query of the layer.
+         * @param layer Queried layer
+         */
+        protected void beforeExecute(ILayer layer) throws SQLException {
+        }
+    }
 }
@@ -0,0 +1,161 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import org.junit.Test;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.layerModel.Layer;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.se.LineSymbolizer;
+import org.orbisgis.coremap.renderer.se.Rule;
+import org.orbisgis.coremap.renderer.se.Style;
+import org.orbisgis.coremap.renderer.se.common.Uom;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealAttribute;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealLiteral;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealParameter;
+import org.orbisgis.coremap.renderer.se.stroke.PenStroke;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the strips drawn after a pan.
+ */
+public class IncrementalPanTest {
+
+    @Test
+    public void testStrips() throws Exception {
+        // 1 map unit per pixel, the map moves 10 pixels to the right and 5 pixels up
+        Envelope previous = new Envelope(0, 100, 0, 50);
+        Envelope extent = new Envelope(-10, 90, -5, 45);
+        IncrementalPan pan = IncrementalPan.create(previous, extent, 100, 50, 4, 0.5);
+        assertEquals(10, pan.getShiftX());
+        assertEquals(-5, pan.getShiftY());
+        assertEquals((10 * 50 + 5 * 90) / 5000., pan.getExposedRatio(), 1e-12);
+        assertEquals(2, pan.getStrips().size());
+        assertEquals(new Rectangle(0, 0, 14, 50), pan.getStrips().get(0));
+        assertEquals(new Rectangle(14, 41, 86, 9), pan.getStrips().get(1));
+    }
+
+    @Test
+    public void testVerticalPan() throws Exception {
+        IncrementalPan pan = IncrementalPan.create(new Envelope(0, 100, 0, 50), new Envelope(0, 100, 5, 55),
+                100, 50, 4, 0.5);
+        assertEquals(0, pan.getShiftX());
+        assertEquals(5, pan.getShiftY());
+        assertEquals(1, pan.getStrips().size());
+        assertEquals(new Rectangle(0, 0, 100, 9), pan.getStrips().get(0));
+    }
+
+    @Test
+    public void testFullRedraw() throws Exception {
+        Envelope previous = new Envelope(0, 100, 0, 50);
+        // Zoom
+        assertNull(IncrementalPan.create(previous, new Envelope(0, 50, 0, 25), 100, 50, 4, 0.5));
+        // Half a pixel
+        assertNull(IncrementalPan.create(previous, new Envelope(0.5, 100.5, 0, 50), 100, 50, 4, 0.5));
+        // Too many exposed pixels
+        assertNull(IncrementalPan.create(previous, new Envelope(60, 160, 0, 50), 100, 50, 4, 0.5));
+    }
+
+    @Test
+    public void testStripTransform() throws Exception {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 200, 0, 100));
+        MapTransform strip = IncrementalPan.createStripTransform(mt, new Rectangle(80, 10, 20, 40));
+        assertEquals(20, strip.getWidth());
+        assertEquals(40, strip.getHeight());
+        assertTrue(strip.getAdjustedExtent().equals(new Envelope(160, 200, 0, 80)));
+        assertEquals(mt.getScaleDenominator(), strip.getScaleDenominator(), 1e-6);
+    }
+
+    @Test
+    public void testBufferedStripTransform() throws Exception {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 200, 0, 100));
+        // The features around the strip are drawn in the buffer
+        MapTransform strip = IncrementalPan.createStripTransform(mt, new Rectangle(80, 10, 20, 40), 5);
+        assertEquals(30, strip.getWidth());
+        assertEquals(50, strip.getHeight());
+        assertTrue(strip.getAdjustedExtent().equals(new Envelope(150, 210, -10, 90)));
+        assertEquals(mt.getScaleDenominator(), strip.getScaleDenominator(), 1e-6);
+    }
+
+    @Test
+    public void testSymbolMargin() throws Exception {
+        // Half of the stroke, the offset and the antialiased edge
+        ILayer layer = createLineLayer(new RealLiteral(10), new RealLiteral(-3));
+        assertEquals(5 + 3 + 2, IncrementalPan.getSymbolMargin(layer, createTransform()));
+    }
+
+    @Test
+    public void testUnboundedSymbolMargin() throws Exception {
+        // The width is read from the features
+        ILayer layer = createLineLayer(new RealAttribute("width"), null);
+        assertEquals(IncrementalPan.UNBOUNDED_MARGIN, IncrementalPan.getSymbolMargin(layer, createTransform()));
+    }
+
+    private static MapTransform createTransform() {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 200, 0, 100));
+        return mt;
+    }
+
+    private static ILayer createLineLayer(RealParameter width, RealParameter offset) {
+        ILayer layer = new Layer("lines", "lines", null);
+        LineSymbolizer symbolizer = new LineSymbolizer();
+        symbolizer.setUom(Uom.PX);
+        PenStroke stroke = new PenStroke();
+        stroke.setWidth(width);
+        symbolizer.setStroke(stroke);
+        symbolizer.setPerpendicularOffset(offset);
+        Rule rule = new Rule();
+        rule.getCompositeSymbolizer().addSymbolizer(symbolizer);
+        Style style = new Style(layer, false);
+        style.addRule(rule);
+        layer.setStyles(Collections.singletonList(style));
+        return layer;
+    }
+}
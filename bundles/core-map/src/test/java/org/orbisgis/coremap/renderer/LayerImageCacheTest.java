@@ -0,0 +1,114 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Before;
+import org.junit.Test;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.layerModel.LayerCollection;
+import org.orbisgis.coremap.map.MapTransform;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test of the per layer image cache.
+ */
+public class LayerImageCacheTest {
+    private MapTransform mt;
+    private ILayer layer;
+
+    @Before
+    public void setUp() {
+        mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 100, 0, 100));
+        layer = new LayerCollection("layer");
+    }
+
+    @Test
+    public void testReuseImage() {
+        LayerImageCache cache = new LayerImageCache();
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        assertNull(cache.getImage(layer, mt));
+        cache.putImage(layer, mt, image, cache.getVersion(layer));
+        assertSame(image, cache.getImage(layer, mt));
+        assertEquals(100 * 100 * 4, cache.getSize());
+    }
+
+    @Test
+    public void testExtentChange() {
+        LayerImageCache cache = new LayerImageCache();
+        cache.putImage(layer, mt, new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB), cache.getVersion(layer));
+        mt.setExtent(new Envelope(10, 110, 0, 100));
+        assertNull(cache.getImage(layer, mt));
+    }
+
+    @Test
+    public void testInvalidate() {
+        LayerImageCache cache = new LayerImageCache();
+        cache.putImage(layer, mt, new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB), cache.getVersion(layer));
+        cache.invalidate(layer);
+        assertNull(cache.getImage(layer, mt));
+        assertEquals(1, cache.getVersion(layer));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidateWhileDrawing() {
+        LayerImageCache cache = new LayerImageCache();
+        long version = cache.getVersion(layer);
+        // The data changes while the layer is drawn, the image is out of date
+        cache.invalidate(layer);
+        cache.putImage(layer, mt, new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB), version);
+        assertNull(cache.getImage(layer, mt));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        LayerImageCache cache = new LayerImageCache(100 * 100 * 4);
+        ILayer other = new LayerCollection("other");
+        cache.putImage(layer, mt, new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB), cache.getVersion(layer));
+        cache.putImage(other, mt, new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB), cache.getVersion(other));
+        // The least recently used image is removed
+        assertNull(cache.getImage(layer, mt));
+        assertNotNull(cache.getImage(other, mt));
+    }
+}
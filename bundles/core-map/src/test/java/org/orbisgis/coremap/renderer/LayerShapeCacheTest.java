@@ -0,0 +1,129 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Before;
+import org.junit.Test;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.layerModel.LayerCollection;
+import org.orbisgis.coremap.map.MapTransform;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test of the screen shapes retained between two drawings of a layer.
+ */
+public class LayerShapeCacheTest {
+    private MapTransform mt;
+    private ILayer layer;
+
+    @Before
+    public void setUp() {
+        mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 100, 0, 100));
+        layer = new LayerCollection("layer");
+    }
+
+    @Test
+    public void testReuseShapes() {
+        LayerShapeCache cache = new LayerShapeCache();
+        LayerShapeCache.LayerShapes shapes = cache.get(layer, mt, 0);
+        assertNull(shapes.get(1));
+        Path2D path = new Path2D.Double();
+        path.moveTo(10, 10);
+        path.lineTo(50, 10);
+        path.lineTo(50, 50);
+        path.closePath();
+        shapes.put(1, path);
+        assertEquals(3, cache.getPointCount());
+        // The drawn path may be reused by the caller
+        path.reset();
+        Shape retained = cache.get(layer, mt, 0).get(1);
+        assertNotNull(retained);
+        assertEquals(new Rectangle2D.Double(10, 10, 40, 40), retained.getBounds2D());
+        assertSame(shapes, cache.get(layer, mt, 0));
+    }
+
+    @Test
+    public void testTransformChange() {
+        LayerShapeCache cache = new LayerShapeCache();
+        cache.get(layer, mt, 0).put(1, new Rectangle2D.Double(10, 10, 20, 20));
+        mt.setExtent(new Envelope(10, 110, 0, 100));
+        assertNull(cache.get(layer, mt, 0).get(1));
+        assertEquals(0, cache.getPointCount());
+        cache.get(layer, mt, 0).put(1, new Rectangle2D.Double(10, 10, 20, 20));
+        // The fetched geometries are simplified
+        assertNull(cache.get(layer, mt, 2).get(1));
+    }
+
+    @Test
+    public void testInvalidate() {
+        LayerShapeCache cache = new LayerShapeCache();
+        LayerShapeCache.LayerShapes shapes = cache.get(layer, mt, 0);
+        shapes.put(1, new Rectangle2D.Double(10, 10, 20, 20));
+        cache.invalidate(layer);
+        assertEquals(1, cache.getVersion(layer));
+        assertEquals(0, cache.getPointCount());
+        assertNull(cache.get(layer, mt, 0).get(1));
+        // A drawing started before the change of the data does not fill the cache
+        shapes.put(2, new Rectangle2D.Double(10, 10, 20, 20));
+        assertEquals(0, cache.getPointCount());
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        LayerShapeCache cache = new LayerShapeCache(8);
+        ILayer other = new LayerCollection("other");
+        cache.get(layer, mt, 0).put(1, new Rectangle2D.Double(10, 10, 20, 20));
+        cache.get(other, mt, 0).put(1, new Rectangle2D.Double(10, 10, 20, 20));
+        // The least recently used layer is removed
+        assertEquals(5, cache.getPointCount());
+        assertNull(cache.get(layer, mt, 0).get(1));
+        // A shape above the limit is not kept
+        LayerShapeCache.LayerShapes shapes = cache.get(other, mt, 0);
+        shapes.put(2, new Rectangle2D.Double(10, 10, 20, 20));
+        assertNull(shapes.get(2));
+        assertNotNull(shapes.get(1));
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the merge of close points.
+ */
+public class PointClustersTest {
+
+    @Test
+    public void testMerge() throws Exception {
+        PointClusters points = new PointClusters(new Envelope(0, 100, 0, 100), Arrays.asList("pop", "name"));
+        points.add(10, 10, 1, -1L, new Object[]{100, "a"});
+        points.add(11, 11, 2, -1L, new Object[]{50, "b"});
+        points.add(80, 80, 3, -1L, new Object[]{7, "c"});
+        assertEquals(3, points.size());
+        List<PointClusters.Cluster> clusters = points.getClusters(0, 5, Collections.singleton("pop"));
+        assertEquals(2, clusters.size());
+        PointClusters.Cluster merged = clusters.get(0);
+        assertEquals(2, merged.getCount());
+        assertEquals(10.5, merged.getX(), 1e-12);
+        assertEquals(10.5, merged.getY(), 1e-12);
+        assertEquals(2, merged.getValues().get(PointClusters.COUNT_FIELD));
+        assertEquals(150, ((Number) merged.getValues().get("pop")).doubleValue(), 1e-12);
+        assertEquals("a", merged.getValues().get("name"));
+        assertTrue(merged.isSelected(new HashSet<Long>(Arrays.asList(2L))));
+        assertFalse(merged.isSelected(Collections.<Long>emptySet()));
+        PointClusters.Cluster single = clusters.get(1);
+        assertEquals(1, single.getCount());
+        assertEquals(7, single.getValues().get("pop"));
+        // Computed once for each distance
+        assertSame(clusters, points.getClusters(0, 5, Collections.singleton("pop")));
+        // Zoomed in, the points are apart
+        assertEquals(3, points.getClusters(0, 1).size());
+        // Fields that are not summed take the value of the first point
+        assertEquals(100, points.getClusters(0, 5).get(0).getValues().get("pop"));
+    }
+
+    @Test
+    public void testMergeUntilStable() throws Exception {
+        PointClusters points = new PointClusters(new Envelope(0, 20, 0, 10), Collections.<String>emptyList());
+        points.add(4.9, 1, 1, -1L, new Object[0]);
+        points.add(8, 1, 2, -1L, new Object[0]);
+        // Too far from the first point, close to the center of the first two points
+        points.add(11.2, 1, 3, -1L, new Object[0]);
+        List<PointClusters.Cluster> clusters = points.getClusters(0, 5);
+        assertEquals(1, clusters.size());
+        assertEquals(3, clusters.get(0).getCount());
+    }
+
+    @Test
+    public void testNeighbourCells() throws Exception {
+        PointClusters points = new PointClusters(new Envelope(0, 10, 0, 10), Collections.<String>emptyList());
+        // Close points on both sides of a cell border
+        points.add(4.9, 1, 1, -1L, new Object[0]);
+        points.add(5.1, 1, 2, -1L, new Object[0]);
+        assertEquals(1, points.getClusters(0, 5).size());
+    }
+
+    @Test
+    public void testRuleMask() throws Exception {
+        PointClusters points = new PointClusters(new Envelope(0, 10, 0, 10), Collections.<String>emptyList());
+        points.add(1, 1, 1, 1L, new Object[0]);
+        points.add(1, 1, 2, 2L, new Object[0]);
+        points.add(1, 1, 3, 3L, new Object[0]);
+        assertEquals(2, points.getClusters(0, 5).get(0).getCount());
+        assertEquals(2, points.getClusters(1, 5).get(0).getCount());
+        assertTrue(points.getClusters(2, 5).isEmpty());
+    }
+}
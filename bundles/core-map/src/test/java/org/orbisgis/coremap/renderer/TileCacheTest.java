@@ -0,0 +1,209 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test of the disk tile cache.
+ */
+public class TileCacheTest {
+    private File folder;
+
+    @Before
+    public void setUp() {
+        folder = new File("target/tiles");
+        delete(folder);
+    }
+
+    @After
+    public void tearDown() {
+        delete(folder);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                delete(child);
+            }
+        }
+        assertTrue(!file.exists() || file.delete());
+    }
+
+    private static File getTileFile(File folder, int level, long x, long y) {
+        return new File(folder, "table/style/" + level + "/" + x + "_" + y + ".png");
+    }
+
+    @Test
+    public void testLevel() {
+        assertEquals(0, TileCache.getLevel(1));
+        assertEquals(0, TileCache.getLevel(1.5));
+        assertEquals(-1, TileCache.getLevel(0.75));
+        assertEquals(3, TileCache.getLevel(8));
+        assertEquals(8, TileCache.getResolution(3), 1e-12);
+        assertEquals(new Envelope(256, 512, -256, 0), TileCache.getTileEnvelope(0, 1, -1));
+        assertEquals(new Envelope(0, 128, 0, 128), TileCache.getTileEnvelope(-1, 0, 0));
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File tile = getTileFile(folder, 0, 0, 0);
+        TileCache cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        try {
+            BufferedImage image = new BufferedImage(TileCache.TILE_SIZE, TileCache.TILE_SIZE,
+                    BufferedImage.TYPE_INT_ARGB);
+            cache.putTile(tile, image, "table", 0);
+            assertTrue(tile.exists());
+            assertEquals(tile.length(), cache.getSize());
+        } finally {
+            cache.dispose();
+        }
+        // Tiles are reloaded from the disk
+        cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        try {
+            assertEquals(tile.length(), cache.getSize());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        BufferedImage image = new BufferedImage(TileCache.TILE_SIZE, TileCache.TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        TileCache cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        File first = getTileFile(folder, 0, 0, 0);
+        cache.putTile(first, image, "table", 0);
+        long tileSize = first.length();
+        cache.dispose();
+        cache = new TileCache(folder, tileSize, 1);
+        try {
+            assertEquals(tileSize, cache.getSize());
+            File second = getTileFile(folder, 0, 1, 0);
+            cache.putTile(second, image, "table", 0);
+            // The least recently used tile is removed
+            assertFalse(first.exists());
+            assertTrue(second.exists());
+            assertEquals(second.length(), cache.getSize());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testDataStamp() throws IOException {
+        BufferedImage image = new BufferedImage(TileCache.TILE_SIZE, TileCache.TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        File tile = getTileFile(folder, 0, 0, 0);
+        TileCache cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        try {
+            cache.checkDataStamp("table", "100");
+            cache.putTile(tile, image, "table", 0);
+        } finally {
+            cache.dispose();
+        }
+        // Same data in the next session, the tiles are kept
+        cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        try {
+            cache.checkDataStamp("table", "100");
+            assertTrue(tile.exists());
+            assertEquals(tile.length(), cache.getSize());
+        } finally {
+            cache.dispose();
+        }
+        // The data has been modified outside of the sessions
+        cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        try {
+            cache.checkDataStamp("table", "101");
+            assertFalse(tile.exists());
+            assertEquals(0, cache.getSize());
+            // The stamp is checked once per session
+            cache.putTile(tile, image, "table", cache.getTableVersion("table"));
+            cache.checkDataStamp("table", "102");
+            assertTrue(tile.exists());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testOutdatedTile() throws IOException {
+        TileCache cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        try {
+            BufferedImage image = new BufferedImage(TileCache.TILE_SIZE, TileCache.TILE_SIZE,
+                    BufferedImage.TYPE_INT_ARGB);
+            File tile = getTileFile(folder, 0, 0, 0);
+            // The tile has been rendered before a change of the data
+            cache.putTile(tile, image, "table", cache.getTableVersion("table") + 1);
+            assertFalse(tile.exists());
+            assertEquals(0, cache.getSize());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    @Test
+    public void testInvalidateSymbolMargin() throws IOException {
+        TileCache cache = new TileCache(folder, Long.MAX_VALUE, 1);
+        try {
+            BufferedImage image = new BufferedImage(TileCache.TILE_SIZE, TileCache.TILE_SIZE,
+                    BufferedImage.TYPE_INT_ARGB);
+            cache.setSymbolMargin(16);
+            File tile = getTileFile(folder, 0, 0, 0);
+            cache.putTile(tile, image, "table", 0);
+            // The symbols of a feature 20 pixels away do not reach the tile
+            cache.invalidate("table", new Envelope(276, 280, 10, 20));
+            assertTrue(tile.exists());
+            // The symbols of a feature 10 pixels away may reach the tile
+            cache.invalidate("table", new Envelope(266, 270, 10, 20));
+            assertFalse(tile.exists());
+            assertEquals(0, cache.getSize());
+        } finally {
+            cache.dispose();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.fill;
+
+import com.vividsolutions.jts.geom.Envelope;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import org.junit.Test;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.se.graphic.GraphicCollection;
+import org.orbisgis.coremap.renderer.se.graphic.MarkGraphic;
+import org.orbisgis.coremap.renderer.se.parameter.color.ColorLiteral;
+import org.orbisgis.coremap.renderer.se.parameter.color.Recode2Color;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealLiteral;
+import org.orbisgis.coremap.renderer.se.parameter.string.StringAttribute;
+import org.orbisgis.coremap.renderer.se.stroke.PenStroke;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the cached textures of polygon fills.
+ */
+public class FillPaintCacheTest {
+
+    @Test
+    public void testGraphicFill() throws Exception {
+        GraphicCollection collection = new GraphicCollection();
+        collection.addGraphic(new MarkGraphic());
+        GraphicFill fill = new GraphicFill();
+        fill.setGraphic(collection);
+        RenderContext mt = new RenderContext(getMapTransform());
+        FillPaintCache cache = new FillPaintCache(FillPaintCache.DEFAULT_MAX_MEMORY);
+        mt.setFillPaintCache(cache);
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        Paint first = fill.getPaint(map, false, mt);
+        assertSame(first, fill.getPaint(map, false, mt));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        // The selection and a modified style get another tile
+        assertNotSame(first, fill.getPaint(map, true, mt));
+        fill.setGapX(new RealLiteral(4));
+        assertNotSame(first, fill.getPaint(map, false, mt));
+        assertEquals(3, cache.size());
+        cache.clear();
+        assertEquals(0, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testHatchedFill() throws Exception {
+        HatchedFill fill = new HatchedFill();
+        RenderContext mt = new RenderContext(getMapTransform());
+        FillPaintCache cache = new FillPaintCache(FillPaintCache.DEFAULT_MAX_MEMORY);
+        mt.setFillPaintCache(cache);
+        Rectangle shape = new Rectangle(20, 20, 40, 40);
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            fill.draw(g2, new HashMap<String, Object>(), shape, false, mt);
+            fill.draw(g2, new HashMap<String, Object>(), new Rectangle(70, 70, 20, 20), false, mt);
+        } finally {
+            g2.dispose();
+        }
+        // The hatches of the image are rendered once
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        int inside = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                boolean drawn = (image.getRGB(x, y) >>> 24) != 0;
+                if (drawn && shape.contains(x, y)) {
+                    inside++;
+                } else if (drawn) {
+                    assertTrue(x >= 70 && y >= 70);
+                }
+            }
+        }
+        assertTrue(inside > 0);
+    }
+
+    @Test
+    public void testRecodeHatchedFill() throws Exception {
+        Recode2Color recode = new Recode2Color(new ColorLiteral(Color.BLACK), new StringAttribute("TYPE"));
+        recode.addMapItem("a", new ColorLiteral(Color.RED));
+        recode.addMapItem("b", new ColorLiteral(Color.BLUE));
+        SolidFill strokeFill = new SolidFill(Color.BLACK);
+        strokeFill.setColor(recode);
+        HatchedFill fill = new HatchedFill();
+        ((PenStroke) fill.getStroke()).setFill(strokeFill);
+        RenderContext mt = new RenderContext(getMapTransform());
+        FillPaintCache cache = new FillPaintCache(FillPaintCache.DEFAULT_MAX_MEMORY);
+        mt.setFillPaintCache(cache);
+        BufferedImage red = drawHatches(fill, "a", mt);
+        BufferedImage blue = drawHatches(fill, "b", mt);
+        drawHatches(fill, "a", mt);
+        // One tile per category
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.size());
+        assertTrue(isDrawnWith(red, Color.RED));
+        assertTrue(isDrawnWith(blue, Color.BLUE));
+    }
+
+    @Test
+    public void testHatchTile() throws Exception {
+        HatchedFill fill = new HatchedFill();
+        fill.setAngle(new RealLiteral(30));
+        Rectangle shape = new Rectangle(0, 0, 100, 100);
+        BufferedImage lines = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = lines.createGraphics();
+        try {
+            fill.draw(g2, new HashMap<String, Object>(), shape, false, getMapTransform());
+        } finally {
+            g2.dispose();
+        }
+        RenderContext mt = new RenderContext(getMapTransform());
+        FillPaintCache cache = new FillPaintCache(FillPaintCache.DEFAULT_MAX_MEMORY);
+        mt.setFillPaintCache(cache);
+        BufferedImage tiled = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        g2 = tiled.createGraphics();
+        try {
+            fill.draw(g2, new HashMap<String, Object>(), shape, false, mt);
+        } finally {
+            g2.dispose();
+        }
+        // After a pan the tile is anchored on the new position of the map origin
+        mt.setExtent(new Envelope(13.5, 113.5, 7.25, 107.25));
+        g2 = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            fill.draw(g2, new HashMap<String, Object>(), shape, false, mt);
+        } finally {
+            g2.dispose();
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        // A tile of a few periods, not an image of the map
+        assertTrue(cache.getMemoryUsage() < 4 * 100 * 100);
+        int linePixels = 0;
+        int tilePixels = 0;
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 100; x++) {
+                linePixels += lines.getRGB(x, y) >>> 31;
+                tilePixels += tiled.getRGB(x, y) >>> 31;
+            }
+        }
+        assertTrue(linePixels > 0);
+        assertEquals(linePixels, tilePixels, linePixels / 10);
+    }
+
+    private static BufferedImage drawHatches(HatchedFill fill, String type, MapTransform mt) throws Exception {
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put("TYPE", type);
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            fill.draw(g2, map, new Rectangle(0, 0, 100, 100), false, mt);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * @return True if the image is not empty and only holds shades of the color
+     */
+    private static boolean isDrawnWith(BufferedImage image, Color color) {
+        int drawn = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int argb = image.getRGB(x, y);
+                if ((argb >>> 24) != 0) {
+                    if ((argb & 0xFFFFFF) != (color.getRGB() & 0xFFFFFF)) {
+                        return false;
+                    }
+                    drawn++;
+                }
+            }
+        }
+        return drawn > 0;
+    }
+
+    private static MapTransform getMapTransform() {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 100, 0, 100));
+        return mt;
+    }
+}
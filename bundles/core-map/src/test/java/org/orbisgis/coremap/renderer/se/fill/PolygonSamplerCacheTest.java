@@ -0,0 +1,170 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.fill;
+
+import com.vividsolutions.jts.geom.Envelope;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.orbisgis.coremap.layerModel.LayerCollection;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.se.FeatureMap;
+import org.orbisgis.coremap.renderer.se.graphic.GraphicCollection;
+import org.orbisgis.coremap.renderer.se.graphic.MarkGraphic;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealLiteral;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test the triangulated polygons of the dot maps kept from one drawing to the next.
+ */
+public class PolygonSamplerCacheTest {
+    private static final int FEATURE_COUNT = 500;
+    private static final int VERTEX_COUNT = 100;
+    private static final int RUN_COUNT = 5;
+
+    @Test
+    public void testReuse() throws Exception {
+        PolygonSamplerCache cache = new PolygonSamplerCache();
+        RenderContext mt = createContext(cache);
+        Shape shape = createPolygon(50, 50);
+        PolygonSampler sampler = cache.getSampler(mt, 1, shape);
+        assertSame(sampler, cache.getSampler(mt, 1, shape));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        // After a pan the sampler is translated, the dots keep their place on the map
+        mt.setExtent(new Envelope(10, 110, 0, 100));
+        Shape panned = AffineTransform.getTranslateInstance(-10, 0).createTransformedShape(shape);
+        PolygonSampler translated = cache.getSampler(mt, 1, panned);
+        assertEquals(1, cache.getMissCount());
+        Point2D.Double first = sampler.sample(new Random(3));
+        Point2D.Double moved = translated.sample(new Random(3));
+        assertEquals(first.x - 10, moved.x, 1e-9);
+        assertEquals(first.y, moved.y, 1e-9);
+        // Another shape of the same feature, or a change of the data, triangulates the polygon again
+        assertNotSame(translated, cache.getSampler(mt, 1, createPolygon(30, 30)));
+        cache.invalidate(mt.getLayer());
+        cache.getSampler(mt, 1, createPolygon(30, 30));
+        assertEquals(2, cache.getMissCount());
+        cache.removeLayer(mt.getLayer());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Draw a dot map several times with the cache, the polygons are only triangulated on the first drawing.
+     */
+    @Test
+    public void testDotMapReuse() throws Exception {
+        DotMapFill fill = new DotMapFill();
+        GraphicCollection collection = new GraphicCollection();
+        collection.addGraphic(new MarkGraphic());
+        fill.setGraphicCollection(collection);
+        fill.setQuantityPerMark(new RealLiteral(1));
+        fill.setTotalQuantity(new RealLiteral(10));
+        Shape[] shapes = new Shape[FEATURE_COUNT];
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            shapes[i] = createPolygon(10 + (i * 37) % 80, 10 + (i * 53) % 80);
+        }
+        PolygonSamplerCache cache = new PolygonSamplerCache();
+        RenderContext mt = createContext(cache);
+        PolygonSampler[] samplers = new PolygonSampler[FEATURE_COUNT];
+        for (int run = 0; run < RUN_COUNT; run++) {
+            draw(fill, shapes, mt);
+            if (run == 0) {
+                for (int i = 0; i < FEATURE_COUNT; i++) {
+                    samplers[i] = cache.getSampler(mt, i, shapes[i]);
+                }
+            }
+        }
+        assertEquals(FEATURE_COUNT, cache.getMissCount());
+        assertEquals((long) FEATURE_COUNT * RUN_COUNT, cache.getHitCount());
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            assertSame(samplers[i], cache.getSampler(mt, i, shapes[i]));
+        }
+    }
+
+    private void draw(DotMapFill fill, Shape[] shapes, MapTransform mt) throws Exception {
+        FeatureMap map = new FeatureMap(Arrays.<String>asList());
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            for (int i = 0; i < shapes.length; i++) {
+                map.setFeatureId(i);
+                fill.draw(g2, map, shapes[i], false, mt);
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private static RenderContext createContext(PolygonSamplerCache cache) {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new Envelope(0, 100, 0, 100));
+        RenderContext context = new RenderContext(mt);
+        context.setPolygonSamplerCache(cache);
+        context.setLayer(new LayerCollection("dots"));
+        return context;
+    }
+
+    /**
+     * @return A star of {@link #VERTEX_COUNT} vertices, in pixels
+     */
+    private static Shape createPolygon(double x, double y) {
+        Path2D.Double star = new Path2D.Double();
+        for (int v = 0; v < VERTEX_COUNT; v++) {
+            double angle = 2 * Math.PI * v / VERTEX_COUNT;
+            double radius = v % 2 == 0 ? 10 : 4;
+            if (v == 0) {
+                star.moveTo(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+            } else {
+                star.lineTo(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+            }
+        }
+        star.closePath();
+        return star;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.fill;
+
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the uniform sampling of polygons.
+ */
+public class PolygonSamplerTest {
+
+    @Test
+    public void testSliver() {
+        // A long and thin polygon, where rejection sampling in the bounding box fails
+        Path2D.Double sliver = new Path2D.Double();
+        sliver.moveTo(0, 0);
+        sliver.lineTo(1000, 1000);
+        sliver.lineTo(1000, 1001);
+        sliver.closePath();
+        PolygonSampler sampler = PolygonSampler.create(sliver);
+        assertEquals(500, sampler.getArea(), 1e-6);
+        Random rand = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            Point2D.Double p = sampler.sample(rand);
+            assertTrue(p.x >= 0 && p.x <= 1000 && p.y >= p.x - 1e-9 && p.y <= p.x + 1 + 1e-9);
+        }
+    }
+
+    @Test
+    public void testHole() {
+        Area area = new Area(new Rectangle2D.Double(0, 0, 100, 100));
+        Rectangle2D hole = new Rectangle2D.Double(20, 20, 60, 60);
+        area.subtract(new Area(hole));
+        PolygonSampler sampler = PolygonSampler.create(area);
+        assertEquals(100 * 100 - 60 * 60, sampler.getArea(), 1e-6);
+        Random rand = new Random(1);
+        int left = 0;
+        for (int i = 0; i < 4000; i++) {
+            Point2D.Double p = sampler.sample(rand);
+            assertFalse(hole.contains(p));
+            if (p.x < 50) {
+                left++;
+            }
+        }
+        // Uniform distribution, the shape is symmetric
+        assertEquals(2000, left, 200);
+    }
+
+    @Test
+    public void testStable() {
+        Rectangle2D square = new Rectangle2D.Double(10, 10, 50, 50);
+        Point2D.Double first = PolygonSampler.create(square).sample(new Random(42));
+        Point2D.Double second = PolygonSampler.create(square).sample(new Random(42));
+        assertEquals(first, second);
+        assertNull(PolygonSampler.create(new Rectangle2D.Double(10, 10, 0, 50)));
+    }
+}
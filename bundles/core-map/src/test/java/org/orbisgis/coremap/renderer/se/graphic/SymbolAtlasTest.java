@@ -0,0 +1,229 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.graphic;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import org.junit.Test;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.se.fill.SolidFill;
+import org.orbisgis.coremap.renderer.se.parameter.color.ColorLiteral;
+import org.orbisgis.coremap.renderer.se.parameter.color.Recode2Color;
+import org.orbisgis.coremap.renderer.se.parameter.real.RealAttribute;
+import org.orbisgis.coremap.renderer.se.parameter.string.StringAttribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the sprites of point symbols.
+ */
+public class SymbolAtlasTest {
+
+    @Test
+    public void testSprite() throws Exception {
+        MarkGraphic mark = new MarkGraphic();
+        RenderContext mt = new RenderContext(new MapTransform());
+        BufferedImage vector = draw(mark, mt, 40, 40);
+        SymbolAtlas atlas = new SymbolAtlas(SymbolAtlas.DEFAULT_MAX_MEMORY);
+        mt.setSymbolAtlas(atlas);
+        BufferedImage first = draw(mark, mt, 40, 40);
+        BufferedImage second = draw(mark, mt, 40, 40);
+        assertEquals(1, atlas.getMissCount());
+        assertEquals(1, atlas.getHitCount());
+        assertEquals(1, atlas.size());
+        // Same drawing as the vector path, as the graphic is placed on a pixel corner
+        assertTrue(sameImage(vector, first));
+        assertTrue(sameImage(first, second));
+        // A modified graphic gets a new sprite
+        mark.setFill(new SolidFill(Color.RED));
+        draw(mark, mt, 40, 40);
+        assertEquals(2, atlas.getMissCount());
+        atlas.clear();
+        assertEquals(0, atlas.getMemoryUsage());
+    }
+
+    @Test
+    public void testRotationAndScaleSteps() throws Exception {
+        MarkGraphic mark = new MarkGraphic();
+        RenderContext mt = new RenderContext(new MapTransform());
+        SymbolAtlas atlas = new SymbolAtlas(SymbolAtlas.DEFAULT_MAX_MEMORY);
+        mt.setSymbolAtlas(atlas);
+        double theta = SymbolAtlas.ROTATION_STEP * 40;
+        draw(mark, mt, rotated(theta, 1));
+        // Close rotations and scales share the sprite
+        draw(mark, mt, rotated(theta + SymbolAtlas.ROTATION_STEP / 4, 1.001));
+        assertEquals(1, atlas.getMissCount());
+        assertEquals(1, atlas.getHitCount());
+        draw(mark, mt, rotated(theta + SymbolAtlas.ROTATION_STEP * 2, 1));
+        draw(mark, mt, rotated(theta, 2));
+        assertEquals(3, atlas.size());
+        // Mirrored graphics are drawn as vectors
+        AffineTransform mirror = AffineTransform.getTranslateInstance(40, 40);
+        mirror.scale(-1, 1);
+        draw(mark, mt, mirror);
+        assertEquals(3, atlas.size());
+    }
+
+    @Test
+    public void testFeatureGraphic() throws Exception {
+        MarkGraphic mark = new MarkGraphic();
+        mark.setViewBox(new ViewBox(new RealAttribute("SIZE")));
+        RenderContext mt = new RenderContext(new MapTransform());
+        SymbolAtlas atlas = new SymbolAtlas(SymbolAtlas.DEFAULT_MAX_MEMORY);
+        mt.setSymbolAtlas(atlas);
+        // Each distinct size gets its sprite
+        assertTrue(atlas.draw(createGraphics(), mark, createMap("SIZE", 10.0), false, mt,
+                AffineTransform.getTranslateInstance(40, 40)));
+        assertTrue(atlas.draw(createGraphics(), mark, createMap("SIZE", 10.0), false, mt,
+                AffineTransform.getTranslateInstance(20, 20)));
+        assertTrue(atlas.draw(createGraphics(), mark, createMap("SIZE", 20.0), false, mt,
+                AffineTransform.getTranslateInstance(40, 40)));
+        assertEquals(2, atlas.getMissCount());
+        assertEquals(1, atlas.getHitCount());
+        assertEquals(2, atlas.size());
+    }
+
+    @Test
+    public void testRecodeGraphic() throws Exception {
+        Recode2Color recode = new Recode2Color(new ColorLiteral(Color.BLACK), new StringAttribute("TYPE"));
+        recode.addMapItem("a", new ColorLiteral(Color.RED));
+        recode.addMapItem("b", new ColorLiteral(Color.BLUE));
+        SolidFill fill = new SolidFill(Color.BLACK);
+        fill.setColor(recode);
+        MarkGraphic mark = new MarkGraphic();
+        mark.setFill(fill);
+        RenderContext mt = new RenderContext(new MapTransform());
+        SymbolAtlas atlas = new SymbolAtlas(SymbolAtlas.DEFAULT_MAX_MEMORY);
+        mt.setSymbolAtlas(atlas);
+        BufferedImage red = draw(mark, mt, createMap("TYPE", "a"));
+        BufferedImage blue = draw(mark, mt, createMap("TYPE", "b"));
+        BufferedImage secondRed = draw(mark, mt, createMap("TYPE", "a"));
+        // One sprite per category
+        assertEquals(2, atlas.getMissCount());
+        assertEquals(1, atlas.getHitCount());
+        assertEquals(2, atlas.size());
+        assertEquals(Color.RED.getRGB(), red.getRGB(40, 40));
+        assertEquals(Color.BLUE.getRGB(), blue.getRGB(40, 40));
+        assertTrue(sameImage(red, secondRed));
+    }
+
+    @Test
+    public void testEntryLimit() throws Exception {
+        MarkGraphic mark = new MarkGraphic();
+        RenderContext mt = new RenderContext(new MapTransform());
+        SymbolAtlas atlas = new SymbolAtlas(SymbolAtlas.DEFAULT_MAX_MEMORY, 2);
+        mt.setSymbolAtlas(atlas);
+        for (int i = 0; i < 5; i++) {
+            draw(mark, mt, rotated(i * 0.5, 1));
+        }
+        assertEquals(5, atlas.getMissCount());
+        assertEquals(2, atlas.size());
+    }
+
+    private static AffineTransform rotated(double theta, double scale) {
+        AffineTransform at = AffineTransform.getTranslateInstance(40, 40);
+        at.rotate(theta);
+        at.scale(scale, scale);
+        return at;
+    }
+
+    private static Graphics2D createGraphics() {
+        return new BufferedImage(80, 80, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    }
+
+    private static void draw(Graphic graphic, MapTransform mt, AffineTransform at) throws Exception {
+        Graphics2D g2 = createGraphics();
+        try {
+            graphic.draw(g2, new HashMap<String, Object>(), false, mt, at);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private static HashMap<String, Object> createMap(String field, Object value) {
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put(field, value);
+        return map;
+    }
+
+    private static BufferedImage draw(Graphic graphic, MapTransform mt, HashMap<String, Object> map)
+            throws Exception {
+        BufferedImage image = new BufferedImage(80, 80, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setRenderingHints(mt.getRenderingHints());
+            graphic.draw(g2, map, false, mt, AffineTransform.getTranslateInstance(40, 40));
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    private static BufferedImage draw(Graphic graphic, MapTransform mt, int x, int y) throws Exception {
+        BufferedImage image = new BufferedImage(80, 80, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setRenderingHints(mt.getRenderingHints());
+            graphic.draw(g2, new HashMap<String, Object>(), false, mt, AffineTransform.getTranslateInstance(x, y));
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    private static boolean sameImage(BufferedImage a, BufferedImage b) {
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int pa = a.getRGB(x, y);
+                int pb = b.getRGB(x, y);
+                // Premultiplied sprites round the colors of translucent pixels
+                int lastShift = (pa >>> 24) >= 128 ? 0 : 24;
+                for (int shift = 24; shift >= lastShift; shift -= 8) {
+                    if (Math.abs(((pa >>> shift) & 0xFF) - ((pb >>> shift) & 0xFF)) > 2) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
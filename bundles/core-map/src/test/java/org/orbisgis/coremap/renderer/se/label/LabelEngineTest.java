@@ -0,0 +1,129 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.label;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test the placement of labels without overlap.
+ */
+public class LabelEngineTest {
+
+    @Test
+    public void testPriorityAndAlternatives() {
+        List<String> drawn = new ArrayList<String>();
+        LabelEngine engine = new LabelEngine(200, 100);
+        // Same box, the candidate with the greatest priority wins
+        engine.addCandidate(new BoxCandidate("low", 1, drawn, new Rectangle2D.Double(10, 10, 50, 20)));
+        engine.addCandidate(new BoxCandidate("high", 2, drawn, new Rectangle2D.Double(10, 10, 50, 20)));
+        // Second position is free
+        engine.addCandidate(new BoxCandidate("moved", 1, drawn, new Rectangle2D.Double(20, 15, 50, 20),
+                new Rectangle2D.Double(100, 10, 50, 20)));
+        // Out of the drawing
+        engine.addCandidate(new BoxCandidate("out", 1, drawn, new Rectangle2D.Double(300, 10, 50, 20)));
+        Graphics2D g2 = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        engine.draw(g2);
+        g2.dispose();
+        assertEquals("[high:0, moved:1]", drawn.toString());
+        assertEquals(2, engine.getPlacedCount());
+        assertEquals(2, engine.getRejectedCount());
+        assertEquals(0, engine.getCandidateCount());
+    }
+
+    @Test
+    public void testSamePriorityKeepsOrder() {
+        List<String> drawn = new ArrayList<String>();
+        LabelEngine engine = new LabelEngine(200, 100);
+        engine.addCandidate(new BoxCandidate("first", 1, drawn, new Rectangle2D.Double(60, 60, 80, 30)));
+        engine.addCandidate(new BoxCandidate("second", 1, drawn, new Rectangle2D.Double(10, 50, 80, 30)));
+        engine.addCandidate(new BoxCandidate("third", 1, drawn, new Rectangle2D.Double(150, 0, 40, 20)));
+        engine.draw(null);
+        assertEquals("[first:0, third:0]", drawn.toString());
+    }
+
+    @Test
+    public void testLayerCandidates() {
+        List<String> drawn = new ArrayList<String>();
+        // Each layer collects its labels, they are placed with the labels of the drawing
+        LabelEngine bottom = new LabelEngine(200, 100);
+        bottom.addCandidate(new BoxCandidate("bottom", 1, drawn, new Rectangle2D.Double(10, 10, 50, 20)));
+        LabelEngine top = new LabelEngine(200, 100);
+        top.addCandidate(new BoxCandidate("top", 1, drawn, new Rectangle2D.Double(20, 15, 50, 20),
+                new Rectangle2D.Double(100, 10, 50, 20)));
+        LabelEngine engine = new LabelEngine(200, 100);
+        engine.addCandidates(bottom.getCandidates());
+        engine.addCandidates(top.getCandidates());
+        assertEquals(1, bottom.getCandidateCount());
+        engine.draw(null);
+        assertEquals("[bottom:0, top:1]", drawn.toString());
+    }
+
+    private static class BoxCandidate extends LabelEngine.Candidate {
+        private final String name;
+        private final List<String> drawn;
+        private final Rectangle2D[] positions;
+
+        BoxCandidate(String name, double priority, List<String> drawn, Rectangle2D... positions) {
+            super(priority);
+            this.name = name;
+            this.drawn = drawn;
+            this.positions = positions;
+        }
+
+        @Override
+        public int getPositionCount() {
+            return positions.length;
+        }
+
+        @Override
+        public Rectangle2D[] getBoxes(int position) {
+            return new Rectangle2D[]{positions[position]};
+        }
+
+        @Override
+        public void draw(Graphics2D g2, int position) {
+            drawn.add(name + ":" + position);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.coremap.renderer.se.label;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test the cache of shaped texts.
+ */
+public class TextOutlineCacheTest {
+
+    @Test
+    public void testHitAndEviction() {
+        Graphics2D g2 = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            Font font = new Font("Arial", Font.PLAIN, 12);
+            TextOutlineCache cache = new TextOutlineCache(2, TextOutlineCache.DEFAULT_MAX_MEMORY);
+            TextOutlineCache.TextShape shape = cache.getTextShape(g2, "Nantes", font);
+            assertSame(shape, cache.getTextShape(g2, "Nantes", font));
+            assertNotSame(shape, cache.getTextShape(g2, "Nantes", font.deriveFont(Font.BOLD)));
+            assertEquals(1, cache.getHitCount());
+            assertEquals(2, cache.getMissCount());
+            // The first shape is the least recently used one
+            cache.getTextShape(g2, "Rennes", font);
+            assertEquals(2, cache.size());
+            assertNotSame(shape, cache.getTextShape(g2, "Nantes", font));
+            assertEquals(new TextLayout("Nantes", font, g2.getFontRenderContext()).getOutline(null).getBounds2D(),
+                    shape.getOutline().getBounds2D());
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.getMemoryUsage());
+        } finally {
+            g2.dispose();
+        }
+    }
+}
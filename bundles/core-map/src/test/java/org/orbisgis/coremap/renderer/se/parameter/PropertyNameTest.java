@@ -39,6 +39,10 @@ package org.orbisgis.coremap.renderer.se.parameter;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
@@ -47,6 +51,10 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.orbisgis.corejdbc.DataManager;
 import org.orbisgis.corejdbc.internal.DataManagerImpl;
+import org.orbisgis.coremap.map.MapTransform;
+import org.orbisgis.coremap.renderer.RenderContext;
+import org.orbisgis.coremap.renderer.ResultSetProviderFactory.LevelOfDetailResultSetProvider;
+import org.orbisgis.coremap.renderer.se.FeatureMap;
 import org.orbisgis.coremap.renderer.se.parameter.real.RealAttribute;
 import org.orbisgis.coremap.renderer.se.parameter.real.RealParameter;
 import org.orbisgis.coremap.renderer.se.parameter.string.StringAttribute;
@@ -122,6 +130,72 @@ public class PropertyNameTest {
             getConnection().createStatement().execute("DROP TABLE landcover2000");
         }
     }
-    
+
+    @Test
+    public void testFeatureMap() throws Exception {
+        getConnection().createStatement().execute("CREATE TABLE FEATUREMAP(ID INT, LABEL VARCHAR, RATE DOUBLE)");
+        try {
+            getConnection().createStatement().execute("INSERT INTO FEATUREMAP VALUES (1, 'a', 0.5), (2, 'b', 1.5)");
+            RealAttribute real = new RealAttribute("RATE");
+            StringAttribute string = new StringAttribute("LABEL");
+            FeatureMap map = new FeatureMap(Arrays.asList("LABEL", "RATE"));
+            try (ResultSet rs = getConnection().createStatement().executeQuery("select * from FEATUREMAP order by ID")) {
+                assertTrue(rs.next());
+                map.load(rs);
+                assertEquals(0.5, real.getValue(map), 1e-12);
+                assertEquals("a", string.getValue(map));
+                assertTrue(rs.next());
+                map.load(rs);
+                assertEquals(1.5, real.getValue(map), 1e-12);
+                assertEquals("b", string.getValue(map));
+                assertEquals(2, map.size());
+                assertEquals("b", map.get("LABEL"));
+                assertFalse(map.containsKey("ID"));
+            }
+            Map<String, Object> copy = new HashMap<String, Object>(map);
+            assertEquals(1.5, real.getValue(copy), 1e-12);
+        } finally {
+            getConnection().createStatement().execute("DROP TABLE FEATUREMAP");
+        }
+    }
+
+    @Test
+    public void testRenderContextFeatureMap() throws Exception {
+        // Each thread of a drawing has its own map, the maps of the same fields have the same slots
+        List<String> fields = Arrays.asList("LABEL", "RATE");
+        RenderContext context = new RenderContext(new MapTransform());
+        RenderContext otherThread = context.copy();
+        FeatureMap map = context.getFeatureMap(fields);
+        FeatureMap otherMap = otherThread.getFeatureMap(fields);
+        assertTrue(map == context.getFeatureMap(fields));
+        assertFalse(map == otherMap);
+        assertTrue(RenderContext.of(otherThread) == otherThread);
+        assertNull(RenderContext.of(new MapTransform()));
+        try (ResultSet rs = getConnection().createStatement().executeQuery("select 'a' LABEL, 0.5 RATE");
+             ResultSet otherRs = getConnection().createStatement().executeQuery("select 'b' LABEL, 1.5 RATE")) {
+            assertTrue(rs.next());
+            assertTrue(otherRs.next());
+            map.load(rs);
+            otherMap.load(otherRs);
+            RealAttribute real = new RealAttribute("RATE");
+            for (int i = 0; i < 2; i++) {
+                assertEquals(0.5, real.getValue(map), 1e-12);
+                assertEquals(1.5, real.getValue(otherMap), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testSimplifiedColumn() throws Exception {
+        // A provider fetches the simplified geometry under another name, references are resolved to it
+        try (ResultSet rs = getConnection().createStatement().executeQuery("select 1.5 \"" +
+                LevelOfDetailResultSetProvider.SIMPLIFIED_GEOMETRY_PREFIX + "RATE\"")) {
+            assertTrue(rs.next());
+            assertEquals(1.5, new RealAttribute("RATE").getValue(rs, 0), 1e-12);
+            FeatureMap map = new FeatureMap(Arrays.asList("RATE"));
+            map.load(rs);
+            assertEquals(1.5, ((Number) map.get("RATE")).doubleValue(), 1e-12);
+        }
+    }
 
 }
@@ -36,6 +36,7 @@
  */
 package org.orbisgis.coremap.renderer.se.parameter.color;
 
+import java.awt.Color;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.util.logging.Level;
@@ -44,6 +45,7 @@ import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import net.opengis.se._2_0.core.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
@@ -150,6 +152,22 @@ public class Recode2ColorTest {
         }
     }
 
+    @Test
+    public void testLookupAfterChange() throws Exception {
+        Recode2Color r = new Recode2Color(new ColorLiteral(Color.BLACK), new StringLiteral("k2"));
+        r.addMapItem("k1", new ColorLiteral(Color.RED));
+        r.addMapItem("k2", new ColorLiteral(Color.GREEN));
+        r.addMapItem("k3", new ColorLiteral(Color.BLUE));
+        assertEquals(Color.GREEN, r.getColor(null, -1));
+        // The compiled items follow the changes of the mapping
+        r.removeMapItem("k2");
+        assertEquals(Color.BLACK, r.getColor(null, -1));
+        r.setKey(1, "k2");
+        assertEquals(Color.BLUE, r.getColor(null, -1));
+        r.setLookupValue(new StringLiteral("k4"));
+        assertEquals(Color.BLACK, r.getColor(null, -1));
+    }
+
     @Test
     public void testRemoveMapItem(){
         testAddMapItems();
@@ -38,6 +38,8 @@ package org.orbisgis.coremap.renderer.se.parameter.real;
 
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
@@ -90,6 +92,31 @@ public class Categorize2RealTest {
                 assertTrue(c2r.getChildren().size() == 16);
         }
 
+        @Test
+        public void testClassLookup() throws Exception {
+                Categorize2Real c2r = new Categorize2Real(new RealLiteral(1), new RealLiteral(-1), new RealAttribute("value"));
+                c2r.put(new RealLiteral(10), new RealLiteral(2));
+                c2r.put(new RealLiteral(20), new RealLiteral(3));
+                assertEquals(1, classify(c2r, -5), 0);
+                assertEquals(2, classify(c2r, 10), 0);
+                assertEquals(2, classify(c2r, 15), 0);
+                assertEquals(3, classify(c2r, 20), 0);
+                assertEquals(3, classify(c2r, 1e9), 0);
+                c2r.setThresholdsPreceding();
+                assertEquals(1, classify(c2r, 10), 0);
+                assertEquals(2, classify(c2r, 20), 0);
+                // The compiled thresholds follow the changes of the mapping
+                c2r.remove(new RealLiteral(10));
+                assertEquals(1, classify(c2r, 15), 0);
+                assertEquals(-1, classify(c2r, Double.NaN), 0);
+        }
+
+        private double classify(Categorize2Real c2r, double value) throws Exception {
+                Map<String, Object> feature = new HashMap<String, Object>();
+                feature.put("value", value);
+                return c2r.getValue(feature);
+        }
+
         private Categorize2Real getCategorize() throws Exception{
                 Unmarshaller u = org.orbisgis.coremap.map.JaxbContainer.JAXBCONTEXT.createUnmarshaller();
                 JAXBElement<StyleType> ftsElem = (JAXBElement<StyleType>) u.unmarshal(
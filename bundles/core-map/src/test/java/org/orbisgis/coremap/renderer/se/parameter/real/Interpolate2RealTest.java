@@ -36,7 +36,11 @@
  */
 package org.orbisgis.coremap.renderer.se.parameter.real;
 
+import java.sql.Types;
+import java.util.Arrays;
 import net.opengis.se._2_0.core.ModeType;
+import org.h2.tools.SimpleResultSet;
+import org.orbisgis.coremap.renderer.se.FeatureMap;
 import org.orbisgis.coremap.renderer.se.parameter.Interpolate;
 import org.orbisgis.coremap.renderer.se.parameter.Interpolate.InterpolationMode;
 import org.orbisgis.coremap.renderer.se.parameter.InterpolationPoint;
@@ -151,6 +155,54 @@ public class Interpolate2RealTest {
                 assertTrue(interpolate.getChildren().size() == 4);
         }
 
+        @Test
+        public void testCompiledSegments() throws ParameterException {
+                Interpolate2Real interpolate = getLinearInterpolation();
+                interpolate.setLookupValue(new RealLiteral(52.5));
+                assertEquals(132.5, interpolate.getValue(null, -1), 0.00000001);
+                // The compiled segments follow the changes of the point values and of the mode
+                ((RealLiteral) interpolate.getInterpolationPoint(2).getValue()).setValue(300.0);
+                assertEquals(157.5, interpolate.getValue(null, -1), 0.00000001);
+                interpolate.setInterpolationMode(InterpolationMode.COSINE);
+                assertEquals(137.82485578727800, interpolate.getValue(null, -1), 0.00000001);
+                interpolate.setLookupValue(new RealLiteral(Double.NaN));
+                assertEquals(-1.0, interpolate.getValue(null, -1), 0.00000001);
+        }
+
+        /**
+         * The compiled segments give the values of the evaluation of each point for each feature.
+         */
+        @Test
+        public void testCompiledEqualsPerFeature() throws Exception {
+                Interpolate2Real compiled = createFeatureInterpolation(new RealLiteral(0));
+                // A point value that depends on the feature prevents the compilation of the segments
+                Interpolate2Real perFeature = createFeatureInterpolation(new RealAttribute("ZERO"));
+                FeatureMap map = new FeatureMap(Arrays.asList("VALUE", "ZERO"));
+                SimpleResultSet rs = new SimpleResultSet();
+                rs.addColumn("VALUE", Types.DOUBLE, 17, 0);
+                rs.addColumn("ZERO", Types.DOUBLE, 17, 0);
+                for (int i = -10; i <= 1000; i++) {
+                        rs.addRow(i / 10.0, 0.0);
+                }
+                while (rs.next()) {
+                        map.load(rs);
+                        assertEquals(perFeature.getValue(map), compiled.getValue(map), 0.00000001);
+                }
+        }
+
+        private Interpolate2Real createFeatureInterpolation(RealParameter firstValue) {
+                Interpolate2Real interpolate = new Interpolate2Real(new RealLiteral(-1));
+                interpolate.setLookupValue(new RealAttribute("VALUE"));
+                RealParameter[] values = {firstValue, new RealLiteral(10), new RealLiteral(15), new RealLiteral(40)};
+                for (int i = 0; i < values.length; i++) {
+                        InterpolationPoint<RealParameter> ip = new InterpolationPoint<RealParameter>();
+                        ip.setData(i * 30);
+                        ip.setValue(values[i]);
+                        interpolate.addInterpolationPoint(ip);
+                }
+                return interpolate;
+        }
+
         private Interpolate2Real getLinearInterpolation() {
 		System.out.println("Linear Interpolation");
 		Interpolate2Real interpolate = new Interpolate2Real(new RealLiteral(-1));
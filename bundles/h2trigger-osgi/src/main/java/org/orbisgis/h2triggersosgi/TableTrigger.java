@@ -36,6 +36,8 @@
  */
 package org.orbisgis.h2triggersosgi;
 
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 import org.h2.api.Trigger;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
@@ -93,11 +95,42 @@ public class TableTrigger implements Trigger {
         } else if(oldRow != null && newRow != null) {
             type = TableModelEvent.UPDATE;
         }
-        Long pk = null;
-        if(pkColumn != -1 && newRow != null && newRow.length > pkColumn - 1 && newRow[pkColumn - 1] instanceof Long) {
-            pk = (Long)newRow[pkColumn - 1];
+        // A deleted row has only its old values, an update may change the primary key
+        Long oldPk = getPrimaryKey(oldRow);
+        Long newPk = getPrimaryKey(newRow);
+        Long firstPk = oldPk == null ? newPk : newPk == null ? oldPk : Long.valueOf(Math.min(oldPk, newPk));
+        Long lastPk = oldPk == null ? newPk : newPk == null ? oldPk : Long.valueOf(Math.max(oldPk, newPk));
+        Envelope envelope = new Envelope();
+        expandToInclude(envelope, oldRow);
+        expandToInclude(envelope, newRow);
+        fireEvent(new TableEditEvent(tableIdentifier, TableModelEvent.ALL_COLUMNS, firstPk, lastPk, type,
+                envelope.isNull() ? null : envelope));
+    }
+
+    /**
+     * @param row Row values, may be null
+     * @return The primary key value of the row, null if unknown
+     */
+    private Long getPrimaryKey(Object[] row) {
+        if(pkColumn != -1 && row != null && row.length > pkColumn - 1 && row[pkColumn - 1] instanceof Number) {
+            return ((Number) row[pkColumn - 1]).longValue();
+        }
+        return null;
+    }
+
+    /**
+     * Expand the envelope with the geometries of the row.
+     * @param envelope Envelope to expand
+     * @param row Row values, may be null
+     */
+    private static void expandToInclude(Envelope envelope, Object[] row) {
+        if(row != null) {
+            for(Object value : row) {
+                if(value instanceof Geometry) {
+                    envelope.expandToInclude(((Geometry) value).getEnvelopeInternal());
+                }
+            }
         }
-        fireEvent(new TableEditEvent(tableIdentifier, TableModelEvent.ALL_COLUMNS, pk, pk, type));
     }
 
     @Override
@@ -49,6 +49,7 @@ import org.orbisgis.corejdbc.internal.DataManagerImpl;
 import org.orbisgis.h2triggersosgi.EventListenerService;
 
 import javax.sql.DataSource;
+import javax.swing.event.TableModelEvent;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.util.LinkedList;
@@ -124,6 +125,46 @@ public class TriggerTest {
         evtServ.unsetDataManager(dataManager);
     }
 
+    @Test
+    public void testTableTriggerPrimaryKey() throws Exception {
+        DataManager dataManager = new DataManagerImpl(dataSource);
+        EventListenerService evtServ = new EventListenerService();
+        evtServ.setDataManager(dataManager);
+        EventStack tableEvents = new EventStack();
+        try(Connection connection = dataSource.getConnection();
+            Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS TEST_PK");
+            // The INT key is an Integer in the trigger rows
+            st.execute("CREATE TABLE TEST_PK(ID INT PRIMARY KEY, VAL INT)");
+            dataManager.addTableEditListener("TEST_PK", tableEvents);
+            st.execute("INSERT INTO TEST_PK VALUES (1, 10)");
+            st.execute("UPDATE TEST_PK SET ID = 3 WHERE ID = 1");
+            st.execute("DELETE FROM TEST_PK WHERE ID = 3");
+            Thread.sleep(1000);
+            List<TableEditEvent> evts = tableEvents.getEvents();
+            assertEquals(3, evts.size());
+            for(TableEditEvent evt : evts) {
+                if(evt.getType() == TableModelEvent.INSERT) {
+                    assertEquals(Long.valueOf(1), evt.getFirstRowPK());
+                    assertEquals(Long.valueOf(1), evt.getLastRowPK());
+                } else if(evt.getType() == TableModelEvent.UPDATE) {
+                    // The old and new keys of the updated row
+                    assertEquals(Long.valueOf(1), evt.getFirstRowPK());
+                    assertEquals(Long.valueOf(3), evt.getLastRowPK());
+                } else {
+                    // The deleted row has no new values
+                    assertEquals(TableModelEvent.DELETE, evt.getType());
+                    assertEquals(Long.valueOf(3), evt.getFirstRowPK());
+                    assertEquals(Long.valueOf(3), evt.getLastRowPK());
+                }
+            }
+        } finally {
+            dataManager.removeTableEditListener("TEST_PK", tableEvents);
+        }
+        evtServ.disable();
+        evtServ.unsetDataManager(dataManager);
+    }
+
     @Test
     public void testListenerWithWrapper() throws Exception {
         testListenerInternal(SFSUtilities.wrapSpatialDataSource(dataSource));
@@ -37,98 +37,319 @@
 package org.orbisgis.mapeditor.map;
 
 import com.vividsolutions.jts.geom.Envelope;
-import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
-import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.SpatialResultSet;
 import org.h2gis.utilities.TableLocation;
-import org.orbisgis.corejdbc.MetaData;
-import org.orbisgis.corejdbc.ReadRowSet;
+import org.orbisgis.corejdbc.TableEditEvent;
 import org.orbisgis.coremap.layerModel.ILayer;
 import org.orbisgis.coremap.renderer.DefaultResultSetProviderFactory;
 import org.orbisgis.coremap.renderer.ResultSetProviderFactory;
 import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.commons.progress.RootProgressMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xnap.commons.i18n.I18n;
-import org.xnap.commons.i18n.I18nFactory;
 
 /**
- * Use and keep ReadRowSet instance instead of native ResultSet.
+ * Keep a copy in memory of the drawn tables, see {@link TableRenderCache}. The copies are refreshed row by row on
+ * table edition and the least recently drawn copies are released above a memory limit.
+ * The tables are copied by a background thread, the database is queried until the copy is done. There is no lock
+ * shared by the tables, and the readers of a copy do not wait for its refresh.
  * @author Nicolas Fortin
  */
-public class CachedResultSetContainer implements ResultSetProviderFactory {
-    private final Map<String, ReadRowSet> cache = new HashMap<>();
-    private static final int LOCK_TIMEOUT = 10;
-    private static final int FETCH_SIZE = 50;
-    private static I18n I18N = I18nFactory.getI18n(CachedResultSetContainer.class);
+public class CachedResultSetContainer implements ResultSetProviderFactory.FilteredResultSetProviderFactory {
+    /** Default memory limit of all the copies, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 256L * 1024 * 1024;
+    /** Default delay in milliseconds before the release of a copy that is not drawn */
+    public static final long DEFAULT_IDLE_DELAY = 5 * 60000;
+    // Period of the release of the idle copies, in milliseconds
+    private static final long CLEANER_PERIOD = 60000;
+    private final ConcurrentMap<String, TableEntry> cache = new ConcurrentHashMap<>();
+    // Tables that do not fit in memory
+    private final Set<String> uncachedTables = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private static Logger LOGGER = LoggerFactory.getLogger(CachedResultSetContainer.class);
-    private static final int ROWSET_FREE_DELAY = 60000;
-    private static final long WAIT_FOR_INITIALISATION_TIMEOUT = 10000;
-    // (0-1] Use spatial index query if the query envelope area rational number is smaller than this value.
-    private static final double RATIONAL_USAGE_INDEX = 0.2;
-    private final ReentrantLock lock = new ReentrantLock();
-    private ResultSetProviderFactory defaultFactory = new DefaultResultSetProviderFactory();
+    private final ResultSetProviderFactory defaultFactory;
+    private volatile long maxMemory = DEFAULT_MAX_MEMORY;
+    private volatile long idleDelay = DEFAULT_IDLE_DELAY;
+    private ScheduledExecutorService cleaner;
+    private ExecutorService loader;
+
+    /**
+     * Copy the tables with the standard queries.
+     */
+    public CachedResultSetContainer() {
+        this(new DefaultResultSetProviderFactory());
+    }
+
+    /**
+     * @param defaultFactory Queries of the tables, used to copy them and when they are not copied
+     */
+    CachedResultSetContainer(ResultSetProviderFactory defaultFactory) {
+        this.defaultFactory = defaultFactory;
+    }
 
     @Override
     public String getName() {
         return "Local index";
     }
 
+    /**
+     * The copies do not evaluate filters, the filtered queries are sent to the database.
+     * @param layer Layer to be requested
+     * @return True if the queries of the database evaluate the filters
+     */
+    @Override
+    public boolean isFilterSupported(ILayer layer) {
+        return defaultFactory instanceof FilteredResultSetProviderFactory &&
+                ((FilteredResultSetProviderFactory) defaultFactory).isFilterSupported(layer);
+    }
+
+    /**
+     * @param maxMemory Memory limit of all the copies, in bytes. 0 to always query the database.
+     */
+    public void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        uncachedTables.clear();
+        releaseMemory(null);
+    }
+
+    /**
+     * @return Memory limit of all the copies, in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @param idleDelay Delay in milliseconds before the release of a copy that is not drawn
+     */
+    public void setIdleDelay(long idleDelay) {
+        this.idleDelay = idleDelay;
+    }
+
+    /**
+     * @return Delay in milliseconds before the release of a copy that is not drawn
+     */
+    public long getIdleDelay() {
+        return idleDelay;
+    }
+
     @Override
     public ResultSetProvider getResultSetProvider(ILayer layer, ProgressMonitor pm) throws SQLException {
-        try {
-            if(lock.tryLock(WAIT_FOR_INITIALISATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
-                boolean isH2;
-                String integerPK = ""; // Not system PK
-                String tableRef;
-                try (Connection connection = layer.getDataManager().getDataSource().getConnection()) {
-                    isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
-                    tableRef = TableLocation.parse(layer.getTableReference(), isH2).toString(isH2);
-                    integerPK = MetaData.getPkName(connection, tableRef, false);
+        ResultSetProvider defaultResultSetProvider = defaultFactory.getResultSetProvider(layer, pm);
+        // The edited rows of a copy are fetched again with filters on the primary key
+        if(maxMemory <= 0 || defaultResultSetProvider.getPkName().isEmpty() ||
+                !(defaultResultSetProvider instanceof FilteredResultSetProvider)) {
+            return defaultResultSetProvider;
+        }
+        TableLocation table = TableLocation.parse(layer.getTableReference());
+        String tableRef = table.toString();
+        if(uncachedTables.contains(tableRef)) {
+            return defaultResultSetProvider;
+        }
+        TableEntry entry = cache.get(tableRef);
+        if (entry == null) {
+            TableEntry newEntry = new TableEntry(tableRef, table);
+            entry = cache.putIfAbsent(tableRef, newEntry);
+            if(entry == null) {
+                entry = newEntry;
+                startCleaner();
+            }
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        return new CachedResultSet(this, entry, layer, (FilteredResultSetProvider) defaultResultSetProvider);
+    }
+
+    private synchronized void startCleaner() {
+        if(cleaner == null) {
+            cleaner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Map data cache cleaner");
+                    thread.setDaemon(true);
+                    return thread;
                 }
-                if(!isH2) {
-                    // Always use cursor with PostGIS
-                    return defaultFactory.getResultSetProvider(layer, pm);
+            });
+            cleaner.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    releaseIdleTables();
                 }
-                ReadRowSet readRowSet = cache.get(tableRef);
-                ResultSetProvider defaultResultSetProvider = defaultFactory.getResultSetProvider(layer, pm);
-                if (readRowSet == null) {
-                    readRowSet = layer.getDataManager().createReadRowSet();
-                    // If the used PK is hidden (because it is system pk)
-                    if(integerPK.isEmpty()) {
-                        readRowSet.setCommand("SELECT " + defaultResultSetProvider.getPkName() + ", * FROM "+tableRef);
+            }, CLEANER_PERIOD, CLEANER_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Copy a table in the background thread. The edits received while the table is copied are replayed on the copy.
+     * @param entry Table entry
+     * @param layer Layer of the table
+     * @param fields Columns to copy
+     */
+    private synchronized void load(final TableEntry entry, final ILayer layer, final Set<String> fields) {
+        if(!entry.loading.compareAndSet(false, true)) {
+            return;
+        }
+        if(loader == null) {
+            loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Map data cache loader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                entry.loadLock.lock();
+                try {
+                    TableRenderCache tableCache = TableRenderCache.load(defaultFactory, layer, entry.loadMonitor,
+                            fields, maxMemory);
+                    if(tableCache == null && entry.loadMonitor.isCancelled()) {
+                        return;
                     }
-                    readRowSet.setFetchSize(FETCH_SIZE);
-                    readRowSet.setCloseDelay(ROWSET_FREE_DELAY);
-                    readRowSet.setFetchDirection(ResultSet.FETCH_FORWARD);
-                    readRowSet.initialize(tableRef, integerPK, pm);
-                    cache.put(tableRef, readRowSet);
+                    if(tableCache != null) {
+                        entry.setLoadedCache(tableCache);
+                    }
+                    setTableCache(entry, tableCache);
+                } catch (SQLException ex) {
+                    LOGGER.warn("The table "+entry.tableRef+" cannot be copied in the drawing cache", ex);
+                } finally {
+                    // The edits not replayed on a new copy have been applied to the published copy, they are
+                    // dropped before the flag is cleared so that the edits of the next copy are kept
+                    entry.loadingEdits.clear();
+                    entry.loadLock.unlock();
+                    entry.loading.set(false);
                 }
-                return new CachedResultSet(readRowSet, tableRef, layer.getEnvelope(),defaultResultSetProvider);
-            } else {
-                throw new SQLException("Cannot draw until layer data source is not initialized");
             }
-        } catch (InterruptedException ex) {
-            throw new SQLException("Cannot draw until layer data source is not initialized");
-        } finally {
-            lock.unlock();
+        });
+    }
+
+    /**
+     * Release the copies that have not been drawn since the idle delay.
+     */
+    void releaseIdleTables() {
+        long oldestAccess = System.currentTimeMillis() - idleDelay;
+        for(TableEntry entry : cache.values()) {
+            if(entry.lastAccess < oldestAccess && !entry.loading.get() && !entry.loadLock.isLocked()) {
+                release(entry);
+            }
+        }
+    }
+
+    private void release(TableEntry entry) {
+        if(cache.remove(entry.tableRef, entry)) {
+            // A copy in progress is dropped
+            entry.loadMonitor.setCancelled(true);
+            entry.tableCache = null;
         }
     }
 
+    /**
+     * Store the copy of a table then release the least recently drawn copies above the memory limit.
+     * @param entry Table entry
+     * @param tableCache New copy, null if the table does not fit in memory
+     */
+    private void setTableCache(TableEntry entry, TableRenderCache tableCache) {
+        entry.tableCache = tableCache;
+        if(tableCache == null) {
+            LOGGER.debug("The table "+entry.tableRef+" does not fit in the memory limit of the drawing cache");
+            uncachedTables.add(entry.tableRef);
+            release(entry);
+        } else {
+            releaseMemory(entry);
+        }
+    }
+
+    /**
+     * Release the least recently drawn copies until the memory limit is respected.
+     * @param kept This copy is not released
+     */
+    private void releaseMemory(TableEntry kept) {
+        long usedMemory = getMemoryUsage();
+        if(usedMemory <= maxMemory) {
+            return;
+        }
+        List<TableEntry> entries = new ArrayList<>(cache.values());
+        Collections.sort(entries, new Comparator<TableEntry>() {
+            @Override
+            public int compare(TableEntry entry, TableEntry other) {
+                return Long.compare(entry.lastAccess, other.lastAccess);
+            }
+        });
+        for(TableEntry entry : entries) {
+            if(usedMemory <= maxMemory) {
+                break;
+            }
+            TableRenderCache tableCache = entry.tableCache;
+            if(entry != kept && tableCache != null) {
+                usedMemory -= tableCache.getMemoryUsage();
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * @param tableReference Table identifier
+     * @return True if the copy of the table is published and no copy is in progress
+     */
+    boolean isCopied(String tableReference) {
+        TableEntry entry = cache.get(TableLocation.parse(tableReference).toString());
+        return entry != null && entry.tableCache != null && !entry.loading.get();
+    }
+
+    /**
+     * @return Estimated memory used by the copies, in bytes
+     */
+    long getMemoryUsage() {
+        long usedMemory = 0;
+        for(TableEntry entry : cache.values()) {
+            TableRenderCache tableCache = entry.tableCache;
+            if(tableCache != null) {
+                usedMemory += tableCache.getMemoryUsage();
+            }
+        }
+        return usedMemory;
+    }
+
     public void clearCache() {
-        for(ReadRowSet rowSet : cache.values()) {
-            rowSet.setCloseDelay(0);
+        for(TableEntry entry : cache.values()) {
+            release(entry);
+        }
+        uncachedTables.clear();
+    }
+
+    /**
+     * Release all the copies and stop the cleaner thread.
+     */
+    public synchronized void dispose() {
+        clearCache();
+        if(cleaner != null) {
+            cleaner.shutdownNow();
+            cleaner = null;
+        }
+        if(loader != null) {
+            loader.shutdownNow();
+            loader = null;
         }
-        cache.clear();
     }
 
     /**
@@ -136,30 +357,90 @@ public class CachedResultSetContainer implements ResultSetProviderFactory {
      * @param tableReference table identifier
      */
     public void removeCache(String tableReference) {
-        if(!cache.containsKey(tableReference)) {
-            // Try with removing public schema
-            if(TableLocation.parse(tableReference).getSchema().equalsIgnoreCase("public")) {
-                tableReference = TableLocation.parse(tableReference).getTable();
+        TableLocation table = TableLocation.parse(tableReference);
+        for(TableEntry entry : cache.values()) {
+            if(entry.table.equals(table)) {
+                release(entry);
+            }
+        }
+        uncachedTables.remove(table.toString());
+    }
+
+    /**
+     * Invalidate the edited rows of the copy of a table, they are fetched again on the next draw.
+     * @param event Table edition
+     */
+    public void tableChange(TableEditEvent event) {
+        TableLocation table = TableLocation.parse(event.getTableName());
+        for(TableEntry entry : cache.values()) {
+            if(entry.table.equals(table)) {
+                entry.invalidate(event);
+            }
+        }
+        // The table may fit in memory now
+        uncachedTables.remove(table.toString());
+    }
+
+    /**
+     * Copy of a table, shared by the result set providers of the layers of this table.
+     */
+    private static class TableEntry {
+        private final String tableRef;
+        private final TableLocation table;
+        // Only one thread copies or refreshes the table
+        private final ReentrantLock loadLock = new ReentrantLock();
+        // The copy is queued or in progress in the background thread
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+        // Cancelled when the entry is released
+        private final ProgressMonitor loadMonitor = new RootProgressMonitor(1);
+        // Edits received since the copy has been queued, the copy may have read the rows before them
+        private final Queue<TableEditEvent> loadingEdits = new ConcurrentLinkedQueue<>();
+        private volatile TableRenderCache tableCache;
+        private volatile long lastAccess;
+
+        private TableEntry(String tableRef, TableLocation table) {
+            this.tableRef = tableRef;
+            this.table = table;
+        }
+
+        private void invalidate(TableEditEvent event) {
+            // Queued before the published copy is read: a copy published after this point replays the edit
+            if(loading.get()) {
+                loadingEdits.add(event);
+            }
+            TableRenderCache copy = tableCache;
+            if(copy != null) {
+                copy.invalidate(event.getFirstRowPK(), event.getLastRowPK(), event.getEnvelope());
             }
         }
-        ReadRowSet removedCache = cache.remove(tableReference);
-        if(removedCache != null) {
-            removedCache.setCloseDelay(0);
+
+        /**
+         * Publish a new copy then invalidate the rows edited while it was loaded.
+         */
+        private void setLoadedCache(TableRenderCache copy) {
+            tableCache = copy;
+            TableEditEvent event;
+            while((event = loadingEdits.poll()) != null) {
+                copy.invalidate(event.getFirstRowPK(), event.getLastRowPK(), event.getEnvelope());
+            }
         }
     }
 
-    private static class CachedResultSet implements ResultSetProvider {
-        private ReadRowSet readRowSet;
-        private String tableReference;
-        private Lock lock;
-        private Envelope tableEnvelope;
-        private ResultSetProvider resultSetProvider;
-        private String pkName;
+    private static class CachedResultSet implements FilteredResultSetProvider, LevelOfDetailResultSetProvider {
+        private final CachedResultSetContainer container;
+        private final TableEntry entry;
+        private final ILayer layer;
+        private final FilteredResultSetProvider resultSetProvider;
+        private final String pkName;
+        private int rowLimit = 0;
+        private long sampleStride = 1;
+        private double simplificationTolerance = 0;
 
-        private CachedResultSet(ReadRowSet readRowSet, String tableReference, Envelope tableEnvelope, ResultSetProvider resultSetProvider) {
-            this.readRowSet = readRowSet;
-            this.tableReference = tableReference;
-            this.tableEnvelope = tableEnvelope;
+        private CachedResultSet(CachedResultSetContainer container, TableEntry entry, ILayer layer,
+                                FilteredResultSetProvider resultSetProvider) {
+            this.container = container;
+            this.entry = entry;
+            this.layer = layer;
             this.resultSetProvider = resultSetProvider;
             this.pkName = resultSetProvider.getPkName();
         }
@@ -169,31 +450,94 @@ public class CachedResultSetContainer implements ResultSetProviderFactory {
             return pkName;
         }
 
+        /**
+         * The database simplifies the geometries it returns, the geometries of the copy are simplified while
+         * they are read.
+         * @param tolerance Maximum distance, in map units, between the fetched and the exact geometries.
+         */
+        @Override
+        public void setSimplificationTolerance(double tolerance) {
+            this.simplificationTolerance = tolerance;
+            if(resultSetProvider instanceof LevelOfDetailResultSetProvider) {
+                ((LevelOfDetailResultSetProvider) resultSetProvider).setSimplificationTolerance(tolerance);
+            }
+        }
+
+        /**
+         * @param rowLimit Maximum number of fetched rows, 0 to fetch all rows
+         * @param sampleStride Step between the fetched primary key values, 1 to fetch the first rows
+         */
+        @Override
+        public void setRowLimit(int rowLimit, long sampleStride) {
+            this.rowLimit = rowLimit;
+            // The copy keeps the rows the database would return
+            this.sampleStride = sampleStride;
+            if(resultSetProvider instanceof LevelOfDetailResultSetProvider) {
+                ((LevelOfDetailResultSetProvider) resultSetProvider).setRowLimit(rowLimit, sampleStride);
+            }
+        }
+
         @Override
         public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields) throws SQLException {
-            lock = readRowSet.getReadLock();
+            return execute(pm, extent, fields, Collections.<String>emptyList());
+        }
+
+        @Override
+        public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields, List<String> filters) throws SQLException {
+            // The copy cannot evaluate filters
+            boolean filtered = filters.size() > 1;
+            for(String filter : filters) {
+                filtered |= filter != null && !filter.trim().isEmpty();
+            }
+            if(filtered) {
+                return resultSetProvider.execute(pm, extent, fields, filters);
+            }
+            TableRenderCache tableCache = getTableCache(pm, fields);
+            if(tableCache == null) {
+                return resultSetProvider.execute(pm, extent, fields, filters);
+            }
+            return tableCache.execute(extent, rowLimit, sampleStride, simplificationTolerance);
+        }
+
+        /**
+         * Fetch again the edited rows of the copy, or start the copy of the table in the background.
+         * @return The up to date copy, null if the database has to be queried
+         */
+        private TableRenderCache getTableCache(ProgressMonitor pm, Set<String> fields) throws SQLException {
+            TableRenderCache tableCache = entry.tableCache;
+            if(tableCache != null && !tableCache.hasEdits() && tableCache.containsFields(fields)) {
+                return tableCache;
+            }
+            if(rowLimit > 0 || !entry.loadLock.tryLock()) {
+                // A preview, or the table is being copied: the database is queried without waiting
+                return null;
+            }
             try {
-                lock.tryLock(LOCK_TIMEOUT, TimeUnit.SECONDS);
-                // Do intersection of envelope
-                double intersectionPercentage = extent.intersection(tableEnvelope).getArea() / tableEnvelope.getArea();
-                // If there is quite no zoom is great use the "select * from table" cached query.
-                if( intersectionPercentage > RATIONAL_USAGE_INDEX) {
-                    readRowSet.beforeFirst();
-                    return readRowSet;
-                } else {
-                    return resultSetProvider.execute(pm, extent, fields);
+                tableCache = entry.tableCache;
+                if(tableCache != null && tableCache.hasEdits() &&
+                        !tableCache.applyEdits(container.defaultFactory, layer, pm, container.getMaxMemory())) {
+                    // Some edited rows are missing
+                    entry.tableCache = null;
+                    tableCache = null;
                 }
-            } catch (InterruptedException ex) {
-                throw new SQLException(I18N.tr("Lock timeout while fetching {0}, another job is using this resource.",
-                        tableReference));
+                if(tableCache != null && tableCache.containsFields(fields)) {
+                    // Edited again while refreshed, the rows are fetched again on the next draw
+                    return tableCache.hasEdits() ? null : tableCache;
+                }
+                Set<String> loadedFields = new HashSet<>(fields);
+                if(tableCache != null) {
+                    // Keep the columns of the other styles of the table
+                    loadedFields.addAll(tableCache.getFields());
+                }
+                container.load(entry, layer, loadedFields);
+                return null;
+            } finally {
+                entry.loadLock.unlock();
             }
         }
 
         @Override
         public void close() throws SQLException {
-            if(lock != null) {
-                lock.unlock();
-            }
             resultSetProvider.close();
         }
     }
@@ -38,6 +38,8 @@ package org.orbisgis.mapeditor.map;
 
 import com.vividsolutions.jts.geom.Envelope;
 import org.h2gis.utilities.TableLocation;
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.commons.progress.RootProgressMonitor;
 import org.orbisgis.commons.progress.SwingWorkerPM;
 import org.orbisgis.corejdbc.TableEditEvent;
 import org.orbisgis.corejdbc.TableEditListener;
@@ -50,8 +52,19 @@ import org.orbisgis.coremap.layerModel.MapContext;
 import org.orbisgis.coremap.layerModel.SelectionEvent;
 import org.orbisgis.coremap.map.MapTransform;
 import org.orbisgis.coremap.map.TransformListener;
+import org.orbisgis.coremap.renderer.FeatureCountCache;
+import org.orbisgis.coremap.renderer.ImageBufferPool;
 import org.orbisgis.coremap.renderer.ImageRenderer;
+import org.orbisgis.coremap.renderer.IncrementalPan;
+import org.orbisgis.coremap.renderer.LayerImageCache;
+import org.orbisgis.coremap.renderer.LayerShapeCache;
+import org.orbisgis.coremap.renderer.PointClusterCache;
 import org.orbisgis.coremap.renderer.ResultSetProviderFactory;
+import org.orbisgis.coremap.renderer.TileCache;
+import org.orbisgis.coremap.renderer.se.fill.FillPaintCache;
+import org.orbisgis.coremap.renderer.se.fill.PolygonSamplerCache;
+import org.orbisgis.coremap.renderer.se.graphic.SymbolAtlas;
+import org.orbisgis.coremap.renderer.se.label.TextOutlineCache;
 import org.orbisgis.mapeditor.map.tool.Automaton;
 import org.orbisgis.mapeditor.map.tool.ToolListener;
 import org.orbisgis.mapeditor.map.tool.ToolManager;
@@ -62,6 +75,7 @@ import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import javax.swing.Timer;
 import java.awt.BorderLayout;
@@ -81,8 +95,10 @@ import java.awt.image.BufferedImage;
 import java.beans.EventHandler;
 import java.beans.PropertyChangeListener;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MapControl.
@@ -92,6 +108,39 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class MapControl extends JComponent implements ContainerListener {
         //Minimal Time in ms between two intermediate paint of drawing process
         private ResultSetProviderFactory resultSetProviderFactory = new CachedResultSetContainer();
+        // Last rendered image of each layer
+        private LayerImageCache layerImageCache = new LayerImageCache();
+        // Points of the clustered layers, reused while zooming in
+        private PointClusterCache pointClusterCache = new PointClusterCache();
+        // Screen shapes of the drawn rows, reused when only the style changes
+        private LayerShapeCache layerShapeCache = new LayerShapeCache();
+        // Triangulated polygons of the dot maps, reused from one drawing to the next
+        private PolygonSamplerCache polygonSamplerCache = new PolygonSamplerCache();
+        // Number of rows of the tables checked by the density mode
+        private FeatureCountCache featureCountCache = new FeatureCountCache();
+        // Optional disk cache of rendered tiles
+        private TileCache tileCache = null;
+        // Draw again the layers whose missing tiles have been rendered
+        private TileCache.TileListener tileListener = new TileCache.TileListener() {
+            @Override
+            public void tilesRendered(final ILayer layer) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        layerImageCache.invalidate(layer);
+                        invalidateImage();
+                    }
+                });
+            }
+        };
+        // Duration of the last complete drawing in ms, -1 if unknown
+        private volatile long lastRenderingTime = -1;
+        // Incremented when the drawn content changes, extent changes excepted
+        private AtomicLong contentVersion = new AtomicLong();
+        // Only the selection has changed since the last drawing, the layer images are reused
+        private AtomicBoolean selectionOnly = new AtomicBoolean(false);
+        // Last complete drawing, shifted when the map is panned
+        private volatile DrawnImage lastDrawnImage = null;
         private static final Point MAX_IMAGE_SIZE = new Point(20000, 20000);
         private static final Logger LOGGER = LoggerFactory.getLogger(MapControl.class);
         private static final I18n I18N = I18nFactory.getI18n(MapControl.class);
@@ -151,6 +200,29 @@ public class MapControl extends JComponent implements ContainerListener {
         this.executorService = executorService;
     }
 
+    /**
+     * @return True if the overlapping labels are not drawn, the map and the tiles share this option
+     */
+    private static boolean isLabelPlacement() {
+        return Boolean.valueOf(System.getProperty("map.editor.renderer.label_placement", "true"));
+    }
+
+    /**
+     * @param tileCache Disk cache of rendered tiles, null to always draw the layers from the data source
+     */
+    public void setTileCache(TileCache tileCache) {
+        if(this.tileCache != null) {
+            this.tileCache.removeTileListener(tileListener);
+        }
+        this.tileCache = tileCache;
+        if(tileCache != null) {
+            tileCache.setRsProvider(resultSetProviderFactory);
+            // The tiles are drawn with the labels of the map
+            tileCache.setLabelPlacement(isLabelPlacement());
+            tileCache.addTileListener(tileListener);
+        }
+    }
+
     private void execute(SwingWorker swingWorker) {
         if(executorService != null) {
             executorService.execute(swingWorker);
@@ -230,9 +302,21 @@ public class MapControl extends JComponent implements ContainerListener {
 	}
 
     /**
-     * Remove cached result set
+     * Remove cached result set and layer images
      */
     public void clearCache() {
+        clearDataCache();
+        layerImageCache.clear();
+        pointClusterCache.clear();
+        layerShapeCache.clear();
+        polygonSamplerCache.clear();
+        featureCountCache.clear();
+    }
+
+    /**
+     * Remove cached result set, keep layer images
+     */
+    private void clearDataCache() {
         if(resultSetProviderFactory instanceof  CachedResultSetContainer) {
             ((CachedResultSetContainer) resultSetProviderFactory).clearCache();
         }
@@ -327,7 +411,8 @@ public class MapControl extends JComponent implements ContainerListener {
                         mapTransform.setImage(inProcessImage);
 
                         // now we start the actual drawer
-                        drawer = new Drawer(mapContext, awaitingDrawing, this, resultSetProviderFactory, intermediateDrawing);
+                        drawer = new Drawer(mapContext, awaitingDrawing, this, resultSetProviderFactory, layerImageCache, pointClusterCache, tileCache,
+                                intermediateDrawing);
                         execute(drawer);
                     } catch (Exception ex) {
                         awaitingDrawing.set(false);
@@ -397,46 +482,286 @@ public class MapControl extends JComponent implements ContainerListener {
 	}
 
 	public void invalidateImage() {
-		setStatus(DIRTY);
-        intermediateDrawing.set(false);
-		repaint();
+        contentVersion.incrementAndGet();
+        invalidateExtent();
 	}
 
+    /**
+     * The extent has changed, the content of the last drawn image is still valid.
+     */
+    private void invalidateExtent() {
+        selectionOnly.set(false);
+        setStatus(DIRTY);
+        intermediateDrawing.set(false);
+        repaint();
+    }
+
+    /**
+     * The selection has changed, the cached layer images are drawn again with the new selection.
+     */
+    private void invalidateSelection() {
+        contentVersion.incrementAndGet();
+        invalidateExtent();
+        selectionOnly.set(true);
+    }
+
+    /**
+     * Image of a complete drawing.
+     */
+    private static class DrawnImage {
+        private final MapTransform mapTransform;
+        private final long contentVersion;
+
+        private DrawnImage(MapTransform mapTransform, long contentVersion) {
+            this.mapTransform = mapTransform;
+            this.contentVersion = contentVersion;
+        }
+    }
+
 	private static class Drawer extends SwingWorkerPM implements ActionListener {
         private MapContext mapContext;
         private AtomicBoolean awaitingDrawing;
         private AtomicBoolean intermediateDrawing;
         private MapControl mapControl;
         private ResultSetProviderFactory resultSetProviderFactory;
+        private LayerImageCache layerImageCache;
+        private PointClusterCache pointClusterCache;
+        private TileCache tileCache;
 	private static final String DEFAULT_LOG_RENDERING_TIME_MIN = "1.0";	
         private static final int FIRST_DELAY_DRAWING = 2500;
         private static final int DELAY_DRAWING = 250; // drawing delay in ms
         private ImageRenderer renderer;
         private BufferedImage rendererImage;
         private long beginDrawing = 0;
-
-        private Drawer(MapContext mapContext, AtomicBoolean awaitingDrawing, MapControl mapControl, ResultSetProviderFactory resultSetProviderFactory,AtomicBoolean intermediateDrawing) {
+        // Time to the first shown image, preview or final, -1 if not shown yet
+        private long firstPaintTime = -1;
+        private volatile boolean previewDrawn = false;
+        private static final int DEFAULT_PREVIEW_ROWS = 5000;
+        private static final long DEFAULT_PREVIEW_BUDGET = 200; // ms
+        // A preview that is not done after this time is dropped
+        private static final int DEFAULT_PREVIEW_TIME_LIMIT = 1000; // ms
+        private static final double PREVIEW_LOD_TOLERANCE = 2; // pixels
+        // Above this share of exposed pixels the whole map is drawn
+        private static final double MAX_PAN_EXPOSED_RATIO = 0.5;
+
+        private Drawer(MapContext mapContext, AtomicBoolean awaitingDrawing, MapControl mapControl, ResultSetProviderFactory resultSetProviderFactory,
+                       LayerImageCache layerImageCache, PointClusterCache pointClusterCache, TileCache tileCache,
+                       AtomicBoolean intermediateDrawing) {
             this.mapContext = mapContext;
             this.awaitingDrawing = awaitingDrawing;
             this.mapControl = mapControl;
             this.resultSetProviderFactory = resultSetProviderFactory;
+            this.layerImageCache = layerImageCache;
+            this.pointClusterCache = pointClusterCache;
+            this.tileCache = tileCache;
             this.intermediateDrawing = intermediateDrawing;
             setTaskName(I18N.tr("Drawing"));
         }
 
+        private static double getDoubleProperty(String key, double defaultValue) {
+            try {
+                return Double.parseDouble(System.getProperty(key, String.valueOf(defaultValue)));
+            } catch (NumberFormatException ex) {
+                LOGGER.warn(I18N.tr("Invalid value for the property {0}", key));
+                return defaultValue;
+            }
+        }
+
+        /**
+         * Apply the rendering options shared by the preview and the final drawing. The options are the
+         * map.editor.renderer system properties, set by the map editor preferences.
+         */
+        private void configure(ImageRenderer imageRenderer) {
+            imageRenderer.setRsProvider(resultSetProviderFactory);
+            // Opt-in parallel drawing of layers
+            imageRenderer.setLayerThreadCount(Integer.getInteger("map.editor.renderer.layer_threads", 1));
+            // Cached layer images do not depend on the selection, the selection of each layer is drawn above it
+            imageRenderer.setSelectionOverlay(true);
+            imageRenderer.setLayerSelection(true);
+            // Opt-in simplification of geometries by the database, in pixels
+            imageRenderer.setLevelOfDetailTolerance(getDoubleProperty("map.editor.renderer.lod_tolerance", 0));
+            // Overlapping labels are not drawn
+            imageRenderer.setLabelPlacement(isLabelPlacement());
+            // Opt-in drawing of point symbols from cached sprites, rotations and scales are rounded
+            if(Boolean.valueOf(System.getProperty("map.editor.renderer.symbol_atlas", "false"))) {
+                imageRenderer.setSymbolAtlas(SymbolAtlas.getDefault());
+            }
+            // Opt-in drawing of the point layers with more features than pixels as a density grid
+            imageRenderer.setDensityThreshold(getDoubleProperty("map.editor.renderer.density_threshold", 0));
+            imageRenderer.setFeatureCountCache(mapControl.featureCountCache);
+            // Opt-in merge of close points, in pixels
+            imageRenderer.setClusterDistance(getDoubleProperty("map.editor.renderer.cluster_distance", 0));
+            // Comma separated numeric fields summed in the clusters, the other fields take the value of one point
+            Set<String> clusterSumFields = new HashSet<String>();
+            for(String field : System.getProperty("map.editor.renderer.cluster_sum_fields", "").split(",")) {
+                if(!field.trim().isEmpty()) {
+                    clusterSumFields.add(field.trim());
+                }
+            }
+            imageRenderer.setClusterSumFields(clusterSumFields);
+            imageRenderer.setPointClusterCache(pointClusterCache);
+            // A change of style draws the retained shapes of the rows
+            if(Boolean.valueOf(System.getProperty("map.editor.renderer.retained_shapes", "true"))) {
+                imageRenderer.setLayerShapeCache(mapControl.layerShapeCache);
+            }
+            imageRenderer.setPolygonSamplerCache(mapControl.polygonSamplerCache);
+            // Polygon fill textures are rendered once
+            if(Boolean.valueOf(System.getProperty("map.editor.renderer.fill_paint_cache", "true"))) {
+                imageRenderer.setFillPaintCache(FillPaintCache.getDefault());
+            }
+            // Images of the symbolizers are reused from one drawing to the next
+            imageRenderer.setBufferPool(ImageBufferPool.getDefault());
+        }
+
+        /**
+         * Draw a coarse image of the map, with simplified geometries and a sample of the rows of each layer.
+         * The preview is only drawn when the last complete drawing was longer than the preview budget, and when
+         * some layers are not in the layer image cache. The cached layer images are drawn as they are.
+         * The preview is dropped if it is not done within the preview time limit.
+         * @return The preview image, null if there is no preview
+         */
+        private BufferedImage drawPreview(MapTransform mt) {
+            int previewRows = Integer.getInteger("map.editor.renderer.preview_rows", DEFAULT_PREVIEW_ROWS);
+            long previewBudget = Long.getLong("map.editor.renderer.preview_budget", DEFAULT_PREVIEW_BUDGET);
+            int previewTimeLimit = Integer.getInteger("map.editor.renderer.preview_time_limit",
+                    DEFAULT_PREVIEW_TIME_LIMIT);
+            // The duration of the first drawing is unknown, it is not previewed
+            long lastRenderingTime = mapControl.lastRenderingTime;
+            if(previewRows <= 0 || previewTimeLimit <= 0 || lastRenderingTime <= previewBudget) {
+                return null;
+            }
+            ImageRenderer previewRenderer = new ImageRenderer();
+            configure(previewRenderer);
+            previewRenderer.setRowLimit(previewRows);
+            previewRenderer.setLevelOfDetailTolerance(Math.max(previewRenderer.getLevelOfDetailTolerance(),
+                    PREVIEW_LOD_TOLERANCE));
+            previewRenderer.setLayerImageCache(layerImageCache);
+            if(previewRenderer.isCached(mapContext.getLayerModel(), mt)) {
+                // The final image only composites the cached layer images
+                return null;
+            }
+            // Cancelled with the drawing, or when the time limit is reached
+            ProgressMonitor drawingMonitor = getProgressMonitor();
+            final RootProgressMonitor previewMonitor = new RootProgressMonitor(1);
+            PropertyChangeListener cancelListener = EventHandler.create(PropertyChangeListener.class,
+                    previewMonitor, "cancelled", "newValue");
+            drawingMonitor.addPropertyChangeListener(ProgressMonitor.PROP_CANCEL, cancelListener);
+            Timer timeLimit = new Timer(previewTimeLimit, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    previewMonitor.setCancelled(true);
+                }
+            });
+            timeLimit.setRepeats(false);
+            timeLimit.start();
+            BufferedImage previewImage = new BufferedImage(mt.getWidth(), mt.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = previewImage.createGraphics();
+            try {
+                mapControl.initImage(g2);
+                previewRenderer.draw(mt, g2, mt.getWidth(), mt.getHeight(), mapContext.getLayerModel(),
+                        previewMonitor);
+            } finally {
+                g2.dispose();
+                timeLimit.stop();
+                drawingMonitor.removePropertyChangeListener(cancelListener);
+            }
+            if(previewMonitor.isCancelled() && !drawingMonitor.isCancelled()) {
+                LOGGER.debug(I18N.tr("Preview dropped after {0} ms", previewTimeLimit));
+            }
+            return isCancelled() || previewMonitor.isCancelled() ? null : previewImage;
+        }
+
+        /**
+         * @return The strips to draw if the map has only been translated since the last complete drawing and if
+         * the layers can be drawn strip by strip with a bounded margin, null otherwise
+         */
+        private IncrementalPan createIncrementalPan(DrawnImage last, MapTransform mt, long contentVersion) {
+            if(last == null || last.contentVersion != contentVersion ||
+                    !Boolean.valueOf(System.getProperty("map.editor.renderer.incremental_pan", "true")) ||
+                    !IncrementalPan.isSupported(renderer, mapContext.getLayerModel())) {
+                return null;
+            }
+            MapTransform lastTransform = last.mapTransform;
+            if(lastTransform.getWidth() != mt.getWidth() || lastTransform.getHeight() != mt.getHeight()) {
+                return null;
+            }
+            int margin = IncrementalPan.getSymbolMargin(mapContext.getLayerModel(), mt);
+            if(margin == IncrementalPan.UNBOUNDED_MARGIN) {
+                return null;
+            }
+            return IncrementalPan.create(lastTransform.getAdjustedExtent(), mt.getAdjustedExtent(), mt.getWidth(),
+                    mt.getHeight(), margin, MAX_PAN_EXPOSED_RATIO);
+        }
+
         @Override
         protected Object doInBackground() throws Exception {
             Timer updateViewTime = new Timer(DELAY_DRAWING, this);
             try {
                 beginDrawing = System.currentTimeMillis();
+                boolean selectionOnly = mapControl.selectionOnly.getAndSet(false);
+                long contentVersion = mapControl.contentVersion.get();
+                MapTransform mt = mapControl.getMapTransform();
+                rendererImage = mt.getImage();
                 renderer = new ImageRenderer();
-                renderer.setRsProvider(resultSetProviderFactory);
-                updateViewTime.start();
-                rendererImage = mapControl.getMapTransform().getImage();
-                renderer.draw(mapControl.getMapTransform(), mapContext.getLayerModel(), this.getProgressMonitor());
-		double renderingTime =  (System.currentTimeMillis() - beginDrawing) / 1000.0;    
+                configure(renderer);
+                DrawnImage last = mapControl.lastDrawnImage;
+                IncrementalPan pan = createIncrementalPan(last, mt, contentVersion);
+                if(pan != null) {
+                    // Only the strips exposed by the pan are drawn, the strip images are not cached
+                    Graphics2D g2 = rendererImage.createGraphics();
+                    try {
+                        pan.draw(renderer, last.mapTransform.getImage(), mt, g2, mapControl.getBackColor(),
+                                mapContext.getLayerModel(), this.getProgressMonitor());
+                    } finally {
+                        g2.dispose();
+                    }
+                } else {
+                    renderer.setLayerImageCache(layerImageCache);
+                    renderer.setTileCache(tileCache);
+                    // Phase one, a coarse image is shown while the final image is drawn.
+                    // A new selection only draws the selected rows over the cached layer images.
+                    BufferedImage previewImage = selectionOnly ? null : drawPreview(mt);
+                    if(previewImage != null) {
+                        firstPaintTime = System.currentTimeMillis() - beginDrawing;
+                        previewDrawn = true;
+                        mt.setImage(previewImage);
+                        intermediateDrawing.set(true);
+                        mapControl.repaint();
+                    }
+                    // Phase two, the final image replaces the preview when it is complete
+                    updateViewTime.start();
+                    Graphics2D g2 = rendererImage.createGraphics();
+                    try {
+                        renderer.draw(mt, g2, rendererImage.getWidth(), rendererImage.getHeight(),
+                                mapContext.getLayerModel(), this.getProgressMonitor());
+                    } finally {
+                        g2.dispose();
+                    }
+                }
+                long renderingDuration = System.currentTimeMillis() - beginDrawing;
+                if(!getProgressMonitor().isCancelled()) {
+                    MapTransform drawnTransform = mt.copy();
+                    drawnTransform.setImage(rendererImage);
+                    mapControl.lastDrawnImage = new DrawnImage(drawnTransform, contentVersion);
+                    mapControl.lastRenderingTime = renderingDuration;
+                    if(firstPaintTime < 0) {
+                        firstPaintTime = renderingDuration;
+                    }
+                }
+		double renderingTime =  renderingDuration / 1000.0;
 		if(renderingTime >= Double.valueOf(System.getProperty("map.editor.renderingtimemin", DEFAULT_LOG_RENDERING_TIME_MIN)))  {
                 	LOGGER.debug(I18N.tr("Rendering done in {0} seconds", renderingTime));
+                        LOGGER.debug(I18N.tr("First image shown after {0} ms", firstPaintTime));
+                        TextOutlineCache textCache = TextOutlineCache.getDefault();
+                        LOGGER.debug(I18N.tr("Text outline cache: {0} texts, {1} KB, {2}% hits", textCache.size(),
+                                textCache.getMemoryUsage() / 1024, Math.round(textCache.getHitRate() * 100)));
+                        SymbolAtlas atlas = SymbolAtlas.getDefault();
+                        LOGGER.debug(I18N.tr("Symbol atlas: {0} sprites, {1} KB, {2} sprites drawn, {3} rendered",
+                                atlas.size(), atlas.getMemoryUsage() / 1024, atlas.getHitCount(), atlas.getMissCount()));
+                        FillPaintCache fillCache = FillPaintCache.getDefault();
+                        LOGGER.debug(I18N.tr("Fill texture cache: {0} textures, {1} KB, {2} fills cached, {3} rendered",
+                                fillCache.size(), fillCache.getMemoryUsage() / 1024, fillCache.getHitCount(),
+                                fillCache.getMissCount()));
 		}
             } catch (Exception ex) {
                 LOGGER.error(ex.getLocalizedMessage(), ex);
@@ -453,11 +778,12 @@ public class MapControl extends JComponent implements ContainerListener {
         /**
          * Some delay while drawing.
          * The user may want to see the progression of drawing after some waiting time.
+         * When a preview is shown, it is kept until the final image is complete.
          */
         @Override
         public void actionPerformed(ActionEvent actionEvent) {
             // Conditions to clean rendering of last complete image and
-            if(!isCancelled() && awaitingDrawing.get() && (intermediateDrawing.get() ||
+            if(!isCancelled() && !previewDrawn && awaitingDrawing.get() && (intermediateDrawing.get() ||
                     (beginDrawing + FIRST_DELAY_DRAWING < System.currentTimeMillis()))) {
                 BufferedImage intermediateImg;
                 if(!intermediateDrawing.get()) {
@@ -515,19 +841,29 @@ public class MapControl extends JComponent implements ContainerListener {
 
         @Override
         public void tableChange(TableEditEvent event) {
-            // Clear selection of all layers linked with this table
+            // Clear selection and caches of all layers linked with this table
             TableLocation tableName = TableLocation.parse(event.getTableName());
             for(ILayer layer : mapControl.getMapContext().getLayers()) {
                 String layerTable = layer.getTableReference();
                 if(!layerTable.isEmpty() && TableLocation.parse(layerTable).equals(tableName)) {
+                    mapControl.layerImageCache.invalidate(layer);
+                    mapControl.pointClusterCache.invalidate(layer);
+                    mapControl.layerShapeCache.invalidate(layer);
+                    mapControl.polygonSamplerCache.invalidate(layer);
+                    mapControl.featureCountCache.invalidate(layer);
+                    if(mapControl.tileCache != null) {
+                        mapControl.tileCache.invalidate(layer, event.getEnvelope());
+                    }
                     layer.setSelection(new HashSet<Long>());
                     layer.clearCache();
                     // The trigger may be lost
                     mapControl.addLayerListenerRecursively(layer, this);
-                    break;
                 }
             }
-            mapControl.clearCache();
+            // Fetch again only the edited rows
+            if(mapControl.resultSetProviderFactory instanceof CachedResultSetContainer) {
+                ((CachedResultSetContainer) mapControl.resultSetProviderFactory).tableChange(event);
+            }
             // Redraw
             mapControl.invalidateImage();
         }
@@ -538,6 +874,11 @@ public class MapControl extends JComponent implements ContainerListener {
             if(!rootLayer.getTableReference().isEmpty() && rootLayer.getDataManager() != null) {
                 mapControl.clearCache(rootLayer.getTableReference());
             }
+            mapControl.layerImageCache.removeLayer(rootLayer);
+            mapControl.pointClusterCache.removeLayer(rootLayer);
+            mapControl.layerShapeCache.removeLayer(rootLayer);
+            mapControl.polygonSamplerCache.removeLayer(rootLayer);
+            mapControl.featureCountCache.removeLayer(rootLayer);
             for (int i = 0; i < rootLayer.getLayerCount(); i++) {
                 clearLayerCacheRecursively(rootLayer.getLayer(i));
             }
@@ -597,18 +938,24 @@ public class MapControl extends JComponent implements ContainerListener {
 
                 @Override
 		public void visibilityChanged(LayerListenerEvent e) {
+                    // The cached image of the layer is still valid
                     mapControl.invalidateImage();
 		}
 
                 @Override
 		public void styleChanged(LayerListenerEvent e) {
+                    mapControl.layerImageCache.invalidate(e.getAffectedLayer());
+                    if(mapControl.tileCache != null) {
+                        mapControl.tileCache.invalidateStyle(e.getAffectedLayer());
+                    }
                     mapControl.invalidateImage();
                 }
 
                 @Override
 		public void selectionChanged(SelectionEvent e) {
                         //TODO use the bean property selection event (when feature/table-editor will be merged) to find if the redraw has to be done
-                    mapControl.invalidateImage();
+                    // The selection is drawn over the cached layer images
+                    mapControl.invalidateSelection();
 		}
 	}
 
@@ -620,6 +967,12 @@ public class MapControl extends JComponent implements ContainerListener {
 		 * if (drawer != null) { drawer.cancel(); }
 		 */
             clearCache();
+            if(tileCache != null) {
+                tileCache.removeTileListener(tileListener);
+            }
+            if(resultSetProviderFactory instanceof  CachedResultSetContainer) {
+                ((CachedResultSetContainer) resultSetProviderFactory).dispose();
+            }
             if(toolManager!=null) {
                 toolManager.freeResources();
                 toolManager = null;
@@ -688,7 +1041,7 @@ public class MapControl extends JComponent implements ContainerListener {
             @Override
             public void extentChanged(Envelope oldExtent,
                             MapTransform mapTransform) {
-                    invalidateImage();
+                    invalidateExtent();
                     // Record new BoundingBox value for map context
                     mapContext.setBoundingBox(mapTransform.getExtent());
             }            
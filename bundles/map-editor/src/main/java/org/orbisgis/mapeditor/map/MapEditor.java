@@ -88,6 +88,7 @@ import org.orbisgis.coremap.map.MapTransform;
 import org.orbisgis.coremap.map.TransformListener;
 import org.orbisgis.coremap.process.ZoomToSelection;
 import org.orbisgis.coremap.renderer.ResultSetProviderFactory;
+import org.orbisgis.coremap.renderer.TileCache;
 import org.orbisgis.editorjdbc.jobs.CreateSourceFromSelection;
 import org.orbisgis.mapeditor.map.ext.MapEditorAction;
 import org.orbisgis.mapeditor.map.icons.MapEditorIcons;
@@ -120,6 +121,7 @@ import org.orbisgis.sif.edition.EditorManager;
 import org.orbisgis.wkguiapi.ViewWorkspace;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
@@ -161,6 +163,7 @@ public class MapEditor extends JPanel implements TransformListener, MapEditorExt
     private EditorManager editorManager;
     private Map<ResultSetProviderFactory, Action> rsFactories = new HashMap<>();
     private ExecutorService executorService;
+    private TileCache tileCache;
 
     private boolean userChangedWidth = false;
     private boolean userChangedHeight = false;
@@ -221,6 +224,12 @@ public class MapEditor extends JPanel implements TransformListener, MapEditorExt
     @Activate
     public void activate() {
         this.mapsManager = new MapsManager(viewWorkspace.getMapContextPath(),dataManager, editorManager);
+        if(Boolean.getBoolean("map.editor.tile_cache")) {
+            tileCache = new TileCache(new File(viewWorkspace.getCoreWorkspace().getWorkspaceFolder(), "tiles"),
+                    Long.getLong("map.editor.tile_cache.quota", TileCache.DEFAULT_QUOTA),
+                    Integer.getInteger("map.editor.tile_cache.threads", 2));
+            mapControl.setTileCache(tileCache);
+        }
         dockingPanelParameters = new DockingPanelParameters();
         dockingPanelParameters.setName("map_editor");
         updateMapLabel();
@@ -250,6 +259,15 @@ public class MapEditor extends JPanel implements TransformListener, MapEditorExt
         this.setTransferHandler(dragDropHandler);
     }
 
+    @Deactivate
+    public void deactivate() {
+        if(tileCache != null) {
+            mapControl.setTileCache(null);
+            tileCache.dispose();
+            tileCache = null;
+        }
+    }
+
     @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
     public void addMapEditorActionFactory(MapEditorAction mapEditorAction) {
         actions.addActionFactory(mapEditorAction, this);
@@ -0,0 +1,774 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.mapeditor.map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.io.WKBWriter;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.SpatialResultSetMetaData;
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.renderer.ResultSetProviderFactory;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Copy of the rows of a table drawn by the map. The geometries are kept as WKB in direct buffers, out of the Java
+ * heap, and the other columns in primitive arrays. An STR-tree over the envelopes of the geometries answers any
+ * extent without querying the database.
+ * Edited rows are removed from the copy when they are invalidated, then fetched again before the next query.
+ * A row fetched again keeps the drawing order of the row it replaces.
+ */
+class TableRenderCache {
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Rows added after the build of the tree are tested one by one, the tree is rebuilt above this count
+    private static final int MAX_UNINDEXED_ROWS = 1024;
+    // Estimated size of a cached value that is not a number
+    private static final int OBJECT_SIZE = 32;
+    static final int KIND_INT = 0;
+    static final int KIND_LONG = 1;
+    static final int KIND_DOUBLE = 2;
+    static final int KIND_OBJECT = 3;
+    private final String pkName;
+    private final String geometryField;
+    private final String[] fields;
+    private final int[] kinds;
+    private final int[] sqlTypes;
+    private final String[] sqlTypeNames;
+    private final int geometryType;
+    private final WKBWriter wkbWriter = new WKBWriter(2, true);
+    private final WKBWriter wkbWriter3D = new WKBWriter(3, true);
+    private Object[] columns;
+    private BitSet[] nulls;
+    private long[] pks;
+    private double[] envelopes;
+    private long[] wkbPositions;
+    private int[] wkbLengths;
+    // Drawing order of the rows, the order of the table
+    private int[] orders;
+    private int nextOrder = 0;
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private long chunkBytes = 0;
+    private final BitSet removed = new BitSet();
+    private int removedCount = 0;
+    private int size = 0;
+    private STRtree index = null;
+    private int indexedSize = 0;
+    private final Queue<Edit> edits = new ConcurrentLinkedQueue<Edit>();
+    // Simplified geometries of the last level of detail, null before the first simplified query
+    private SimplifiedGeometries simplified = null;
+
+    /**
+     * @param pkName Name of the row identifier column
+     * @param geometryField Name of the geometry column
+     * @param geometryType Geometry type code of the geometry column
+     * @param fields Names of the other columns
+     * @param sqlTypes {@link java.sql.Types} of the other columns
+     * @param sqlTypeNames Database type names of the other columns
+     */
+    TableRenderCache(String pkName, String geometryField, int geometryType, String[] fields, int[] sqlTypes,
+                     String[] sqlTypeNames) {
+        this.pkName = pkName;
+        this.geometryField = geometryField;
+        this.geometryType = geometryType;
+        this.fields = fields;
+        this.sqlTypes = sqlTypes;
+        this.sqlTypeNames = sqlTypeNames;
+        kinds = new int[fields.length];
+        columns = new Object[fields.length];
+        nulls = new BitSet[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            kinds[i] = getKind(sqlTypes[i]);
+            nulls[i] = new BitSet();
+            switch (kinds[i]) {
+                case KIND_INT:
+                    columns[i] = new int[INITIAL_CAPACITY];
+                    break;
+                case KIND_LONG:
+                    columns[i] = new long[INITIAL_CAPACITY];
+                    break;
+                case KIND_DOUBLE:
+                    columns[i] = new double[INITIAL_CAPACITY];
+                    break;
+                default:
+                    columns[i] = new Object[INITIAL_CAPACITY];
+            }
+        }
+        pks = new long[INITIAL_CAPACITY];
+        envelopes = new double[INITIAL_CAPACITY * 4];
+        wkbPositions = new long[INITIAL_CAPACITY];
+        wkbLengths = new int[INITIAL_CAPACITY];
+        orders = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Values of these types are kept in primitive arrays. Other types keep the objects of the driver.
+     */
+    private static int getKind(int sqlType) {
+        switch (sqlType) {
+            case Types.INTEGER:
+                return KIND_INT;
+            case Types.BIGINT:
+                return KIND_LONG;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                return KIND_DOUBLE;
+            default:
+                return KIND_OBJECT;
+        }
+    }
+
+    /**
+     * Copy all the rows of a layer.
+     * @param factory Query factory of the table
+     * @param layer Layer of the table
+     * @param pm Progress monitor
+     * @param fields Columns to copy with the row identifier and the geometry
+     * @param maxMemory Memory limit in bytes
+     * @return The copy of the rows, null if the rows do not fit in the memory limit or if the copy is cancelled
+     * @throws SQLException
+     */
+    static TableRenderCache load(ResultSetProviderFactory factory, ILayer layer, ProgressMonitor pm,
+                                 Set<String> fields, long maxMemory) throws SQLException {
+        try (ResultSetProviderFactory.ResultSetProvider provider = factory.getResultSetProvider(layer, pm);
+             SpatialResultSet rs = provider.execute(pm, layer.getEnvelope(), fields)) {
+            String pk = provider.getPkName();
+            ResultSetMetaData meta = rs.getMetaData();
+            int geometryColumn = meta.unwrap(SpatialResultSetMetaData.class).getFirstGeometryFieldIndex();
+            if (pk.isEmpty() || geometryColumn < 1) {
+                return null;
+            }
+            int pkColumn = rs.findColumn(pk);
+            List<Integer> valueColumns = new ArrayList<Integer>();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                if (i != pkColumn && i != geometryColumn && !meta.getColumnName(i).equalsIgnoreCase(pk)) {
+                    valueColumns.add(i);
+                }
+            }
+            String[] names = new String[valueColumns.size()];
+            int[] types = new int[valueColumns.size()];
+            String[] typeNames = new String[valueColumns.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = meta.getColumnName(valueColumns.get(i));
+                types[i] = meta.getColumnType(valueColumns.get(i));
+                typeNames[i] = meta.getColumnTypeName(valueColumns.get(i));
+            }
+            TableRenderCache cache = new TableRenderCache(pk, meta.getColumnName(geometryColumn),
+                    meta.unwrap(SpatialResultSetMetaData.class).getGeometryType(geometryColumn), names, types,
+                    typeNames);
+            if (!cache.addRows(rs, pm, pkColumn, geometryColumn, valueColumns, null, maxMemory)) {
+                return null;
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Copy the rows of the result set.
+     * @param removedOrders Drawing order of the removed rows by row identifier, null if no row is replaced
+     * @return False if the memory limit is reached or if the copy is cancelled
+     */
+    private boolean addRows(SpatialResultSet rs, ProgressMonitor pm, int pkColumn, int geometryColumn,
+                            List<Integer> valueColumns, Map<Long, Integer> removedOrders, long maxMemory)
+            throws SQLException {
+        Object[] values = new Object[fields.length];
+        while (rs.next()) {
+            if (pm.isCancelled() || getMemoryUsage() > maxMemory) {
+                return false;
+            }
+            Geometry geometry = rs.getGeometry(geometryColumn);
+            if (geometry == null || geometry.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rs.getObject(valueColumns.get(i));
+            }
+            long pk = rs.getLong(pkColumn);
+            Integer order = removedOrders == null ? null : removedOrders.remove(pk);
+            add(pk, geometry, values, order == null ? nextOrder : order);
+        }
+        return true;
+    }
+
+    /**
+     * Copy a row, drawn after the other rows.
+     * @param pk Row identifier
+     * @param geometry Geometry, not empty
+     * @param values Values of the other columns, in the order of {@link #getFields()}
+     */
+    synchronized void add(long pk, Geometry geometry, Object[] values) {
+        add(pk, geometry, values, nextOrder);
+    }
+
+    /**
+     * Copy a row.
+     * @param pk Row identifier
+     * @param geometry Geometry, not empty
+     * @param values Values of the other columns, in the order of {@link #getFields()}
+     * @param order Drawing order of the row
+     */
+    synchronized void add(long pk, Geometry geometry, Object[] values, int order) {
+        if (size == pks.length) {
+            grow(size * 2);
+        }
+        Coordinate coordinate = geometry.getCoordinate();
+        byte[] wkb = coordinate != null && !Double.isNaN(coordinate.z) ? wkbWriter3D.write(geometry) :
+                wkbWriter.write(geometry);
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < wkb.length) {
+            chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, wkb.length));
+            chunks.add(chunk);
+            chunkBytes += chunk.capacity();
+        }
+        wkbPositions[size] = ((long) (chunks.size() - 1) << 32) | chunk.position();
+        wkbLengths[size] = wkb.length;
+        chunk.put(wkb);
+        Envelope envelope = geometry.getEnvelopeInternal();
+        envelopes[size * 4] = envelope.getMinX();
+        envelopes[size * 4 + 1] = envelope.getMaxX();
+        envelopes[size * 4 + 2] = envelope.getMinY();
+        envelopes[size * 4 + 3] = envelope.getMaxY();
+        pks[size] = pk;
+        orders[size] = order;
+        nextOrder = Math.max(nextOrder, order + 1);
+        for (int i = 0; i < fields.length; i++) {
+            Object value = values[i];
+            if (value == null && kinds[i] != KIND_OBJECT) {
+                nulls[i].set(size);
+                continue;
+            }
+            switch (kinds[i]) {
+                case KIND_INT:
+                    ((int[]) columns[i])[size] = ((Number) value).intValue();
+                    break;
+                case KIND_LONG:
+                    ((long[]) columns[i])[size] = ((Number) value).longValue();
+                    break;
+                case KIND_DOUBLE:
+                    ((double[]) columns[i])[size] = ((Number) value).doubleValue();
+                    break;
+                default:
+                    ((Object[]) columns[i])[size] = value;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Replace the arrays by larger ones. Result sets keep reading the previous arrays.
+     */
+    private void grow(int capacity) {
+        pks = Arrays.copyOf(pks, capacity);
+        envelopes = Arrays.copyOf(envelopes, capacity * 4);
+        wkbPositions = Arrays.copyOf(wkbPositions, capacity);
+        wkbLengths = Arrays.copyOf(wkbLengths, capacity);
+        orders = Arrays.copyOf(orders, capacity);
+        Object[] newColumns = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            switch (kinds[i]) {
+                case KIND_INT:
+                    newColumns[i] = Arrays.copyOf((int[]) columns[i], capacity);
+                    break;
+                case KIND_LONG:
+                    newColumns[i] = Arrays.copyOf((long[]) columns[i], capacity);
+                    break;
+                case KIND_DOUBLE:
+                    newColumns[i] = Arrays.copyOf((double[]) columns[i], capacity);
+                    break;
+                default:
+                    newColumns[i] = Arrays.copyOf((Object[]) columns[i], capacity);
+            }
+        }
+        columns = newColumns;
+    }
+
+    /**
+     * @return Estimated memory used by the copy, in bytes
+     */
+    synchronized long getMemoryUsage() {
+        long rowBytes = 8 + 4 * 8 + 8 + 4 + 4;
+        for (int kind : kinds) {
+            rowBytes += kind == KIND_INT ? 4 : kind == KIND_OBJECT ? OBJECT_SIZE : 8;
+        }
+        long simplifiedBytes = simplified == null ? 0 : simplified.getMemoryUsage();
+        return chunkBytes + rowBytes * pks.length + simplifiedBytes;
+    }
+
+    /**
+     * @return Number of copied rows, removed rows included
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of removed rows
+     */
+    synchronized int getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * @return Name of the row identifier column
+     */
+    String getPkName() {
+        return pkName;
+    }
+
+    /**
+     * @return Names of the copied columns, the row identifier and the geometry excepted
+     */
+    List<String> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * @param requestedFields Column names
+     * @return True if all the columns are copied
+     */
+    boolean containsFields(Set<String> requestedFields) {
+        for (String field : requestedFields) {
+            if (!field.equalsIgnoreCase(pkName) && !field.equalsIgnoreCase(geometryField) && !containsField(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsField(String field) {
+        for (String name : fields) {
+            if (name.equalsIgnoreCase(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the edited rows on the next {@link #applyEdits}.
+     * @param firstRowPK First edited row identifier
+     * @param lastRowPK Last edited row identifier
+     * @param envelope Envelope of the old and new geometries. The rows are fetched again in this envelope, if it
+     *                 is null the whole table is copied again.
+     */
+    void invalidate(Long firstRowPK, Long lastRowPK, Envelope envelope) {
+        edits.add(new Edit(firstRowPK, lastRowPK, envelope));
+    }
+
+    /**
+     * @return True if edited rows have to be fetched again
+     */
+    boolean hasEdits() {
+        return !edits.isEmpty();
+    }
+
+    /**
+     * Remove the edited rows then fetch them again.
+     * @param factory Query factory of the table
+     * @param layer Layer of the table
+     * @param pm Progress monitor
+     * @param maxMemory Memory limit in bytes
+     * @return False if the edited rows cannot be fetched, the copy is no longer valid
+     * @throws SQLException
+     */
+    synchronized boolean applyEdits(ResultSetProviderFactory factory, ILayer layer, ProgressMonitor pm,
+                                    long maxMemory) throws SQLException {
+        StringBuilder pkFilter = new StringBuilder();
+        // Extent of the old and new geometries of the identified rows, the layer envelope may not contain them yet
+        Envelope pkExtent = new Envelope();
+        List<Envelope> editedExtents = new ArrayList<Envelope>();
+        Map<Long, Integer> removedOrders = new HashMap<Long, Integer>();
+        Edit edit;
+        while ((edit = edits.poll()) != null) {
+            if (edit.firstRowPK != null && edit.lastRowPK != null) {
+                if (edit.envelope == null) {
+                    // The new geometries may be anywhere
+                    return false;
+                }
+                pkExtent.expandToInclude(edit.envelope);
+                long first = Math.min(edit.firstRowPK, edit.lastRowPK);
+                long last = Math.max(edit.firstRowPK, edit.lastRowPK);
+                for (int row = 0; row < size; row++) {
+                    if (pks[row] >= first && pks[row] <= last) {
+                        removeEdited(row, removedOrders);
+                    }
+                }
+                if (pkFilter.length() > 0) {
+                    pkFilter.append(" or ");
+                }
+                pkFilter.append(pkName).append(" between ").append(first).append(" and ").append(last);
+            } else if (edit.envelope != null) {
+                for (int row : query(edit.envelope, 0)) {
+                    removeEdited(row, removedOrders);
+                }
+                editedExtents.add(edit.envelope);
+            } else {
+                return false;
+            }
+        }
+        if (removedCount * 2 > size) {
+            // Cheaper to copy the table again
+            return false;
+        }
+        if (pkFilter.length() > 0 && !fetch(factory, layer, pm, pkExtent,
+                Collections.singletonList(pkFilter.toString()), removedOrders, maxMemory)) {
+            return false;
+        }
+        for (Envelope editedExtent : editedExtents) {
+            if (!fetch(factory, layer, pm, editedExtent, Collections.<String>emptyList(), removedOrders,
+                    maxMemory)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove an edited row and keep its drawing order for the row fetched again.
+     */
+    private void removeEdited(int row, Map<Long, Integer> removedOrders) {
+        if (!removed.get(row)) {
+            removedOrders.put(pks[row], orders[row]);
+            remove(row);
+        }
+    }
+
+    private boolean fetch(ResultSetProviderFactory factory, ILayer layer, ProgressMonitor pm, Envelope extent,
+                          List<String> filters, Map<Long, Integer> removedOrders, long maxMemory)
+            throws SQLException {
+        try (ResultSetProviderFactory.ResultSetProvider provider = factory.getResultSetProvider(layer, pm)) {
+            if (!(provider instanceof ResultSetProviderFactory.FilteredResultSetProvider)) {
+                // The edited rows cannot be selected
+                return false;
+            }
+            try (SpatialResultSet rs = ((ResultSetProviderFactory.FilteredResultSetProvider) provider).execute(pm,
+                    extent, new HashSet<String>(Arrays.asList(fields)), filters)) {
+                int geometryColumn = rs.getMetaData().unwrap(SpatialResultSetMetaData.class)
+                        .getFirstGeometryFieldIndex();
+                int pkColumn = rs.findColumn(pkName);
+                List<Integer> valueColumns = new ArrayList<Integer>(fields.length);
+                for (String field : fields) {
+                    valueColumns.add(rs.findColumn(field));
+                }
+                return addRows(rs, pm, pkColumn, geometryColumn, valueColumns, removedOrders, maxMemory);
+            }
+        }
+    }
+
+    /**
+     * Remove a copied row, the memory is released when the whole copy is released.
+     * @param row Row index
+     */
+    synchronized void remove(int row) {
+        if (!removed.get(row)) {
+            removed.set(row);
+            removedCount++;
+        }
+    }
+
+    /**
+     * @param extent Query extent
+     * @param rowLimit Maximum number of rows, 0 for all rows. The kept rows are spread over the result.
+     * @return The indexes of the rows whose envelope intersects the extent, in the drawing order
+     */
+    synchronized int[] query(Envelope extent, int rowLimit) {
+        return query(extent, rowLimit, 1);
+    }
+
+    /**
+     * @param extent Query extent
+     * @param rowLimit Maximum number of rows, 0 for all rows
+     * @param sampleStride Like the database queries of a preview, only the rows whose identifier is a multiple of
+     *                     this value are kept, then the first rowLimit rows. 1 to spread the kept rows over the
+     *                     result.
+     * @return The indexes of the rows whose envelope intersects the extent, in the drawing order
+     */
+    synchronized int[] query(Envelope extent, int rowLimit, long sampleStride) {
+        if (index == null || size - indexedSize > MAX_UNINDEXED_ROWS) {
+            buildIndex();
+        }
+        int[] rows = new int[INITIAL_CAPACITY];
+        int count = 0;
+        for (Object item : index.query(extent)) {
+            int row = (Integer) item;
+            if (!removed.get(row) && isSampled(row, rowLimit, sampleStride)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        for (int row = indexedSize; row < size; row++) {
+            if (!removed.get(row) && isSampled(row, rowLimit, sampleStride) && intersects(row, extent)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        // Rows fetched again after an edit are at the end of the arrays, they are sorted on their drawing order
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = ((long) orders[rows[i]] << 32) | rows[i];
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < count; i++) {
+            rows[i] = (int) sorted[i];
+        }
+        if (rowLimit > 0 && count > rowLimit && sampleStride > 1) {
+            // The rows are already sampled on their identifier
+            return Arrays.copyOf(rows, rowLimit);
+        }
+        if (rowLimit > 0 && count > rowLimit) {
+            // A sample of the rows, not the first rows of the table
+            int[] sample = new int[rowLimit];
+            for (int i = 0; i < rowLimit; i++) {
+                sample[i] = rows[(int) ((long) i * count / rowLimit)];
+            }
+            return sample;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private boolean isSampled(int row, int rowLimit, long sampleStride) {
+        return rowLimit <= 0 || sampleStride <= 1 || pks[row] % sampleStride == 0;
+    }
+
+    private boolean intersects(int row, Envelope extent) {
+        return !(envelopes[row * 4] > extent.getMaxX() || envelopes[row * 4 + 1] < extent.getMinX() ||
+                envelopes[row * 4 + 2] > extent.getMaxY() || envelopes[row * 4 + 3] < extent.getMinY());
+    }
+
+    private void buildIndex() {
+        STRtree tree = new STRtree();
+        for (int row = 0; row < size; row++) {
+            if (!removed.get(row)) {
+                tree.insert(new Envelope(envelopes[row * 4], envelopes[row * 4 + 1], envelopes[row * 4 + 2],
+                        envelopes[row * 4 + 3]), row);
+            }
+        }
+        tree.build();
+        index = tree;
+        indexedSize = size;
+    }
+
+    /**
+     * @param extent Query extent
+     * @param rowLimit Maximum number of rows, 0 for all rows
+     * @return The rows whose envelope intersects the extent
+     */
+    synchronized SpatialResultSet execute(Envelope extent, int rowLimit) {
+        return execute(extent, rowLimit, 1, 0);
+    }
+
+    /**
+     * @param extent Query extent
+     * @param rowLimit Maximum number of rows, 0 for all rows
+     * @param sampleStride Step between the kept row identifiers, see {@link #query(Envelope, int, long)}
+     * @param tolerance Simplification tolerance of the geometries in map units, 0 for exact geometries
+     * @return The rows whose envelope intersects the extent
+     */
+    synchronized SpatialResultSet execute(Envelope extent, int rowLimit, long sampleStride, double tolerance) {
+        if (tolerance > 0 && (simplified == null || simplified.tolerance != tolerance ||
+                simplified.wkb.length() < size)) {
+            // A new level of detail releases the geometries of the previous one
+            simplified = new SimplifiedGeometries(tolerance, pks.length,
+                    simplified != null && simplified.tolerance == tolerance ? simplified : null);
+        }
+        return new RenderCacheResultSet(new Snapshot(this, tolerance > 0 ? simplified : null),
+                query(extent, rowLimit, sampleStride), tolerance);
+    }
+
+    /**
+     * WKB of the simplified geometries for a level of detail. Each geometry is simplified by the first result set
+     * that reads it, the next drawings at the same level of detail read the stored WKB.
+     */
+    static final class SimplifiedGeometries {
+        final double tolerance;
+        private final AtomicReferenceArray<byte[]> wkb;
+        private final AtomicLong bytes = new AtomicLong();
+
+        /**
+         * @param tolerance Simplification tolerance in map units
+         * @param capacity Number of rows
+         * @param previous Geometries of the same tolerance for fewer rows, null if none
+         */
+        private SimplifiedGeometries(double tolerance, int capacity, SimplifiedGeometries previous) {
+            this.tolerance = tolerance;
+            wkb = new AtomicReferenceArray<byte[]>(capacity);
+            if (previous != null) {
+                for (int row = 0; row < previous.wkb.length(); row++) {
+                    wkb.set(row, previous.wkb.get(row));
+                }
+                bytes.set(previous.bytes.get());
+            }
+        }
+
+        /**
+         * @param row Row index
+         * @return The simplified WKB of the row, null if it is not simplified yet
+         */
+        byte[] get(int row) {
+            return wkb.get(row);
+        }
+
+        /**
+         * @param row Row index
+         * @param simplifiedWKB The simplified WKB of the row
+         */
+        void set(int row, byte[] simplifiedWKB) {
+            if (wkb.compareAndSet(row, null, simplifiedWKB)) {
+                bytes.addAndGet(simplifiedWKB.length);
+            }
+        }
+
+        private long getMemoryUsage() {
+            return bytes.get() + 8L * wkb.length();
+        }
+    }
+
+    /**
+     * The arrays of the copy at a given time. The values of the rows of a snapshot are never modified.
+     */
+    static final class Snapshot {
+        final String pkName;
+        final String geometryField;
+        final int geometryType;
+        final String[] fields;
+        final int[] kinds;
+        final int[] sqlTypes;
+        final String[] sqlTypeNames;
+        final Object[] columns;
+        final BitSet[] nulls;
+        final long[] pks;
+        final long[] wkbPositions;
+        final int[] wkbLengths;
+        final ByteBuffer[] chunks;
+        // Null if the geometries are not simplified
+        final SimplifiedGeometries simplified;
+
+        private Snapshot(TableRenderCache cache, SimplifiedGeometries simplified) {
+            this.simplified = simplified;
+            pkName = cache.pkName;
+            geometryField = cache.geometryField;
+            geometryType = cache.geometryType;
+            fields = cache.fields;
+            kinds = cache.kinds;
+            sqlTypes = cache.sqlTypes;
+            sqlTypeNames = cache.sqlTypeNames;
+            columns = cache.columns;
+            nulls = new BitSet[cache.nulls.length];
+            for (int i = 0; i < nulls.length; i++) {
+                nulls[i] = (BitSet) cache.nulls[i].clone();
+            }
+            pks = cache.pks;
+            wkbPositions = cache.wkbPositions;
+            wkbLengths = cache.wkbLengths;
+            chunks = new ByteBuffer[cache.chunks.size()];
+            for (int i = 0; i < chunks.length; i++) {
+                // Independent position, the buffer is read while rows are added
+                chunks[i] = cache.chunks.get(i).duplicate();
+            }
+        }
+
+        /**
+         * @param row Row index
+         * @return The WKB of the geometry of the row
+         */
+        byte[] getWKB(int row) {
+            long position = wkbPositions[row];
+            ByteBuffer chunk = chunks[(int) (position >>> 32)];
+            byte[] wkb = new byte[wkbLengths[row]];
+            chunk.position((int) position);
+            chunk.get(wkb);
+            return wkb;
+        }
+
+        /**
+         * @param field Index of the column in {@link #fields}
+         * @param row Row index
+         * @return The value of the column
+         */
+        Object getValue(int field, int row) {
+            if (kinds[field] != KIND_OBJECT && nulls[field].get(row)) {
+                return null;
+            }
+            switch (kinds[field]) {
+                case KIND_INT:
+                    return ((int[]) columns[field])[row];
+                case KIND_LONG:
+                    return ((long[]) columns[field])[row];
+                case KIND_DOUBLE:
+                    return ((double[]) columns[field])[row];
+                default:
+                    return ((Object[]) columns[field])[row];
+            }
+        }
+    }
+
+    private static final class Edit {
+        private final Long firstRowPK;
+        private final Long lastRowPK;
+        private final Envelope envelope;
+
+        private Edit(Long firstRowPK, Long lastRowPK, Envelope envelope) {
+            this.firstRowPK = firstRowPK;
+            this.lastRowPK = lastRowPK;
+            this.envelope = envelope;
+        }
+    }
+}
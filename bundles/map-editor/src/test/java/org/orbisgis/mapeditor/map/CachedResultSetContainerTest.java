@@ -0,0 +1,339 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.mapeditor.map;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+import org.h2gis.utilities.SpatialResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.orbisgis.commons.progress.NullProgressMonitor;
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.corejdbc.TableEditEvent;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.renderer.ResultSetProviderFactory;
+
+import javax.swing.event.TableModelEvent;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the copies of the tables against a database held in memory.
+ */
+public class CachedResultSetContainerTest {
+    private static final long TIMEOUT = 10000;
+    private static final Set<String> FIELDS = new HashSet<>(Arrays.asList("VAL", "NAME"));
+    private static final Envelope EXTENT = new Envelope(0, 100, 0, 100);
+    private WKTReader wktReader = new WKTReader();
+    private ProgressMonitor pm = new NullProgressMonitor();
+    private FakeDatabase database;
+    private CachedResultSetContainer container;
+
+    @Before
+    public void setUp() throws Exception {
+        database = new FakeDatabase();
+        database.createTable("POINTS");
+        database.createTable("OTHER_POINTS");
+        container = new CachedResultSetContainer(database);
+    }
+
+    @After
+    public void tearDown() {
+        container.dispose();
+    }
+
+    @Test
+    public void testSingleCopy() throws Exception {
+        final ILayer layer = createLayer("POINTS");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return count(layer, EXTENT);
+                    }
+                }));
+            }
+            // Every reader gets all the rows, from the database or from the copy
+            for (Future<Integer> result : results) {
+                assertEquals(100, result.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        waitCopied("POINTS");
+        assertEquals(100, count(layer, EXTENT));
+        assertEquals(1, database.loads.get());
+    }
+
+    @Test
+    public void testEditDuringCopy() throws Exception {
+        ILayer layer = createLayer("POINTS");
+        database.loadStarted = new CountDownLatch(1);
+        database.loadResumed = new CountDownLatch(1);
+        // The first reader starts the copy and queries the database
+        assertEquals(100, count(layer, EXTENT));
+        assertTrue(database.loadStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        // The copy has read the rows, the row is moved out of the layer envelope before the copy is published
+        database.update("POINTS", 5, wktReader.read("POINT(150 160)"));
+        container.tableChange(new TableEditEvent("POINTS", TableModelEvent.ALL_COLUMNS, 5L, 5L,
+                TableModelEvent.UPDATE, new Envelope(5, 150, 5, 160)));
+        // The cleaner does not release a table being copied
+        container.setIdleDelay(0);
+        Thread.sleep(2);
+        container.releaseIdleTables();
+        // Readers do not wait for the copy
+        assertEquals(99, count(layer, EXTENT));
+        database.loadResumed.countDown();
+        waitCopied("POINTS");
+        int queries = database.queries.get();
+        // The edit is replayed on the copy, the moved row is fetched again in the envelope of the edit
+        assertEquals(1, count(layer, new Envelope(149.5, 150.5, 159.5, 160.5)));
+        assertEquals(0, count(layer, new Envelope(4.5, 5.5, 4.5, 5.5)));
+        assertEquals(queries, database.queries.get());
+        assertEquals(1, database.fetches.get());
+        assertEquals(1, database.loads.get());
+    }
+
+    @Test
+    public void testIdleRelease() throws Exception {
+        ILayer layer = createLayer("POINTS");
+        count(layer, EXTENT);
+        waitCopied("POINTS");
+        container.releaseIdleTables();
+        assertTrue(container.isCopied("POINTS"));
+        container.setIdleDelay(0);
+        Thread.sleep(2);
+        container.releaseIdleTables();
+        assertFalse(container.isCopied("POINTS"));
+        assertEquals(0, container.getMemoryUsage());
+        // Copied again on the next draw
+        int queries = database.queries.get();
+        assertEquals(100, count(layer, EXTENT));
+        assertEquals(queries + 1, database.queries.get());
+        container.setIdleDelay(CachedResultSetContainer.DEFAULT_IDLE_DELAY);
+        waitCopied("POINTS");
+        assertEquals(2, database.loads.get());
+    }
+
+    @Test
+    public void testReleaseMemory() throws Exception {
+        ILayer points = createLayer("POINTS");
+        ILayer otherPoints = createLayer("OTHER_POINTS");
+        count(points, EXTENT);
+        waitCopied("POINTS");
+        long copyMemory = container.getMemoryUsage();
+        assertTrue(copyMemory > 0);
+        container.setMaxMemory(copyMemory * 3 / 2);
+        assertTrue(container.isCopied("POINTS"));
+        Thread.sleep(2);
+        // The least recently drawn copy is released
+        count(otherPoints, EXTENT);
+        waitCopied("OTHER_POINTS");
+        assertFalse(container.isCopied("POINTS"));
+        assertTrue(container.getMemoryUsage() <= copyMemory * 3 / 2);
+        assertEquals(100, count(points, EXTENT));
+    }
+
+    private int count(ILayer layer, Envelope extent) throws SQLException {
+        try (ResultSetProviderFactory.ResultSetProvider provider = container.getResultSetProvider(layer, pm);
+             SpatialResultSet rs = provider.execute(pm, extent, FIELDS)) {
+            int count = 0;
+            while (rs.next()) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private void waitCopied(String table) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!container.isCopied(table)) {
+            assertTrue("The table " + table + " is not copied", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    private static ILayer createLayer(final String table) {
+        return (ILayer) Proxy.newProxyInstance(ILayer.class.getClassLoader(), new Class<?>[]{ILayer.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getTableReference":
+                            case "getName":
+                                return table;
+                            case "getEnvelope":
+                                return new Envelope(EXTENT);
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                return null;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Tables of points, each query returns the rows read at the query time.
+     */
+    private static class FakeDatabase implements ResultSetProviderFactory {
+        private static final Pattern PK_RANGE = Pattern.compile("PK between (\\d+) and (\\d+)");
+        private final Map<String, Map<Long, Geometry>> tables = new ConcurrentHashMap<>();
+        // Copies of the tables
+        private final AtomicInteger loads = new AtomicInteger();
+        // Queries of the drawn rows
+        private final AtomicInteger queries = new AtomicInteger();
+        // Queries of the edited rows
+        private final AtomicInteger fetches = new AtomicInteger();
+        // The copy waits after reading the rows
+        private volatile CountDownLatch loadStarted;
+        private volatile CountDownLatch loadResumed;
+
+        private void createTable(String table) throws Exception {
+            WKTReader wktReader = new WKTReader();
+            Map<Long, Geometry> rows = new ConcurrentSkipListMap<>();
+            for (long i = 0; i < 100; i++) {
+                rows.put(i, wktReader.read("POINT(" + i + " " + i + ")"));
+            }
+            tables.put(table, rows);
+        }
+
+        private void update(String table, long pk, Geometry geometry) {
+            tables.get(table).put(pk, geometry);
+        }
+
+        private SpatialResultSet query(String table, Envelope extent, List<String> filters) {
+            List<long[]> ranges = new ArrayList<>();
+            for (String filter : filters) {
+                Matcher matcher = PK_RANGE.matcher(filter);
+                while (matcher.find()) {
+                    ranges.add(new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))});
+                }
+            }
+            TableRenderCache result = new TableRenderCache("PK", "THE_GEOM", 0, new String[]{"VAL", "NAME"},
+                    new int[]{Types.DOUBLE, Types.VARCHAR}, new String[]{"DOUBLE", "VARCHAR"});
+            for (Map.Entry<Long, Geometry> row : tables.get(table).entrySet()) {
+                boolean selected = ranges.isEmpty();
+                for (long[] range : ranges) {
+                    selected |= row.getKey() >= range[0] && row.getKey() <= range[1];
+                }
+                if (selected) {
+                    result.add(row.getKey(), row.getValue(), new Object[]{row.getKey() * 2., "p" + row.getKey()});
+                }
+            }
+            return result.execute(extent, 0);
+        }
+
+        @Override
+        public ResultSetProvider getResultSetProvider(final ILayer layer, ProgressMonitor pm) {
+            return new FilteredResultSetProvider() {
+                @Override
+                public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields)
+                        throws SQLException {
+                    loads.incrementAndGet();
+                    SpatialResultSet rs = query(layer.getTableReference(), extent,
+                            Collections.<String>emptyList());
+                    CountDownLatch started = loadStarted;
+                    if (started != null) {
+                        started.countDown();
+                        try {
+                            loadResumed.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException ex) {
+                            throw new SQLException(ex);
+                        }
+                    }
+                    return rs;
+                }
+
+                @Override
+                public SpatialResultSet execute(ProgressMonitor pm, Envelope extent, Set<String> fields,
+                                                List<String> filters) {
+                    if (filters.isEmpty()) {
+                        queries.incrementAndGet();
+                    } else {
+                        fetches.incrementAndGet();
+                    }
+                    return query(layer.getTableReference(), extent, filters);
+                }
+
+                @Override
+                public String getPkName() {
+                    return "PK";
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "Fake database";
+        }
+    }
+}
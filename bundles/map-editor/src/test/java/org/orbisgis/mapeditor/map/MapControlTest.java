@@ -0,0 +1,153 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.mapeditor.map;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+import org.orbisgis.corejdbc.TableEditEvent;
+import org.orbisgis.corejdbc.TableEditListener;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.layerModel.MapContext;
+
+import javax.swing.event.TableModelEvent;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the refresh of the map when the data of a layer change.
+ */
+public class MapControlTest {
+    private static final Envelope EXTENT = new Envelope(0, 100, 0, 100);
+
+    @Test
+    public void testTableChangeInvalidatesAllLayersOfTable() throws Exception {
+        List<String> calls = new ArrayList<>();
+        List<Object> listeners = new ArrayList<>();
+        ILayer points = createLayer("POINTS", "points", calls, listeners);
+        ILayer samePoints = createLayer("POINTS", "samePoints", calls, listeners);
+        ILayer otherPoints = createLayer("OTHER_POINTS", "otherPoints", calls, listeners);
+        ILayer root = createLayer("", "root", calls, listeners, points, samePoints, otherPoints);
+        MapControl mapControl = new MapControl();
+        mapControl.setMapContext(createMapContext(root, points, samePoints, otherPoints));
+        assertEquals(4, listeners.size());
+        calls.clear();
+        TableEditListener listener = (TableEditListener) listeners.get(0);
+        listener.tableChange(new TableEditEvent("POINTS", TableModelEvent.ALL_COLUMNS, 5L, 5L,
+                TableModelEvent.UPDATE, new Envelope(5, 5, 5, 5)));
+        // Both layers of the edited table lose their selection and their cached rows
+        assertTrue(calls.contains("points.setSelection"));
+        assertTrue(calls.contains("points.clearCache"));
+        assertTrue(calls.contains("samePoints.setSelection"));
+        assertTrue(calls.contains("samePoints.clearCache"));
+        assertFalse(calls.contains("otherPoints.setSelection"));
+        assertFalse(calls.contains("otherPoints.clearCache"));
+    }
+
+    private static MapContext createMapContext(final ILayer root, final ILayer... layers) {
+        return (MapContext) Proxy.newProxyInstance(MapContext.class.getClassLoader(), new Class<?>[]{MapContext.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getLayerModel":
+                                return root;
+                            case "getLayers":
+                                return layers;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                return null;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @param table Table of the layer, empty for a layer collection
+     * @param name Prefix of the recorded calls
+     * @param calls Calls of the methods that change the layer
+     * @param listeners Listeners added to the layer
+     * @param children Layers of a collection
+     */
+    private static ILayer createLayer(final String table, final String name, final List<String> calls,
+                                      final List<Object> listeners, final ILayer... children) {
+        return (ILayer) Proxy.newProxyInstance(ILayer.class.getClassLoader(), new Class<?>[]{ILayer.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getTableReference":
+                                return table;
+                            case "getName":
+                                return name;
+                            case "getEnvelope":
+                                return new Envelope(EXTENT);
+                            case "getLayerCount":
+                                return children.length;
+                            case "getLayer":
+                                return children[(Integer) args[0]];
+                            case "getLayersRecursively":
+                                return children;
+                            case "acceptsChilds":
+                                return children.length > 0;
+                            case "addLayerListener":
+                                listeners.add(args[0]);
+                                return null;
+                            case "setSelection":
+                            case "clearCache":
+                                calls.add(name + "." + method.getName());
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                return null;
+                        }
+                    }
+                });
+    }
+}
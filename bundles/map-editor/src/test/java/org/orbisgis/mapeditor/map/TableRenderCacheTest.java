@@ -0,0 +1,228 @@
+/**
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the 
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ * 
+ * OrbisGIS is distributed under GPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ * This file is part of OrbisGIS.
+ *
+ * OrbisGIS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisGIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OrbisGIS. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.mapeditor.map;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKTReader;
+import org.h2gis.utilities.SpatialResultSet;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class TableRenderCacheTest {
+    private WKTReader wktReader = new WKTReader();
+
+    private TableRenderCache createCache() throws Exception {
+        TableRenderCache cache = new TableRenderCache("PK", "THE_GEOM", 0, new String[]{"VAL", "NAME"},
+                new int[]{Types.DOUBLE, Types.VARCHAR}, new String[]{"DOUBLE", "VARCHAR"});
+        for (int i = 0; i < 100; i++) {
+            cache.add(i, wktReader.read("POINT(" + i + " " + i + ")"), new Object[]{i == 5 ? null : i * 2.,
+                    "p" + i});
+        }
+        return cache;
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        TableRenderCache cache = createCache();
+        assertEquals(100, cache.size());
+        int[] rows = cache.query(new Envelope(10, 19.5, 10, 19.5), 0);
+        assertEquals(10, rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(10 + i, rows[i]);
+        }
+        // A limited query samples the rows
+        assertArrayEquals(new int[]{10, 13, 16}, cache.query(new Envelope(10, 19.5, 10, 19.5), 3));
+        // Or keeps the first rows whose identifier is a multiple of the stride, as the database does
+        assertArrayEquals(new int[]{12, 16}, cache.query(new Envelope(10, 19.5, 10, 19.5), 2, 4));
+        assertArrayEquals(new int[]{12, 16}, cache.query(new Envelope(10, 19.5, 10, 19.5), 3, 4));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        TableRenderCache cache = createCache();
+        cache.remove(12);
+        cache.remove(12);
+        assertEquals(1, cache.getRemovedCount());
+        int[] rows = cache.query(new Envelope(10, 19.5, 10, 19.5), 0);
+        assertEquals(9, rows.length);
+        for (int row : rows) {
+            assertTrue(row != 12);
+        }
+        // Rows added after the index build
+        cache.add(100, wktReader.read("POINT(15 15)"), new Object[]{1., "new"});
+        assertEquals(10, cache.query(new Envelope(10, 19.5, 10, 19.5), 0).length);
+    }
+
+    @Test
+    public void testEditedRowOrder() throws Exception {
+        TableRenderCache cache = createCache();
+        // Row fetched again after an edit, it keeps the drawing order of the removed row
+        cache.remove(12);
+        cache.add(12, wktReader.read("POINT(12.5 12.5)"), new Object[]{1., "p12"}, 12);
+        int[] rows = cache.query(new Envelope(10, 19.5, 10, 19.5), 0);
+        assertEquals(10, rows.length);
+        assertEquals(11, rows[1]);
+        assertEquals(100, rows[2]);
+        assertEquals(13, rows[3]);
+    }
+
+    @Test
+    public void testResultSet() throws Exception {
+        TableRenderCache cache = createCache();
+        SpatialResultSet rs = cache.execute(new Envelope(4, 5, 4, 5), 0);
+        assertEquals(4, rs.getMetaData().getColumnCount());
+        assertEquals(1, rs.findColumn("pk"));
+        assertEquals(2, rs.findColumn("val"));
+        assertEquals(3, rs.findColumn("name"));
+        assertEquals(4, rs.findColumn("the_geom"));
+        assertTrue(rs.next());
+        assertEquals(4, rs.getLong(1));
+        assertEquals(8., rs.getDouble(2), 1e-12);
+        assertFalse(rs.wasNull());
+        assertEquals("p4", rs.getString(3));
+        Geometry geometry = rs.getGeometry(4);
+        assertEquals(wktReader.read("POINT(4 4)"), geometry);
+        assertEquals(geometry, new WKBReader().read(rs.getBytes(4)));
+        assertTrue(rs.next());
+        assertEquals(5, rs.getLong(1));
+        assertNull(rs.getObject(2));
+        assertTrue(rs.wasNull());
+        assertFalse(rs.next());
+    }
+
+    @Test
+    public void testSimplifiedGeometries() throws Exception {
+        TableRenderCache cache = createCache();
+        cache.add(100, wktReader.read("LINESTRING(200 200, 201 200.01, 202 200, 203 200.01, 210 200)"),
+                new Object[]{1., "line"});
+        Envelope extent = new Envelope(199, 211, 199, 201);
+        long memory = cache.getMemoryUsage();
+        SpatialResultSet rs = cache.execute(extent, 0, 1, 0.1);
+        assertTrue(rs.next());
+        byte[] wkb = rs.getBytes(4);
+        assertEquals(wktReader.read("LINESTRING(200 200, 210 200)"), new WKBReader().read(wkb));
+        assertEquals(rs.getGeometry(4), new WKBReader().read(wkb));
+        assertTrue(cache.getMemoryUsage() > memory);
+        // The next drawing at the same level of detail reads the stored geometry
+        rs = cache.execute(extent, 0, 1, 0.1);
+        assertTrue(rs.next());
+        assertSame(wkb, rs.getBytes(4));
+        rs = cache.execute(extent, 0, 1, 0.01);
+        assertTrue(rs.next());
+        assertNotSame(wkb, rs.getBytes(4));
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        TableRenderCache cache = createCache();
+        assertTrue(cache.containsFields(new HashSet<String>(Arrays.asList("pk", "val",
+                "the_geom"))));
+        assertFalse(cache.containsFields(new HashSet<String>(Arrays.asList("other"))));
+    }
+
+    /**
+     * Readers of several tables while rows are added and removed. Each read row must be consistent.
+     */
+    @Test
+    public void testConcurrentReadWrite() throws Exception {
+        final int tableCount = 4;
+        final int threadCount = 8;
+        final int iterations = 200;
+        final TableRenderCache[] caches = new TableRenderCache[tableCount];
+        for (int i = 0; i < tableCount; i++) {
+            caches[i] = createCache();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int thread = 0; thread < threadCount; thread++) {
+                final int threadId = thread;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        WKTReader reader = new WKTReader();
+                        int readRows = 0;
+                        for (int i = 0; i < iterations; i++) {
+                            TableRenderCache cache = caches[(threadId + i) % tableCount];
+                            if (threadId % 4 == 0) {
+                                // Writer, the pk is also the coordinate of the point
+                                long pk = 100 + threadId * iterations + i;
+                                cache.add(pk, reader.read("POINT(" + pk % 100 + " " + pk % 100 + ")"),
+                                        new Object[]{pk * 2., "p" + pk});
+                                cache.remove(i % 100);
+                            } else {
+                                SpatialResultSet rs = cache.execute(new Envelope(0, 100, 0, 100), 0);
+                                while (rs.next()) {
+                                    long pk = rs.getLong(1);
+                                    assertEquals(pk % 100, rs.getGeometry(4).getCoordinate().x, 0);
+                                    if (pk != 5) {
+                                        assertEquals(pk * 2., rs.getDouble(2), 0);
+                                    }
+                                    assertEquals("p" + pk, rs.getString(3));
+                                    readRows++;
+                                }
+                            }
+                        }
+                        return readRows;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                // Rethrow assertion failures of the threads
+                assertTrue(result.get() >= 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (TableRenderCache cache : caches) {
+            assertEquals(100 + 2 * iterations / tableCount, cache.size());
+        }
+    }
+}
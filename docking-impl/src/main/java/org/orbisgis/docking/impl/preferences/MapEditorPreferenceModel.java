@@ -47,6 +47,10 @@ import bibliothek.gui.dock.util.property.ConstantPropertyFactory;
 import bibliothek.util.Path;
 import java.awt.Color;
 import java.beans.EventHandler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.orbisgis.docking.impl.preferences.editors.UserInformationEditor;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
@@ -69,9 +73,11 @@ public class MapEditorPreferenceModel extends DefaultPreferenceModel{
     
     private static final String MAPEDITOR_BACKGROUNDCOLOR_KEY = "map.editor.color.background";
     private static final String USE_VALUE_ANTIALIAS_KEY = "map.editor.renderer.value_antialias_on";
+    private static final String USE_GENERALIZATION_KEY = "map.editor.renderer.generalization";
     private static final String MAPEDITOR_LABEL_KEY = "map.editor.mapeditorlabel";
     private DefaultPreference<String> mapEditorInfo;
     private DockPropertyPreference<Boolean> useAntialiasOn;
+    private DockPropertyPreference<Boolean> useGeneralization;
     
     //Background color
     public static final PropertyKey<String> MAPEDITOR_BACKGROUNDCOLOR = 
@@ -83,8 +89,35 @@ public class MapEditorPreferenceModel extends DefaultPreferenceModel{
     public static final PropertyKey<Boolean> VALUE_ANTIALIAS_ON = 
         new PropertyKey<Boolean>( USE_VALUE_ANTIALIAS_KEY,
         		new ConstantPropertyFactory<Boolean>( true ), true );
+
+    public static final PropertyKey<Boolean> GENERALIZATION =
+        new PropertyKey<Boolean>( USE_GENERALIZATION_KEY,
+        		new ConstantPropertyFactory<Boolean>( false ), true );
     
     
+    //Renderer options read by the map editor at each drawing
+    private static final String LABEL_PLACEMENT_KEY = "map.editor.renderer.label_placement";
+    private static final String LAYER_THREADS_KEY = "map.editor.renderer.layer_threads";
+    private static final String LOD_TOLERANCE_KEY = "map.editor.renderer.lod_tolerance";
+    private static final String SYMBOL_ATLAS_KEY = "map.editor.renderer.symbol_atlas";
+    private static final String DENSITY_THRESHOLD_KEY = "map.editor.renderer.density_threshold";
+    private static final String CLUSTER_DISTANCE_KEY = "map.editor.renderer.cluster_distance";
+    private static final String CLUSTER_SUM_FIELDS_KEY = "map.editor.renderer.cluster_sum_fields";
+    private static final String RETAINED_SHAPES_KEY = "map.editor.renderer.retained_shapes";
+    private static final String FILL_PAINT_CACHE_KEY = "map.editor.renderer.fill_paint_cache";
+    private static final String PREVIEW_ROWS_KEY = "map.editor.renderer.preview_rows";
+    private static final String PREVIEW_BUDGET_KEY = "map.editor.renderer.preview_budget";
+    private static final String PREVIEW_TIME_LIMIT_KEY = "map.editor.renderer.preview_time_limit";
+    private static final String INCREMENTAL_PAN_KEY = "map.editor.renderer.incremental_pan";
+    //System property of each renderer option
+    private final Map<Preference<?>, String> rendererKeys = new HashMap<Preference<?>, String>();
+    private final List<DockPropertyPreference<Boolean>> rendererSwitches = new ArrayList<DockPropertyPreference<Boolean>>();
+    //Last valid value of each numeric renderer option
+    private final Map<Preference<String>, String> oldRendererNumbers = new HashMap<Preference<String>, String>();
+    private final List<DockPropertyPreference<String>> rendererIntegers = new ArrayList<DockPropertyPreference<String>>();
+    private final List<DockPropertyPreference<String>> rendererDecimals = new ArrayList<DockPropertyPreference<String>>();
+    private DockPropertyPreference<String> clusterSumFields;
+
     private boolean skipEvent = false; //Skip event while update values
     
     public MapEditorPreferenceModel(DockController controller) {
@@ -107,6 +140,72 @@ public class MapEditorPreferenceModel extends DefaultPreferenceModel{
         useAntialiasOn.setLabel(I18N.tr("Geometry antialiasing"));
         useAntialiasOn.setDefaultValue(Boolean.TRUE);
         this.add(useAntialiasOn);        
+
+        //Merge vertices closer than the generalization tolerance
+        useGeneralization = new DockPropertyPreference<Boolean>(controller.getProperties(),GENERALIZATION, Path.TYPE_BOOLEAN_PATH, new Path(USE_GENERALIZATION_KEY));
+        useGeneralization.setLabel(I18N.tr("Geometry generalization"));
+        useGeneralization.setDefaultValue(Boolean.FALSE);
+        this.add(useGeneralization);
+
+        //Renderer options
+        addRendererSwitch(controller, LABEL_PLACEMENT_KEY, I18N.tr("Hide overlapping labels"), true);
+        addRendererNumber(controller, LAYER_THREADS_KEY, I18N.tr("Number of layers drawn in parallel"), "1", rendererIntegers);
+        addRendererNumber(controller, LOD_TOLERANCE_KEY, I18N.tr("Simplification of the fetched geometries (pixels)"), "0", rendererDecimals);
+        addRendererSwitch(controller, SYMBOL_ATLAS_KEY, I18N.tr("Draw point symbols from cached sprites"), false);
+        addRendererNumber(controller, DENSITY_THRESHOLD_KEY, I18N.tr("Draw point layers as a density grid above this number of features per pixel, 0 to disable"), "0", rendererDecimals);
+        addRendererNumber(controller, CLUSTER_DISTANCE_KEY, I18N.tr("Merge the points closer than this distance (pixels)"), "0", rendererDecimals);
+        clusterSumFields = new DockPropertyPreference<String>(controller.getProperties(),
+                new PropertyKey<String>(CLUSTER_SUM_FIELDS_KEY, new ConstantPropertyFactory<String>(""), true),
+                Path.TYPE_STRING_PATH, new Path(CLUSTER_SUM_FIELDS_KEY));
+        clusterSumFields.setLabel(I18N.tr("Fields summed in the point clusters, comma separated"));
+        clusterSumFields.setDefaultValue("");
+        rendererKeys.put(clusterSumFields, CLUSTER_SUM_FIELDS_KEY);
+        this.add(clusterSumFields);
+        addRendererSwitch(controller, RETAINED_SHAPES_KEY, I18N.tr("Reuse the drawn shapes when the style changes"), true);
+        addRendererSwitch(controller, FILL_PAINT_CACHE_KEY, I18N.tr("Cache the polygon fill textures"), true);
+        addRendererNumber(controller, PREVIEW_ROWS_KEY, I18N.tr("Rows of each layer in the preview, 0 to disable"), "5000", rendererIntegers);
+        addRendererNumber(controller, PREVIEW_BUDGET_KEY, I18N.tr("Preview the drawings longer than (ms)"), "200", rendererIntegers);
+        addRendererNumber(controller, PREVIEW_TIME_LIMIT_KEY, I18N.tr("Drop the previews longer than (ms)"), "1000", rendererIntegers);
+        addRendererSwitch(controller, INCREMENTAL_PAN_KEY, I18N.tr("Draw only the exposed strips on pan"), true);
+    }
+
+    /**
+     * Add a boolean renderer option
+     * @param controller Controller of the preferences
+     * @param key System property read by the map editor
+     * @param label Label of the option
+     * @param defaultValue Value of the option when it is not set
+     */
+    private void addRendererSwitch(DockController controller, String key, String label, boolean defaultValue) {
+        DockPropertyPreference<Boolean> preference = new DockPropertyPreference<Boolean>(controller.getProperties(),
+                new PropertyKey<Boolean>(key, new ConstantPropertyFactory<Boolean>(defaultValue), true),
+                Path.TYPE_BOOLEAN_PATH, new Path(key));
+        preference.setLabel(label);
+        preference.setDefaultValue(defaultValue);
+        rendererKeys.put(preference, key);
+        rendererSwitches.add(preference);
+        this.add(preference);
+    }
+
+    /**
+     * Add a numeric renderer option
+     * @param controller Controller of the preferences
+     * @param key System property read by the map editor
+     * @param label Label of the option
+     * @param defaultValue Value of the option when it is not set
+     * @param numbers Integer or decimal options
+     */
+    private void addRendererNumber(DockController controller, String key, String label, String defaultValue,
+                                   List<DockPropertyPreference<String>> numbers) {
+        DockPropertyPreference<String> preference = new DockPropertyPreference<String>(controller.getProperties(),
+                new PropertyKey<String>(key, new ConstantPropertyFactory<String>(defaultValue), true),
+                Path.TYPE_STRING_PATH, new Path(key));
+        preference.setLabel(label);
+        preference.setDefaultValue(defaultValue);
+        rendererKeys.put(preference, key);
+        oldRendererNumbers.put(preference, defaultValue);
+        numbers.add(preference);
+        this.add(preference);
     }
     
     
@@ -117,6 +216,17 @@ public class MapEditorPreferenceModel extends DefaultPreferenceModel{
     public MapEditorPreferenceModel initListeners() {        
         backgroundColor.addPreferenceListener(EventHandler.create(StringPreferenceListener.class, this,"onUserSetColorChange",""));        
         useAntialiasOn.addPreferenceListener(EventHandler.create(PreferenceListener.class, this,"onUseAntialias","")); 
+        useGeneralization.addPreferenceListener(EventHandler.create(PreferenceListener.class, this,"onUseGeneralization",""));
+        for(DockPropertyPreference<Boolean> rendererSwitch : rendererSwitches) {
+            rendererSwitch.addPreferenceListener(EventHandler.create(PreferenceListener.class, this,"onRendererOptionChange",""));
+        }
+        for(DockPropertyPreference<String> rendererNumber : rendererIntegers) {
+            rendererNumber.addPreferenceListener(EventHandler.create(StringPreferenceListener.class, this,"onUserSetRendererNumber",""));
+        }
+        for(DockPropertyPreference<String> rendererNumber : rendererDecimals) {
+            rendererNumber.addPreferenceListener(EventHandler.create(StringPreferenceListener.class, this,"onUserSetRendererNumber",""));
+        }
+        clusterSumFields.addPreferenceListener(EventHandler.create(StringPreferenceListener.class, this,"onRendererOptionChange",""));
         return this;
     }
     
@@ -160,6 +270,55 @@ public class MapEditorPreferenceModel extends DefaultPreferenceModel{
     public void onUseAntialias(Preference<Boolean> preference) {
         System.setProperty(USE_VALUE_ANTIALIAS_KEY, String.valueOf(useAntialiasOn.getValue()));
     }
+
+    /**
+     * Update the system properties
+     *
+     * @param preference
+     */
+    public void onUseGeneralization(Preference<Boolean> preference) {
+        System.setProperty(USE_GENERALIZATION_KEY, String.valueOf(useGeneralization.getValue()));
+    }
+
+    /**
+     * Update the system property of a renderer option
+     *
+     * @param preference Updated preference
+     */
+    public void onRendererOptionChange(Preference<?> preference) {
+        System.setProperty(rendererKeys.get(preference), String.valueOf(preference.getValue()));
+    }
+
+    /**
+     * User update a numeric renderer option, verify that the value is a positive number
+     * @param preference Updated preference
+     */
+    public void onUserSetRendererNumber(Preference<String> preference) {
+        if(skipEvent) {
+            return;
+        }
+        try {
+            String value = preference.getValue().trim();
+            double number = rendererIntegers.contains(preference) ? Integer.parseInt(value) : Double.parseDouble(value);
+            if (number < 0 || Double.isNaN(number) || Double.isInfinite(number)) {
+                skipEvent = true;
+                mapEditorInfo.setValue(I18N.tr("{0} must be a positive number", preference.getLabel()));
+                preference.setValue(oldRendererNumbers.get(preference));
+                return;
+            }
+        } catch (NumberFormatException e) {
+            skipEvent = true;
+            mapEditorInfo.setValue(I18N.tr("{0} must be a positive number", preference.getLabel()));
+            preference.setValue(oldRendererNumbers.get(preference));
+            return;
+        }
+        finally {
+            skipEvent = false;
+        }
+        mapEditorInfo.setValue("");
+        oldRendererNumbers.put(preference, preference.getValue().trim());
+        System.setProperty(rendererKeys.get(preference), oldRendererNumbers.get(preference));
+    }
     
     
     